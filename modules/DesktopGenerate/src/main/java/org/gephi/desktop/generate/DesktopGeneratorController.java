@@ -156,5 +156,6 @@ public class DesktopGeneratorController implements GeneratorController {
         defaultProcessor.setContainer(container.getUnloader());
         defaultProcessor.setWorkspace(workspace);
         defaultProcessor.process();
+        container.dispose();
     }
 }
@@ -454,6 +454,15 @@ public class DesktopImportControllerUI implements ImportControllerUI {
     }
 
     private void finishImport(Container container) {
+        try {
+            processImport(container);
+        } finally {
+            //Also when the import isn't processed
+            container.dispose();
+        }
+    }
+
+    private void processImport(Container container) {
         if (container.verify()) {
             Report report = container.getReport();
 
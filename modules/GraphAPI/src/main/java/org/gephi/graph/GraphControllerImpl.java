@@ -77,6 +77,11 @@ public class GraphControllerImpl implements GraphController {
         return model;
     }
 
+    @Override
+    public GraphModelImpl createGraphModel() {
+        return new GraphModelImpl();
+    }
+
     @Override
     public GraphModelImpl getAttributeModel() {
         return getGraphModel();
@@ -71,6 +71,15 @@ public interface GraphController {
      */
     public GraphModel getGraphModel(Workspace workspace);
 
+    /**
+     * Creates a new graph model which doesn't belong to any workspace. Such a
+     * model can hold temporary graphs, derived from the workspace's graph
+     * and computed on without being visible to the user.
+     *
+     * @return a new empty graph model
+     */
+    public GraphModel createGraphModel();
+
     /**
      * Returns the model for the current
      * <code>Workspace</code>. May return
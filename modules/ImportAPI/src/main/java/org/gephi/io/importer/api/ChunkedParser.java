@@ -0,0 +1,292 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.api;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel parsing framework for line-oriented file formats.
+ * <p>
+ * The reader is cut at line boundaries into large chunks. Each chunk is
+ * tokenized by {@link #parse(char[], int, int)} on a worker thread into
+ * primitive records, and the records are handed to {@link #merge(Object)}
+ * on the calling thread, in the order of the file. Importers opt in by
+ * subclassing this class, typically with {@link GraphRecords} as record
+ * type:
+ * <pre>
+ * new ChunkedParser&lt;GraphRecords&gt;() {
+ *     protected GraphRecords parse(char[] chars, int offset, int length) {
+ *         //Tokenize lines, never touch the container here
+ *     }
+ *     protected void merge(GraphRecords records) {
+ *         records.addTo(container);
+ *     }
+ * }.parse(reader);
+ * </pre>
+ * Only formats where each line can be parsed without knowing the lines
+ * before it can use this class.
+ *
+ * @param <R> the type of records a chunk is parsed into
+ */
+public abstract class ChunkedParser<R> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private volatile boolean cancel = false;
+    private long charsRead;
+
+    /**
+     * Tokenizes <code>length</code> characters of <code>chars</code> from
+     * <code>offset</code>. The range always ends at a line boundary, or at
+     * the end of the stream. Called from worker threads, possibly
+     * concurrently, so implementations must not modify shared state.
+     *
+     * @param chars the chunk characters
+     * @param offset the first character of the chunk
+     * @param length the number of characters in the chunk
+     * @return the records parsed from the chunk
+     * @throws Exception if the chunk can't be parsed
+     */
+    protected abstract R parse(char[] chars, int offset, int length) throws Exception;
+
+    /**
+     * Merges the records of a chunk. Called on the thread which called
+     * {@link #parse(java.io.Reader)}, once per chunk and in order.
+     *
+     * @param records the records of the next chunk
+     */
+    protected abstract void merge(R records);
+
+    /**
+     * Reads <code>reader</code> until its end, or until the parsing is
+     * cancelled, and parses and merges all its chunks.
+     *
+     * @param reader the reader to parse
+     * @throws IOException if the reader or a chunk parsing fails
+     */
+    public void parse(Reader reader) throws IOException {
+        charsRead = 0;
+        if (threadCount == 1) {
+            char[] chunk;
+            int[] length = new int[1];
+            Carry carry = new Carry();
+            while (!cancel && (chunk = readChunk(reader, carry, length)) != null) {
+                merge(parseChunk(chunk, length[0]));
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            Queue<Future<R>> pending = new ArrayDeque<Future<R>>();
+            int[] length = new int[1];
+            Carry carry = new Carry();
+            char[] chunk;
+            while (!cancel && (chunk = readChunk(reader, carry, length)) != null) {
+                pending.add(executor.submit(new ChunkTask(chunk, length[0])));
+                //Bound the number of chunks held in memory
+                if (pending.size() >= threadCount * 2) {
+                    merge(get(pending.poll()));
+                }
+            }
+            while (!cancel && !pending.isEmpty()) {
+                merge(get(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private R parseChunk(char[] chunk, int length) throws IOException {
+        try {
+            return parse(chunk, 0, length);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private R get(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Fills a new chunk with the characters carried over from the previous
+     * chunk and from <code>reader</code>, and cuts it after its last line
+     * break. What follows is carried over to the next chunk. A chunk grows
+     * when a single line doesn't fit.
+     */
+    private char[] readChunk(Reader reader, Carry carry, int[] length) throws IOException {
+        char[] chunk = new char[Math.max(chunkSize, carry.length * 2)];
+        int filled = carry.length;
+        if (filled > 0) {
+            System.arraycopy(carry.chars, 0, chunk, 0, filled);
+        }
+        carry.length = 0;
+        while (true) {
+            int n = reader.read(chunk, filled, chunk.length - filled);
+            if (n < 0) {
+                if (filled == 0) {
+                    return null;
+                }
+                length[0] = filled;
+                return chunk;
+            }
+            charsRead += n;
+            int start = filled;
+            filled += n;
+            if (filled < chunk.length) {
+                continue;
+            }
+            int end = filled;
+            while (end > start && chunk[end - 1] != '\n' && chunk[end - 1] != '\r') {
+                end--;
+            }
+            if (end > start) {
+                carry.set(chunk, end, filled - end);
+                length[0] = end;
+                return chunk;
+            }
+            //No line break yet, grow the chunk
+            char[] larger = new char[chunk.length * 2];
+            System.arraycopy(chunk, 0, larger, 0, filled);
+            chunk = larger;
+        }
+    }
+
+    /**
+     * Cancels the parsing. Chunks which are not merged yet are dropped.
+     */
+    public void cancel() {
+        cancel = true;
+    }
+
+    public boolean isCancelled() {
+        return cancel;
+    }
+
+    /**
+     * Returns the number of characters read from the reader so far. Only
+     * accurate on the thread which called {@link #parse(java.io.Reader)},
+     * for instance from {@link #merge(Object)} to report progress.
+     *
+     * @return the number of characters read
+     */
+    public long getCharsRead() {
+        return charsRead;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    private class ChunkTask implements Callable<R> {
+
+        private final char[] chunk;
+        private final int length;
+
+        public ChunkTask(char[] chunk, int length) {
+            this.chunk = chunk;
+            this.length = length;
+        }
+
+        @Override
+        public R call() throws Exception {
+            return parse(chunk, 0, length);
+        }
+    }
+
+    private static class Carry {
+
+        private char[] chars = new char[0];
+        private int length;
+
+        private void set(char[] source, int offset, int length) {
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            System.arraycopy(source, offset, chars, 0, length);
+            this.length = length;
+        }
+    }
+}
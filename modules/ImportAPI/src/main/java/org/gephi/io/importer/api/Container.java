@@ -128,6 +128,13 @@ public interface Container {
      */
     public void closeLoader();
 
+    /**
+     * Releases the resources held by the container, such as the temporary
+     * files of spilled edges. The import controller calls it once the
+     * container is processed, the data can't be read after.
+     */
+    public void dispose();
+
     public boolean isDynamicGraph();
 
     public boolean hasDynamicAttributes();
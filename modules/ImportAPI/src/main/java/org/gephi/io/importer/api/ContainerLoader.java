@@ -154,6 +154,10 @@ public interface ContainerLoader {
      * <code>true</code> if an edge exists from
      * <code>source</code> to
      * <code>target</code>.
+     * <p>
+     * When edges are spilled to disk (see {@link #setSpillToDisk(boolean)})
+     * node pairs aren't indexed and this scans all the edges, so importers
+     * using that mode shouldn't call it for every edge.
      *
      * @param source the edge source node
      * @param target the edge target node
@@ -198,6 +202,32 @@ public interface ContainerLoader {
     public void setTimeFormat(TimeFormat timeFormat);
 
     //PARAMETERS SETTERS
+    /**
+     * Stores edges in compact columns instead of one draft object per edge,
+     * which takes a fraction of the memory for large graphs. Edge drafts are
+     * copied when added, so changes made to a draft after
+     * <code>addEdge()</code> are ignored, and drafts returned by the container
+     * are copies. Must be set before the first edge is added.
+     *
+     * @param compact <code>true</code> to store edges in compact columns
+     * @throws IllegalStateException if edges were already added
+     */
+    public void setCompactEdges(boolean compact);
+
+    /**
+     * Stores edges in compact columns kept in memory-mapped temporary files
+     * instead of the heap, for graphs which don't fit in memory. Implies
+     * compact edges. Parallel edges are found by sorting when the loader is
+     * closed rather than when edges are added, and
+     * <code>edgeExists(source, target)</code> scans all edges. The files are
+     * deleted when the container is disposed. Must be set before the first
+     * edge is added.
+     *
+     * @param spill <code>true</code> to store edges in temporary files
+     * @throws IllegalStateException if edges were already added
+     */
+    public void setSpillToDisk(boolean spill);
+
     public void setAllowSelfLoop(boolean value);
 
     public void setAllowAutoNode(boolean value);
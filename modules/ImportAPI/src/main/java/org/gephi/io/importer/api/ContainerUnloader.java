@@ -60,6 +60,17 @@ public interface ContainerUnloader {
 
     public int getNodeCount();
 
+    /**
+     * Returns the index of <code>node</code> in the container, between
+     * <code>0</code> and <code>getNodeCount() - 1</code> and in the order of
+     * {@link #getNodes()}. Processors use it to resolve edge ends with an array
+     * instead of looking nodes up by id. Only valid once the loader is closed.
+     *
+     * @param node a node of the container
+     * @return the index of the node
+     */
+    public int getNodeIndex(NodeDraft node);
+
     public Iterable<EdgeDraft> getEdges();
 
     public int getEdgeCount();
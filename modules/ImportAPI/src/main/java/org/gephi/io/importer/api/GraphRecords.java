@@ -0,0 +1,150 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.api;
+
+import java.util.Arrays;
+
+/**
+ * Compact list of node and edge records, filled by a {@link ChunkedParser}
+ * while parsing a chunk and added to the container when the chunk is
+ * merged. Records only hold identifiers, labels and weights in arrays, so
+ * that no draft is created on the parsing threads.
+ */
+public final class GraphRecords {
+
+    private static final byte NODE = 0;
+    private static final byte EDGE = 1;
+    private byte[] types;
+    private String[] first;
+    private String[] second;
+    private float[] weights;
+    private int size;
+
+    public GraphRecords() {
+        this(256);
+    }
+
+    public GraphRecords(int capacity) {
+        capacity = Math.max(capacity, 1);
+        types = new byte[capacity];
+        first = new String[capacity];
+        second = new String[capacity];
+        weights = new float[capacity];
+    }
+
+    /**
+     * Records a node, added to the container only if no node with the same
+     * identifier exists yet.
+     *
+     * @param id the node identifier
+     * @param label the node label, or <code>null</code>
+     */
+    public void addNode(String id, String label) {
+        add(NODE, id, label, 0f);
+    }
+
+    /**
+     * Records an edge. Missing source or target nodes are created when the
+     * records are added to the container.
+     *
+     * @param source the source node identifier
+     * @param target the target node identifier
+     * @param weight the edge weight
+     */
+    public void addEdge(String source, String target, float weight) {
+        add(EDGE, source, target, weight);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds all records to <code>container</code>, in the order they were
+     * recorded.
+     *
+     * @param container the container to push nodes and edges in
+     */
+    public void addTo(ContainerLoader container) {
+        ElementDraftFactory factory = container.factory();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == NODE) {
+                if (!container.nodeExists(first[i])) {
+                    NodeDraft node = factory.newNodeDraft(first[i]);
+                    if (second[i] != null) {
+                        node.setLabel(second[i]);
+                    }
+                    container.addNode(node);
+                }
+            } else {
+                EdgeDraft edge = factory.newEdgeDraft();
+                edge.setSource(getOrCreateNode(container, first[i]));
+                edge.setTarget(getOrCreateNode(container, second[i]));
+                edge.setWeight(weights[i]);
+                container.addEdge(edge);
+            }
+        }
+    }
+
+    private NodeDraft getOrCreateNode(ContainerLoader container, String id) {
+        if (container.nodeExists(id)) {
+            return container.getNode(id);
+        }
+        NodeDraft node = container.factory().newNodeDraft(id);
+        container.addNode(node);
+        return node;
+    }
+
+    private void add(byte type, String a, String b, float weight) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            first = Arrays.copyOf(first, capacity);
+            second = Arrays.copyOf(second, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        types[size] = type;
+        first[size] = a;
+        second[size] = b;
+        weights[size] = weight;
+        size++;
+    }
+}
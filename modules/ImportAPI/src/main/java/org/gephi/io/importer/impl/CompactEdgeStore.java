@@ -0,0 +1,975 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.impl;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectList;
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.gephi.io.importer.api.EdgeDirection;
+import org.gephi.utils.TempDirUtils.TempDir;
+
+/**
+ * Columnar storage for the edges of a container in compact mode. Instead of
+ * one draft object per edge, edges are kept in parallel arrays: node
+ * positions, weights, type and direction, with labels, colors and attribute
+ * values in columns allocated on first use. Edges with timestamps or dynamic
+ * values are rare and kept as whole drafts.
+ * <p>
+ * When created with a temporary directory, the topology and the numeric
+ * attribute columns are kept in memory-mapped files instead of the heap.
+ * <p>
+ * Edge drafts are copied when added and materialized on demand by
+ * {@link #get(int)}, so changes made to a returned draft are not stored.
+ */
+class CompactEdgeStore {
+
+    private static final byte NO_DIRECTION = 0;
+    private static final byte DIRECTED = 1;
+    private static final byte UNDIRECTED = 2;
+    private static final int REMOVED = -1;
+    private final ImportContainerImpl container;
+    private final ObjectList<NodeDraftImpl> nodeList;
+    private final ObjectList<Object> edgeTypes;
+    private final TempDir tempDir;
+    private int size;
+    private int count;
+    private int capacity;
+    //Node positions, weight, type, direction and id
+    private final Topology topology;
+    //Generated ids are negative and explicit ids index explicitIds
+    private final ObjectList<String> explicitIds = new ObjectArrayList<String>();
+    //Generated ids are consecutive as edges are appended, so they are kept as
+    //runs of consecutive ids at consecutive indices, sorted by first id
+    private int[] runIds = new int[16];
+    private int[] runIndices = new int[16];
+    private int[] runLengths = new int[16];
+    private int runCount;
+    private int lastRun = -1;
+    //Properties, allocated on first use
+    private String[] labels;
+    private Color[] colors;
+    private Color[] labelColors;
+    private float[] labelSizes;
+    private BitSet hiddenLabels;
+    private ValueColumn[] values = new ValueColumn[0];
+    //Dynamic edges
+    private final Int2ObjectMap<EdgeDraftImpl> dynamicEdges = new Int2ObjectOpenHashMap<EdgeDraftImpl>();
+
+    public CompactEdgeStore(ImportContainerImpl container, ObjectList<NodeDraftImpl> nodeList, ObjectList<Object> edgeTypes) {
+        this(container, nodeList, edgeTypes, null);
+    }
+
+    /**
+     * Creates a store which maps its columns to files of
+     * <code>tempDir</code>, or keeps them in the heap if <code>tempDir</code>
+     * is <code>null</code>.
+     *
+     * @param container the container
+     * @param nodeList the container node list, edge ends index it
+     * @param edgeTypes the container edge types, edge types index it
+     * @param tempDir the directory of mapped files, or <code>null</code>
+     */
+    public CompactEdgeStore(ImportContainerImpl container, ObjectList<NodeDraftImpl> nodeList, ObjectList<Object> edgeTypes, TempDir tempDir) {
+        this.container = container;
+        this.nodeList = nodeList;
+        this.edgeTypes = edgeTypes;
+        this.tempDir = tempDir;
+        topology = tempDir != null ? new MappedTopology(openFile("edges", MappedTopology.RECORD_SIZE)) : new ArrayTopology();
+        ensureCapacity(16);
+    }
+
+    /**
+     * Copies <code>edge</code> at the end of the store.
+     *
+     * @param edge the edge draft to copy
+     * @param source the position of the source node in the node list
+     * @param target the position of the target node in the node list
+     * @param type the container edge type
+     * @return the index of the edge
+     */
+    public int add(EdgeDraftImpl edge, int source, int target, int type) {
+        int index = size;
+        ensureCapacity(index + 1);
+        topology.setSource(index, source);
+        topology.setTarget(index, target);
+        topology.setWeight(index, edge.getWeight());
+        topology.setType(index, type);
+        topology.setDirection(index, toByte(edge.getDirection()));
+        if (edge.getAutoId() != ImportContainerImpl.NULL_INDEX) {
+            topology.setId(index, -1 - edge.getAutoId());
+            addAutoId(edge.getAutoId(), index);
+        } else {
+            topology.setId(index, explicitIds.size());
+            explicitIds.add(edge.getId());
+        }
+
+        if (edge.getLabel() != null) {
+            if (labels == null) {
+                labels = new String[capacity];
+            }
+            labels[index] = edge.getLabel();
+        }
+        if (edge.getColor() != null) {
+            if (colors == null) {
+                colors = new Color[capacity];
+            }
+            colors[index] = edge.getColor();
+        }
+        if (edge.getLabelColor() != null) {
+            if (labelColors == null) {
+                labelColors = new Color[capacity];
+            }
+            labelColors[index] = edge.getLabelColor();
+        }
+        if (edge.getLabelSize() != -1f) {
+            if (labelSizes == null) {
+                labelSizes = new float[capacity];
+                Arrays.fill(labelSizes, -1f);
+            }
+            labelSizes[index] = edge.getLabelSize();
+        }
+        if (!edge.isLabelVisible()) {
+            if (hiddenLabels == null) {
+                hiddenLabels = new BitSet();
+            }
+            hiddenLabels.set(index);
+        }
+        Object[] attributes = edge.attributes;
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i] != null) {
+                setValue(i, index, attributes[i]);
+            }
+        }
+        if (edge.isDynamic() || edge.hasDynamicAttributes()) {
+            dynamicEdges.put(index, edge);
+        }
+
+        size++;
+        count++;
+        return index;
+    }
+
+    /**
+     * Returns a new draft with the content of the edge at <code>index</code>.
+     *
+     * @param index the edge index
+     * @return the edge draft, or <code>null</code> if the edge was removed
+     */
+    public EdgeDraftImpl get(int index) {
+        if (isRemoved(index)) {
+            return null;
+        }
+        EdgeDraftImpl edge = dynamicEdges.get(index);
+        if (edge == null) {
+            int id = topology.getId(index);
+            if (id < 0) {
+                int autoId = -1 - id;
+                edge = new EdgeDraftImpl(container, ElementFactoryImpl.EDGE_ID_PREFIX + autoId, autoId);
+            } else {
+                edge = new EdgeDraftImpl(container, explicitIds.get(id));
+            }
+            if (labels != null) {
+                edge.setLabel(labels[index]);
+            }
+            if (colors != null) {
+                edge.setColor(colors[index]);
+            }
+            if (labelColors != null) {
+                edge.setLabelColor(labelColors[index]);
+            }
+            if (labelSizes != null) {
+                edge.setLabelSize(labelSizes[index]);
+            }
+            if (hiddenLabels != null && hiddenLabels.get(index)) {
+                edge.setLabelVisible(false);
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    Object value = values[i].get(index);
+                    if (value != null) {
+                        edge.setAttributeValue(i, value);
+                    }
+                }
+            }
+        }
+        edge.setSource(nodeList.get(topology.getSource(index)));
+        edge.setTarget(nodeList.get(topology.getTarget(index)));
+        edge.setWeight(topology.getWeight(index));
+        edge.setType(edgeTypes.get(topology.getType(index)));
+        edge.setDirection(getDirection(index));
+        return edge;
+    }
+
+    /**
+     * Returns the index of the edge with the generated id number
+     * <code>autoId</code>.
+     *
+     * @param autoId the generated id number
+     * @return the edge index, or <code>NULL_INDEX</code> if not found
+     */
+    public int indexOfAutoId(int autoId) {
+        int run = findRun(autoId);
+        if (run != -1 && autoId - runIds[run] < runLengths[run]) {
+            int index = runIndices[run] + autoId - runIds[run];
+            if (!isRemoved(index)) {
+                return index;
+            }
+        }
+        return ImportContainerImpl.NULL_INDEX;
+    }
+
+    private void addAutoId(int autoId, int index) {
+        if (lastRun != -1 && runIds[lastRun] + runLengths[lastRun] == autoId
+                && runIndices[lastRun] + runLengths[lastRun] == index) {
+            runLengths[lastRun]++;
+            return;
+        }
+        if (runCount == runIds.length) {
+            int length = runCount * 2;
+            runIds = Arrays.copyOf(runIds, length);
+            runIndices = Arrays.copyOf(runIndices, length);
+            runLengths = Arrays.copyOf(runLengths, length);
+        }
+        //Ids from drafts created out of order start a run in the middle
+        int run = findRun(autoId) + 1;
+        System.arraycopy(runIds, run, runIds, run + 1, runCount - run);
+        System.arraycopy(runIndices, run, runIndices, run + 1, runCount - run);
+        System.arraycopy(runLengths, run, runLengths, run + 1, runCount - run);
+        runIds[run] = autoId;
+        runIndices[run] = index;
+        runLengths[run] = 1;
+        runCount++;
+        lastRun = run;
+    }
+
+    //Last run starting at or before autoId, or -1
+    private int findRun(int autoId) {
+        int low = 0;
+        int high = runCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runIds[mid] <= autoId) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    public void remove(int index) {
+        if (isRemoved(index)) {
+            return;
+        }
+        topology.setType(index, REMOVED);
+        dynamicEdges.remove(index);
+        if (labels != null) {
+            labels[index] = null;
+        }
+        if (colors != null) {
+            colors[index] = null;
+        }
+        if (labelColors != null) {
+            labelColors[index] = null;
+        }
+        for (ValueColumn column : values) {
+            if (column != null) {
+                column.set(index, null);
+            }
+        }
+        count--;
+    }
+
+    public boolean isRemoved(int index) {
+        return topology.getType(index) == REMOVED;
+    }
+
+    public int getSource(int index) {
+        return topology.getSource(index);
+    }
+
+    public int getTarget(int index) {
+        return topology.getTarget(index);
+    }
+
+    /**
+     * Returns the container edge type of the edge at <code>index</code>.
+     *
+     * @param index the edge index
+     * @return the edge type index
+     */
+    public int getType(int index) {
+        return topology.getType(index);
+    }
+
+    public EdgeDirection getDirection(int index) {
+        return toDirection(topology.getDirection(index));
+    }
+
+    public double getWeight(int index) {
+        return topology.getWeight(index);
+    }
+
+    public void setWeight(int index, double weight) {
+        topology.setWeight(index, weight);
+        EdgeDraftImpl edge = dynamicEdges.get(index);
+        if (edge != null) {
+            edge.setWeight(weight);
+        }
+    }
+
+    public boolean isDynamic(int index) {
+        return dynamicEdges.containsKey(index);
+    }
+
+    /**
+     * Updates node positions after the node list was reordered.
+     *
+     * @param positions new node positions, indexed by old position
+     */
+    public void remapNodes(int[] positions) {
+        for (int i = 0; i < size; i++) {
+            topology.setSource(i, positions[topology.getSource(i)]);
+            topology.setTarget(i, positions[topology.getTarget(i)]);
+        }
+    }
+
+    /**
+     * Returns the number of indices used so far, including removed edges.
+     *
+     * @return the index bound
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of edges which are not removed.
+     *
+     * @return the edge count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Releases the mapped files, the store can't be used after.
+     */
+    public void close() {
+        topology.close();
+        for (ValueColumn column : values) {
+            if (column != null) {
+                column.close();
+            }
+        }
+    }
+
+    private void setValue(int column, int index, Object value) {
+        if (column >= values.length) {
+            values = Arrays.copyOf(values, column + 1);
+        }
+        ValueColumn valueColumn = values[column];
+        if (valueColumn == null) {
+            Class type = value.getClass();
+            if (tempDir != null && MappedColumn.isSupported(type)) {
+                valueColumn = new MappedColumn(type, openFile("column" + column, MappedColumn.getRecordSize(type)), capacity);
+            } else {
+                valueColumn = ValueColumn.create(type, capacity);
+            }
+            values[column] = valueColumn;
+        }
+        if (!valueColumn.set(index, value)) {
+            //Values of another type, fall back to objects
+            ValueColumn objectColumn = new ObjectColumn(valueColumn, capacity);
+            valueColumn.close();
+            values[column] = objectColumn;
+            objectColumn.set(index, value);
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        int length = Math.max(minCapacity, capacity + (capacity >> 1));
+        topology.ensureCapacity(length);
+        capacity = length;
+        if (labels != null) {
+            labels = Arrays.copyOf(labels, length);
+        }
+        if (colors != null) {
+            colors = Arrays.copyOf(colors, length);
+        }
+        if (labelColors != null) {
+            labelColors = Arrays.copyOf(labelColors, length);
+        }
+        if (labelSizes != null) {
+            int oldLength = labelSizes.length;
+            labelSizes = Arrays.copyOf(labelSizes, length);
+            Arrays.fill(labelSizes, oldLength, length, -1f);
+        }
+        for (ValueColumn column : values) {
+            if (column != null) {
+                column.ensureCapacity(length);
+            }
+        }
+    }
+
+    private MappedRecordFile openFile(String name, int recordSize) {
+        try {
+            return new MappedRecordFile(tempDir.createFile(name), recordSize);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static byte toByte(EdgeDirection direction) {
+        if (direction == null) {
+            return NO_DIRECTION;
+        }
+        return direction.equals(EdgeDirection.DIRECTED) ? DIRECTED : UNDIRECTED;
+    }
+
+    private static EdgeDirection toDirection(byte direction) {
+        switch (direction) {
+            case DIRECTED:
+                return EdgeDirection.DIRECTED;
+            case UNDIRECTED:
+                return EdgeDirection.UNDIRECTED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Node positions, weight, type, direction and id of each edge.
+     */
+    private static abstract class Topology {
+
+        abstract int getSource(int index);
+
+        abstract void setSource(int index, int source);
+
+        abstract int getTarget(int index);
+
+        abstract void setTarget(int index, int target);
+
+        abstract double getWeight(int index);
+
+        abstract void setWeight(int index, double weight);
+
+        abstract int getType(int index);
+
+        abstract void setType(int index, int type);
+
+        abstract byte getDirection(int index);
+
+        abstract void setDirection(int index, byte direction);
+
+        abstract int getId(int index);
+
+        abstract void setId(int index, int id);
+
+        abstract void ensureCapacity(int capacity);
+
+        void close() {
+        }
+    }
+
+    private static class ArrayTopology extends Topology {
+
+        private int[] sources = new int[0];
+        private int[] targets = new int[0];
+        private double[] weights = new double[0];
+        private int[] types = new int[0];
+        private byte[] directions = new byte[0];
+        private int[] ids = new int[0];
+
+        @Override
+        int getSource(int index) {
+            return sources[index];
+        }
+
+        @Override
+        void setSource(int index, int source) {
+            sources[index] = source;
+        }
+
+        @Override
+        int getTarget(int index) {
+            return targets[index];
+        }
+
+        @Override
+        void setTarget(int index, int target) {
+            targets[index] = target;
+        }
+
+        @Override
+        double getWeight(int index) {
+            return weights[index];
+        }
+
+        @Override
+        void setWeight(int index, double weight) {
+            weights[index] = weight;
+        }
+
+        @Override
+        int getType(int index) {
+            return types[index];
+        }
+
+        @Override
+        void setType(int index, int type) {
+            types[index] = type;
+        }
+
+        @Override
+        byte getDirection(int index) {
+            return directions[index];
+        }
+
+        @Override
+        void setDirection(int index, byte direction) {
+            directions[index] = direction;
+        }
+
+        @Override
+        int getId(int index) {
+            return ids[index];
+        }
+
+        @Override
+        void setId(int index, int id) {
+            ids[index] = id;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            types = Arrays.copyOf(types, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+    }
+
+    private static class MappedTopology extends Topology {
+
+        //Record layout
+        private static final int SOURCE = 0;
+        private static final int TARGET = 4;
+        private static final int WEIGHT = 8;
+        private static final int TYPE = 16;
+        private static final int ID = 20;
+        private static final int DIRECTION = 24;
+        static final int RECORD_SIZE = 25;
+        private final MappedRecordFile file;
+
+        MappedTopology(MappedRecordFile file) {
+            this.file = file;
+        }
+
+        @Override
+        int getSource(int index) {
+            return file.getInt(index, SOURCE);
+        }
+
+        @Override
+        void setSource(int index, int source) {
+            file.putInt(index, SOURCE, source);
+        }
+
+        @Override
+        int getTarget(int index) {
+            return file.getInt(index, TARGET);
+        }
+
+        @Override
+        void setTarget(int index, int target) {
+            file.putInt(index, TARGET, target);
+        }
+
+        @Override
+        double getWeight(int index) {
+            return file.getDouble(index, WEIGHT);
+        }
+
+        @Override
+        void setWeight(int index, double weight) {
+            file.putDouble(index, WEIGHT, weight);
+        }
+
+        @Override
+        int getType(int index) {
+            return file.getInt(index, TYPE);
+        }
+
+        @Override
+        void setType(int index, int type) {
+            file.putInt(index, TYPE, type);
+        }
+
+        @Override
+        byte getDirection(int index) {
+            return file.getByte(index, DIRECTION);
+        }
+
+        @Override
+        void setDirection(int index, byte direction) {
+            file.putByte(index, DIRECTION, direction);
+        }
+
+        @Override
+        int getId(int index) {
+            return file.getInt(index, ID);
+        }
+
+        @Override
+        void setId(int index, int id) {
+            file.putInt(index, ID, id);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            try {
+                file.ensureCapacity(capacity);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        void close() {
+            file.close();
+        }
+    }
+
+    /**
+     * Attribute values of one column, stored in a primitive array when all
+     * values have the same primitive wrapper type.
+     */
+    private static abstract class ValueColumn {
+
+        protected final BitSet present = new BitSet();
+
+        static ValueColumn create(Class type, int capacity) {
+            if (type.equals(Double.class)) {
+                return new DoubleColumn(capacity);
+            } else if (type.equals(Float.class)) {
+                return new FloatColumn(capacity);
+            } else if (type.equals(Integer.class)) {
+                return new IntColumn(capacity);
+            } else if (type.equals(Long.class)) {
+                return new LongColumn(capacity);
+            } else if (type.equals(Boolean.class)) {
+                return new BooleanColumn();
+            }
+            return new ObjectColumn(capacity);
+        }
+
+        Object get(int index) {
+            return present.get(index) ? getValue(index) : null;
+        }
+
+        boolean set(int index, Object value) {
+            if (value == null) {
+                present.clear(index);
+                return true;
+            }
+            if (!setValue(index, value)) {
+                return false;
+            }
+            present.set(index);
+            return true;
+        }
+
+        abstract Object getValue(int index);
+
+        abstract boolean setValue(int index, Object value);
+
+        abstract void ensureCapacity(int capacity);
+
+        void close() {
+        }
+    }
+
+    /**
+     * Numeric values of one column, stored in a memory-mapped file.
+     */
+    private static class MappedColumn extends ValueColumn {
+
+        private final Class type;
+        private final MappedRecordFile file;
+
+        MappedColumn(Class type, MappedRecordFile file, int capacity) {
+            this.type = type;
+            this.file = file;
+            ensureCapacity(capacity);
+        }
+
+        static boolean isSupported(Class type) {
+            return type.equals(Double.class) || type.equals(Float.class)
+                    || type.equals(Integer.class) || type.equals(Long.class);
+        }
+
+        static int getRecordSize(Class type) {
+            return type.equals(Double.class) || type.equals(Long.class) ? 8 : 4;
+        }
+
+        @Override
+        Object getValue(int index) {
+            if (type.equals(Double.class)) {
+                return file.getDouble(index, 0);
+            } else if (type.equals(Float.class)) {
+                return file.getFloat(index, 0);
+            } else if (type.equals(Integer.class)) {
+                return file.getInt(index, 0);
+            }
+            return file.getLong(index, 0);
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!type.isInstance(value)) {
+                return false;
+            }
+            if (type.equals(Double.class)) {
+                file.putDouble(index, 0, (Double) value);
+            } else if (type.equals(Float.class)) {
+                file.putFloat(index, 0, (Float) value);
+            } else if (type.equals(Integer.class)) {
+                file.putInt(index, 0, (Integer) value);
+            } else {
+                file.putLong(index, 0, (Long) value);
+            }
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            try {
+                file.ensureCapacity(capacity);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        void close() {
+            file.close();
+        }
+    }
+
+    private static class DoubleColumn extends ValueColumn {
+
+        private double[] array;
+
+        DoubleColumn(int capacity) {
+            array = new double[capacity];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[index];
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!(value instanceof Double)) {
+                return false;
+            }
+            array[index] = (Double) value;
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            array = Arrays.copyOf(array, capacity);
+        }
+    }
+
+    private static class FloatColumn extends ValueColumn {
+
+        private float[] array;
+
+        FloatColumn(int capacity) {
+            array = new float[capacity];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[index];
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!(value instanceof Float)) {
+                return false;
+            }
+            array[index] = (Float) value;
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            array = Arrays.copyOf(array, capacity);
+        }
+    }
+
+    private static class IntColumn extends ValueColumn {
+
+        private int[] array;
+
+        IntColumn(int capacity) {
+            array = new int[capacity];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[index];
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            array[index] = (Integer) value;
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            array = Arrays.copyOf(array, capacity);
+        }
+    }
+
+    private static class LongColumn extends ValueColumn {
+
+        private long[] array;
+
+        LongColumn(int capacity) {
+            array = new long[capacity];
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[index];
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!(value instanceof Long)) {
+                return false;
+            }
+            array[index] = (Long) value;
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            array = Arrays.copyOf(array, capacity);
+        }
+    }
+
+    private static class BooleanColumn extends ValueColumn {
+
+        private final BitSet array = new BitSet();
+
+        @Override
+        Object getValue(int index) {
+            return array.get(index);
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            if (!(value instanceof Boolean)) {
+                return false;
+            }
+            array.set(index, (Boolean) value);
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+        }
+    }
+
+    private static class ObjectColumn extends ValueColumn {
+
+        private Object[] array;
+
+        ObjectColumn(int capacity) {
+            array = new Object[capacity];
+        }
+
+        ObjectColumn(ValueColumn column, int capacity) {
+            this(capacity);
+            for (int i = column.present.nextSetBit(0); i >= 0; i = column.present.nextSetBit(i + 1)) {
+                set(i, column.getValue(i));
+            }
+        }
+
+        @Override
+        Object getValue(int index) {
+            return array[index];
+        }
+
+        @Override
+        boolean setValue(int index, Object value) {
+            array[index] = value;
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            array = Arrays.copyOf(array, capacity);
+        }
+    }
+}
@@ -58,9 +58,16 @@ public class EdgeDraftImpl extends ElementDraftImpl implements EdgeDraft {
     private double weight = 1.0;
     private Object type;
     private EdgeDirection direction;
+    //Number of the generated id, if any
+    private final int autoId;
 
     public EdgeDraftImpl(ImportContainerImpl container, String id) {
+        this(container, id, ImportContainerImpl.NULL_INDEX);
+    }
+
+    EdgeDraftImpl(ImportContainerImpl container, String id, int autoId) {
         super(container, id);
+        this.autoId = autoId;
     }
 
     //SETTERS
@@ -115,6 +122,10 @@ public class EdgeDraftImpl extends ElementDraftImpl implements EdgeDraft {
         return type;
     }
 
+    public int getAutoId() {
+        return autoId;
+    }
+
     @Override
     public boolean isSelfLoop() {
         if (source != null && source == target) {
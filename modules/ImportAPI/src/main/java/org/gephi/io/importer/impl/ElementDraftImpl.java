@@ -55,6 +55,10 @@ import org.gephi.io.importer.api.ElementDraft;
  */
 public abstract class ElementDraftImpl implements ElementDraft {
 
+    //Shared until the first value is set, arrays are always grown by copy
+    private static final Object[] EMPTY_ATTRIBUTES = new Object[0];
+    private static final double[] EMPTY_TIMESTAMPS = new double[0];
+    private static final Double2ObjectMap[] EMPTY_DYNAMIC_ATTRIBUTES = new Double2ObjectMap[0];
     protected final ImportContainerImpl container;
     //Properties
     protected final String id;
@@ -75,9 +79,9 @@ public abstract class ElementDraftImpl implements ElementDraft {
     public ElementDraftImpl(ImportContainerImpl container, String id) {
         this.container = container;
         this.id = id;
-        this.attributes = new Object[0];
-        this.timeStamps = new double[0];
-        this.dynamicAttributes = new Double2ObjectMap[0];
+        this.attributes = EMPTY_ATTRIBUTES;
+        this.timeStamps = EMPTY_TIMESTAMPS;
+        this.dynamicAttributes = EMPTY_DYNAMIC_ATTRIBUTES;
     }
 
     abstract ColumnDraft getColumn(String key);
@@ -53,6 +53,7 @@ public class ElementFactoryImpl implements ElementDraftFactory {
     protected final ImportContainerImpl container;
     protected final static AtomicInteger NODE_IDS = new AtomicInteger();
     protected final static AtomicInteger EDGE_IDS = new AtomicInteger();
+    protected final static String EDGE_ID_PREFIX = "e";
 
     public ElementFactoryImpl(ImportContainerImpl container) {
         this.container = container;
@@ -75,7 +76,8 @@ public class ElementFactoryImpl implements ElementDraftFactory {
 
     @Override
     public EdgeDraftImpl newEdgeDraft() {
-        EdgeDraftImpl edge = new EdgeDraftImpl(container, "e" + EDGE_IDS.getAndIncrement());
+        int autoId = EDGE_IDS.getAndIncrement();
+        EdgeDraftImpl edge = new EdgeDraftImpl(container, EDGE_ID_PREFIX + autoId, autoId);
         return edge;
     }
 
@@ -0,0 +1,284 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.impl;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.gephi.utils.TempDirUtils.TempDir;
+import org.openide.util.Exceptions;
+
+/**
+ * Sorts pairs of longs by key, then by value, in bounded memory. Pairs are
+ * sorted in runs of a fixed size, full runs are written to temporary files
+ * and merged back when the sorted pairs are read.
+ */
+class ExternalSorter {
+
+    private static final int RUN_SIZE = 1 << 21;
+    private final TempDir tempDir;
+    private final String name;
+    private final List<File> runs = new ArrayList<File>();
+    private long[] keys = new long[1024];
+    private long[] values = new long[1024];
+    private int size;
+    private Cursor cursor;
+
+    /**
+     * Creates a sorter which writes its runs in <code>tempDir</code>.
+     *
+     * @param tempDir the directory of run files
+     * @param name the prefix of run file names
+     */
+    public ExternalSorter(TempDir tempDir, String name) {
+        this.tempDir = tempDir;
+        this.name = name;
+    }
+
+    public void add(long key, long value) throws IOException {
+        if (size == keys.length) {
+            if (size == RUN_SIZE) {
+                writeRun();
+            } else {
+                keys = Arrays.copyOf(keys, Math.min(RUN_SIZE, size * 2));
+                values = Arrays.copyOf(values, keys.length);
+            }
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Sorts the pairs added so far and returns a cursor over them. No pair
+     * can be added after.
+     *
+     * @return a cursor over the sorted pairs
+     * @throws IOException if a run file can't be written or read
+     */
+    public Cursor sort() throws IOException {
+        if (runs.isEmpty()) {
+            LongArrays.radixSort(keys, values, 0, size);
+            cursor = new ArrayCursor(keys, values, size);
+        } else {
+            if (size > 0) {
+                writeRun();
+            }
+            keys = null;
+            values = null;
+            cursor = new MergeCursor(runs);
+        }
+        return cursor;
+    }
+
+    /**
+     * Closes the cursor and deletes the run files.
+     */
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+        }
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void writeRun() throws IOException {
+        LongArrays.radixSort(keys, values, 0, size);
+        File file = tempDir.createFile(name + runs.size());
+        runs.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+        } finally {
+            out.close();
+        }
+        size = 0;
+    }
+
+    /**
+     * Iterates over sorted pairs.
+     */
+    public static abstract class Cursor {
+
+        protected long key;
+        protected long value;
+
+        /**
+         * Moves to the next pair.
+         *
+         * @return <code>true</code> if there is a next pair
+         * @throws IOException if a run file can't be read
+         */
+        public abstract boolean next() throws IOException;
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        void close() {
+        }
+    }
+
+    private static class ArrayCursor extends Cursor {
+
+        private final long[] keys;
+        private final long[] values;
+        private final int size;
+        private int position;
+
+        ArrayCursor(long[] keys, long[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public boolean next() {
+            if (position == size) {
+                return false;
+            }
+            key = keys[position];
+            value = values[position];
+            position++;
+            return true;
+        }
+    }
+
+    private static class MergeCursor extends Cursor {
+
+        private final List<Run> openRuns = new ArrayList<Run>();
+        private final PriorityQueue<Run> queue;
+
+        MergeCursor(List<File> files) throws IOException {
+            queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run o1, Run o2) {
+                    if (o1.key != o2.key) {
+                        return o1.key < o2.key ? -1 : 1;
+                    }
+                    return o1.value < o2.value ? -1 : (o1.value == o2.value ? 0 : 1);
+                }
+            });
+            try {
+                for (File file : files) {
+                    Run run = new Run(file);
+                    openRuns.add(run);
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                }
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            Run run = queue.poll();
+            if (run == null) {
+                return false;
+            }
+            key = run.key;
+            value = run.value;
+            if (run.next()) {
+                queue.add(run);
+            }
+            return true;
+        }
+
+        @Override
+        void close() {
+            for (Run run : openRuns) {
+                try {
+                    run.in.close();
+                } catch (IOException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+            openRuns.clear();
+            queue.clear();
+        }
+    }
+
+    private static class Run {
+
+        private final DataInputStream in;
+        private long remaining;
+        private long key;
+        private long value;
+
+        Run(File file) throws IOException {
+            remaining = file.length() / 16;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            key = in.readLong();
+            value = in.readLong();
+            remaining--;
+            return true;
+        }
+    }
+}
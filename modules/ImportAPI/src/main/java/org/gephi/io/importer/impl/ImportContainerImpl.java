@@ -41,21 +41,23 @@
  */
 package org.gephi.io.importer.impl;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.gephi.attribute.api.TimeFormat;
 import org.gephi.io.importer.api.ColumnDraft;
 import org.gephi.io.importer.api.Container;
@@ -70,6 +72,9 @@ import org.gephi.io.importer.api.Issue;
 import org.gephi.io.importer.api.Issue.Level;
 import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.io.importer.api.Report;
+import org.gephi.utils.TempDirUtils;
+import org.gephi.utils.TempDirUtils.TempDir;
+import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
 
 /**
@@ -88,10 +93,17 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
     //Maps and Data
     private final ObjectList<NodeDraftImpl> nodeList;
     private final ObjectList<EdgeDraftImpl> edgeList;
+    private CompactEdgeStore compactEdges;
+    //Directory of the mapped edge files, parallel edges are found when closing
+    private TempDir spillDir;
     private final Object2IntMap<String> nodeMap;
     private final Object2IntMap<String> edgeMap;
     private final Object2IntMap edgeTypeMap;
-    private Long2ObjectMap<int[]>[] edgeTypeSets;
+    private final ObjectList<Object> edgeTypes;
+    //First edge index for each source and target, per type
+    private Long2IntMap[] edgeTypeSets;
+    //Next parallel edge index, for each edge index
+    private final IntArrayList nextParallelEdges;
     private EdgeDirectionDefault edgeDefault = EdgeDirectionDefault.MIXED;
     private final Object2ObjectMap<String, ColumnDraft> nodeColumns;
     private final Object2ObjectMap<String, ColumnDraft> edgeColumns;
@@ -117,7 +129,9 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         nodeList = new ObjectArrayList<NodeDraftImpl>();
         edgeList = new ObjectArrayList<EdgeDraftImpl>();
         edgeTypeMap = new Object2IntOpenHashMap();
-        edgeTypeSets = new Long2ObjectMap[0];
+        edgeTypes = new ObjectArrayList<Object>();
+        edgeTypeSets = new Long2IntMap[0];
+        nextParallelEdges = new IntArrayList();
         factory = new ElementFactoryImpl(this);
         nodeColumns = new Object2ObjectOpenHashMap<String, ColumnDraft>();
         edgeColumns = new Object2ObjectOpenHashMap<String, ColumnDraft>();
@@ -162,6 +176,7 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         int index = nodeList.size();
         nodeList.add(nodeDraftImpl);
         nodeMap.put(nodeDraftImpl.getId(), index);
+        nodeDraftImpl.setIndex(index);
     }
 
     @Override
@@ -201,8 +216,11 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         NodeDraftImpl targetNode = getNode(target);
         if (sourceNode != null && targetNode != null) {
             boolean undirected = edgeDefault.equals(EdgeDirectionDefault.UNDIRECTED) || (undirectedEdgesCount > 0 && directedEdgesCount == 0);
+            if (spillDir != null) {
+                return findEdgeIndex(getNodePosition(sourceNode), getNodePosition(targetNode), undirected) != NULL_INDEX;
+            }
             long edgeId = getLongId(sourceNode, targetNode, !undirected);
-            for (Long2ObjectMap l : edgeTypeSets) {
+            for (Long2IntMap l : edgeTypeSets) {
                 if (l != null) {
                     if (l.containsKey(edgeId)) {
                         return true;
@@ -230,7 +248,7 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
 
         //Check if already exists
-        if (edgeMap.containsKey(edgeDraftImpl.getId())) {
+        if (getEdgeIndex(edgeDraftImpl.getId()) != NULL_INDEX) {
             String message = NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_edgeExist", edgeDraftImpl.getId());
             report.logIssue(new Issue(message, Level.WARNING));
             return;
@@ -263,29 +281,33 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
 
         //Get index
-        int index = edgeList.size();
+        int index = getEdgeIndexBound();
 
         //Type
         int edgeType = getEdgeType(edgeDraftImpl.getType());
-        long sourceTargetLong = getLongId(edgeDraftImpl);
-        ensureLongSetArraySize(edgeType);
-        Long2ObjectMap<int[]> edgeTypeSet = edgeTypeSets[edgeType];
+        if (spillDir == null) {
+            long sourceTargetLong = getLongId(edgeDraftImpl);
+            ensureLongSetArraySize(edgeType);
+            Long2IntMap edgeTypeSet = edgeTypeSets[edgeType];
+
+            int first = edgeTypeSet.get(sourceTargetLong);
+            if (first != NULL_INDEX) {
+                if (!parameters.isParallelEdges()) {
+                    report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge_Forbidden", edgeDraftImpl.getId()), Level.SEVERE));
+                    return;
+                } else {
+                    int last = first;
+                    while (nextParallelEdges.getInt(last) != NULL_INDEX) {
+                        last = nextParallelEdges.getInt(last);
+                    }
+                    nextParallelEdges.set(last, index);
 
-        if (edgeTypeSet.containsKey(sourceTargetLong)) {
-            if (!parameters.isParallelEdges()) {
-                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge_Forbidden", edgeDraftImpl.getId()), Level.SEVERE));
-                return;
+                    report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge", edgeDraftImpl.getId()), Level.INFO));
+                }
             } else {
-                int[] edges = edgeTypeSet.get(sourceTargetLong);
-                int[] newEdges = new int[edges.length + 1];
-                newEdges[edges.length] = index;
-                System.arraycopy(edges, 0, newEdges, 0, edges.length);
-                edgeTypeSet.put(sourceTargetLong, newEdges);
-
-                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge", edgeDraftImpl.getId()), Level.INFO));
+                edgeTypeSet.put(sourceTargetLong, index);
             }
-        } else {
-            edgeTypeSet.put(sourceTargetLong, new int[]{index});
+            nextParallelEdges.add(NULL_INDEX);
         }
 
         //Self loop
@@ -308,20 +330,32 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
 
         //Adding
-        edgeList.add(edgeDraftImpl);
-        edgeMap.put(edgeDraft.getId(), index);
+        if (compactEdges != null) {
+            int source = getNodePosition(edgeDraftImpl.getSource());
+            int target = getNodePosition(edgeDraftImpl.getTarget());
+            compactEdges.add(edgeDraftImpl, source, target, edgeType);
+            if (edgeDraftImpl.getAutoId() == NULL_INDEX) {
+                edgeMap.put(edgeDraft.getId(), index);
+            }
+        } else {
+            edgeList.add(edgeDraftImpl);
+            edgeMap.put(edgeDraft.getId(), index);
+        }
     }
 
     @Override
     public void removeEdge(EdgeDraft edgeDraft) {
         checkElementDraftImpl(edgeDraft);
 
-        EdgeDraftImpl edgeDraftImpl = (EdgeDraftImpl) edgeDraft;
-        String id = edgeDraftImpl.getId();
-
-        if (!edgeMap.containsKey(id)) {
-            return;
+        int index = getEdgeIndex(edgeDraft.getId());
+        if (index != NULL_INDEX) {
+            removeEdgeAt(index);
         }
+    }
+
+    private void removeEdgeAt(int index) {
+        //The stored edge, the given draft may be a copy
+        EdgeDraftImpl edgeDraftImpl = getEdgeAt(index);
 
         if (edgeDraftImpl.getDirection() != null) {
             //UnCounting
@@ -339,47 +373,53 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
             selfLoops--;
         }
 
-        int edgeType = getEdgeType(edgeDraftImpl.getType());
-        long sourceTargetLong = getLongId(edgeDraftImpl);
-        ensureLongSetArraySize(edgeType);
-        Long2ObjectMap<int[]> edgeTypeSet = edgeTypeSets[edgeType];
-
-        //Get index
-        int index = edgeMap.remove(id);
-
-        //Update edgeType set
-        int[] edges = edgeTypeSet.remove(sourceTargetLong);
-        if (edges.length > 1) {
-            int[] newEdges = new int[edges.length - 1];
-            int i = 0;
-            for (int e : edges) {
-                if (e != index) {
-                    newEdges[i++] = e;
+        if (spillDir == null) {
+            int edgeType = getEdgeType(edgeDraftImpl.getType());
+            long sourceTargetLong = getLongId(edgeDraftImpl);
+            ensureLongSetArraySize(edgeType);
+            Long2IntMap edgeTypeSet = edgeTypeSets[edgeType];
+
+            //Update edgeType set
+            int first = edgeTypeSet.get(sourceTargetLong);
+            int next = nextParallelEdges.getInt(index);
+            if (first == index) {
+                if (next == NULL_INDEX) {
+                    edgeTypeSet.remove(sourceTargetLong);
+                } else {
+                    edgeTypeSet.put(sourceTargetLong, next);
+                }
+            } else if (first != NULL_INDEX) {
+                int previous = first;
+                while (nextParallelEdges.getInt(previous) != index && nextParallelEdges.getInt(previous) != NULL_INDEX) {
+                    previous = nextParallelEdges.getInt(previous);
+                }
+                if (nextParallelEdges.getInt(previous) == index) {
+                    nextParallelEdges.set(previous, next);
                 }
             }
-            edgeTypeSet.put(sourceTargetLong, newEdges);
+            nextParallelEdges.set(index, NULL_INDEX);
         }
 
         //Remove edge
-        edgeList.set(index, null);
+        clearEdgeAt(index, edgeDraftImpl.getId());
     }
 
     @Override
     public boolean edgeExists(String id) {
         checkId(id);
 
-        return edgeMap.containsKey(id);
+        return getEdgeIndex(id) != NULL_INDEX;
     }
 
     @Override
     public EdgeDraft getEdge(String id) {
         checkId(id);
 
-        int index = edgeMap.getInt(id);
+        int index = getEdgeIndex(id);
         if (index == NULL_INDEX) {
             return null;
         }
-        return edgeList.get(index);
+        return getEdgeAt(index);
     }
 
     @Override
@@ -392,13 +432,25 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         return nodeMap.size();
     }
 
+    @Override
+    public int getNodeIndex(NodeDraft node) {
+        checkElementDraftImpl(node);
+        return ((NodeDraftImpl) node).getIndex();
+    }
+
     @Override
     public Iterable<EdgeDraft> getEdges() {
+        if (compactEdges != null) {
+            return new CompactEdgeIterable();
+        }
         return new NullFilterIterable<EdgeDraft>(edgeList);
     }
 
     @Override
     public int getEdgeCount() {
+        if (compactEdges != null) {
+            return compactEdges.getCount();
+        }
         return edgeMap.size();
     }
 
@@ -495,13 +547,18 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
     @Override
     public boolean verify() {
         //Edge weight zero or negative
-        for (EdgeDraftImpl edge : new NullFilterIterable<EdgeDraftImpl>(edgeList)) {
-            String id = edge.getId();
-            if (edge.getWeight() < 0f) {
+        for (int i = 0; i < getEdgeIndexBound(); i++) {
+            if (isEdgeRemoved(i)) {
+                continue;
+            }
+            double weight = getEdgeWeightAt(i);
+            if (weight < 0f) {
+                String id = getEdgeAt(i).getId();
                 report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Negative_Weight", id), Level.WARNING));
-            } else if (edge.getWeight() == 0) {
+            } else if (weight == 0) {
+                EdgeDraftImpl edge = getEdgeAt(i);
                 removeEdge(edge);
-                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Weight_Zero_Ignored", id), Level.SEVERE));
+                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Weight_Zero_Ignored", edge.getId()), Level.SEVERE));
             }
         }
 
@@ -525,7 +582,11 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
                 }
             }
         }
-        for (EdgeDraftImpl edge : edgeList) {
+        for (int i = 0; i < getEdgeIndexBound(); i++) {
+            if (compactEdges != null && !compactEdges.isDynamic(i)) {
+                continue;
+            }
+            EdgeDraftImpl edge = getEdgeAt(i);
             if (edge != null) {
                 if (edge.isDynamic()) {
                     dynamicGraph = true;
@@ -564,37 +625,35 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
     public void closeLoader() {
         //Remove self-loops
         if (!parameters.isSelfLoops() && selfLoops > 0) {
-            List<EdgeDraftImpl> l = new ArrayList<EdgeDraftImpl>();
-            for (EdgeDraftImpl e : edgeList) {
-                if (e != null && e.isSelfLoop()) {
-                    l.add(e);
+            for (int i = 0; i < getEdgeIndexBound(); i++) {
+                if (!isEdgeRemoved(i) && isSelfLoopAt(i)) {
+                    removeEdge(getEdgeAt(i));
                 }
             }
-            for (EdgeDraftImpl e : l) {
-                removeEdge(e);
-            }
         }
 
         //Merge parallel edges
-        if (parameters.isParallelEdges()) {
-            for (Long2ObjectMap<int[]> edgesTypeMap : edgeTypeSets) {
-                if (edgeTypeMap != null) {
-                    for (Long2ObjectMap.Entry<int[]> entry : edgesTypeMap.long2ObjectEntrySet()) {
-                        if (entry.getValue().length > 1) {
-                            int[] edges = entry.getValue();
-                            //Sort and get min
-                            Arrays.sort(edges);
-                            int minIndex = edges[0];
-                            EdgeDraftImpl min = edgeList.get(minIndex);
-                            EdgeDraftImpl[] sources = new EdgeDraftImpl[edges.length - 1];
-                            for (int i = 1; i < edges.length; i++) {
-                                int sourceIndex = edges[i];
-                                sources[i - 1] = edgeList.get(sourceIndex);
-                                edgeList.set(sourceIndex, null);
-                                edgeMap.remove(sources[i - 1].getId());
+        if (spillDir != null) {
+            //Not checked when edges were added
+            mergeSortedEdges(false);
+        } else if (parameters.isParallelEdges()) {
+            for (Long2IntMap edgesTypeMap : edgeTypeSets) {
+                if (edgesTypeMap != null) {
+                    for (Long2IntMap.Entry entry : edgesTypeMap.long2IntEntrySet()) {
+                        //Chains are in index order, the first is the min
+                        int minIndex = entry.getIntValue();
+                        int next = nextParallelEdges.getInt(minIndex);
+                        if (next != NULL_INDEX) {
+                            EdgeDraftImpl min = getEdgeAt(minIndex);
+                            List<EdgeDraftImpl> sources = new ArrayList<EdgeDraftImpl>();
+                            for (; next != NULL_INDEX; next = nextParallelEdges.getInt(next)) {
+                                EdgeDraftImpl source = getEdgeAt(next);
+                                sources.add(source);
+                                clearEdgeAt(next, source.getId());
                             }
-                            mergeParallelEdges(sources, min);
-                            entry.setValue(new int[]{minIndex});
+                            mergeParallelEdges(sources.toArray(new EdgeDraftImpl[0]), min);
+                            setEdgeWeightAt(minIndex, min.getWeight());
+                            nextParallelEdges.set(minIndex, NULL_INDEX);
                         }
                     }
                 }
@@ -603,15 +662,20 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
 
         if (directedEdgesCount > 0 && edgeDefault.equals(EdgeDirectionDefault.UNDIRECTED)) {
             //Force undirected
-            for (EdgeDraftImpl edge : edgeList.toArray(new EdgeDraftImpl[0])) {
-                if (edge != null && edge.getDirection().equals(EdgeDirection.DIRECTED)) {
-                    EdgeDraftImpl opposite = getOpposite(edge);
-                    if (opposite != null) {
-                        int oppositeIndex = edgeMap.getInt(opposite.getId());
-                        mergeDirectedEdges(opposite, edge);
-
-                        edgeMap.removeInt(opposite.getId());
-                        edgeList.set(oppositeIndex, null);
+            if (spillDir != null) {
+                mergeSortedEdges(true);
+            } else {
+                for (int i = 0; i < getEdgeIndexBound(); i++) {
+                    EdgeDraftImpl edge = isEdgeRemoved(i) ? null : getEdgeAt(i);
+                    if (edge != null && EdgeDirection.DIRECTED.equals(edge.getDirection())) {
+                        int oppositeIndex = getOppositeIndex(edge);
+                        if (oppositeIndex != NULL_INDEX && oppositeIndex != i && !isEdgeRemoved(oppositeIndex)) {
+                            EdgeDraftImpl opposite = getEdgeAt(oppositeIndex);
+                            mergeDirectedEdges(opposite, edge);
+                            setEdgeWeightAt(i, edge.getWeight());
+
+                            clearEdgeAt(oppositeIndex, opposite.getId());
+                        }
                     }
                 }
             }
@@ -620,18 +684,17 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
 
         //Clean autoNode
         if (!allowAutoNode()) {
+            for (int i = 0; i < getEdgeIndexBound(); i++) {
+                if (!isEdgeRemoved(i) && (getEdgeSourceAt(i).isCreatedAuto() || getEdgeTargetAt(i).isCreatedAuto())) {
+                    clearEdgeAt(i, getEdgeAt(i).getId());
+                }
+            }
             for (NodeDraftImpl node : nodeList) {
                 if (node != null && node.isCreatedAuto()) {
                     int index = nodeMap.removeInt(node.getId());
                     nodeList.set(index, null);
                 }
             }
-            for (EdgeDraftImpl edge : edgeList) {
-                if (edge != null && (edge.getSource().isCreatedAuto() || edge.getTarget().isCreatedAuto())) {
-                    int index = edgeMap.remove(edge.getId());
-                    edgeList.set(index, null);
-                }
-            }
         }
 
         //Sort nodes by height
@@ -642,6 +705,19 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
                     return new Float(o2 != null ? o2.getSize() : 0f).compareTo(o1 != null ? o1.getSize() : 0f);
                 }
             });
+            //Nodes moved, update positions
+            int[] positions = new int[nodeList.size()];
+            for (int i = 0; i < nodeList.size(); i++) {
+                NodeDraftImpl node = nodeList.get(i);
+                if (node != null) {
+                    positions[node.getIndex()] = i;
+                    node.setIndex(i);
+                    nodeMap.put(node.getId(), i);
+                }
+            }
+            if (compactEdges != null) {
+                compactEdges.remapNodes(positions);
+            }
         }
 
         //Set id as label for nodes that miss label
@@ -681,6 +757,14 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
             }
         }
 
+        //Index nodes, so processors resolve edge ends without id lookups
+        int nodeIndex = 0;
+        for (NodeDraftImpl node : nodeList) {
+            if (node != null) {
+                node.setIndex(nodeIndex++);
+            }
+        }
+
         //MANAGEMENT
     }
 
@@ -781,6 +865,59 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
     }
 
     //PARAMS
+    @Override
+    public void setCompactEdges(boolean compact) {
+        if (compact == (compactEdges != null)) {
+            return;
+        }
+        checkEdgeStoreChange();
+        setEdgeStore(compact ? new CompactEdgeStore(this, nodeList, edgeTypes) : null, null);
+    }
+
+    @Override
+    public void setSpillToDisk(boolean spill) {
+        if (spill == (spillDir != null)) {
+            return;
+        }
+        checkEdgeStoreChange();
+        if (spill) {
+            TempDir tempDir;
+            try {
+                tempDir = TempDirUtils.createTempDir();
+            } catch (IOException ex) {
+                //Edges stay in memory
+                Exceptions.printStackTrace(ex);
+                return;
+            }
+            setEdgeStore(new CompactEdgeStore(this, nodeList, edgeTypes, tempDir), tempDir);
+        } else {
+            setEdgeStore(new CompactEdgeStore(this, nodeList, edgeTypes), null);
+        }
+    }
+
+    private void checkEdgeStoreChange() {
+        if (getEdgeIndexBound() > 0) {
+            throw new IllegalStateException("The edge storage can't be changed once edges are added");
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (spillDir != null) {
+            compactEdges.close();
+            spillDir.delete();
+            spillDir = null;
+        }
+    }
+
+    private void setEdgeStore(CompactEdgeStore store, TempDir tempDir) {
+        if (compactEdges != null) {
+            compactEdges.close();
+        }
+        compactEdges = store;
+        spillDir = tempDir;
+    }
+
     @Override
     public void setAllowAutoNode(boolean value) {
         parameters.setAutoNode(value);
@@ -841,23 +978,29 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
         int id = edgeTypeMap.size();
         edgeTypeMap.put(type, id);
+        edgeTypes.add(type);
         return id;
     }
 
     private void ensureLongSetArraySize(int type) {
         if (edgeTypeSets.length <= type) {
-            Long2ObjectMap[] l = new Long2ObjectMap[type + 1];
+            Long2IntMap[] l = new Long2IntMap[type + 1];
             System.arraycopy(edgeTypeSets, 0, l, 0, edgeTypeSets.length);
+            for (int i = edgeTypeSets.length; i <= type; i++) {
+                l[i] = new Long2IntOpenHashMap();
+                l[i].defaultReturnValue(NULL_INDEX);
+            }
             edgeTypeSets = l;
-            edgeTypeSets[type] = new Long2ObjectOpenHashMap<int[]>();
         }
     }
 
     private long getLongId(EdgeDraftImpl edge) {
-        EdgeDirection direction = edge.getDirection();
-        boolean directed = edgeDefault.equals(EdgeDirectionDefault.DIRECTED)
+        return getLongId(edge.getSource(), edge.getTarget(), isDirectedKey(edge.getDirection()));
+    }
+
+    private boolean isDirectedKey(EdgeDirection direction) {
+        return edgeDefault.equals(EdgeDirectionDefault.DIRECTED)
                 || (!edgeDefault.equals(EdgeDirectionDefault.UNDIRECTED) && direction != null && direction == EdgeDirection.DIRECTED);
-        return getLongId(edge.getSource(), edge.getTarget(), directed);
     }
 
     private long getLongId(NodeDraftImpl source, NodeDraftImpl target, boolean directed) {
@@ -872,14 +1015,203 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
     }
 
-    private EdgeDraftImpl getOpposite(EdgeDraftImpl edge) {
-        Long2ObjectMap<int[]> typeSet = edgeTypeSets[getEdgeType(edge.getType())];
+    private int getOppositeIndex(EdgeDraftImpl edge) {
+        Long2IntMap typeSet = edgeTypeSets[getEdgeType(edge.getType())];
         long longId = getLongId(edge.getTarget(), edge.getSource(), true);
-        int[] opposites = typeSet.get(longId);
-        if (opposites != null && opposites.length > 0) {
-            return edgeList.get(opposites[0]);
+        return typeSet.get(longId);
+    }
+
+    //Edge storage, either drafts or compact columns
+    private int getEdgeIndexBound() {
+        return compactEdges != null ? compactEdges.size() : edgeList.size();
+    }
+
+    private boolean isEdgeRemoved(int index) {
+        return compactEdges != null ? compactEdges.isRemoved(index) : edgeList.get(index) == null;
+    }
+
+    private EdgeDraftImpl getEdgeAt(int index) {
+        return compactEdges != null ? compactEdges.get(index) : edgeList.get(index);
+    }
+
+    private double getEdgeWeightAt(int index) {
+        return compactEdges != null ? compactEdges.getWeight(index) : edgeList.get(index).getWeight();
+    }
+
+    private void setEdgeWeightAt(int index, double weight) {
+        if (compactEdges != null) {
+            compactEdges.setWeight(index, weight);
+        } else {
+            edgeList.get(index).setWeight(weight);
+        }
+    }
+
+    private NodeDraftImpl getEdgeSourceAt(int index) {
+        return compactEdges != null ? nodeList.get(compactEdges.getSource(index)) : edgeList.get(index).getSource();
+    }
+
+    private NodeDraftImpl getEdgeTargetAt(int index) {
+        return compactEdges != null ? nodeList.get(compactEdges.getTarget(index)) : edgeList.get(index).getTarget();
+    }
+
+    private boolean isSelfLoopAt(int index) {
+        return getEdgeSourceAt(index) == getEdgeTargetAt(index);
+    }
+
+    private int getEdgeIndex(String id) {
+        int index = edgeMap.getInt(id);
+        if (index == NULL_INDEX && compactEdges != null) {
+            //Generated ids are not in the map
+            int autoId = parseAutoId(id);
+            if (autoId != NULL_INDEX) {
+                index = compactEdges.indexOfAutoId(autoId);
+            }
+        }
+        return index;
+    }
+
+    private void clearEdgeAt(int index, String id) {
+        if (compactEdges != null) {
+            compactEdges.remove(index);
+        } else {
+            edgeList.set(index, null);
+        }
+        edgeMap.removeInt(id);
+    }
+
+    private int getNodePosition(NodeDraftImpl node) {
+        int index = node.getIndex();
+        if (index == NULL_INDEX || index >= nodeList.size() || nodeList.get(index) != node) {
+            index = nodeMap.getInt(node.getId());
+            if (index == NULL_INDEX) {
+                addNode(node);
+                index = node.getIndex();
+            }
         }
-        return null;
+        return index;
+    }
+
+    //Spilled edges, node pairs are only indexed by sorting
+    private int findEdgeIndex(int source, int target, boolean undirected) {
+        for (int i = 0; i < compactEdges.size(); i++) {
+            if (!compactEdges.isRemoved(i)) {
+                int edgeSource = compactEdges.getSource(i);
+                int edgeTarget = compactEdges.getTarget(i);
+                if ((edgeSource == source && edgeTarget == target) || (undirected && edgeSource == target && edgeTarget == source)) {
+                    return i;
+                }
+            }
+        }
+        return NULL_INDEX;
+    }
+
+    /**
+     * Groups edges by type and node pair with an external sort and merges
+     * each group, either parallel edges or, if <code>opposite</code>, directed
+     * edges with their opposite.
+     */
+    private void mergeSortedEdges(boolean opposite) {
+        ExternalSorter sorter = new ExternalSorter(spillDir, opposite ? "opposite" : "parallel");
+        try {
+            for (int i = 0; i < compactEdges.size(); i++) {
+                if (!compactEdges.isRemoved(i)) {
+                    boolean directed = !opposite && isDirectedKey(compactEdges.getDirection(i));
+                    sorter.add(getPairKey(i, directed), ((long) compactEdges.getType(i) << 32) | i);
+                }
+            }
+            //Edges of the same group are consecutive, in index order
+            ExternalSorter.Cursor cursor = sorter.sort();
+            IntArrayList group = new IntArrayList();
+            long groupKey = 0;
+            long groupType = NULL_INDEX;
+            while (cursor.next()) {
+                long type = cursor.getValue() >>> 32;
+                if (cursor.getKey() != groupKey || type != groupType) {
+                    mergeGroup(group, opposite);
+                    group.clear();
+                    groupKey = cursor.getKey();
+                    groupType = type;
+                }
+                group.add((int) cursor.getValue());
+            }
+            mergeGroup(group, opposite);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            sorter.close();
+        }
+    }
+
+    private void mergeGroup(IntArrayList group, boolean opposite) {
+        if (group.size() < 2) {
+            return;
+        }
+        if (opposite) {
+            for (int i = 0; i < group.size(); i++) {
+                int index = group.getInt(i);
+                if (!compactEdges.isRemoved(index) && EdgeDirection.DIRECTED.equals(compactEdges.getDirection(index))) {
+                    for (int j = 0; j < group.size(); j++) {
+                        int oppositeIndex = group.getInt(j);
+                        if (oppositeIndex != index && !compactEdges.isRemoved(oppositeIndex)
+                                && compactEdges.getSource(oppositeIndex) == compactEdges.getTarget(index)
+                                && compactEdges.getTarget(oppositeIndex) == compactEdges.getSource(index)) {
+                            EdgeDraftImpl edge = getEdgeAt(index);
+                            EdgeDraftImpl oppositeEdge = getEdgeAt(oppositeIndex);
+                            mergeDirectedEdges(oppositeEdge, edge);
+                            setEdgeWeightAt(index, edge.getWeight());
+                            clearEdgeAt(oppositeIndex, oppositeEdge.getId());
+                            break;
+                        }
+                    }
+                }
+            }
+        } else if (parameters.isParallelEdges()) {
+            int first = group.getInt(0);
+            EdgeDraftImpl min = getEdgeAt(first);
+            EdgeDraftImpl[] sources = new EdgeDraftImpl[group.size() - 1];
+            for (int i = 1; i < group.size(); i++) {
+                EdgeDraftImpl source = getEdgeAt(group.getInt(i));
+                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge", source.getId()), Level.INFO));
+                sources[i - 1] = source;
+                clearEdgeAt(group.getInt(i), source.getId());
+            }
+            mergeParallelEdges(sources, min);
+            setEdgeWeightAt(first, min.getWeight());
+        } else {
+            for (int i = 1; i < group.size(); i++) {
+                int index = group.getInt(i);
+                report.logIssue(new Issue(NbBundle.getMessage(ImportContainerImpl.class, "ImportContainerException_Parallel_Edge_Forbidden", getEdgeAt(index).getId()), Level.SEVERE));
+                removeEdgeAt(index);
+            }
+        }
+    }
+
+    private long getPairKey(int index, boolean directed) {
+        long source = compactEdges.getSource(index);
+        long target = compactEdges.getTarget(index);
+        if (!directed && source < target) {
+            return target << 32 | source;
+        }
+        return source << 32 | target;
+    }
+
+    private static int parseAutoId(String id) {
+        String prefix = ElementFactoryImpl.EDGE_ID_PREFIX;
+        if (!id.startsWith(prefix) || id.length() == prefix.length() || id.length() > prefix.length() + 10) {
+            return NULL_INDEX;
+        }
+        long autoId = 0;
+        for (int i = prefix.length(); i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return NULL_INDEX;
+            }
+            autoId = autoId * 10 + (c - '0');
+        }
+        if (autoId > Integer.MAX_VALUE || !id.equals(prefix + autoId)) {
+            return NULL_INDEX;
+        }
+        return (int) autoId;
     }
 
     private void checkElementDraftImpl(ElementDraft elmt) {
@@ -915,6 +1247,42 @@ public class ImportContainerImpl implements Container, ContainerLoader, Containe
         }
     }
 
+    private class CompactEdgeIterable implements Iterable<EdgeDraft> {
+
+        @Override
+        public Iterator<EdgeDraft> iterator() {
+            return new Iterator<EdgeDraft>() {
+                private int index = -1;
+
+                @Override
+                public boolean hasNext() {
+                    int next = index + 1;
+                    while (next < compactEdges.size() && compactEdges.isRemoved(next)) {
+                        next++;
+                    }
+                    return next < compactEdges.size();
+                }
+
+                @Override
+                public EdgeDraft next() {
+                    index++;
+                    while (index < compactEdges.size() && compactEdges.isRemoved(index)) {
+                        index++;
+                    }
+                    if (index >= compactEdges.size()) {
+                        throw new NoSuchElementException();
+                    }
+                    return compactEdges.get(index);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            };
+        }
+    }
+
     private static class NullFilterIterator<T extends ElementDraft> implements Iterator<T> {
 
         private T pointer;
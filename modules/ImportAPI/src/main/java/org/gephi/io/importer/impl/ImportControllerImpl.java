@@ -267,16 +267,20 @@ public class ImportControllerImpl implements ImportController {
 
     @Override
     public void process(Container container, Processor processor, Workspace workspace) {
-        container.closeLoader();
-        if (container.getUnloader().isAutoScale()) {
-            Scaler scaler = Lookup.getDefault().lookup(Scaler.class);
-            if (scaler != null) {
-                scaler.doScale(container);
+        try {
+            container.closeLoader();
+            if (container.getUnloader().isAutoScale()) {
+                Scaler scaler = Lookup.getDefault().lookup(Scaler.class);
+                if (scaler != null) {
+                    scaler.doScale(container);
+                }
             }
+            processor.setContainer(container.getUnloader());
+            processor.setWorkspace(workspace);
+            processor.process();
+        } finally {
+            container.dispose();
         }
-        processor.setContainer(container.getUnloader());
-        processor.setWorkspace(workspace);
-        processor.process();
     }
 
     private FileObject getArchivedFile(FileObject fileObject) {
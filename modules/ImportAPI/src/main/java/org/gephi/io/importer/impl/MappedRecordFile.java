@@ -0,0 +1,159 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import org.gephi.utils.MappedBufferUtils;
+import org.openide.util.Exceptions;
+
+/**
+ * Fixed-size records kept in a memory-mapped file instead of the heap. The
+ * file is mapped in segments of a million records, added as the capacity
+ * grows, so the operating system pages records in and out as needed.
+ */
+class MappedRecordFile {
+
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final int recordSize;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    public MappedRecordFile(File file, int recordSize) throws IOException {
+        this.file = file;
+        this.recordSize = recordSize;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Maps enough segments to hold <code>capacity</code> records. Records
+     * which were never written read as zero.
+     *
+     * @param capacity the number of records
+     * @throws IOException if the file can't be extended or mapped
+     */
+    public void ensureCapacity(int capacity) throws IOException {
+        int segmentCount = (int) (((long) capacity + SEGMENT_MASK) >> SEGMENT_SHIFT);
+        if (segmentCount <= segments.length) {
+            return;
+        }
+        FileChannel channel = randomAccessFile.getChannel();
+        long segmentBytes = (long) recordSize << SEGMENT_SHIFT;
+        MappedByteBuffer[] newSegments = Arrays.copyOf(segments, segmentCount);
+        for (int i = segments.length; i < segmentCount; i++) {
+            newSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+        }
+        segments = newSegments;
+    }
+
+    public byte getByte(int record, int offset) {
+        return segment(record).get(position(record, offset));
+    }
+
+    public void putByte(int record, int offset, byte value) {
+        segment(record).put(position(record, offset), value);
+    }
+
+    public int getInt(int record, int offset) {
+        return segment(record).getInt(position(record, offset));
+    }
+
+    public void putInt(int record, int offset, int value) {
+        segment(record).putInt(position(record, offset), value);
+    }
+
+    public long getLong(int record, int offset) {
+        return segment(record).getLong(position(record, offset));
+    }
+
+    public void putLong(int record, int offset, long value) {
+        segment(record).putLong(position(record, offset), value);
+    }
+
+    public float getFloat(int record, int offset) {
+        return segment(record).getFloat(position(record, offset));
+    }
+
+    public void putFloat(int record, int offset, float value) {
+        segment(record).putFloat(position(record, offset), value);
+    }
+
+    public double getDouble(int record, int offset) {
+        return segment(record).getDouble(position(record, offset));
+    }
+
+    public void putDouble(int record, int offset, double value) {
+        segment(record).putDouble(position(record, offset), value);
+    }
+
+    /**
+     * Releases the mapping and deletes the file. The records can't be read
+     * after.
+     */
+    public void close() {
+        MappedByteBuffer[] mapped = segments;
+        segments = new MappedByteBuffer[0];
+        for (MappedByteBuffer segment : mapped) {
+            MappedBufferUtils.unmap(segment);
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        file.delete();
+    }
+
+    private ByteBuffer segment(int record) {
+        return segments[record >>> SEGMENT_SHIFT];
+    }
+
+    private int position(int record, int offset) {
+        return (record & SEGMENT_MASK) * recordSize + offset;
+    }
+}
@@ -52,6 +52,8 @@ public class NodeDraftImpl extends ElementDraftImpl implements NodeDraft {
 
     //Flag
     protected boolean createdAuto = false;
+    //Index among the nodes of the closed container
+    protected int index = ImportContainerImpl.NULL_INDEX;
     //Viz attributes
     protected float x;
     protected float y;
@@ -123,6 +125,14 @@ public class NodeDraftImpl extends ElementDraftImpl implements NodeDraft {
         return createdAuto;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     @Override
     ColumnDraft getColumn(String key, Class type) {
         return container.addNodeColumn(key, type);
@@ -0,0 +1,240 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.io.importer.plugin.file;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming tokenizer for CSV, TSV and edge list files. Characters are read
+ * in blocks straight from the underlying reader and split into lines and
+ * fields by a small state machine, so no line is ever buffered as a whole.
+ * <p>
+ * Fields are separated by <code>,</code>, <code>;</code> or tab, or by a
+ * run of spaces. Spaces around a separator are ignored. A field starting
+ * with <code>"</code> or <code>'</code> is quoted: it ends at the next
+ * matching quote followed by a separator or the end of the line, a doubled
+ * quote stands for the quote itself and a backslash escapes the quote or
+ * another backslash. Quoted fields never span several lines.
+ * <p>
+ * Usage:
+ * <pre>
+ * while (tokenizer.nextLine()) {
+ *     for (String field; (field = tokenizer.nextField()) != null;) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+class CSVTokenizer {
+
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder field = new StringBuilder();
+    private int position;
+    private int limit;
+    private long charsRead;
+    //Line state
+    private boolean inLine;
+    private boolean fieldPending;
+    private int lastSeparator = EOF;
+
+    public CSVTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Moves to the beginning of the next non-empty line, skipping what is
+     * left of the current one.
+     *
+     * @return <code>false</code> when the end of the stream is reached
+     * @throws IOException if the reader fails
+     */
+    public boolean nextLine() throws IOException {
+        if (inLine) {
+            while (!isEndOfLine(peek())) {
+                read();
+            }
+        }
+        int c;
+        while ((c = peek()) == '\r' || c == '\n') {
+            read();
+        }
+        inLine = c != EOF;
+        fieldPending = inLine;
+        lastSeparator = EOF;
+        return inLine;
+    }
+
+    /**
+     * Returns the next field of the current line, the empty string for an
+     * empty field between two separators, or <code>null</code> when the line
+     * has no more fields.
+     *
+     * @return the next field, or <code>null</code> at the end of the line
+     * @throws IOException if the reader fails
+     */
+    public String nextField() throws IOException {
+        if (!fieldPending) {
+            return null;
+        }
+        skipSpaces();
+        int c = peek();
+        if (isEndOfLine(c)) {
+            //Nothing after a trailing separator, or a blank line
+            fieldPending = false;
+            return isSeparator(lastSeparator) ? "" : null;
+        }
+        field.setLength(0);
+        if (c == '"' || c == '\'') {
+            read();
+            readQuoted((char) c);
+        } else {
+            readUnquoted();
+        }
+
+        //Consume the separator, if any
+        lastSeparator = EOF;
+        skipSpaces();
+        c = peek();
+        if (isSeparator(c)) {
+            lastSeparator = read();
+        } else if (isEndOfLine(c)) {
+            fieldPending = false;
+        }
+        return field.toString();
+    }
+
+    /**
+     * Returns the next character without consuming it.
+     *
+     * @return the next character, or <code>-1</code> at the end of the stream
+     * @throws IOException if the reader fails
+     */
+    public int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Returns the number of characters consumed so far.
+     *
+     * @return the number of characters read
+     */
+    public long getCharsRead() {
+        return charsRead - (limit - position);
+    }
+
+    private void readUnquoted() throws IOException {
+        int c;
+        while (!isSeparator(c = peek()) && !isSpace(c) && !isEndOfLine(c)) {
+            field.append((char) read());
+        }
+    }
+
+    private void readQuoted(char quote) throws IOException {
+        int c;
+        while (!isEndOfLine(c = peek())) {
+            read();
+            if (c == '\\') {
+                int next = peek();
+                if (next == quote || next == '\\') {
+                    field.append((char) read());
+                } else {
+                    field.append('\\');
+                }
+            } else if (c == quote) {
+                int next = peek();
+                if (next == quote) {
+                    field.append((char) read());
+                } else if (isSeparator(next) || isSpace(next) || isEndOfLine(next)) {
+                    return;
+                } else {
+                    field.append(quote);
+                }
+            } else {
+                field.append((char) c);
+            }
+        }
+        //Unterminated quote, the field ends with the line
+    }
+
+    private void skipSpaces() throws IOException {
+        while (isSpace(peek())) {
+            read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, BUFFER_SIZE);
+        if (n <= 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        charsRead += n;
+        return true;
+    }
+
+    private static boolean isSeparator(int c) {
+        return c == ',' || c == ';' || c == '\t';
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\f' || c == 0x0B;
+    }
+
+    private static boolean isEndOfLine(int c) {
+        return c == '\n' || c == '\r' || c == EOF;
+    }
+}
@@ -41,21 +41,22 @@
  */
 package org.gephi.io.importer.plugin.file;
 
-import java.io.LineNumberReader;
+import java.io.CharArrayReader;
+import java.io.PushbackReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import org.gephi.io.importer.api.ChunkedParser;
 import org.gephi.io.importer.api.ContainerLoader;
 import org.gephi.io.importer.api.EdgeDraft;
-import org.gephi.io.importer.api.ImportUtils;
+import org.gephi.io.importer.api.GraphRecords;
 import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.io.importer.api.Report;
 import org.gephi.io.importer.spi.FileImporter;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.NbBundle;
 
 /**
  *
@@ -63,125 +64,144 @@ import org.gephi.utils.progress.ProgressTicket;
  */
 public class ImporterCSV implements FileImporter, LongTask {
 
+    //Progress is reported every PROGRESS_STEP characters consumed
+    private static final long PROGRESS_STEP = 1024 * 1024;
     //Architecture
     private Reader reader;
     private ContainerLoader container;
     private Report report;
     private ProgressTicket progressTicket;
     private boolean cancel = false;
+    private long lastProgress;
+    private volatile ChunkedParser<GraphRecords> listParser;
+    //Settings
+    private boolean spillToDisk = false;
 
     @Override
     public boolean execute(ContainerLoader container) {
         this.container = container;
         this.report = new Report();
-        LineNumberReader lineReader = ImportUtils.getTextReader(reader);
+        this.lastProgress = 0;
+        //Edge drafts are never modified once added
+        if (spillToDisk) {
+            container.setSpillToDisk(true);
+        } else {
+            container.setCompactEdges(true);
+        }
         try {
-            importData(lineReader);
+            importData();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
         return !cancel;
     }
 
-    private void importData(LineNumberReader reader) throws Exception {
+    private void importData() throws Exception {
         Progress.start(progressTicket);        //Progress
 
-        List<String> lines = new ArrayList<String>();
-        for (; reader.ready();) {
-            String line = reader.readLine();
-            if (line != null && !line.isEmpty()) {
-                lines.add(line);
-            }
+        //Look at the first character to find the format
+        PushbackReader pushbackReader = new PushbackReader(reader, 1);
+        int c;
+        while ((c = pushbackReader.read()) == '\r' || c == '\n') {
         }
+        if (c == -1) {
+            return;
+        }
+        pushbackReader.unread(c);
 
-        Progress.switchToDeterminate(progressTicket, lines.size());
-
-        //Magix regex
-        Pattern pattern = Pattern.compile("(?<=(?:,|;|\\s|^)\")(.*?)(?=(?<=(?:[^\\\\]))\",|;|\"\\s|\"$)|(?<=(?:,|;|\\s|^)')(.*?)(?=(?<=(?:[^\\\\]))',|;|'\\s|'$)|(?<=(?:,|;|\\s|^))(?=[^'\"])(.*?)(?=(?:,|;|\\s|$))|(?<=,|;)($)");
-
-        if (lines.get(0).startsWith(";")) { //Matrix
-            //Fill the Labels array
-            String line0 = lines.get(0);
-            line0 = line0.substring(1, line0.length());
-            lines.remove(0);
-            Matcher m = pattern.matcher(line0); //Remove the first ";"
-            List<String> labels = new ArrayList<String>();
-            while (m.find()) {
-                int start = m.start();
-                int end = m.end();
-                if (start != end) {
-                    String data = line0.substring(start, end);
-                    data = data.trim();
-                    if (!data.isEmpty() && !data.toLowerCase().equals("null")) {
-                        labels.add(data);
-                    }
-                }
+        if (c == ';') {
+            importMatrix(new CSVTokenizer(pushbackReader));
+        } else {
+            importList(pushbackReader);
+        }
+    }
+
+    private void importMatrix(CSVTokenizer tokenizer) throws Exception {
+        tokenizer.nextLine();
+        //Fill the Labels array, the first field is the empty one before ";"
+        tokenizer.nextField();
+        List<String> labels = new ArrayList<String>();
+        for (String data; (data = tokenizer.nextField()) != null;) {
+            data = data.trim();
+            if (!data.isEmpty() && !data.toLowerCase().equals("null")) {
+                labels.add(data);
             }
+        }
 
-            int size = lines.size();
-            if (size != labels.size()) {
+        int i = 0;
+        for (; tokenizer.nextLine(); i++) {
+            if (cancel) {
+                return;
+            }
+            if (i >= labels.size()) {
                 throw new Exception("Inconsistent number of matrix lines compared to the number of labels.");
             }
-
-            for (int i = 0; i < size; i++) {
-                if (cancel) {
-                    return;
-                }
-                String line = lines.get(i);
-                m = pattern.matcher(line);
-                int count = -1;
-                String sourceID = "";
-                while (m.find()) {
-                    int start = m.start();
-                    int end = m.end();
-                    if (start != end) {
-                        String data = line.substring(start, end);
-                        data = data.trim();
-                        if (!data.isEmpty() && !data.toLowerCase().equals("null")) {
-                            if (count == -1) {
-                                sourceID = data;
-                                addNode(sourceID, labels.get(i));
-                            } else if (!data.equals("0")) {
-                                //Create Edge
-                                addEdge(sourceID, labels.get(count), Float.parseFloat(data));
-                            }
-                        }
+            int count = -1;
+            String sourceID = "";
+            for (String data; (data = tokenizer.nextField()) != null;) {
+                data = data.trim();
+                if (!data.isEmpty() && !data.toLowerCase().equals("null")) {
+                    if (count == -1) {
+                        sourceID = data;
+                        addNode(sourceID, labels.get(i));
+                    } else if (!data.equals("0")) {
+                        //Create Edge
+                        addEdge(sourceID, labels.get(count), Float.parseFloat(data));
                     }
-                    count++;
                 }
-                Progress.progress(progressTicket);      //Progress
+                count++;
             }
-        } else { //Edge or Adjacency list
-            Matcher m;
-            for (String line : lines) {
-                if (cancel) {
-                    return;
-                }
-                m = pattern.matcher(line);
-                int count = 0;
-                String sourceID = "";
-                while (m.find()) {
-                    int start = m.start();
-                    int end = m.end();
-                    if (start != end) {
-                        String data = line.substring(start, end);
+            progress(tokenizer.getCharsRead());      //Progress
+        }
+        if (i != labels.size()) {
+            throw new Exception("Inconsistent number of matrix lines compared to the number of labels.");
+        }
+    }
+
+    private void importList(Reader reader) throws Exception {
+        //Each line stands on its own, chunks of lines are parsed in parallel
+        listParser = new ChunkedParser<GraphRecords>() {
+            @Override
+            protected GraphRecords parse(char[] chars, int offset, int length) throws Exception {
+                GraphRecords records = new GraphRecords();
+                CSVTokenizer tokenizer = new CSVTokenizer(new CharArrayReader(chars, offset, length));
+                while (tokenizer.nextLine()) {
+                    int count = 0;
+                    String sourceID = "";
+                    for (String data; (data = tokenizer.nextField()) != null;) {
                         data = data.trim();
                         if (!data.isEmpty() && !data.toLowerCase().equals("null")) {
                             if (count == 0) {
                                 sourceID = data;
-                                addNode(sourceID, data);
+                                records.addNode(sourceID, data);
                             } else {
                                 //Create Edge
-                                addEdge(sourceID, data);
+                                records.addEdge(sourceID, data, 1f);
                             }
                         }
+                        count++;
                     }
-                    count++;
                 }
-                Progress.progress(progressTicket);      //Progress
+                return records;
+            }
+
+            @Override
+            protected void merge(GraphRecords records) {
+                records.addTo(container);
+                progress(getCharsRead());      //Progress
             }
+        };
+        if (cancel) {
+            return;
         }
+        listParser.parse(reader);
+    }
 
+    private void progress(long read) {
+        if (read - lastProgress >= PROGRESS_STEP) {
+            lastProgress = read;
+            Progress.progress(progressTicket, NbBundle.getMessage(ImporterCSV.class, "importerCSV_progress", read / (1024 * 1024)));
+        }
     }
 
     private void addNode(String id, String label) {
@@ -193,10 +213,6 @@ public class ImporterCSV implements FileImporter, LongTask {
         }
     }
 
-    private void addEdge(String source, String target) {
-        addEdge(source, target, 1);
-    }
-
     private void addEdge(String source, String target, float weight) {
         NodeDraft sourceNode;
         if (!container.nodeExists(source)) {
@@ -219,6 +235,20 @@ public class ImporterCSV implements FileImporter, LongTask {
         container.addEdge(edge);
     }
 
+    public boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
+    /**
+     * Keeps the edges in temporary files instead of memory, for edge lists
+     * too large for the heap.
+     *
+     * @param spillToDisk <code>true</code> to store edges in temporary files
+     */
+    public void setSpillToDisk(boolean spillToDisk) {
+        this.spillToDisk = spillToDisk;
+    }
+
     @Override
     public void setReader(Reader reader) {
         this.reader = reader;
@@ -237,6 +267,10 @@ public class ImporterCSV implements FileImporter, LongTask {
     @Override
     public boolean cancel() {
         cancel = true;
+        ChunkedParser<GraphRecords> parser = listParser;
+        if (parser != null) {
+            parser.cancel();
+        }
         return true;
     }
 
@@ -0,0 +1,103 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.ui.importer.plugin;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import javax.swing.JCheckBox;
+import javax.swing.JPanel;
+import org.gephi.io.importer.plugin.file.ImporterCSV;
+import org.gephi.io.importer.spi.Importer;
+import org.gephi.io.importer.spi.ImporterUI;
+import org.openide.util.NbBundle;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * CSV importer UI.
+ */
+@ServiceProvider(service = ImporterUI.class)
+public class ImporterCsvUI implements ImporterUI {
+
+    private ImporterCSV importer;
+    private JCheckBox spillToDiskCheckBox;
+    private JPanel panel;
+
+    @Override
+    public void setup(Importer importer) {
+        this.importer = (ImporterCSV) importer;
+    }
+
+    @Override
+    public JPanel getPanel() {
+        panel = new JPanel(new GridBagLayout());
+        spillToDiskCheckBox = new JCheckBox(NbBundle.getMessage(getClass(), "ImporterCsvUI.spillToDisk"));
+
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.weightx = 1.0;
+        constraints.weighty = 1.0;
+        constraints.anchor = GridBagConstraints.NORTHWEST;
+        constraints.insets = new Insets(5, 5, 5, 5);
+        panel.add(spillToDiskCheckBox, constraints);
+
+        return panel;
+    }
+
+    @Override
+    public void unsetup(boolean update) {
+        if (update) {
+            importer.setSpillToDisk(spillToDiskCheckBox.isSelected());
+        }
+        panel = null;
+        importer = null;
+        spillToDiskCheckBox = null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return NbBundle.getMessage(getClass(), "ImporterCsvUI.displayName");
+    }
+
+    @Override
+    public boolean isUIForImporter(Importer importer) {
+        return importer instanceof ImporterCSV;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import org.gephi.layout.plugin.forceAtlas2.ForceFactory.AttractionForce;
+
+/**
+ * Applies attraction along a range of edges. The first thread adds forces to
+ * the state directly, the others to their own arrays, summed up afterwards by
+ * {@link SpeedThread}.
+ */
+public class EdgesThread implements Runnable {
+
+    private final ForceAtlas2State state;
+    private final int index;
+    private final int count;
+    private double[] dx = new double[0];
+    private double[] dy = new double[0];
+    private AttractionForce Attraction;
+    private double[] weights;
+
+    EdgesThread(ForceAtlas2State state, int index, int count) {
+        this.state = state;
+        this.index = index;
+        this.count = count;
+    }
+
+    void setUp(AttractionForce Attraction, double[] weights) {
+        this.Attraction = Attraction;
+        this.weights = weights;
+        if (index > 0 && dx.length < state.nodeCount) {
+            dx = new double[state.nodeCount];
+            dy = new double[state.nodeCount];
+        }
+    }
+
+    /**
+     * Returns the x forces of this thread, reset to zero by the caller once
+     * summed up. Only relevant for threads other than the first one.
+     */
+    double[] getDx() {
+        return dx;
+    }
+
+    double[] getDy() {
+        return dy;
+    }
+
+    @Override
+    public void run() {
+        int from = (int) ((long) state.edgeCount * index / count);
+        int to = (int) ((long) state.edgeCount * (index + 1) / count);
+        double[] targetDx = (index == 0) ? (state.dx) : (dx);
+        double[] targetDy = (index == 0) ? (state.dy) : (dy);
+        int[] sources = state.sources;
+        int[] targets = state.targets;
+        for (int e = from; e < to; e++) {
+            Attraction.apply(sources[e], targets[e], weights[e], targetDx, targetDy);
+        }
+    }
+}
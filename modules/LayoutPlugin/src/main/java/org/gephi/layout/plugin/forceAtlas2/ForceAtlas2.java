@@ -47,9 +47,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import org.gephi.graph.api.Edge;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphObserver;
 import org.gephi.graph.api.Node;
 import org.gephi.layout.plugin.forceAtlas2.ForceFactory.AttractionForce;
 import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
@@ -85,6 +86,12 @@ public class ForceAtlas2 implements Layout {
     private Region rootRegion;
     double outboundAttCompensation = 1;
     private ExecutorService pool;
+    private NodesThread[] nodesThreads;
+    private EdgesThread[] edgesThreads;
+    private SpeedThread[] speedThreads;
+    private final AtomicInteger nextNode = new AtomicInteger();
+    private ForceAtlas2State state;
+    private GraphObserver observer;
 
     public ForceAtlas2(ForceAtlas2Builder layoutBuilder) {
         this.layoutBuilder = layoutBuilder;
@@ -98,24 +105,35 @@ public class ForceAtlas2 implements Layout {
         graph = graphModel.getGraphVisible();
 
         graph.readLock();
-        Node[] nodes = graph.getNodes().toArray();
 
         // Initialise layout data
-        for (Node n : nodes) {
-            if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceAtlas2LayoutData)) {
-                ForceAtlas2LayoutData nLayout = new ForceAtlas2LayoutData();
-                n.setLayoutData(nLayout);
-            }
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-            nLayout.mass = 1 + graph.getDegree(n);
-            nLayout.old_dx = 0;
-            nLayout.old_dy = 0;
-            nLayout.dx = 0;
-            nLayout.dy = 0;
+        for (Node n : graph.getNodes()) {
+            n.setLayoutData(new ForceAtlas2LayoutData());
         }
+        state = new ForceAtlas2State();
+        rootRegion = new Region(state);
+        observeGraph();
 
         pool = Executors.newFixedThreadPool(threadCount);
         currentThreadCount = threadCount;
+        nodesThreads = new NodesThread[currentThreadCount];
+        edgesThreads = new EdgesThread[currentThreadCount];
+        speedThreads = new SpeedThread[currentThreadCount];
+        for (int t = 0; t < currentThreadCount; t++) {
+            nodesThreads[t] = new NodesThread(state, nextNode);
+            edgesThreads[t] = new EdgesThread(state, t, currentThreadCount);
+            speedThreads[t] = new SpeedThread(state, nodesThreads, edgesThreads, t);
+        }
+    }
+
+    private void observeGraph() {
+        if (observer != null) {
+            observer.destroy();
+        }
+        observer = graphModel.createGraphObserver(graph, false);
+        //First call only initializes the observer's version
+        observer.hasGraphChanged();
+        state.load(graph);
     }
 
     @Override
@@ -127,88 +145,57 @@ public class ForceAtlas2 implements Layout {
         graph = graphModel.getGraphVisible();
 
         graph.readLock();
-        Node[] nodes = graph.getNodes().toArray();
-        Edge[] edges = graph.getEdges().toArray();
 
-        // Initialise layout data
-        for (Node n : nodes) {
-            if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceAtlas2LayoutData)) {
-                ForceAtlas2LayoutData nLayout = new ForceAtlas2LayoutData();
-                n.setLayoutData(nLayout);
-            }
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-            nLayout.mass = 1 + graph.getDegree(n);
-            nLayout.old_dx = nLayout.dx;
-            nLayout.old_dy = nLayout.dy;
-            nLayout.dx = 0;
-            nLayout.dy = 0;
+        // Load nodes and edges again only if the graph changed
+        if (observer.isDestroyed() || observer.getGraph().getView() != graph.getView()) {
+            observeGraph();
+        } else if (observer.hasGraphChanged()) {
+            state.load(graph);
         }
+        state.startIteration();
 
         // If Barnes Hut active, initialize root region
         if (isBarnesHutOptimize()) {
-            rootRegion = new Region(nodes);
             rootRegion.buildSubRegions();
         }
 
         // If outboundAttractionDistribution active, compensate.
         if (isOutboundAttractionDistribution()) {
-            outboundAttCompensation = 0;
-            for (Node n : nodes) {
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                outboundAttCompensation += nLayout.mass;
-            }
-            outboundAttCompensation /= nodes.length;
+            outboundAttCompensation = state.meanMass;
         }
 
         // Repulsion (and gravity)
         // NB: Muti-threaded
-        RepulsionForce Repulsion = ForceFactory.builder.buildRepulsion(isAdjustSizes(), getScalingRatio());
-
-        int taskCount = 8 * currentThreadCount;  // The threadPool Executor Service will manage the fetching of tasks and threads.
-        // We make more tasks than threads because some tasks may need more time to compute.
-        ArrayList<Future> threads = new ArrayList();
-        for (int t = taskCount; t > 0; t--) {
-            int from = (int) Math.floor(nodes.length * (t - 1) / taskCount);
-            int to = (int) Math.floor(nodes.length * t / taskCount);
-            Future future = pool.submit(new NodesThread(nodes, from, to, isBarnesHutOptimize(), getBarnesHutTheta(), getGravity(), (isStrongGravityMode()) ? (ForceFactory.builder.getStrongGravity(getScalingRatio())) : (Repulsion), getScalingRatio(), rootRegion, Repulsion));
-            threads.add(future);
-        }
-        for (Future future : threads) {
-            try {
-                future.get();
-            } catch (InterruptedException ex) {
-                Exceptions.printStackTrace(ex);
-            } catch (ExecutionException ex) {
-                Exceptions.printStackTrace(ex);
-            }
+        RepulsionForce Repulsion = ForceFactory.builder.buildRepulsion(state, isAdjustSizes(), getScalingRatio());
+        RepulsionForce GravityForce = (isStrongGravityMode()) ? (ForceFactory.builder.getStrongGravity(state, getScalingRatio())) : (Repulsion);
+
+        // Threads take chunks of nodes until all are done, so that they keep busy even if some nodes need more time to compute.
+        nextNode.set(0);
+        for (NodesThread nodesThread : nodesThreads) {
+            nodesThread.setUp(isBarnesHutOptimize(), getBarnesHutTheta(), getGravity(), GravityForce, getScalingRatio(), rootRegion, Repulsion);
         }
+        execute(nodesThreads);
 
         // Attraction
-        AttractionForce Attraction = ForceFactory.builder.buildAttraction(isLinLogMode(), isOutboundAttractionDistribution(), isAdjustSizes(), 1 * ((isOutboundAttractionDistribution()) ? (outboundAttCompensation) : (1)));
-        if (getEdgeWeightInfluence() == 0) {
-            for (Edge e : edges) {
-                Attraction.apply(e.getSource(), e.getTarget(), 1);
-            }
-        } else if (getEdgeWeightInfluence() == 1) {
-            for (Edge e : edges) {
-                Attraction.apply(e.getSource(), e.getTarget(), e.getWeight());
-            }
-        } else {
-            for (Edge e : edges) {
-                Attraction.apply(e.getSource(), e.getTarget(), Math.pow(e.getWeight(), getEdgeWeightInfluence()));
-            }
+        // NB: Multi-threaded, each thread adds the forces of a range of edges to its own arrays
+        AttractionForce Attraction = ForceFactory.builder.buildAttraction(state, isLinLogMode(), isOutboundAttractionDistribution(), isAdjustSizes(), 1 * ((isOutboundAttractionDistribution()) ? (outboundAttCompensation) : (1)));
+        double[] weights = state.getInfluencedWeights(getEdgeWeightInfluence());
+        for (EdgesThread edgesThread : edgesThreads) {
+            edgesThread.setUp(Attraction, weights);
         }
+        execute(edgesThreads);
 
         // Auto adjust speed
+        // NB: Multi-threaded, each thread sums up forces and swinging of a range of nodes
+        for (SpeedThread speedThread : speedThreads) {
+            speedThread.setUpSwinging();
+        }
+        execute(speedThreads);
         double totalSwinging = 0d;  // How much irregular movement
         double totalEffectiveTraction = 0d;  // Hom much useful movement
-        for (Node n : nodes) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-            if (!n.isFixed()) {
-                double swinging = Math.sqrt(Math.pow(nLayout.old_dx - nLayout.dx, 2) + Math.pow(nLayout.old_dy - nLayout.dy, 2));
-                totalSwinging += nLayout.mass * swinging;   // If the node has a burst change of direction, then it's not converging.
-                totalEffectiveTraction += nLayout.mass * 0.5 * Math.sqrt(Math.pow(nLayout.old_dx + nLayout.dx, 2) + Math.pow(nLayout.old_dy + nLayout.dy, 2));
-            }
+        for (SpeedThread speedThread : speedThreads) {
+            totalSwinging += speedThread.getTotalSwinging();
+            totalEffectiveTraction += speedThread.getTotalEffectiveTraction();
         }
         // We want that swingingMovement < tolerance * convergenceMovement
         double targetSpeed = getJitterTolerance() * getJitterTolerance() * totalEffectiveTraction / totalSwinging;
@@ -218,47 +205,31 @@ public class ForceAtlas2 implements Layout {
         speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
 
         // Apply forces
-        if (isAdjustSizes()) {
-            // If nodes overlap prevention is active, it's not possible to trust the swinging mesure.
-            for (Node n : nodes) {
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                if (!n.isFixed()) {
-
-                    // Adaptive auto-speed: the speed of each node is lowered
-                    // when the node swings.
-                    double swinging = Math.sqrt((nLayout.old_dx - nLayout.dx) * (nLayout.old_dx - nLayout.dx) + (nLayout.old_dy - nLayout.dy) * (nLayout.old_dy - nLayout.dy));
-                    double factor = 0.1 * speed / (1f + speed * Math.sqrt(swinging));
-
-                    double df = Math.sqrt(Math.pow(nLayout.dx, 2) + Math.pow(nLayout.dy, 2));
-                    factor = Math.min(factor * df, 10.) / df;
-
-                    double x = n.x() + nLayout.dx * factor;
-                    double y = n.y() + nLayout.dy * factor;
+        for (SpeedThread speedThread : speedThreads) {
+            speedThread.setUpForces(speed, isAdjustSizes());
+        }
+        execute(speedThreads);
+        graph.readUnlockAll();
+    }
 
-                    n.setX((float) x);
-                    n.setY((float) y);
-                }
-            }
+    private void execute(Runnable[] tasks) {
+        if (tasks.length == 1) {
+            tasks[0].run();
         } else {
-            for (Node n : nodes) {
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                if (!n.isFixed()) {
-
-                    // Adaptive auto-speed: the speed of each node is lowered
-                    // when the node swings.
-                    double swinging = Math.sqrt((nLayout.old_dx - nLayout.dx) * (nLayout.old_dx - nLayout.dx) + (nLayout.old_dy - nLayout.dy) * (nLayout.old_dy - nLayout.dy));
-                    //double factor = speed / (1f + Math.sqrt(speed * swinging));
-                    double factor = speed / (1f + speed * Math.sqrt(swinging));
-
-                    double x = n.x() + nLayout.dx * factor;
-                    double y = n.y() + nLayout.dy * factor;
-
-                    n.setX((float) x);
-                    n.setY((float) y);
+            ArrayList<Future> threads = new ArrayList<Future>(tasks.length);
+            for (Runnable task : tasks) {
+                threads.add(pool.submit(task));
+            }
+            for (Future future : threads) {
+                try {
+                    future.get();
+                } catch (InterruptedException ex) {
+                    Exceptions.printStackTrace(ex);
+                } catch (ExecutionException ex) {
+                    Exceptions.printStackTrace(ex);
                 }
             }
         }
-        graph.readUnlockAll();
     }
 
     @Override
@@ -272,6 +243,15 @@ public class ForceAtlas2 implements Layout {
             n.setLayoutData(null);
         }
         pool.shutdown();
+        if (observer != null) {
+            observer.destroy();
+            observer = null;
+        }
+        state = null;
+        rootRegion = null;
+        nodesThreads = null;
+        edgesThreads = null;
+        speedThreads = null;
         graph.readUnlockAll();
     }
 
@@ -0,0 +1,194 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * Nodes and edges laid out by ForceAtlas2, kept in flat arrays from one
+ * iteration to the next. Nodes are designated by their index in these arrays.
+ * <p>
+ * The arrays are only rebuilt by {@link #load(Graph)}, when the graph
+ * changes. Positions, sizes and fixed flags are read again from the nodes at
+ * each iteration, as they can be changed by the user during the layout.
+ */
+class ForceAtlas2State {
+
+    Node[] nodes = new Node[0];
+    int nodeCount;
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] size = new double[0];
+    boolean[] fixed = new boolean[0];
+    double[] mass = new double[0];
+    double[] dx = new double[0];
+    double[] dy = new double[0];
+    double[] oldDx = new double[0];
+    double[] oldDy = new double[0];
+    int edgeCount;
+    int[] sources = new int[0];
+    int[] targets = new int[0];
+    double[] weights = new double[0];
+    double[] influencedWeights = new double[0];
+    double weightsInfluence = Double.NaN;
+    double meanMass;
+
+    /**
+     * Rebuilds the arrays from <code>graph</code>. Forces of nodes already
+     * laid out are saved in their layout data and restored after.
+     *
+     * @param graph the graph to lay out, locked by the caller
+     */
+    void load(Graph graph) {
+        for (int i = 0; i < nodeCount; i++) {
+            ForceAtlas2LayoutData nLayout = nodes[i].getLayoutData();
+            if (nLayout != null) {
+                nLayout.dx = dx[i];
+                nLayout.dy = dy[i];
+            }
+        }
+
+        nodes = graph.getNodes().toArray();
+        nodeCount = nodes.length;
+        if (x.length < nodeCount) {
+            x = new double[nodeCount];
+            y = new double[nodeCount];
+            size = new double[nodeCount];
+            fixed = new boolean[nodeCount];
+            mass = new double[nodeCount];
+            dx = new double[nodeCount];
+            dy = new double[nodeCount];
+            oldDx = new double[nodeCount];
+            oldDy = new double[nodeCount];
+        }
+
+        double massSum = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = nodes[i];
+            if (n.getLayoutData() == null || !(n.getLayoutData() instanceof ForceAtlas2LayoutData)) {
+                ForceAtlas2LayoutData nLayout = new ForceAtlas2LayoutData();
+                n.setLayoutData(nLayout);
+            }
+            ForceAtlas2LayoutData nLayout = n.getLayoutData();
+            nLayout.index = i;
+            nLayout.mass = 1 + graph.getDegree(n);
+            mass[i] = nLayout.mass;
+            dx[i] = nLayout.dx;
+            dy[i] = nLayout.dy;
+            massSum += mass[i];
+        }
+        meanMass = massSum / nodeCount;
+
+        Edge[] edges = graph.getEdges().toArray();
+        edgeCount = edges.length;
+        if (sources.length < edgeCount) {
+            sources = new int[edgeCount];
+            targets = new int[edgeCount];
+            weights = new double[edgeCount];
+            influencedWeights = new double[edgeCount];
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            Edge e = edges[i];
+            ForceAtlas2LayoutData sourceLayout = e.getSource().getLayoutData();
+            ForceAtlas2LayoutData targetLayout = e.getTarget().getLayoutData();
+            sources[i] = sourceLayout.index;
+            targets[i] = targetLayout.index;
+            weights[i] = e.getWeight();
+        }
+        weightsInfluence = Double.NaN;
+    }
+
+    /**
+     * Reads positions, sizes and fixed flags from the nodes and makes the
+     * forces of the previous iteration the old ones.
+     */
+    void startIteration() {
+        double[] swap = oldDx;
+        oldDx = dx;
+        dx = swap;
+        swap = oldDy;
+        oldDy = dy;
+        dy = swap;
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = nodes[i];
+            x[i] = n.x();
+            y[i] = n.y();
+            size[i] = n.size();
+            fixed[i] = n.isFixed();
+            dx[i] = 0;
+            dy[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the edge weights raised to the power <code>influence</code>,
+     * computed again only when the influence changes.
+     */
+    double[] getInfluencedWeights(double influence) {
+        if (influence != weightsInfluence) {
+            for (int i = 0; i < edgeCount; i++) {
+                if (influence == 0) {
+                    influencedWeights[i] = 1;
+                } else if (influence == 1) {
+                    influencedWeights[i] = weights[i];
+                } else {
+                    influencedWeights[i] = Math.pow(weights[i], influence);
+                }
+            }
+            weightsInfluence = influence;
+        }
+        return influencedWeights;
+    }
+
+    /**
+     * Writes positions back into the nodes of a range which are not fixed.
+     */
+    void writePositions(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!fixed[i]) {
+                nodes[i].setX((float) x[i]);
+                nodes[i].setY((float) y[i]);
+            }
+        }
+    }
+}
@@ -41,8 +41,6 @@
  */
 package org.gephi.layout.plugin.forceAtlas2;
 
-import org.gephi.graph.api.Node;
-
 /**
  * Generates the forces on demand, here are all the formulas for attraction and
  * repulsion.
@@ -58,62 +56,66 @@ public class ForceFactory {
 
     ;
 
-    public RepulsionForce buildRepulsion(boolean adjustBySize, double coefficient) {
+    public RepulsionForce buildRepulsion(ForceAtlas2State state, boolean adjustBySize, double coefficient) {
         if (adjustBySize) {
-            return new linRepulsion_antiCollision(coefficient);
+            return new linRepulsion_antiCollision(state, coefficient);
         } else {
-            return new linRepulsion(coefficient);
+            return new linRepulsion(state, coefficient);
         }
     }
 
-    public RepulsionForce getStrongGravity(double coefficient) {
-        return new strongGravity(coefficient);
+    public RepulsionForce getStrongGravity(ForceAtlas2State state, double coefficient) {
+        return new strongGravity(state, coefficient);
     }
 
-    public AttractionForce buildAttraction(boolean logAttraction, boolean distributedAttraction, boolean adjustBySize, double coefficient) {
+    public AttractionForce buildAttraction(ForceAtlas2State state, boolean logAttraction, boolean distributedAttraction, boolean adjustBySize, double coefficient) {
         if (adjustBySize) {
             if (logAttraction) {
                 if (distributedAttraction) {
-                    return new logAttraction_degreeDistributed_antiCollision(coefficient);
+                    return new logAttraction_degreeDistributed_antiCollision(state, coefficient);
                 } else {
-                    return new logAttraction_antiCollision(coefficient);
+                    return new logAttraction_antiCollision(state, coefficient);
                 }
             } else {
                 if (distributedAttraction) {
-                    return new linAttraction_degreeDistributed_antiCollision(coefficient);
+                    return new linAttraction_degreeDistributed_antiCollision(state, coefficient);
                 } else {
-                    return new linAttraction_antiCollision(coefficient);
+                    return new linAttraction_antiCollision(state, coefficient);
                 }
             }
         } else {
             if (logAttraction) {
                 if (distributedAttraction) {
-                    return new logAttraction_degreeDistributed(coefficient);
+                    return new logAttraction_degreeDistributed(state, coefficient);
                 } else {
-                    return new logAttraction(coefficient);
+                    return new logAttraction(state, coefficient);
                 }
             } else {
                 if (distributedAttraction) {
-                    return new linAttraction_massDistributed(coefficient);
+                    return new linAttraction_massDistributed(state, coefficient);
                 } else {
-                    return new linAttraction(coefficient);
+                    return new linAttraction(state, coefficient);
                 }
             }
         }
     }
 
+    /*
+     * Forces designate nodes by their index in the state. Node-node forces add
+     * to the given dx and dy arrays, the others to the arrays of the state
+     */
     public abstract class AttractionForce {
 
-        public abstract void apply(Node n1, Node n2, double e); // Model for node-node attraction (e is for edge weight if needed)
+        public abstract void apply(int n1, int n2, double e, double[] dx, double[] dy); // Model for node-node attraction (e is for edge weight if needed)
     }
 
     public abstract class RepulsionForce {
 
-        public abstract void apply(Node n1, Node n2);           // Model for node-node repulsion
+        public abstract void apply(int n1, int n2, double[] dx, double[] dy); // Model for node-node repulsion
 
-        public abstract void apply(Node n, Region r);           // Model for Barnes Hut approximation
+        public abstract void apply(int n, double regionMass, double regionX, double regionY); // Model for Barnes Hut approximation
 
-        public abstract void apply(Node n, double g);           // Model for gravitation (anti-repulsion)
+        public abstract void apply(int n, double g);            // Model for gravitation (anti-repulsion)
     }
 
     /*
@@ -121,67 +123,62 @@ public class ForceFactory {
      */
     private class linRepulsion extends RepulsionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linRepulsion(double c) {
+        public linRepulsion(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * n1Layout.mass * n2Layout.mass / distance / distance;
+                double factor = coefficient * state.mass[n1] * state.mass[n2] / distance / distance;
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
 
         @Override
-        public void apply(Node n, Region r) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-
+        public void apply(int n, double regionMass, double regionX, double regionY) {
             // Get the distance
-            double xDist = n.x() - r.getMassCenterX();
-            double yDist = n.y() - r.getMassCenterY();
+            double xDist = state.x[n] - regionX;
+            double yDist = state.y[n] - regionY;
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * nLayout.mass * r.getMass() / distance / distance;
+                double factor = coefficient * state.mass[n] * regionMass / distance / distance;
 
-                nLayout.dx += xDist * factor;
-                nLayout.dy += yDist * factor;
+                state.dx[n] += xDist * factor;
+                state.dy[n] += yDist * factor;
             }
         }
 
         @Override
-        public void apply(Node n, double g) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-
+        public void apply(int n, double g) {
             // Get the distance
-            double xDist = n.x();
-            double yDist = n.y();
+            double xDist = state.x[n];
+            double yDist = state.y[n];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * nLayout.mass * g / distance;
+                double factor = coefficient * state.mass[n] * g / distance;
 
-                nLayout.dx -= xDist * factor;
-                nLayout.dy -= yDist * factor;
+                state.dx[n] -= xDist * factor;
+                state.dy[n] -= yDist * factor;
             }
         }
     }
@@ -191,118 +188,112 @@ public class ForceFactory {
      */
     private class linRepulsion_antiCollision extends RepulsionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linRepulsion_antiCollision(double c) {
+        public linRepulsion_antiCollision(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
-            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - n1.size() - n2.size();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - state.size[n1] - state.size[n2];
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * n1Layout.mass * n2Layout.mass / distance / distance;
-
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                double factor = coefficient * state.mass[n1] * state.mass[n2] / distance / distance;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             } else if (distance < 0) {
-                double factor = 100 * coefficient * n1Layout.mass * n2Layout.mass;
+                double factor = 100 * coefficient * state.mass[n1] * state.mass[n2];
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
 
         @Override
-        public void apply(Node n, Region r) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-
+        public void apply(int n, double regionMass, double regionX, double regionY) {
             // Get the distance
-            double xDist = n.x() - r.getMassCenterX();
-            double yDist = n.y() - r.getMassCenterY();
+            double xDist = state.x[n] - regionX;
+            double yDist = state.y[n] - regionY;
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * nLayout.mass * r.getMass() / distance / distance;
+                double factor = coefficient * state.mass[n] * regionMass / distance / distance;
 
-                nLayout.dx += xDist * factor;
-                nLayout.dy += yDist * factor;
+                state.dx[n] += xDist * factor;
+                state.dy[n] += yDist * factor;
             } else if (distance < 0) {
-                double factor = -coefficient * nLayout.mass * r.getMass() / distance;
+                double factor = -coefficient * state.mass[n] * regionMass / distance;
 
-                nLayout.dx += xDist * factor;
-                nLayout.dy += yDist * factor;
+                state.dx[n] += xDist * factor;
+                state.dy[n] += yDist * factor;
             }
         }
 
         @Override
-        public void apply(Node n, double g) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-
+        public void apply(int n, double g) {
             // Get the distance
-            double xDist = n.x();
-            double yDist = n.y();
+            double xDist = state.x[n];
+            double yDist = state.y[n];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * nLayout.mass * g / distance;
+                double factor = coefficient * state.mass[n] * g / distance;
 
-                nLayout.dx -= xDist * factor;
-                nLayout.dy -= yDist * factor;
+                state.dx[n] -= xDist * factor;
+                state.dy[n] -= yDist * factor;
             }
         }
     }
 
     private class strongGravity extends RepulsionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public strongGravity(double c) {
+        public strongGravity(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2) {
+        public void apply(int n1, int n2, double[] dx, double[] dy) {
             // Not Relevant
         }
 
         @Override
-        public void apply(Node n, Region r) {
+        public void apply(int n, double regionMass, double regionX, double regionY) {
             // Not Relevant
         }
 
         @Override
-        public void apply(Node n, double g) {
-            ForceAtlas2LayoutData nLayout = n.getLayoutData();
-
+        public void apply(int n, double g) {
             // Get the distance
-            double xDist = n.x();
-            double yDist = n.y();
+            double xDist = state.x[n];
+            double yDist = state.y[n];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = coefficient * nLayout.mass * g;
+                double factor = coefficient * state.mass[n] * g;
 
-                nLayout.dx -= xDist * factor;
-                nLayout.dy -= yDist * factor;
+                state.dx[n] -= xDist * factor;
+                state.dy[n] -= yDist * factor;
             }
         }
     }
@@ -312,29 +303,28 @@ public class ForceFactory {
      */
     private class linAttraction extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linAttraction(double c) {
+        public linAttraction(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
 
             // NB: factor = force / distance
             double factor = -coefficient * e;
 
-            n1Layout.dx += xDist * factor;
-            n1Layout.dy += yDist * factor;
+            dx[n1] += xDist * factor;
+            dy[n1] += yDist * factor;
 
-            n2Layout.dx -= xDist * factor;
-            n2Layout.dy -= yDist * factor;
+            dx[n2] -= xDist * factor;
+            dy[n2] -= yDist * factor;
         }
     }
 
@@ -343,29 +333,28 @@ public class ForceFactory {
      */
     private class linAttraction_massDistributed extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linAttraction_massDistributed(double c) {
+        public linAttraction_massDistributed(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
 
             // NB: factor = force / distance
-            double factor = -coefficient * e / n1Layout.mass;
+            double factor = -coefficient * e / state.mass[n1];
 
-            n1Layout.dx += xDist * factor;
-            n1Layout.dy += yDist * factor;
+            dx[n1] += xDist * factor;
+            dy[n1] += yDist * factor;
 
-            n2Layout.dx -= xDist * factor;
-            n2Layout.dy -= yDist * factor;
+            dx[n2] -= xDist * factor;
+            dy[n2] -= yDist * factor;
         }
     }
 
@@ -374,20 +363,19 @@ public class ForceFactory {
      */
     private class logAttraction extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public logAttraction(double c) {
+        public logAttraction(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
@@ -395,11 +383,11 @@ public class ForceFactory {
                 // NB: factor = force / distance
                 double factor = -coefficient * e * Math.log(1 + distance) / distance;
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -409,32 +397,31 @@ public class ForceFactory {
      */
     private class logAttraction_degreeDistributed extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public logAttraction_degreeDistributed(double c) {
+        public logAttraction_degreeDistributed(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
             double distance = (float) Math.sqrt(xDist * xDist + yDist * yDist);
 
             if (distance > 0) {
 
                 // NB: factor = force / distance
-                double factor = -coefficient * e * Math.log(1 + distance) / distance / n1Layout.mass;
+                double factor = -coefficient * e * Math.log(1 + distance) / distance / state.mass[n1];
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -444,31 +431,30 @@ public class ForceFactory {
      */
     private class linAttraction_antiCollision extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linAttraction_antiCollision(double c) {
+        public linAttraction_antiCollision(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
-            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - n1.size() - n2.size();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - state.size[n1] - state.size[n2];
 
             if (distance > 0) {
                 // NB: factor = force / distance
                 double factor = -coefficient * e;
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -478,31 +464,30 @@ public class ForceFactory {
      */
     private class linAttraction_degreeDistributed_antiCollision extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public linAttraction_degreeDistributed_antiCollision(double c) {
+        public linAttraction_degreeDistributed_antiCollision(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
-            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - n1.size() - n2.size();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - state.size[n1] - state.size[n2];
 
             if (distance > 0) {
                 // NB: factor = force / distance
-                double factor = -coefficient * e / n1Layout.mass;
+                double factor = -coefficient * e / state.mass[n1];
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -512,32 +497,31 @@ public class ForceFactory {
      */
     private class logAttraction_antiCollision extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public logAttraction_antiCollision(double c) {
+        public logAttraction_antiCollision(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
-            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - n1.size() - n2.size();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - state.size[n1] - state.size[n2];
 
             if (distance > 0) {
 
                 // NB: factor = force / distance
                 double factor = -coefficient * e * Math.log(1 + distance) / distance;
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -547,32 +531,31 @@ public class ForceFactory {
      */
     private class logAttraction_degreeDistributed_antiCollision extends AttractionForce {
 
-        private double coefficient;
+        private final ForceAtlas2State state;
+        private final double coefficient;
 
-        public logAttraction_degreeDistributed_antiCollision(double c) {
+        public logAttraction_degreeDistributed_antiCollision(ForceAtlas2State state, double c) {
+            this.state = state;
             coefficient = c;
         }
 
         @Override
-        public void apply(Node n1, Node n2, double e) {
-            ForceAtlas2LayoutData n1Layout = n1.getLayoutData();
-            ForceAtlas2LayoutData n2Layout = n2.getLayoutData();
-
+        public void apply(int n1, int n2, double e, double[] dx, double[] dy) {
             // Get the distance
-            double xDist = n1.x() - n2.x();
-            double yDist = n1.y() - n2.y();
-            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - n1.size() - n2.size();
+            double xDist = state.x[n1] - state.x[n2];
+            double yDist = state.y[n1] - state.y[n2];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist) - state.size[n1] - state.size[n2];
 
             if (distance > 0) {
 
                 // NB: factor = force / distance
-                double factor = -coefficient * e * Math.log(1 + distance) / distance / n1Layout.mass;
+                double factor = -coefficient * e * Math.log(1 + distance) / distance / state.mass[n1];
 
-                n1Layout.dx += xDist * factor;
-                n1Layout.dy += yDist * factor;
+                dx[n1] += xDist * factor;
+                dy[n1] += yDist * factor;
 
-                n2Layout.dx -= xDist * factor;
-                n2Layout.dy -= yDist * factor;
+                dx[n2] -= xDist * factor;
+                dy[n2] -= yDist * factor;
             }
         }
     }
@@ -41,18 +41,25 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.layout.plugin.forceAtlas2;
 
-import org.gephi.graph.api.Node;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
 
 /**
+ * Applies repulsion and gravity to chunks of nodes taken from a counter shared
+ * with the other threads, until all nodes are done. Threads are created once
+ * and set up again at each iteration.
+ * <p>
+ * Without Barnes Hut, each pair of nodes is visited once, from its lowest
+ * node, and the repulsion is added to both nodes in the thread's own arrays,
+ * summed up afterwards by {@link SpeedThread}.
  *
  * @author Mathieu Jacomy
  */
 public class NodesThread implements Runnable {
 
-    private Node[] nodes;
-    private int from;
-    private int to;
+    private static final int CHUNK_SIZE = 256;
+    private final ForceAtlas2State state;
+    private final AtomicInteger nextNode;
     private Region rootRegion;
     private boolean barnesHutOptimize;
     private RepulsionForce Repulsion;
@@ -60,11 +67,15 @@ public class NodesThread implements Runnable {
     private double gravity;
     private RepulsionForce GravityForce;
     private double scaling;
+    private double[] dx = new double[0];
+    private double[] dy = new double[0];
 
-    public NodesThread(Node[] nodes, int from, int to, boolean barnesHutOptimize, double barnesHutTheta, double gravity, RepulsionForce GravityForce, double scaling, Region rootRegion, RepulsionForce Repulsion) {
-        this.nodes = nodes;
-        this.from = from;
-        this.to = to;
+    NodesThread(ForceAtlas2State state, AtomicInteger nextNode) {
+        this.state = state;
+        this.nextNode = nextNode;
+    }
+
+    void setUp(boolean barnesHutOptimize, double barnesHutTheta, double gravity, RepulsionForce GravityForce, double scaling, Region rootRegion, RepulsionForce Repulsion) {
         this.rootRegion = rootRegion;
         this.barnesHutOptimize = barnesHutOptimize;
         this.Repulsion = Repulsion;
@@ -72,30 +83,56 @@ public class NodesThread implements Runnable {
         this.gravity = gravity;
         this.GravityForce = GravityForce;
         this.scaling = scaling;
+        if (!barnesHutOptimize && dx.length < state.nodeCount) {
+            dx = new double[state.nodeCount];
+            dy = new double[state.nodeCount];
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the thread added repulsion to its own
+     * arrays during the last iteration.
+     */
+    boolean hasForces() {
+        return !barnesHutOptimize;
+    }
+
+    /**
+     * Returns the x forces of this thread, reset to zero by the caller once
+     * summed up.
+     */
+    double[] getDx() {
+        return dx;
+    }
+
+    double[] getDy() {
+        return dy;
     }
 
     @Override
     public void run() {
-        // Repulsion
-        if (barnesHutOptimize) {
-            for (int nIndex = from; nIndex < to; nIndex++) {
-                Node n = nodes[nIndex];
-                rootRegion.applyForce(n, Repulsion, barnesHutTheta);
-            }
-        } else {
-            for (int n1Index = from; n1Index < to; n1Index++) {
-                Node n1 = nodes[n1Index];
-                for (int n2Index = 0; n2Index < n1Index; n2Index++) {
-                    Node n2 = nodes[n2Index];
-                    Repulsion.apply(n1, n2);
+        int nodeCount = state.nodeCount;
+        int from;
+        while ((from = nextNode.getAndAdd(CHUNK_SIZE)) < nodeCount) {
+            int to = Math.min(nodeCount, from + CHUNK_SIZE);
+
+            // Repulsion
+            if (barnesHutOptimize) {
+                for (int n = from; n < to; n++) {
+                    rootRegion.applyForce(n, Repulsion, barnesHutTheta);
+                }
+            } else {
+                for (int n1 = from; n1 < to; n1++) {
+                    for (int n2 = n1 + 1; n2 < nodeCount; n2++) {
+                        Repulsion.apply(n1, n2, dx, dy);
+                    }
                 }
             }
-        }
 
-        // Gravity
-        for (int nIndex = from; nIndex < to; nIndex++) {
-            Node n = nodes[nIndex];
-            GravityForce.apply(n, gravity / scaling);
+            // Gravity
+            for (int n = from; n < to; n++) {
+                GravityForce.apply(n, gravity / scaling);
+            }
         }
     }
 }
@@ -41,180 +41,237 @@
  */
 package org.gephi.layout.plugin.forceAtlas2;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import org.gephi.graph.api.Node;
 import org.gephi.layout.plugin.forceAtlas2.ForceFactory.RepulsionForce;
 
 /**
  * Barnes Hut optimization
+ * <p>
+ * The tree of regions is stored in flat arrays, reused from one iteration to
+ * the next. Regions are designated by their index, the root being
+ * <code>0</code>, and cover a range of the <code>order</code> array, which
+ * holds node indices grouped by region.
  *
  * @author Mathieu Jacomy
  */
 public class Region {
 
-    private double mass;
-    private double massCenterX;
-    private double massCenterY;
-    private double size;
-    private final List<Node> nodes;
-    private final List<Region> subregions = new ArrayList<Region>();
-
-    public Region(Node[] nodes) {
-        this.nodes = new ArrayList<Node>();
-        this.nodes.addAll(Arrays.asList(nodes));
-        updateMassAndGeometry();
+    private final ForceAtlas2State state;
+    private int[] order = new int[0];
+    private int[] buffer = new int[0];
+    private byte[] quadrants = new byte[0];
+    private double[] mass = new double[0];
+    private double[] massCenterX = new double[0];
+    private double[] massCenterY = new double[0];
+    private double[] size = new double[0];
+    private int[] start = new int[0];
+    private int[] end = new int[0];
+    private int[] firstChild = new int[0];
+    private int[] nextSibling = new int[0];
+    private int regionCount;
+
+    Region(ForceAtlas2State state) {
+        this.state = state;
     }
 
-    public Region(ArrayList<Node> nodes) {
-        this.nodes = new ArrayList<Node>(nodes);
-        updateMassAndGeometry();
+    /**
+     * Builds the regions from the current positions and masses of the nodes.
+     */
+    public void buildSubRegions() {
+        int n = state.nodeCount;
+        if (order.length < n) {
+            order = new int[n];
+            buffer = new int[n];
+            quadrants = new byte[n];
+        }
+        //Each region of several nodes has at least two subregions
+        int capacity = Math.max(1, 2 * n - 1);
+        if (mass.length < capacity) {
+            mass = new double[capacity];
+            massCenterX = new double[capacity];
+            massCenterY = new double[capacity];
+            size = new double[capacity];
+            start = new int[capacity];
+            end = new int[capacity];
+            firstChild = new int[capacity];
+            nextSibling = new int[capacity];
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        regionCount = 0;
+        if (n > 0) {
+            buildRegion(0, n);
+        }
     }
 
-    private void updateMassAndGeometry() {
-        if (nodes.size() > 1) {
-            // Compute Mass
-            mass = 0;
-            double massSumX = 0;
-            double massSumY = 0;
-            for (Node n : nodes) {
-                ForceAtlas2LayoutData nLayout = n.getLayoutData();
-                mass += nLayout.mass;
-                massSumX += n.x() * nLayout.mass;
-                massSumY += n.y() * nLayout.mass;
-            }
-            massCenterX = massSumX / mass;
-            massCenterY = massSumY / mass;
-
-            // Compute size
-            size = Double.MIN_VALUE;
-            for (Node n : nodes) {
-                double distance = Math.sqrt((n.x() - massCenterX) * (n.x() - massCenterX) + (n.y() - massCenterY) * (n.y() - massCenterY));
-                size = Math.max(size, 2 * distance);
-            }
+    private int buildRegion(int from, int to) {
+        int r = regionCount++;
+        start[r] = from;
+        end[r] = to;
+        firstChild[r] = -1;
+        nextSibling[r] = -1;
+        if (to - from > 1) {
+            updateMassAndGeometry(r);
+            buildSubRegions(r);
         }
+        return r;
     }
 
-    public synchronized void buildSubRegions() {
-        if (nodes.size() > 1) {
-            ArrayList<Node> leftNodes = new ArrayList<Node>();
-            ArrayList<Node> rightNodes = new ArrayList<Node>();
-            for (Node n : nodes) {
-                ArrayList<Node> nodesColumn = (n.x() < massCenterX) ? (leftNodes) : (rightNodes);
-                nodesColumn.add(n);
-            }
+    private void updateMassAndGeometry(int r) {
+        double[] x = state.x;
+        double[] y = state.y;
+        double[] nodeMass = state.mass;
 
-            ArrayList<Node> topleftNodes = new ArrayList<Node>();
-            ArrayList<Node> bottomleftNodes = new ArrayList<Node>();
-            for (Node n : leftNodes) {
-                ArrayList<Node> nodesLine = (n.y() < massCenterY) ? (topleftNodes) : (bottomleftNodes);
-                nodesLine.add(n);
-            }
+        // Compute Mass
+        double regionMass = 0;
+        double massSumX = 0;
+        double massSumY = 0;
+        for (int i = start[r]; i < end[r]; i++) {
+            int n = order[i];
+            regionMass += nodeMass[n];
+            massSumX += x[n] * nodeMass[n];
+            massSumY += y[n] * nodeMass[n];
+        }
+        double centerX = massSumX / regionMass;
+        double centerY = massSumY / regionMass;
 
-            ArrayList<Node> bottomrightNodes = new ArrayList<Node>();
-            ArrayList<Node> toprightNodes = new ArrayList<Node>();
-            for (Node n : rightNodes) {
-                ArrayList<Node> nodesLine = (n.y() < massCenterY) ? (toprightNodes) : (bottomrightNodes);
-                nodesLine.add(n);
-            }
+        // Compute size
+        double regionSize = Double.MIN_VALUE;
+        for (int i = start[r]; i < end[r]; i++) {
+            int n = order[i];
+            double distance = Math.sqrt((x[n] - centerX) * (x[n] - centerX) + (y[n] - centerY) * (y[n] - centerY));
+            regionSize = Math.max(regionSize, 2 * distance);
+        }
 
-            if (topleftNodes.size() > 0) {
-                if (topleftNodes.size() < nodes.size()) {
-                    Region subregion = new Region(topleftNodes);
-                    subregions.add(subregion);
-                } else {
-                    for (Node n : topleftNodes) {
-                        ArrayList<Node> oneNodeList = new ArrayList<Node>();
-                        oneNodeList.add(n);
-                        Region subregion = new Region(oneNodeList);
-                        subregions.add(subregion);
-                    }
-                }
-            }
-            if (bottomleftNodes.size() > 0) {
-                if (bottomleftNodes.size() < nodes.size()) {
-                    Region subregion = new Region(bottomleftNodes);
-                    subregions.add(subregion);
-                } else {
-                    for (Node n : bottomleftNodes) {
-                        ArrayList<Node> oneNodeList = new ArrayList<Node>();
-                        oneNodeList.add(n);
-                        Region subregion = new Region(oneNodeList);
-                        subregions.add(subregion);
-                    }
-                }
-            }
-            if (bottomrightNodes.size() > 0) {
-                if (bottomrightNodes.size() < nodes.size()) {
-                    Region subregion = new Region(bottomrightNodes);
-                    subregions.add(subregion);
-                } else {
-                    for (Node n : bottomrightNodes) {
-                        ArrayList<Node> oneNodeList = new ArrayList<Node>();
-                        oneNodeList.add(n);
-                        Region subregion = new Region(oneNodeList);
-                        subregions.add(subregion);
-                    }
-                }
+        mass[r] = regionMass;
+        massCenterX[r] = centerX;
+        massCenterY[r] = centerY;
+        size[r] = regionSize;
+    }
+
+    private void buildSubRegions(int r) {
+        int from = start[r];
+        int to = end[r];
+        double centerX = massCenterX[r];
+        double centerY = massCenterY[r];
+
+        // Quadrants are top left, bottom left, bottom right and top right
+        int topLeftCount = 0;
+        int bottomLeftCount = 0;
+        int bottomRightCount = 0;
+        for (int i = from; i < to; i++) {
+            int n = order[i];
+            byte quadrant;
+            if (state.x[n] < centerX) {
+                quadrant = (byte) ((state.y[n] < centerY) ? 0 : 1);
+            } else {
+                quadrant = (byte) ((state.y[n] < centerY) ? 3 : 2);
             }
-            if (toprightNodes.size() > 0) {
-                if (toprightNodes.size() < nodes.size()) {
-                    Region subregion = new Region(toprightNodes);
-                    subregions.add(subregion);
-                } else {
-                    for (Node n : toprightNodes) {
-                        ArrayList<Node> oneNodeList = new ArrayList<Node>();
-                        oneNodeList.add(n);
-                        Region subregion = new Region(oneNodeList);
-                        subregions.add(subregion);
-                    }
-                }
+            quadrants[i] = quadrant;
+            if (quadrant == 0) {
+                topLeftCount++;
+            } else if (quadrant == 1) {
+                bottomLeftCount++;
+            } else if (quadrant == 2) {
+                bottomRightCount++;
             }
+        }
+        int bottomLeftStart = from + topLeftCount;
+        int bottomRightStart = bottomLeftStart + bottomLeftCount;
+        int topRightStart = bottomRightStart + bottomRightCount;
 
-            for (Region subregion : subregions) {
-                subregion.buildSubRegions();
+        // Group nodes by quadrant
+        int topLeft = from;
+        int bottomLeft = bottomLeftStart;
+        int bottomRight = bottomRightStart;
+        int topRight = topRightStart;
+        for (int i = from; i < to; i++) {
+            switch (quadrants[i]) {
+                case 0:
+                    buffer[topLeft++] = order[i];
+                    break;
+                case 1:
+                    buffer[bottomLeft++] = order[i];
+                    break;
+                case 2:
+                    buffer[bottomRight++] = order[i];
+                    break;
+                default:
+                    buffer[topRight++] = order[i];
             }
         }
+        System.arraycopy(buffer, from, order, from, to - from);
+
+        int last = addSubregions(r, -1, from, bottomLeftStart);
+        last = addSubregions(r, last, bottomLeftStart, bottomRightStart);
+        last = addSubregions(r, last, bottomRightStart, topRightStart);
+        addSubregions(r, last, topRightStart, to);
     }
 
-    public void applyForce(Node n, RepulsionForce Force, double theta) {
-        if (nodes.size() < 2) {
-            Node regionNode = nodes.get(0);
-            Force.apply(n, regionNode);
-        } else {
-            double distance = Math.sqrt((n.x() - massCenterX) * (n.x() - massCenterX) + (n.y() - massCenterY) * (n.y() - massCenterY));
-            if (distance * theta > size) {
-                Force.apply(n, this);
+    /**
+     * Adds the nodes of a quadrant as a subregion, or as one subregion per
+     * node if the quadrant holds all the nodes of the region.
+     */
+    private int addSubregions(int r, int last, int from, int to) {
+        if (from < to) {
+            if (to - from < end[r] - start[r]) {
+                last = addSubregion(r, last, buildRegion(from, to));
             } else {
-                for (Region subregion : subregions) {
-                    subregion.applyForce(n, Force, theta);
+                for (int i = from; i < to; i++) {
+                    last = addSubregion(r, last, buildRegion(i, i + 1));
                 }
             }
         }
+        return last;
     }
 
-    public double getMass() {
-        return mass;
+    private int addSubregion(int r, int last, int subregion) {
+        if (last == -1) {
+            firstChild[r] = subregion;
+        } else {
+            nextSibling[last] = subregion;
+        }
+        return subregion;
     }
 
-    public void setMass(double mass) {
-        this.mass = mass;
+    /**
+     * Applies the repulsion of all regions on node <code>n</code>.
+     */
+    public void applyForce(int n, RepulsionForce Force, double theta) {
+        if (regionCount > 0) {
+            applyForce(0, n, Force, theta);
+        }
     }
 
-    public double getMassCenterX() {
-        return massCenterX;
+    private void applyForce(int r, int n, RepulsionForce Force, double theta) {
+        if (end[r] - start[r] < 2) {
+            int regionNode = order[start[r]];
+            if (regionNode != n) {
+                Force.apply(n, regionNode);
+            }
+        } else {
+            double xDist = state.x[n] - massCenterX[r];
+            double yDist = state.y[n] - massCenterY[r];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist);
+            if (distance * theta > size[r]) {
+                Force.apply(n, mass[r], massCenterX[r], massCenterY[r]);
+            } else {
+                for (int subregion = firstChild[r]; subregion != -1; subregion = nextSibling[subregion]) {
+                    applyForce(subregion, n, Force, theta);
+                }
+            }
+        }
     }
 
-    public void setMassCenterX(double massCenterX) {
-        this.massCenterX = massCenterX;
+    public double getMass() {
+        return mass[0];
     }
 
-    public double getMassCenterY() {
-        return massCenterY;
+    public double getMassCenterX() {
+        return massCenterX[0];
     }
 
-    public void setMassCenterY(double massCenterY) {
-        this.massCenterY = massCenterY;
+    public double getMassCenterY() {
+        return massCenterY[0];
     }
 }
@@ -0,0 +1,191 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.forceAtlas2;
+
+/**
+ * Works on a fixed range of nodes, first to sum up the forces of the
+ * {@link NodesThread}s and {@link EdgesThread}s and the swinging of the nodes,
+ * then to move them.
+ */
+public class SpeedThread implements Runnable {
+
+    private final ForceAtlas2State state;
+    private final NodesThread[] nodesThreads;
+    private final EdgesThread[] edgesThreads;
+    private final int index;
+    private boolean applyForces;
+    private boolean adjustSizes;
+    private double speed;
+    private double totalSwinging;
+    private double totalEffectiveTraction;
+
+    SpeedThread(ForceAtlas2State state, NodesThread[] nodesThreads, EdgesThread[] edgesThreads, int index) {
+        this.state = state;
+        this.nodesThreads = nodesThreads;
+        this.edgesThreads = edgesThreads;
+        this.index = index;
+    }
+
+    /**
+     * Sets up the thread to sum up forces and swinging.
+     */
+    void setUpSwinging() {
+        applyForces = false;
+    }
+
+    /**
+     * Sets up the thread to move nodes at the given speed.
+     */
+    void setUpForces(double speed, boolean adjustSizes) {
+        this.applyForces = true;
+        this.speed = speed;
+        this.adjustSizes = adjustSizes;
+    }
+
+    double getTotalSwinging() {
+        return totalSwinging;
+    }
+
+    double getTotalEffectiveTraction() {
+        return totalEffectiveTraction;
+    }
+
+    @Override
+    public void run() {
+        int count = edgesThreads.length;
+        int from = (int) ((long) state.nodeCount * index / count);
+        int to = (int) ((long) state.nodeCount * (index + 1) / count);
+        if (applyForces) {
+            applyForces(from, to);
+        } else {
+            sumSwinging(from, to);
+        }
+    }
+
+    private void sumSwinging(int from, int to) {
+        double[] mass = state.mass;
+        double[] dx = state.dx;
+        double[] dy = state.dy;
+        double[] oldDx = state.oldDx;
+        double[] oldDy = state.oldDy;
+        boolean[] fixed = state.fixed;
+
+        // Repulsion computed pair by pair
+        for (NodesThread nodesThread : nodesThreads) {
+            if (nodesThread.hasForces()) {
+                double[] threadDx = nodesThread.getDx();
+                double[] threadDy = nodesThread.getDy();
+                for (int n = from; n < to; n++) {
+                    dx[n] += threadDx[n];
+                    dy[n] += threadDy[n];
+                    threadDx[n] = 0;
+                    threadDy[n] = 0;
+                }
+            }
+        }
+
+        // Attraction computed by the other threads
+        for (int t = 1; t < edgesThreads.length; t++) {
+            double[] threadDx = edgesThreads[t].getDx();
+            double[] threadDy = edgesThreads[t].getDy();
+            for (int n = from; n < to; n++) {
+                dx[n] += threadDx[n];
+                dy[n] += threadDy[n];
+                threadDx[n] = 0;
+                threadDy[n] = 0;
+            }
+        }
+
+        totalSwinging = 0d;  // How much irregular movement
+        totalEffectiveTraction = 0d;  // Hom much useful movement
+        for (int n = from; n < to; n++) {
+            if (!fixed[n]) {
+                double swinging = Math.sqrt((oldDx[n] - dx[n]) * (oldDx[n] - dx[n]) + (oldDy[n] - dy[n]) * (oldDy[n] - dy[n]));
+                totalSwinging += mass[n] * swinging;   // If the node has a burst change of direction, then it's not converging.
+                totalEffectiveTraction += mass[n] * 0.5 * Math.sqrt((oldDx[n] + dx[n]) * (oldDx[n] + dx[n]) + (oldDy[n] + dy[n]) * (oldDy[n] + dy[n]));
+            }
+        }
+    }
+
+    private void applyForces(int from, int to) {
+        double[] x = state.x;
+        double[] y = state.y;
+        double[] dx = state.dx;
+        double[] dy = state.dy;
+        double[] oldDx = state.oldDx;
+        double[] oldDy = state.oldDy;
+        boolean[] fixed = state.fixed;
+
+        if (adjustSizes) {
+            // If nodes overlap prevention is active, it's not possible to trust the swinging mesure.
+            for (int n = from; n < to; n++) {
+                if (!fixed[n]) {
+
+                    // Adaptive auto-speed: the speed of each node is lowered
+                    // when the node swings.
+                    double swinging = Math.sqrt((oldDx[n] - dx[n]) * (oldDx[n] - dx[n]) + (oldDy[n] - dy[n]) * (oldDy[n] - dy[n]));
+                    double factor = 0.1 * speed / (1f + speed * Math.sqrt(swinging));
+
+                    double df = Math.sqrt(dx[n] * dx[n] + dy[n] * dy[n]);
+                    factor = Math.min(factor * df, 10.) / df;
+
+                    x[n] += dx[n] * factor;
+                    y[n] += dy[n] * factor;
+                }
+            }
+        } else {
+            for (int n = from; n < to; n++) {
+                if (!fixed[n]) {
+
+                    // Adaptive auto-speed: the speed of each node is lowered
+                    // when the node swings.
+                    double swinging = Math.sqrt((oldDx[n] - dx[n]) * (oldDx[n] - dx[n]) + (oldDy[n] - dy[n]) * (oldDy[n] - dy[n]));
+                    //double factor = speed / (1f + Math.sqrt(speed * swinging));
+                    double factor = speed / (1f + speed * Math.sqrt(swinging));
+
+                    x[n] += dx[n] * factor;
+                    y[n] += dy[n] * factor;
+                }
+            }
+        }
+        state.writePositions(from, to);
+    }
+}
@@ -43,14 +43,24 @@ package org.gephi.layout.plugin.fruchterman;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.Node;
 import org.gephi.layout.plugin.AbstractLayout;
 import org.gephi.layout.plugin.ForceVectorNodeLayoutData;
+import org.gephi.layout.plugin.force.AbstractForce;
+import org.gephi.layout.plugin.force.ForceVector;
+import org.gephi.layout.plugin.force.quadtree.BarnesHut;
+import org.gephi.layout.plugin.force.quadtree.QuadTree;
 import org.gephi.layout.spi.Layout;
 import org.gephi.layout.spi.LayoutBuilder;
 import org.gephi.layout.spi.LayoutProperty;
+import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
 
 /**
@@ -61,15 +71,25 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
 
     private static final float SPEED_DIVISOR = 800;
     private static final float AREA_MULTIPLICATOR = 10000;
+    private static final int QUADTREE_MAX_LEVEL = 10;
+    private static final int CHUNK_SIZE = 64;
     //Graph
     protected Graph graph;
     //Properties
     private float area;
     private double gravity;
     private double speed;
+    private boolean barnesHutOptimize;
+    private double barnesHutTheta;
+    private int threadCount;
+    //Threads
+    private ExecutorService pool;
+    private int currentThreadCount;
+    private final AtomicInteger nextNode = new AtomicInteger();
 
     public FruchtermanReingold(LayoutBuilder layoutBuilder) {
         super(layoutBuilder);
+        this.threadCount = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
     }
 
     @Override
@@ -77,10 +97,20 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
         speed = 1;
         area = 10000;
         gravity = 10;
+        barnesHutTheta = 1.2;
+
+        // Exact repulsion is quadratic, only keep it for small graphs
+        int nodesCount = 0;
+        if (graphModel != null) {
+            nodesCount = graphModel.getGraphVisible().getNodeCount();
+        }
+        barnesHutOptimize = nodesCount >= 5000;
     }
 
     @Override
     public void initAlgo() {
+        currentThreadCount = threadCount;
+        pool = Executors.newFixedThreadPool(currentThreadCount);
     }
 
     @Override
@@ -102,22 +132,22 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
         float maxDisplace = (float) (Math.sqrt(AREA_MULTIPLICATOR * area) / 10f);					// Déplacement limite : on peut le calibrer...
         float k = (float) Math.sqrt((AREA_MULTIPLICATOR * area) / (1f + nodes.length));		// La variable k, l'idée principale du layout.
 
-        for (Node N1 : nodes) {
-            for (Node N2 : nodes) {	// On fait toutes les paires de noeuds
-                if (N1 != N2) {
-                    float xDist = N1.x() - N2.x();	// distance en x entre les deux noeuds
-                    float yDist = N1.y() - N2.y();
-                    float dist = (float) Math.sqrt(xDist * xDist + yDist * yDist);	// distance tout court
-
-                    if (dist > 0) {
-                        float repulsiveF = k * k / dist;			// Force de répulsion
-                        ForceVectorNodeLayoutData layoutData = N1.getLayoutData();
-                        layoutData.dx += xDist / dist * repulsiveF;		// on l'applique...
-                        layoutData.dy += yDist / dist * repulsiveF;
-                    }
-                }
-            }
+        // Repulsion
+        // NB: Multi-threaded, each thread only writes the forces of its own nodes
+        QuadTree tree = null;
+        BarnesHut barnesHut = null;
+        if (barnesHutOptimize) {
+            tree = QuadTree.buildTree(graph, QUADTREE_MAX_LEVEL);
+            barnesHut = new BarnesHut(new RepulsionForce(k));
+            barnesHut.setTheta((float) barnesHutTheta);
+        }
+        nextNode.set(0);
+        RepulsionThread[] repulsionThreads = new RepulsionThread[currentThreadCount];
+        for (int i = 0; i < repulsionThreads.length; i++) {
+            repulsionThreads[i] = new RepulsionThread(nodes, k, tree, barnesHut);
         }
+        execute(repulsionThreads);
+
         for (Edge E : edges) {
             // Idem, pour tous les noeuds on applique la force d'attraction
 
@@ -169,11 +199,32 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
         graph.readUnlock();
     }
 
+    private void execute(Runnable[] tasks) {
+        if (tasks.length == 1) {
+            tasks[0].run();
+        } else {
+            ArrayList<Future> threads = new ArrayList<Future>(tasks.length);
+            for (Runnable task : tasks) {
+                threads.add(pool.submit(task));
+            }
+            for (Future future : threads) {
+                try {
+                    future.get();
+                } catch (InterruptedException ex) {
+                    Exceptions.printStackTrace(ex);
+                } catch (ExecutionException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+        }
+    }
+
     @Override
     public void endAlgo() {
         for (Node n : graph.getNodes()) {
             n.setLayoutData(null);
         }
+        pool.shutdown();
     }
 
     @Override
@@ -208,6 +259,27 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
                     "fruchtermanReingold.speed.name",
                     NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.speed.desc"),
                     "getSpeed", "setSpeed"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Boolean.class,
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.barnesHutOptimize.name"),
+                    FRUCHTERMAN_REINGOLD,
+                    "fruchtermanReingold.barnesHutOptimize.name",
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.barnesHutOptimize.desc"),
+                    "isBarnesHutOptimize", "setBarnesHutOptimize"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Double.class,
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.barnesHutTheta.name"),
+                    FRUCHTERMAN_REINGOLD,
+                    "fruchtermanReingold.barnesHutTheta.name",
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.barnesHutTheta.desc"),
+                    "getBarnesHutTheta", "setBarnesHutTheta"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.threads.name"),
+                    FRUCHTERMAN_REINGOLD,
+                    "fruchtermanReingold.threads.name",
+                    NbBundle.getMessage(FruchtermanReingold.class, "fruchtermanReingold.threads.desc"),
+                    "getThreadsCount", "setThreadsCount"));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -250,4 +322,106 @@ public class FruchtermanReingold extends AbstractLayout implements Layout {
     public void setSpeed(Double speed) {
         this.speed = speed;
     }
+
+    public Boolean isBarnesHutOptimize() {
+        return barnesHutOptimize;
+    }
+
+    public void setBarnesHutOptimize(Boolean barnesHutOptimize) {
+        this.barnesHutOptimize = barnesHutOptimize;
+    }
+
+    public Double getBarnesHutTheta() {
+        return barnesHutTheta;
+    }
+
+    public void setBarnesHutTheta(Double barnesHutTheta) {
+        this.barnesHutTheta = barnesHutTheta;
+    }
+
+    public Integer getThreadsCount() {
+        return threadCount;
+    }
+
+    public void setThreadsCount(Integer threadCount) {
+        if (threadCount < 1) {
+            setThreadsCount(1);
+        } else {
+            this.threadCount = threadCount;
+        }
+    }
+
+    /**
+     * Computes the repulsion of chunks of nodes, either against every other
+     * node or against the cells of a quadtree.
+     */
+    private class RepulsionThread implements Runnable {
+
+        private final Node[] nodes;
+        private final float k;
+        private final QuadTree tree;
+        private final BarnesHut barnesHut;
+
+        public RepulsionThread(Node[] nodes, float k, QuadTree tree, BarnesHut barnesHut) {
+            this.nodes = nodes;
+            this.k = k;
+            this.tree = tree;
+            this.barnesHut = barnesHut;
+        }
+
+        @Override
+        public void run() {
+            int from;
+            while ((from = nextNode.getAndAdd(CHUNK_SIZE)) < nodes.length) {
+                int to = Math.min(from + CHUNK_SIZE, nodes.length);
+                for (int i = from; i < to; i++) {
+                    Node N1 = nodes[i];
+                    ForceVectorNodeLayoutData layoutData = N1.getLayoutData();
+                    if (barnesHut != null) {
+                        ForceVector f = barnesHut.calculateForce(N1, tree);
+                        if (f != null) {
+                            layoutData.dx += f.x();
+                            layoutData.dy += f.y();
+                        }
+                    } else {
+                        for (Node N2 : nodes) {	// On fait toutes les paires de noeuds
+                            if (N1 != N2) {
+                                float xDist = N1.x() - N2.x();	// distance en x entre les deux noeuds
+                                float yDist = N1.y() - N2.y();
+                                float dist = (float) Math.sqrt(xDist * xDist + yDist * yDist);	// distance tout court
+
+                                if (dist > 0) {
+                                    float repulsiveF = k * k / dist;			// Force de répulsion
+                                    layoutData.dx += xDist / dist * repulsiveF;		// on l'applique...
+                                    layoutData.dy += yDist / dist * repulsiveF;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Repulsion between a node and a node or a quadtree cell, k² / distance.
+     */
+    private static class RepulsionForce extends AbstractForce {
+
+        private final float k;
+
+        public RepulsionForce(float k) {
+            this.k = k;
+        }
+
+        @Override
+        public ForceVector calculateForce(Node node1, Node node2, float distance) {
+            if (distance <= 0) {
+                return null;
+            }
+            ForceVector f = new ForceVector(node1.x() - node2.x(), node1.y() - node2.y());
+            f.multiply(k * k / (distance * distance));
+            return f;
+        }
+    }
 }
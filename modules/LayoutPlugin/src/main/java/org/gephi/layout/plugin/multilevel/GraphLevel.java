@@ -0,0 +1,317 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.multilevel;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+/**
+ * One level of a multilevel hierarchy: an undirected weighted graph stored in
+ * compressed rows. Each node of a coarser level stands for a group of nodes of
+ * the finer one, whose positions it averages.
+ * <p>
+ * Levels are coarsened by heavy edge matching: nodes are matched with the
+ * unmatched neighbor they share the heaviest edge with, relative to the
+ * masses of both. Nodes left over, typically leaves of a hub, join the
+ * lightest group among their neighbors.
+ */
+public class GraphLevel {
+
+    private final int nodeCount;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final double[] weights;
+    private final int[] masses;
+    private final double[] x;
+    private final double[] y;
+    private int[] parents;
+
+    private GraphLevel(int nodeCount, int[] offsets, int[] neighbors, double[] weights, int[] masses, double[] x, double[] y) {
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.weights = weights;
+        this.masses = masses;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Creates the finest level from the given nodes of <code>graph</code>,
+     * read locked by the caller. Self-loops are ignored and edge directions
+     * dropped.
+     *
+     * @param graph the graph
+     * @param nodes the nodes of the graph, in the order of the level's indices
+     * @return the finest level
+     */
+    public static GraphLevel create(Graph graph, Node[] nodes) {
+        int nodeCount = nodes.length;
+        Edge[] edges = graph.getEdges().toArray();
+        int[] sources = new int[edges.length];
+        int[] targets = new int[edges.length];
+        double[] edgeWeights = new double[edges.length];
+        int maxStoreId = -1;
+        for (Node n : nodes) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
+        }
+        int[] indexByStoreId = new int[maxStoreId + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            indexByStoreId[nodes[i].getStoreId()] = i;
+        }
+        int edgeCount = 0;
+        for (Edge e : edges) {
+            if (e.getSource() != e.getTarget()) {
+                sources[edgeCount] = indexByStoreId[e.getSource().getStoreId()];
+                targets[edgeCount] = indexByStoreId[e.getTarget().getStoreId()];
+                edgeWeights[edgeCount] = e.getWeight();
+                edgeCount++;
+            }
+        }
+
+        int[] masses = new int[nodeCount];
+        double[] x = new double[nodeCount];
+        double[] y = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            masses[i] = 1;
+            x[i] = nodes[i].x();
+            y[i] = nodes[i].y();
+        }
+        return fromEdges(nodeCount, sources, targets, edgeWeights, edgeCount, masses, x, y);
+    }
+
+    /**
+     * Builds rows from edges, both ways, summing the weights of parallel
+     * edges.
+     */
+    private static GraphLevel fromEdges(int nodeCount, int[] sources, int[] targets, double[] edgeWeights, int edgeCount,
+            int[] masses, double[] x, double[] y) {
+        int[] counts = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            counts[sources[e] + 1]++;
+            counts[targets[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[] rowNeighbors = new int[counts[nodeCount]];
+        double[] rowWeights = new double[counts[nodeCount]];
+        int[] positions = Arrays.copyOf(counts, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int s = sources[e];
+            int t = targets[e];
+            rowNeighbors[positions[s]] = t;
+            rowWeights[positions[s]++] = edgeWeights[e];
+            rowNeighbors[positions[t]] = s;
+            rowWeights[positions[t]++] = edgeWeights[e];
+        }
+
+        // Merge parallel edges
+        int[] offsets = new int[nodeCount + 1];
+        int[] marks = new int[nodeCount];
+        Arrays.fill(marks, -1);
+        int count = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i] = count;
+            for (int j = counts[i]; j < counts[i + 1]; j++) {
+                int neighbor = rowNeighbors[j];
+                if (marks[neighbor] < offsets[i]) {
+                    marks[neighbor] = count;
+                    rowNeighbors[count] = neighbor;
+                    rowWeights[count++] = rowWeights[j];
+                } else {
+                    rowWeights[marks[neighbor]] += rowWeights[j];
+                }
+            }
+        }
+        offsets[nodeCount] = count;
+        return new GraphLevel(nodeCount, offsets, Arrays.copyOf(rowNeighbors, count), Arrays.copyOf(rowWeights, count), masses, x, y);
+    }
+
+    /**
+     * Groups the nodes of this level into the nodes of a coarser one.
+     *
+     * @param random the random generator for the order nodes are matched in
+     * @return the coarser level
+     */
+    public GraphLevel coarsen(Random random) {
+        parents = new int[nodeCount];
+        Arrays.fill(parents, -1);
+        int coarseCount = 0;
+
+        int[] order = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            order[i] = i;
+        }
+        for (int i = nodeCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        // Heavy edge matching
+        for (int u : order) {
+            if (parents[u] != -1) {
+                continue;
+            }
+            int best = -1;
+            double bestWeight = 0;
+            for (int j = offsets[u]; j < offsets[u + 1]; j++) {
+                int v = neighbors[j];
+                double weight = weights[j] / ((double) masses[u] * masses[v]);
+                if (parents[v] == -1 && (best == -1 || weight > bestWeight)) {
+                    best = v;
+                    bestWeight = weight;
+                }
+            }
+            if (best != -1) {
+                parents[u] = coarseCount;
+                parents[best] = coarseCount++;
+            } else if (offsets[u] == offsets[u + 1]) {
+                parents[u] = coarseCount++;
+            }
+        }
+
+        int[] coarseMasses = new int[coarseCount + nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            if (parents[i] != -1) {
+                coarseMasses[parents[i]] += masses[i];
+            }
+        }
+
+        // Nodes whose neighbors are all matched join the lightest neighbor group
+        for (int u : order) {
+            if (parents[u] == -1) {
+                int best = -1;
+                for (int j = offsets[u]; j < offsets[u + 1]; j++) {
+                    int parent = parents[neighbors[j]];
+                    if (parent != -1 && (best == -1 || coarseMasses[parent] < coarseMasses[best])) {
+                        best = parent;
+                    }
+                }
+                if (best == -1) {
+                    best = coarseCount++;
+                }
+                parents[u] = best;
+                coarseMasses[best] += masses[u];
+            }
+        }
+
+        double[] coarseX = new double[coarseCount];
+        double[] coarseY = new double[coarseCount];
+        for (int i = 0; i < nodeCount; i++) {
+            coarseX[parents[i]] += x[i] * masses[i];
+            coarseY[parents[i]] += y[i] * masses[i];
+        }
+        for (int i = 0; i < coarseCount; i++) {
+            coarseX[i] /= coarseMasses[i];
+            coarseY[i] /= coarseMasses[i];
+        }
+
+        // Edges between groups
+        int[] sources = new int[neighbors.length / 2];
+        int[] targets = new int[neighbors.length / 2];
+        double[] edgeWeights = new double[neighbors.length / 2];
+        int edgeCount = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            for (int j = offsets[u]; j < offsets[u + 1]; j++) {
+                int v = neighbors[j];
+                if (u < v && parents[u] != parents[v]) {
+                    sources[edgeCount] = parents[u];
+                    targets[edgeCount] = parents[v];
+                    edgeWeights[edgeCount++] = weights[j];
+                }
+            }
+        }
+        return fromEdges(coarseCount, sources, targets, edgeWeights, edgeCount, Arrays.copyOf(coarseMasses, coarseCount), coarseX, coarseY);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return neighbors.length / 2;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    public double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Returns the number of nodes of the finest level each node stands for.
+     */
+    public int[] getMasses() {
+        return masses;
+    }
+
+    /**
+     * Returns the x positions, averaged from the finest level until the
+     * level is laid out.
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * Returns the index in the coarser level of each node, once
+     * {@link #coarsen(Random)} has been called.
+     */
+    public int[] getParents() {
+        return parents;
+    }
+}
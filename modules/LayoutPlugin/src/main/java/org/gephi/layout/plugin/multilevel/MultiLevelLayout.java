@@ -0,0 +1,348 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.multilevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.layout.plugin.AbstractLayout;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutProperty;
+import org.openide.util.Exceptions;
+import org.openide.util.Lookup;
+import org.openide.util.NbBundle;
+
+/**
+ * Runs a force-directed layout on successively coarsened versions of the
+ * graph, from the coarsest to the graph itself. Each level starts from the
+ * positions of the coarser one, so the layout only has to refine local
+ * structure at each level.
+ * <p>
+ * Coarse levels are laid out in graph models that don't belong to any
+ * workspace. The properties of the wrapped layout apply to all levels.
+ * <p>
+ * Ref: Yifan Hu, Efficient and High Quality Force-Directed Graph Drawing, The
+ * Mathematica Journal 10 (1), 2005
+ */
+public class MultiLevelLayout extends AbstractLayout implements Layout {
+
+    private final Layout layout;
+    private final Random random = new Random();
+    private int coarsestLevelSize;
+    private int levelIterations;
+    private double maxCoarseningRatio;
+    private List<GraphLevel> levels;
+    private Node[] nodes;
+    private int level;
+    private int iterations;
+    private Node[] levelNodes;
+
+    public MultiLevelLayout(LayoutBuilder layoutBuilder, Layout layout) {
+        super(layoutBuilder);
+        this.layout = layout;
+    }
+
+    @Override
+    public void setGraphModel(GraphModel graphModel) {
+        super.setGraphModel(graphModel);
+        layout.setGraphModel(graphModel);
+    }
+
+    @Override
+    public void initAlgo() {
+        if (graphModel == null) {
+            return;
+        }
+        setConverged(false);
+
+        Graph graph = graphModel.getGraphVisible();
+        graph.readLock();
+        try {
+            nodes = graph.getNodes().toArray();
+            levels = new ArrayList<GraphLevel>();
+            GraphLevel current = GraphLevel.create(graph, nodes);
+            levels.add(current);
+            while (current.getNodeCount() > coarsestLevelSize) {
+                GraphLevel coarser = current.coarsen(random);
+                if (coarser.getNodeCount() > maxCoarseningRatio * current.getNodeCount()) {
+                    break;
+                }
+                levels.add(coarser);
+                current = coarser;
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        level = levels.size() - 1;
+        startLevel();
+    }
+
+    /**
+     * Sets the wrapped layout up on the current level.
+     */
+    private void startLevel() {
+        iterations = 0;
+        if (level == 0) {
+            setLayoutGraphModel(graphModel);
+            levelNodes = null;
+        } else {
+            GraphModel levelModel = createLevelModel(levels.get(level));
+            setLayoutGraphModel(levelModel);
+        }
+        layout.initAlgo();
+    }
+
+    private GraphModel createLevelModel(GraphLevel graphLevel) {
+        GraphModel levelModel = Lookup.getDefault().lookup(GraphController.class).createGraphModel();
+        Graph levelGraph = levelModel.getUndirectedGraph();
+
+        double nodeSize = 0;
+        for (Node n : nodes) {
+            nodeSize += n.size();
+        }
+        nodeSize = nodes.length > 0 ? nodeSize / nodes.length : 1;
+
+        int nodeCount = graphLevel.getNodeCount();
+        int[] masses = graphLevel.getMasses();
+        double[] x = graphLevel.getX();
+        double[] y = graphLevel.getY();
+        levelNodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = levelModel.factory().newNode();
+            n.setX((float) x[i]);
+            n.setY((float) y[i]);
+            n.setSize((float) (nodeSize * Math.sqrt(masses[i])));
+            levelGraph.addNode(n);
+            levelNodes[i] = n;
+        }
+        int[] offsets = graphLevel.getOffsets();
+        int[] neighbors = graphLevel.getNeighbors();
+        double[] weights = graphLevel.getWeights();
+        for (int i = 0; i < nodeCount; i++) {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                if (i < neighbors[j]) {
+                    levelGraph.addEdge(levelModel.factory().newEdge(levelNodes[i], levelNodes[neighbors[j]], 0, weights[j], false));
+                }
+            }
+        }
+        return levelModel;
+    }
+
+    /**
+     * Gives a graph model to the wrapped layout, keeping the values of its
+     * properties, which layouts may reset when their graph model changes.
+     */
+    private void setLayoutGraphModel(GraphModel model) {
+        LayoutProperty[] properties = layout.getProperties();
+        Object[] values = new Object[properties.length];
+        try {
+            for (int i = 0; i < properties.length; i++) {
+                values[i] = properties[i].getProperty().getValue();
+            }
+            layout.setGraphModel(model);
+            for (int i = 0; i < properties.length; i++) {
+                properties[i].getProperty().setValue(values[i]);
+            }
+        } catch (Exception e) {
+            Exceptions.printStackTrace(e);
+        }
+    }
+
+    @Override
+    public void goAlgo() {
+        if (layout.canAlgo()) {
+            layout.goAlgo();
+            iterations++;
+        }
+        if (level > 0 && (iterations >= levelIterations || !layout.canAlgo())) {
+            layout.endAlgo();
+            refineLevel();
+            level--;
+            startLevel();
+        } else if (level == 0 && !layout.canAlgo()) {
+            setConverged(true);
+        }
+    }
+
+    /**
+     * Places the nodes of the finer level around the node of the current
+     * level they were grouped into.
+     */
+    private void refineLevel() {
+        GraphLevel coarse = levels.get(level);
+        GraphLevel fine = levels.get(level - 1);
+        int coarseCount = coarse.getNodeCount();
+        double[] coarseX = new double[coarseCount];
+        double[] coarseY = new double[coarseCount];
+        for (int i = 0; i < coarseCount; i++) {
+            coarseX[i] = levelNodes[i].x();
+            coarseY[i] = levelNodes[i].y();
+        }
+
+        // Groups are spread over a fraction of the average edge length
+        double edgeLength = 0;
+        int[] offsets = coarse.getOffsets();
+        int[] neighbors = coarse.getNeighbors();
+        for (int i = 0; i < coarseCount; i++) {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                int neighbor = neighbors[j];
+                edgeLength += Math.sqrt((coarseX[i] - coarseX[neighbor]) * (coarseX[i] - coarseX[neighbor])
+                        + (coarseY[i] - coarseY[neighbor]) * (coarseY[i] - coarseY[neighbor]));
+            }
+        }
+        double radius = neighbors.length > 0 ? 0.1 * edgeLength / neighbors.length : 1;
+
+        int[] parents = fine.getParents();
+        double[] x = fine.getX();
+        double[] y = fine.getY();
+        for (int i = 0; i < fine.getNodeCount(); i++) {
+            double angle = 2 * Math.PI * random.nextDouble();
+            double distance = radius * Math.sqrt(random.nextDouble());
+            x[i] = coarseX[parents[i]] + distance * Math.cos(angle);
+            y[i] = coarseY[parents[i]] + distance * Math.sin(angle);
+        }
+
+        if (level - 1 == 0) {
+            Graph graph = graphModel.getGraphVisible();
+            graph.readLock();
+            try {
+                for (int i = 0; i < nodes.length; i++) {
+                    if (!nodes[i].isFixed()) {
+                        nodes[i].setX((float) x[i]);
+                        nodes[i].setY((float) y[i]);
+                    }
+                }
+            } finally {
+                graph.readUnlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean canAlgo() {
+        return graphModel != null && !isConverged();
+    }
+
+    @Override
+    public void endAlgo() {
+        layout.endAlgo();
+        if (level > 0) {
+            setLayoutGraphModel(graphModel);
+        }
+        levels = null;
+        nodes = null;
+        levelNodes = null;
+    }
+
+    @Override
+    public LayoutProperty[] getProperties() {
+        List<LayoutProperty> properties = new ArrayList<LayoutProperty>();
+        final String MULTILEVEL = NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.category");
+
+        try {
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.coarsestLevelSize.name"),
+                    MULTILEVEL,
+                    "MultiLevel.coarsestLevelSize.name",
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.coarsestLevelSize.desc"),
+                    "getCoarsestLevelSize", "setCoarsestLevelSize"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Integer.class,
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.levelIterations.name"),
+                    MULTILEVEL,
+                    "MultiLevel.levelIterations.name",
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.levelIterations.desc"),
+                    "getLevelIterations", "setLevelIterations"));
+            properties.add(LayoutProperty.createProperty(
+                    this, Double.class,
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.maxCoarseningRatio.name"),
+                    MULTILEVEL,
+                    "MultiLevel.maxCoarseningRatio.name",
+                    NbBundle.getMessage(MultiLevelLayout.class, "MultiLevel.maxCoarseningRatio.desc"),
+                    "getMaxCoarseningRatio", "setMaxCoarseningRatio"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        properties.addAll(Arrays.asList(layout.getProperties()));
+
+        return properties.toArray(new LayoutProperty[0]);
+    }
+
+    @Override
+    public void resetPropertiesValues() {
+        setCoarsestLevelSize(100);
+        setLevelIterations(100);
+        setMaxCoarseningRatio(0.75);
+        layout.resetPropertiesValues();
+    }
+
+    public Integer getCoarsestLevelSize() {
+        return coarsestLevelSize;
+    }
+
+    public void setCoarsestLevelSize(Integer coarsestLevelSize) {
+        this.coarsestLevelSize = Math.max(2, coarsestLevelSize);
+    }
+
+    public Integer getLevelIterations() {
+        return levelIterations;
+    }
+
+    public void setLevelIterations(Integer levelIterations) {
+        this.levelIterations = Math.max(1, levelIterations);
+    }
+
+    public Double getMaxCoarseningRatio() {
+        return maxCoarseningRatio;
+    }
+
+    public void setMaxCoarseningRatio(Double maxCoarseningRatio) {
+        this.maxCoarseningRatio = maxCoarseningRatio;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.layout.plugin.multilevel;
+
+import javax.swing.Icon;
+import javax.swing.JPanel;
+import org.gephi.layout.spi.Layout;
+import org.gephi.layout.spi.LayoutBuilder;
+import org.gephi.layout.spi.LayoutUI;
+
+/**
+ * Builder of a {@link MultiLevelLayout} wrapping the layouts of another
+ * builder. Subclasses only choose the wrapped builder and describe the layout.
+ */
+public abstract class MultiLevelLayoutBuilder implements LayoutBuilder {
+
+    private final LayoutBuilder layoutBuilder;
+    private final String name;
+    private final LayoutUI ui;
+
+    protected MultiLevelLayoutBuilder(LayoutBuilder layoutBuilder, String name, String description, int qualityRank, int speedRank) {
+        this.layoutBuilder = layoutBuilder;
+        this.name = name;
+        this.ui = new MultiLevelLayoutUI(description, qualityRank, speedRank);
+    }
+
+    @Override
+    public MultiLevelLayout buildLayout() {
+        return new MultiLevelLayout(this, layoutBuilder.buildLayout());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public LayoutUI getUI() {
+        return ui;
+    }
+
+    private static class MultiLevelLayoutUI implements LayoutUI {
+
+        private final String description;
+        private final int qualityRank;
+        private final int speedRank;
+
+        public MultiLevelLayoutUI(String description, int qualityRank, int speedRank) {
+            this.description = description;
+            this.qualityRank = qualityRank;
+            this.speedRank = speedRank;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public Icon getIcon() {
+            return null;
+        }
+
+        @Override
+        public JPanel getSimplePanel(Layout layout) {
+            return null;
+        }
+
+        @Override
+        public int getQualityRank() {
+            return qualityRank;
+        }
+
+        @Override
+        public int getSpeedRank() {
+            return speedRank;
+        }
+    }
+}
@@ -42,15 +42,23 @@
 package org.gephi.io.processor.plugin;
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import org.gephi.attribute.api.AttributeModel;
+import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.AttributeUtils;
 import org.gephi.attribute.api.Origin;
 import org.gephi.attribute.api.Table;
 import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.GraphFactory;
 import org.gephi.graph.api.Node;
 import org.gephi.io.importer.api.ColumnDraft;
 import org.gephi.io.importer.api.ContainerUnloader;
+import org.gephi.io.importer.api.EdgeDirection;
 import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.ElementDraft;
 import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.project.api.Workspace;
 
@@ -60,6 +68,9 @@ import org.gephi.project.api.Workspace;
  */
 public abstract class AbstractProcessor {
 
+    //Number of edges created and pushed to the graph at once
+    protected static final int EDGE_BATCH_SIZE = 1 << 16;
+
     protected Workspace workspace;
     protected ContainerUnloader container;
     protected AttributeModel attributeModel;
@@ -88,6 +99,13 @@ public abstract class AbstractProcessor {
     }
 
     protected void flushToNode(NodeDraft nodeDraft, Node node) {
+        flushToNodeProperties(nodeDraft, node);
+
+        //Attributes
+        flushToNodeAttributes(nodeDraft, node);
+    }
+
+    protected void flushToNodeProperties(NodeDraft nodeDraft, Node node) {
         if (nodeDraft.getColor() != null) {
             node.setColor(nodeDraft.getColor());
         }
@@ -118,9 +136,6 @@ public abstract class AbstractProcessor {
         } else {
             node.setSize(10f);
         }
-
-        //Attributes
-        flushToNodeAttributes(nodeDraft, node);
     }
 
     protected void flushToNodeAttributes(NodeDraft nodeDraft, Node node) {
@@ -145,6 +160,13 @@ public abstract class AbstractProcessor {
     }
 
     protected void flushToEdge(EdgeDraft edgeDraft, Edge edge) {
+        flushToEdgeProperties(edgeDraft, edge);
+
+        //Attributes
+        flushToEdgeAttributes(edgeDraft, edge);
+    }
+
+    protected void flushToEdgeProperties(EdgeDraft edgeDraft, Edge edge) {
         if (edgeDraft.getColor() != null) {
             edge.setColor(edgeDraft.getColor());
         } else {
@@ -170,9 +192,6 @@ public abstract class AbstractProcessor {
             Color labelColor = edgeDraft.getLabelColor();
             edge.getTextProperties().setColor(labelColor);
         }
-
-        //Attributes
-        flushToEdgeAttributes(edgeDraft, edge);
     }
 
     protected void flushToEdgeAttributes(EdgeDraft edgeDraft, Edge edge) {
@@ -196,6 +215,108 @@ public abstract class AbstractProcessor {
         }
     }
 
+    /**
+     * Returns the node drafts of the container, indexed by their container
+     * index.
+     *
+     * @return the node drafts
+     */
+    protected NodeDraft[] getNodeDrafts() {
+        NodeDraft[] nodeDrafts = new NodeDraft[container.getNodeCount()];
+        for (NodeDraft nodeDraft : container.getNodes()) {
+            nodeDrafts[container.getNodeIndex(nodeDraft)] = nodeDraft;
+        }
+        return nodeDrafts;
+    }
+
+    /**
+     * Returns the next batch of at most <code>EDGE_BATCH_SIZE</code> edge
+     * drafts from <code>iterator</code>, in container order. Edges are pushed
+     * to the graph batch by batch, so containers which keep their edges out of
+     * the heap never have all of them in memory at once.
+     *
+     * @param iterator the container edges
+     * @return the next edge drafts, empty when <code>iterator</code> is done
+     */
+    protected EdgeDraft[] nextEdgeDrafts(Iterator<EdgeDraft> iterator) {
+        List<EdgeDraft> edgeDrafts = new ArrayList<EdgeDraft>();
+        while (edgeDrafts.size() < EDGE_BATCH_SIZE && iterator.hasNext()) {
+            edgeDrafts.add(iterator.next());
+        }
+        return edgeDrafts.toArray(new EdgeDraft[edgeDrafts.size()]);
+    }
+
+    /**
+     * Creates the graph edge for <code>edgeDraft</code>, directed according to
+     * the container edge default. The edge is not added to the graph.
+     */
+    protected Edge newEdge(GraphFactory factory, EdgeDraft edgeDraft, Node source, Node target, int edgeType) {
+        boolean directed;
+        switch (container.getEdgeDefault()) {
+            case DIRECTED:
+                directed = true;
+                break;
+            case UNDIRECTED:
+                directed = false;
+                break;
+            default:
+                directed = edgeDraft.getDirection() == null || !edgeDraft.getDirection().equals(EdgeDirection.UNDIRECTED);
+        }
+        return factory.newEdge(edgeDraft.getId(), source, target, edgeType, edgeDraft.getWeight(), directed);
+    }
+
+    /**
+     * Flushes all node drafts to the nodes at the same positions. Properties
+     * are copied node by node and attributes column by column.
+     */
+    protected void flushToNodes(NodeDraft[] nodeDrafts, Node[] nodes) {
+        for (int i = 0; i < nodeDrafts.length; i++) {
+            flushToNodeProperties(nodeDrafts[i], nodes[i]);
+        }
+        Table nodeTable = attributeModel.getNodeTable();
+        for (ColumnDraft col : container.getNodeColumns()) {
+            flushColumn(col, nodeTable.getColumn(col.getId()), nodeDrafts, nodes);
+        }
+    }
+
+    /**
+     * Flushes all edge drafts to the edges at the same positions. Properties
+     * are copied edge by edge and attributes column by column.
+     */
+    protected void flushToEdges(EdgeDraft[] edgeDrafts, Edge[] edges) {
+        for (int i = 0; i < edgeDrafts.length; i++) {
+            flushToEdgeProperties(edgeDrafts[i], edges[i]);
+        }
+        Table edgeTable = attributeModel.getEdgeTable();
+        for (ColumnDraft col : container.getEdgeColumns()) {
+            flushColumn(col, edgeTable.getColumn(col.getId()), edgeDrafts, edges);
+        }
+    }
+
+    private void flushColumn(ColumnDraft col, Column column, ElementDraft[] drafts, Element[] elements) {
+        String key = col.getId();
+        if (col.isDynamic()) {
+            for (int i = 0; i < drafts.length; i++) {
+                double[] timestamps = drafts[i].getTimestamps(key);
+                if (timestamps != null) {
+                    for (double d : timestamps) {
+                        Object val = drafts[i].getValue(key, d);
+                        if (val != null) {
+                            elements[i].setAttribute(column, val, d);
+                        }
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < drafts.length; i++) {
+                Object val = drafts[i].getValue(key);
+                if (val != null) {
+                    elements[i].setAttribute(column, val);
+                }
+            }
+        }
+    }
+
     public void setWorkspace(Workspace workspace) {
         this.workspace = workspace;
     }
@@ -41,13 +41,15 @@
  */
 package org.gephi.io.processor.plugin;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphFactory;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.io.importer.api.EdgeDirection;
 import org.gephi.io.importer.api.EdgeDraft;
 import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.io.processor.spi.Processor;
@@ -106,50 +108,68 @@ public class AppendProcessor extends AbstractProcessor implements Processor {
 //            dynamicController.setTimeFormat(container.getTimeFormat());
 //        }
 
-        int nodeCount = 0;
-        //Create all nodes
-        for (NodeDraft draftNode : container.getNodes()) {
-            String id = draftNode.getId();
+        //Match or create all nodes, edge ends are resolved by container index
+        NodeDraft[] nodeDrafts = getNodeDrafts();
+        Node[] nodes = new Node[nodeDrafts.length];
+        boolean[] created = new boolean[nodeDrafts.length];
+        List<Node> newNodes = new ArrayList<Node>();
+        for (int i = 0; i < nodeDrafts.length; i++) {
+            String id = nodeDrafts[i].getId();
             Node node = graph.getNode(id);
             if (node == null) {
                 node = factory.newNode(id);
-                graph.addNode(node);
-                nodeCount++;
+                newNodes.add(node);
+                created[i] = true;
             }
-            flushToNode(draftNode, node);
+            nodes[i] = node;
+        }
+        flushToNodes(nodeDrafts, nodes);
+
+        //Push new nodes to data structure in one batch
+        graph.writeLock();
+        try {
+            graph.addAllNodes(newNodes);
+        } finally {
+            graph.writeUnlock();
         }
 
-        //Create all edges and push to data structure
-        int edgeCount = 0;
-        for (EdgeDraft draftEdge : container.getEdges()) {
-            String id = draftEdge.getId();
-            String sourceId = draftEdge.getSource().getId();
-            String targetId = draftEdge.getTarget().getId();
-            Node source = graph.getNode(sourceId);
-            Node target = graph.getNode(targetId);
-            Object type = draftEdge.getType();
-            int edgeType = graphModel.addEdgeType(type);
-
-            Edge edge = graph.getEdge(source, target, edgeType);
-            if (edge == null) {
-                switch (container.getEdgeDefault()) {
-                    case DIRECTED:
-                        edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), true);
-                        break;
-                    case UNDIRECTED:
-                        edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), true);
-                        break;
-                    case MIXED:
-                        boolean directed = draftEdge.getDirection().equals(EdgeDirection.UNDIRECTED) ? false : true;
-                        edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), directed);
+        //Match or create edges and push new ones batch by batch
+        int newEdgeCount = 0;
+        Iterator<EdgeDraft> edgeIterator = container.getEdges().iterator();
+        for (EdgeDraft[] edgeDrafts; (edgeDrafts = nextEdgeDrafts(edgeIterator)).length > 0;) {
+            Edge[] edges = new Edge[edgeDrafts.length];
+            List<Edge> newEdges = new ArrayList<Edge>();
+            for (int i = 0; i < edgeDrafts.length; i++) {
+                EdgeDraft draftEdge = edgeDrafts[i];
+                int sourceIndex = container.getNodeIndex(draftEdge.getSource());
+                int targetIndex = container.getNodeIndex(draftEdge.getTarget());
+                Node source = nodes[sourceIndex];
+                Node target = nodes[targetIndex];
+                int edgeType = graphModel.addEdgeType(draftEdge.getType());
+
+                //Edges of new nodes can't exist before this import
+                Edge edge = null;
+                if (!created[sourceIndex] && !created[targetIndex]) {
+                    edge = graph.getEdge(source, target, edgeType);
+                }
+                if (edge == null) {
+                    edge = newEdge(factory, draftEdge, source, target, edgeType);
+                    newEdges.add(edge);
                 }
-                edgeCount++;
-                graph.addEdge(edge);
+                edges[i] = edge;
+            }
+            flushToEdges(edgeDrafts, edges);
+
+            graph.writeLock();
+            try {
+                graph.addAllEdges(newEdges);
+            } finally {
+                graph.writeUnlock();
             }
-            flushToEdge(draftEdge, edge);
+            newEdgeCount += newEdges.size();
         }
 
-        System.out.println("# New Nodes appended: " + nodeCount + "\n# New Edges appended: " + edgeCount);
+        System.out.println("# New Nodes appended: " + newNodes.size() + "\n# New Edges appended: " + newEdgeCount);
         workspace = null;
     }
 }
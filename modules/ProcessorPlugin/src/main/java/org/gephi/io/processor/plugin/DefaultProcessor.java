@@ -41,13 +41,14 @@
  */
 package org.gephi.io.processor.plugin;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphFactory;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.io.importer.api.EdgeDirection;
 import org.gephi.io.importer.api.EdgeDraft;
 import org.gephi.io.importer.api.NodeDraft;
 import org.gephi.io.processor.spi.Processor;
@@ -86,7 +87,7 @@ public class DefaultProcessor extends AbstractProcessor implements Processor {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
         GraphModel graphModel = Lookup.getDefault().lookup(GraphController.class).getGraphModel();
 
-        Graph graph = graphModel.getGraph();;
+        Graph graph = graphModel.getGraph();
         GraphFactory factory = graphModel.factory();
 
         //Attributes - Creates columns for properties
@@ -101,45 +102,45 @@ public class DefaultProcessor extends AbstractProcessor implements Processor {
 //            }
 //        }
 
-        int nodeCount = 0;
-        //Create all nodes
-        for (NodeDraft draftNode : container.getNodes()) {
-            String id = draftNode.getId();
-            Node node = factory.newNode(id);
-            graph.addNode(node);
-            nodeCount++;
-            flushToNode(draftNode, node);
+        //Create all nodes, edge ends are resolved by container index
+        NodeDraft[] nodeDrafts = getNodeDrafts();
+        Node[] nodes = new Node[nodeDrafts.length];
+        for (int i = 0; i < nodeDrafts.length; i++) {
+            nodes[i] = factory.newNode(nodeDrafts[i].getId());
+        }
+        flushToNodes(nodeDrafts, nodes);
+
+        //Push nodes to data structure in one batch
+        graph.writeLock();
+        try {
+            graph.addAllNodes(Arrays.asList(nodes));
+        } finally {
+            graph.writeUnlock();
         }
 
-        //Create all edges and push to data structure
+        //Create and push edges batch by batch
         int edgeCount = 0;
-        for (EdgeDraft draftEdge : container.getEdges()) {
-            String id = draftEdge.getId();
-            String sourceId = draftEdge.getSource().getId();
-            String targetId = draftEdge.getTarget().getId();
-            Node source = graph.getNode(sourceId);
-            Node target = graph.getNode(targetId);
-            Object type = draftEdge.getType();
-            int edgeType = graphModel.addEdgeType(type);
-
-            Edge edge = graph.getEdge(source, target, edgeType);
-            switch (container.getEdgeDefault()) {
-                case DIRECTED:
-                    edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), true);
-                    break;
-                case UNDIRECTED:
-                    edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), false);
-                    break;
-                case MIXED:
-                    boolean directed = draftEdge.getDirection() != null && draftEdge.getDirection().equals(EdgeDirection.UNDIRECTED) ? false : true;
-                    edge = factory.newEdge(id, source, target, edgeType, draftEdge.getWeight(), directed);
+        Iterator<EdgeDraft> edgeIterator = container.getEdges().iterator();
+        for (EdgeDraft[] edgeDrafts; (edgeDrafts = nextEdgeDrafts(edgeIterator)).length > 0;) {
+            Edge[] edges = new Edge[edgeDrafts.length];
+            for (int i = 0; i < edgeDrafts.length; i++) {
+                EdgeDraft draftEdge = edgeDrafts[i];
+                Node source = nodes[container.getNodeIndex(draftEdge.getSource())];
+                Node target = nodes[container.getNodeIndex(draftEdge.getTarget())];
+                int edgeType = graphModel.addEdgeType(draftEdge.getType());
+                edges[i] = newEdge(factory, draftEdge, source, target, edgeType);
             }
-            edgeCount++;
-            graph.addEdge(edge);
+            flushToEdges(edgeDrafts, edges);
 
-            flushToEdge(draftEdge, edge);
+            graph.writeLock();
+            try {
+                graph.addAllEdges(Arrays.asList(edges));
+            } finally {
+                graph.writeUnlock();
+            }
+            edgeCount += edges.length;
         }
-        System.out.println("# Nodes loaded: " + nodeCount + "\n# Edges loaded: " + edgeCount);
+        System.out.println("# Nodes loaded: " + nodes.length + "\n# Edges loaded: " + edgeCount);
         workspace = null;
     }
 }
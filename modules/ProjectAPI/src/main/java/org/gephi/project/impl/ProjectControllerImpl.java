@@ -53,9 +53,11 @@ import org.gephi.project.api.WorkspaceListener;
 import org.gephi.project.api.WorkspaceProvider;
 import org.gephi.project.io.LoadTask;
 import org.gephi.project.io.SaveTask;
+import org.gephi.project.io.WorkspaceBytesLoader;
 import org.gephi.project.spi.WorkspaceDuplicateProvider;
 import org.gephi.workspace.impl.WorkspaceImpl;
 import org.gephi.workspace.impl.WorkspaceInformationImpl;
+import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.NbPreferences;
 import org.openide.util.lookup.ServiceProvider;
@@ -264,6 +266,14 @@ public class ProjectControllerImpl implements ProjectController {
     @Override
     public void openWorkspace(Workspace workspace) {
         closeCurrentWorkspace();
+
+        //Deferred data of lazily loaded projects
+        try {
+            WorkspaceBytesLoader.load(workspace);
+        } catch (Exception ex) {
+            Exceptions.printStackTrace(ex);
+        }
+
         getCurrentProject().getLookup().lookup(WorkspaceProviderImpl.class).setCurrentWorkspace(workspace);
         workspace.getLookup().lookup(WorkspaceInformationImpl.class).open();
 
@@ -278,6 +288,12 @@ public class ProjectControllerImpl implements ProjectController {
     @Override
     public Workspace duplicateWorkspace(Workspace workspace) {
         if (projects.hasCurrentProject()) {
+            try {
+                WorkspaceBytesLoader.load(workspace);
+            } catch (Exception ex) {
+                Exceptions.printStackTrace(ex);
+                return null;
+            }
             Workspace duplicate = newWorkspace(projects.getCurrentProject());
             for (WorkspaceDuplicateProvider dp : Lookup.getDefault().lookupAll(WorkspaceDuplicateProvider.class)) {
                 dp.duplicate(workspace, duplicate);
@@ -0,0 +1,471 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.gephi.utils.TempDirUtils.TempDir;
+
+/**
+ * Carries one project entry from the thread serializing it to the thread
+ * writing the project file.
+ * <p>
+ * The data is cut in blocks of <code>BLOCK_SIZE</code> bytes which are
+ * compressed in parallel on the compression pool. Each block is compressed
+ * with the end of the previous block as dictionary and ends with a sync flush,
+ * so the blocks joined in order form a single raw deflate stream, as pigz
+ * does.
+ * <p>
+ * Once the writer reaches the entry, compressed blocks are written straight
+ * into the project file and the serializing thread waits if it gets too far
+ * ahead. Until then, the entry is ahead of its turn and its blocks are staged
+ * in a temporary file, which the writer copies first.
+ */
+class EntryPipe {
+
+    static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    //Compressed blocks kept in memory before staging, when not written yet
+    private static final int STAGING_WINDOW = 2;
+    private static final int WAIT_INTERVAL = 500;   //ms
+    private final String name;
+    private final int level;
+    private final ExecutorService compressor;
+    private final TempDir tempDir;
+    private final int streamingWindow;
+    private final AtomicLong bytesWritten;
+    //Guarded by this
+    private final LinkedList<Future<byte[]>> blocks = new LinkedList<Future<byte[]>>();
+    private boolean streaming;
+    private boolean finished;
+    private boolean cancelled;
+    private Exception failure;
+    private File stagingFile;
+    private OutputStream staging;
+    private long stagedSize;
+    private long crc;
+    private long size;
+
+    /**
+     * Creates a pipe for the entry <code>name</code>.
+     *
+     * @param name the entry name
+     * @param level the compression level, <code>0</code> to store the entry
+     * @param compressor the pool compressing blocks, unused if stored
+     * @param tempDir the directory of staging files
+     * @param streamingWindow the number of blocks compressed ahead of the
+     * writer
+     * @param bytesWritten counts uncompressed bytes, for progress
+     */
+    public EntryPipe(String name, int level, ExecutorService compressor, TempDir tempDir, int streamingWindow, AtomicLong bytesWritten) {
+        this.name = name;
+        this.level = level;
+        this.compressor = compressor;
+        this.tempDir = tempDir;
+        this.streamingWindow = Math.max(STAGING_WINDOW, streamingWindow);
+        this.bytesWritten = bytesWritten;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMethod() {
+        return level > 0 ? ZipEntry.DEFLATED : ZipEntry.STORED;
+    }
+
+    /**
+     * Returns the stream the entry is serialized into. Closing it completes
+     * the entry.
+     *
+     * @return the entry output stream
+     */
+    public OutputStream openOutputStream() {
+        return new BlockOutputStream();
+    }
+
+    /**
+     * Reports that serializing the entry failed. The writer throws the
+     * exception when it reaches the entry.
+     *
+     * @param ex the cause
+     */
+    public synchronized void fail(Exception ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops the pipe, the serializing thread and the writer return as soon as
+     * possible.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes the entry into <code>out</code>, waiting for the data as it is
+     * serialized. If <code>streamable</code> is <code>false</code> the whole
+     * entry is staged first, so its CRC and sizes are known before it starts.
+     *
+     * @param out the project stream
+     * @param streamable whether <code>out</code> takes entries whose CRC and
+     * sizes are given at the end
+     * @param progress run periodically while waiting
+     * @return <code>false</code> if the pipe was cancelled
+     * @throws IOException if the entry couldn't be serialized or written
+     */
+    public boolean writeTo(ProjectOutputStream out, boolean streamable, Runnable progress) throws IOException {
+        if (!streamable && !waitFinished(progress)) {
+            return false;
+        }
+
+        //Take over from the serializing thread
+        File staged;
+        boolean known;
+        synchronized (this) {
+            checkFailure();
+            streaming = true;
+            notifyAll();
+            if (staging != null) {
+                staging.close();
+                staging = null;
+            }
+            staged = stagingFile;
+            known = finished;
+        }
+
+        try {
+            if (known) {
+                //Blocks don't change anymore
+                long compressedSize = stagedSize;
+                for (Future<byte[]> block : blocks) {
+                    compressedSize += get(block).length;
+                }
+                out.putNextEntry(name, getMethod(), crc, size, compressedSize);
+            } else {
+                out.putNextEntry(name, getMethod());
+            }
+            if (staged != null) {
+                copy(staged, out);
+            }
+        } finally {
+            if (staged != null) {
+                staged.delete();
+            }
+        }
+
+        Future<byte[]> block;
+        while ((block = nextBlock(progress)) != null) {
+            out.write(get(block));
+        }
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            if (known) {
+                out.closeEntry();
+            } else {
+                out.closeEntry(crc, size);
+            }
+        }
+        return true;
+    }
+
+    private boolean waitFinished(Runnable progress) throws IOException {
+        while (true) {
+            synchronized (this) {
+                checkFailure();
+                if (cancelled) {
+                    return false;
+                }
+                if (finished) {
+                    return true;
+                }
+                waitInterval();
+            }
+            progress.run();
+        }
+    }
+
+    private Future<byte[]> nextBlock(Runnable progress) throws IOException {
+        while (true) {
+            synchronized (this) {
+                checkFailure();
+                if (cancelled) {
+                    return null;
+                }
+                if (!blocks.isEmpty()) {
+                    notifyAll();
+                    return blocks.removeFirst();
+                }
+                if (finished) {
+                    return null;
+                }
+                waitInterval();
+            }
+            progress.run();
+        }
+    }
+
+    //Called by the serializing thread for each block, in order
+    private synchronized void add(Future<byte[]> block) throws IOException {
+        blocks.add(block);
+        while (!cancelled) {
+            if (streaming) {
+                if (blocks.size() <= streamingWindow) {
+                    return;
+                }
+                waitInterval();
+            } else if (blocks.size() > STAGING_WINDOW) {
+                stage(blocks.removeFirst());
+            } else {
+                return;
+            }
+        }
+        throw new InterruptedIOException("Save cancelled");
+    }
+
+    private void stage(Future<byte[]> block) throws IOException {
+        byte[] data = get(block);
+        if (staging == null) {
+            stagingFile = tempDir.createFile(name);
+            staging = new BufferedOutputStream(new FileOutputStream(stagingFile), DICTIONARY_SIZE * 2);
+        }
+        staging.write(data);
+        stagedSize += data.length;
+    }
+
+    private synchronized void finish(long crc, long size) {
+        this.crc = crc;
+        this.size = size;
+        finished = true;
+        notifyAll();
+    }
+
+    private void waitInterval() throws InterruptedIOException {
+        try {
+            wait(WAIT_INTERVAL);
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw new IOException("Can't save entry " + name, failure);
+        }
+    }
+
+    private static byte[] get(Future<byte[]> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private static void copy(File file, OutputStream out) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[DICTIONARY_SIZE * 2];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Compresses one block. All blocks but the last end with a sync flush on
+     * a byte boundary, so the next block's output can follow.
+     */
+    private static class DeflateBlock implements Callable<byte[]> {
+
+        private final int level;
+        private final byte[] data;
+        private final int length;
+        private final byte[] dictionary;
+        private final int dictionaryLength;
+        private final boolean last;
+
+        public DeflateBlock(int level, byte[] data, int length, byte[] dictionary, int dictionaryLength, boolean last) {
+            this.level = level;
+            this.data = data;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.dictionaryLength = dictionaryLength;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    int dictionarySize = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                    deflater.setDictionary(dictionary, dictionaryLength - dictionarySize, dictionarySize);
+                }
+                deflater.setInput(data, 0, length);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buffer = new byte[DICTIONARY_SIZE * 2];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        out.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int n;
+                    do {
+                        n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        out.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Cuts the serialized data in blocks, computing the CRC on the way.
+     */
+    private class BlockOutputStream extends OutputStream {
+
+        private final CRC32 checksum = new CRC32();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int count;
+        private byte[] previous;
+        private int previousLength;
+        private long total;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            block[count++] = (byte) b;
+            if (count == BLOCK_SIZE) {
+                flushBlock(false);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == BLOCK_SIZE) {
+                    flushBlock(false);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                flushBlock(true);
+                finish(checksum.getValue(), total);
+            }
+        }
+
+        private void flushBlock(boolean last) throws IOException {
+            checksum.update(block, 0, count);
+            total += count;
+            bytesWritten.addAndGet(count);
+
+            FutureTask<byte[]> task;
+            if (level > 0) {
+                task = new FutureTask<byte[]>(new DeflateBlock(level, block, count, previous, previousLength, last));
+                compressor.execute(task);
+            } else {
+                final byte[] data = count < block.length ? Arrays.copyOf(block, count) : block;
+                task = new FutureTask<byte[]>(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        return data;
+                    }
+                });
+                task.run();
+            }
+            //The block is only read from now on, by its task and the next one
+            previous = block;
+            previousLength = count;
+            block = last ? null : new byte[BLOCK_SIZE];
+            count = 0;
+            add(task);
+        }
+    }
+}
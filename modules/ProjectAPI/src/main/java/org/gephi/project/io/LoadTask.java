@@ -45,11 +45,17 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 import javax.xml.stream.Location;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLReporter;
@@ -67,6 +73,7 @@ import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle;
+import org.openide.util.NbPreferences;
 
 /**
  *
@@ -74,13 +81,21 @@ import org.openide.util.NbBundle;
  */
 public class LoadTask implements LongTask, Runnable {
 
+    private static final Pattern WORKSPACE_XML_PATTERN = Pattern.compile("Workspace_[0-9]*_xml");
+    private static final Pattern WORKSPACE_BYTES_PATTERN = Pattern.compile("Workspace_([0-9]*)_(.*)_bytes");
+    private static final String LAZY_PREFERENCE = "ProjectIO_Load_Lazy";
+    private static final String THREADS_PREFERENCE = "ProjectIO_Load_Threads";
     private File file;
     private GephiReader gephiReader;
-    private boolean cancel = false;
+    private volatile boolean cancel = false;
     private ProgressTicket progressTicket;
+    private boolean lazy;
+    private int threadCount;
 
     public LoadTask(File file) {
         this.file = file;
+        this.lazy = NbPreferences.forModule(LoadTask.class).getBoolean(LAZY_PREFERENCE, false);
+        this.threadCount = NbPreferences.forModule(LoadTask.class).getInt(THREADS_PREFERENCE, Runtime.getRuntime().availableProcessors());
     }
 
     @Override
@@ -90,71 +105,76 @@ public class LoadTask implements LongTask, Runnable {
 
         try {
             ProjectImpl project = null;
-            ZipFile zip = null;
+            ProjectArchive archive = null;
             try {
-                zip = new ZipFile(file);
+                archive = ProjectArchive.open(file);
 
                 //Reader
                 gephiReader = new GephiReader();
 
+                //Index entries
+                List<String> workspaceEntries = new ArrayList<String>();
+                Map<Integer, Map<String, String>> bytesEntries = new LinkedHashMap<Integer, Map<String, String>>();
+                for (String name : archive.getEntryNames()) {
+                    Matcher matcher;
+                    if (WORKSPACE_XML_PATTERN.matcher(name).matches()) {
+                        workspaceEntries.add(name);
+                    } else if ((matcher = WORKSPACE_BYTES_PATTERN.matcher(name)).matches()) {
+                        Integer workspaceId = Integer.parseInt(matcher.group(1));
+                        Map<String, String> entries = bytesEntries.get(workspaceId);
+                        if (entries == null) {
+                            entries = new LinkedHashMap<String, String>();
+                            bytesEntries.put(workspaceId, entries);
+                        }
+                        entries.put(name, matcher.group(2));
+                    }
+                }
+
                 //Project
-                ZipEntry entry = zip.getEntry("Project_xml");
-                if (entry != null) {
-                    InputStream is = null;
+                InputStream projectStream = archive.getInputStream("Project_xml");
+                if (projectStream != null) {
                     try {
-                        is = zip.getInputStream(entry);
-                        project = readProject(is);
+                        project = readProject(projectStream);
                     } finally {
-                        if (is != null) {
-                            is.close();
-                        }
+                        projectStream.close();
                     }
                 }
 
-                //Workspace Xml
+                //Workspace Xml, one at a time as readers rely on the opening workspace
                 if (project != null) {
-                    for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
-                        entry = e.nextElement();
+                    for (String workspaceEntry : workspaceEntries) {
                         InputStream is = null;
-                        String name = entry.getName();
-                        if (name.matches("Workspace_[0-9]*_xml")) {
-                            try {
-                                is = zip.getInputStream(entry);
-                                readWorkspace(is, project);
-                            } finally {
-                                if (is != null) {
-                                    is.close();
-                                }
+                        try {
+                            is = archive.getInputStream(workspaceEntry);
+                            readWorkspace(is, project);
+                        } finally {
+                            if (is != null) {
+                                is.close();
                             }
                         }
+                        if (cancel) {
+                            break;
+                        }
                     }
                 }
 
                 //Other Workspace data
-                if (project != null) {
-                    for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
-                        entry = e.nextElement();
-                        InputStream is = null;
-                        String name = entry.getName();
-                        if (name.matches("Workspace_[0-9]*_.*_bytes")) {
-                            try {
-                                is = zip.getInputStream(entry);
-                                Matcher matcher = Pattern.compile("Workspace_([0-9]*)_(.*)_bytes").matcher(name);
-                                matcher.find();
-                                String workspaceId = matcher.group(1);
-                                String providerId = matcher.group(2);
-                                WorkspaceProviderImpl workspaceProvider = project.getLookup().lookup(WorkspaceProviderImpl.class);
-                                Workspace workspace = workspaceProvider.getWorkspace(Integer.parseInt(workspaceId));
-                                if (workspace != null) {
-                                    readWorkspaceBytes(is, workspace, providerId);
-                                }
-                            } finally {
-                                if (is != null) {
-                                    is.close();
-                                }
-                            }
+                if (project != null && !cancel) {
+                    WorkspaceProviderImpl workspaceProvider = project.getLookup().lookup(WorkspaceProviderImpl.class);
+                    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                    for (Map.Entry<Integer, Map<String, String>> workspaceEntry : bytesEntries.entrySet()) {
+                        Workspace workspace = workspaceProvider.getWorkspace(workspaceEntry.getKey());
+                        if (workspace == null) {
+                            continue;
+                        }
+                        if (lazy && workspace != workspaceProvider.getCurrentWorkspace()) {
+                            //Loaded when the workspace is first selected
+                            workspace.add(new WorkspaceBytesLoader(file, workspace, workspaceEntry.getValue()));
+                        } else {
+                            tasks.add(new WorkspaceBytesTask(archive, workspace, workspaceEntry.getValue()));
                         }
                     }
+                    readWorkspacesBytes(tasks);
                 }
 
                 //Add project
@@ -165,8 +185,8 @@ public class LoadTask implements LongTask, Runnable {
                     }
                 }
             } finally {
-                if (zip != null) {
-                    zip.close();
+                if (archive != null) {
+                    archive.close();
                 }
             }
         } catch (Exception ex) {
@@ -178,6 +198,31 @@ public class LoadTask implements LongTask, Runnable {
         Progress.finish(progressTicket);
     }
 
+    private void readWorkspacesBytes(List<Callable<Void>> tasks) throws Exception {
+        if (threadCount == 1 || tasks.size() < 2) {
+            for (Callable<Void> task : tasks) {
+                task.call();
+            }
+            return;
+        }
+        //Workspaces are independent, deserialize them in parallel
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, tasks.size()));
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof Exception) {
+                        throw (Exception) ex.getCause();
+                    }
+                    throw ex;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private ProjectImpl readProject(InputStream inputStream) throws Exception {
         InputStreamReader isReader = null;
         Xml10FilterReader filterReader = null;
@@ -245,7 +290,7 @@ public class LoadTask implements LongTask, Runnable {
         }
     }
 
-    private void readWorkspaceBytes(InputStream inputstream, Workspace workspace, String providerId) throws Exception {
+    static void readWorkspaceBytes(InputStream inputstream, Workspace workspace, String providerId) throws Exception {
         WorkspaceBytesPersistenceProvider provider = PersistenceProviderUtils.getBytesPersistenceProviders().get(providerId);
 
         if (provider != null) {
@@ -261,6 +306,37 @@ public class LoadTask implements LongTask, Runnable {
         }
     }
 
+    /**
+     * Sets whether the data of workspaces other than the current one, such as
+     * their graph, is only loaded when the workspace is first selected.
+     * Defaults to the module preference.
+     *
+     * @param lazy <code>true</code> to defer loading
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets the number of threads workspaces are deserialized with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         cancel = true;
@@ -274,4 +350,39 @@ public class LoadTask implements LongTask, Runnable {
     public void setProgressTicket(ProgressTicket progressTicket) {
         this.progressTicket = progressTicket;
     }
+
+    /**
+     * Reads the bytes entries of one workspace.
+     */
+    private class WorkspaceBytesTask implements Callable<Void> {
+
+        private final ProjectArchive archive;
+        private final Workspace workspace;
+        private final Map<String, String> entries;
+
+        public WorkspaceBytesTask(ProjectArchive archive, Workspace workspace, Map<String, String> entries) {
+            this.archive = archive;
+            this.workspace = workspace;
+            this.entries = entries;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (cancel) {
+                    break;
+                }
+                InputStream is = null;
+                try {
+                    is = archive.getInputStream(entry.getKey());
+                    readWorkspaceBytes(is, workspace, entry.getValue());
+                } finally {
+                    if (is != null) {
+                        is.close();
+                    }
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,274 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.gephi.utils.MappedBufferUtils;
+
+/**
+ * Uncompressed project container whose entries are memory-mapped when read,
+ * so reading a large workspace is mostly page faults instead of inflating a
+ * zip stream. See <code>MappedContainerOutputStream</code> for the layout.
+ * <p>
+ * Entry streams check the CRC-32 of the entry once read to the end, and throw
+ * an <code>IOException</code> if it doesn't match. Closing an entry stream
+ * releases its mapping right away where the JVM allows it. Otherwise the
+ * mapping lasts until the buffer is garbage collected, and on Windows the
+ * file can't be deleted until then.
+ */
+class MappedContainer extends ProjectArchive {
+
+    //Maximum size mapped at once
+    private static final long MAX_MAPPING = 1 << 30;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    public MappedContainer(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        try {
+            readIndex();
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    private void readIndex() throws IOException {
+        long length = channel.size();
+        if (length < MappedContainerOutputStream.HEADER_SIZE + MappedContainerOutputStream.TRAILER_SIZE) {
+            throw new IOException("Truncated project container");
+        }
+
+        //Header
+        ByteBuffer header = read(0, MappedContainerOutputStream.HEADER_SIZE);
+        checkMagic(header);
+        int version = header.getInt();
+        if (version > MappedContainerOutputStream.VERSION) {
+            throw new IOException("Unsupported project container version: " + version);
+        }
+
+        //Trailer
+        ByteBuffer trailer = read(length - MappedContainerOutputStream.TRAILER_SIZE, MappedContainerOutputStream.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        checkMagic(trailer);
+        long indexLength = length - MappedContainerOutputStream.TRAILER_SIZE - indexOffset;
+        if (indexOffset < MappedContainerOutputStream.HEADER_SIZE || indexLength < 4 || indexLength > Integer.MAX_VALUE) {
+            throw new IOException("Invalid project container index");
+        }
+
+        //Index
+        ByteBuffer index = read(indexOffset, (int) indexLength);
+        int count = index.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[index.getInt()];
+            index.get(name);
+            Entry entry = new Entry();
+            entry.offset = index.getLong();
+            entry.size = index.getLong();
+            entry.crc = index.getInt() & 0xFFFFFFFFL;
+            if (entry.offset < MappedContainerOutputStream.HEADER_SIZE || entry.size < 0 || entry.offset + entry.size > indexOffset) {
+                throw new IOException("Invalid project container entry");
+            }
+            entry.name = new String(name, "UTF-8");
+            entries.put(entry.name, entry);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void checkMagic(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MappedContainerOutputStream.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MappedContainerOutputStream.MAGIC)) {
+            throw new IOException("Not a project container");
+        }
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    @Override
+    public InputStream getInputStream(String name) throws IOException {
+        Entry entry = entries.get(name);
+        return entry != null ? new EntryInputStream(entry) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        //Buffers already mapped stay valid until their stream is closed
+        try {
+            channel.close();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static class Entry {
+
+        private String name;
+        private long offset;
+        private long size;
+        private long crc;
+    }
+
+    /**
+     * Stream over an entry, mapping it by chunks of at most
+     * <code>MAX_MAPPING</code> bytes.
+     */
+    private class EntryInputStream extends InputStream {
+
+        private final Entry entry;
+        private long position;
+        private final long end;
+        private ByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+        //CRC is only checked if all bytes were read
+        private boolean verify = true;
+
+        public EntryInputStream(Entry entry) {
+            this.entry = entry;
+            this.position = entry.offset;
+            this.end = entry.offset + entry.size;
+        }
+
+        private boolean ensureBuffer() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            releaseBuffer();
+            if (position >= end) {
+                if (verify) {
+                    verify = false;
+                    if (crc.getValue() != entry.crc) {
+                        throw new IOException("CRC error in project container entry " + entry.name);
+                    }
+                }
+                return false;
+            }
+            long size = Math.min(MAX_MAPPING, end - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return true;
+        }
+
+        private void releaseBuffer() {
+            if (buffer != null) {
+                ByteBuffer mapped = buffer;
+                buffer = null;
+                MappedBufferUtils.unmap(mapped);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureBuffer()) {
+                return -1;
+            }
+            int b = buffer.get() & 0xff;
+            crc.update(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureBuffer()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            crc.update(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            verify = false;
+            long skipped = 0;
+            while (skipped < n && ensureBuffer()) {
+                int step = (int) Math.min(n - skipped, buffer.remaining());
+                buffer.position(buffer.position() + step);
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            long remaining = (buffer != null ? buffer.remaining() : 0) + (end - position);
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() {
+            releaseBuffer();
+            verify = false;
+            position = end;
+        }
+    }
+}
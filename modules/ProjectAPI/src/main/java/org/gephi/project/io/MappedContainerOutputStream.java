@@ -0,0 +1,207 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes the uncompressed project container read by
+ * <code>MappedContainer</code>.
+ * <p>
+ * The layout is a 16 bytes header (magic and version), the entries data each
+ * starting on an 8 bytes boundary, the index and a 16 bytes trailer holding
+ * the index offset followed by the magic again. The index is an entry count
+ * followed, for each entry, by its UTF-8 name length and bytes, its offset,
+ * size and CRC-32. All numbers are big-endian.
+ */
+class MappedContainerOutputStream extends ProjectOutputStream {
+
+    static final byte[] MAGIC = {'G', 'E', 'P', 'H', 'I', 'M', 'A', 'P'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int TRAILER_SIZE = 16;
+    static final int ALIGNMENT = 8;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private Entry current;
+    private long currentWritten;
+    private long written;
+    private boolean finished;
+
+    public MappedContainerOutputStream(OutputStream out) throws IOException {
+        super(out);
+        writeBytes(MAGIC);
+        writeInt(VERSION);
+        writeInt(0);
+    }
+
+    @Override
+    public void putNextEntry(String name, int method, long crc, long size, long compressedSize) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        if (method != ZipEntry.STORED || size != compressedSize) {
+            throw new ZipException("Container entries must be stored: " + name);
+        }
+        //Align data
+        while (written % ALIGNMENT != 0) {
+            out.write(0);
+            written++;
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes("UTF-8");
+        entry.offset = written;
+        entry.size = size;
+        entry.crc = crc;
+        current = entry;
+        currentWritten = 0;
+    }
+
+    @Override
+    public void putNextEntry(String name, int method) throws IOException {
+        putNextEntry(name, method, 0, -1, -1);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current == null) {
+            throw new ZipException("No current entry");
+        }
+        out.write(b);
+        currentWritten++;
+        written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (current == null) {
+            throw new ZipException("No current entry");
+        }
+        out.write(b, off, len);
+        currentWritten += len;
+        written += len;
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (current != null) {
+            if (current.size == -1) {
+                throw new ZipException("Missing CRC and size for " + new String(current.name, "UTF-8"));
+            }
+            if (currentWritten != current.size) {
+                throw new ZipException("Invalid entry size for " + new String(current.name, "UTF-8")
+                        + " (expected " + current.size + " but got " + currentWritten + " bytes)");
+            }
+            entries.add(current);
+            current = null;
+        }
+    }
+
+    @Override
+    public void closeEntry(long crc, long size) throws IOException {
+        if (current == null || current.size != -1) {
+            throw new ZipException("No streamed entry");
+        }
+        current.crc = crc;
+        current.size = size;
+        closeEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        long indexOffset = written;
+        writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeInt(entry.name.length);
+            writeBytes(entry.name);
+            writeLong(entry.offset);
+            writeLong(entry.size);
+            writeInt(entry.crc);
+        }
+        writeLong(indexOffset);
+        writeBytes(MAGIC);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeInt(long v) throws IOException {
+        out.write((int) ((v >>> 24) & 0xff));
+        out.write((int) ((v >>> 16) & 0xff));
+        out.write((int) ((v >>> 8) & 0xff));
+        out.write((int) (v & 0xff));
+        written += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt(v >>> 32);
+        writeInt(v & 0xFFFFFFFFL);
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        out.write(b, 0, b.length);
+        written += b.length;
+    }
+
+    private static class Entry {
+
+        private byte[] name;
+        private long offset;
+        private long size;
+        private long crc;
+    }
+}
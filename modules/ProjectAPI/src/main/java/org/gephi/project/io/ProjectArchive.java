@@ -0,0 +1,139 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read access to the named entries of a project file, either a zip file or a
+ * <code>MappedContainer</code>. Implementations are safe to read from several
+ * threads.
+ */
+abstract class ProjectArchive {
+
+    /**
+     * Opens <code>file</code>, detecting its format from its first bytes.
+     *
+     * @param file the project file
+     * @return the archive
+     * @throws IOException if the file can't be opened
+     */
+    public static ProjectArchive open(File file) throws IOException {
+        if (isMappedContainer(file)) {
+            return new MappedContainer(file);
+        }
+        return new ZipArchive(new ZipFile(file));
+    }
+
+    private static boolean isMappedContainer(File file) throws IOException {
+        byte[] magic = new byte[MappedContainerOutputStream.MAGIC.length];
+        InputStream is = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < magic.length) {
+                int r = is.read(magic, read, magic.length - read);
+                if (r == -1) {
+                    return false;
+                }
+                read += r;
+            }
+        } finally {
+            is.close();
+        }
+        return Arrays.equals(magic, MappedContainerOutputStream.MAGIC);
+    }
+
+    /**
+     * Returns the entry names, in file order.
+     *
+     * @return the entry names
+     */
+    public abstract List<String> getEntryNames();
+
+    /**
+     * Returns a stream on the content of the entry <code>name</code>.
+     *
+     * @param name the entry name
+     * @return the entry content or <code>null</code> if not found
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract InputStream getInputStream(String name) throws IOException;
+
+    public abstract void close() throws IOException;
+
+    private static class ZipArchive extends ProjectArchive {
+
+        private final ZipFile zip;
+
+        public ZipArchive(ZipFile zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public List<String> getEntryNames() {
+            List<String> names = new ArrayList<String>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                names.add(e.nextElement().getName());
+            }
+            return names;
+        }
+
+        @Override
+        public InputStream getInputStream(String name) throws IOException {
+            ZipEntry entry = zip.getEntry(name);
+            return entry != null ? zip.getInputStream(entry) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
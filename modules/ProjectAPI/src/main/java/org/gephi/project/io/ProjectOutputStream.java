@@ -0,0 +1,106 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream of a project file made of named entries. The CRC and sizes of
+ * an entry are either given when it starts, or when it ends for entries
+ * streamed as they are compressed.
+ */
+abstract class ProjectOutputStream extends FilterOutputStream {
+
+    public ProjectOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Starts a new entry. Exactly <code>compressedSize</code> bytes must then
+     * be written before <code>closeEntry()</code>.
+     *
+     * @param name the entry name
+     * @param method <code>ZipEntry.DEFLATED</code> for raw deflate data or
+     * <code>ZipEntry.STORED</code>
+     * @param crc the CRC-32 of the uncompressed data
+     * @param size the uncompressed size
+     * @param compressedSize the size of the data written for this entry
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract void putNextEntry(String name, int method, long crc, long size, long compressedSize) throws IOException;
+
+    /**
+     * Starts a new entry whose CRC and sizes are given to
+     * <code>closeEntry(crc, size)</code> once its data is written.
+     *
+     * @param name the entry name
+     * @param method <code>ZipEntry.DEFLATED</code> for raw deflate data or
+     * <code>ZipEntry.STORED</code>
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract void putNextEntry(String name, int method) throws IOException;
+
+    /**
+     * Ends an entry started with known CRC and sizes.
+     *
+     * @throws IOException if an I/O error occurs or the written size doesn't
+     * match
+     */
+    public abstract void closeEntry() throws IOException;
+
+    /**
+     * Ends an entry started without CRC and sizes.
+     *
+     * @param crc the CRC-32 of the uncompressed data
+     * @param size the uncompressed size
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract void closeEntry(long crc, long size) throws IOException;
+
+    /**
+     * Writes the entries index without closing the underlying stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public abstract void finish() throws IOException;
+}
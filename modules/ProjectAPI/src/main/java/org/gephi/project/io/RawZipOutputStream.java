@@ -0,0 +1,351 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Zip output stream whose entries are written already compressed, which lets
+ * entries be compressed separately, on several threads. The CRC and sizes of
+ * an entry are written in its local header when known before it starts, and
+ * otherwise in a data descriptor after its data. Zip64 records are only
+ * written when sizes or offsets require it.
+ */
+class RawZipOutputStream extends ProjectOutputStream {
+
+    private static final long LOCAL_HEADER_SIG = 0x04034b50L;
+    private static final long CENTRAL_HEADER_SIG = 0x02014b50L;
+    private static final long END_SIG = 0x06054b50L;
+    private static final long ZIP64_END_SIG = 0x06064b50L;
+    private static final long ZIP64_LOCATOR_SIG = 0x07064b50L;
+    private static final long DESCRIPTOR_SIG = 0x08074b50L;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP16_LIMIT = 0xFFFF;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int FLAG_DESCRIPTOR = 0x0008;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final long dosTime;
+    private Entry current;
+    private long currentWritten;
+    private long written;
+    private boolean finished;
+
+    public RawZipOutputStream(OutputStream out) {
+        super(out);
+        dosTime = toDosTime(System.currentTimeMillis());
+    }
+
+    @Override
+    public void putNextEntry(String name, int method, long crc, long size, long compressedSize) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED) {
+            throw new ZipException("Unsupported compression method: " + method);
+        }
+        if (method == ZipEntry.STORED && size != compressedSize) {
+            throw new ZipException("Stored entry size mismatch: " + name);
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes("UTF-8");
+        entry.flags = FLAG_UTF8;
+        entry.method = method;
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = compressedSize;
+        entry.offset = written;
+
+        boolean zip64 = size >= ZIP32_LIMIT || compressedSize >= ZIP32_LIMIT;
+        writeInt(LOCAL_HEADER_SIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(entry.flags);
+        writeShort(method);
+        writeInt(dosTime);
+        writeInt(crc);
+        writeInt(zip64 ? ZIP32_LIMIT : compressedSize);
+        writeInt(zip64 ? ZIP32_LIMIT : size);
+        writeShort(entry.name.length);
+        writeShort(zip64 ? 20 : 0);
+        writeBytes(entry.name);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(size);
+            writeLong(compressedSize);
+        }
+        current = entry;
+        currentWritten = 0;
+    }
+
+    @Override
+    public void putNextEntry(String name, int method) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        if (method != ZipEntry.DEFLATED) {
+            //Readers can only find the end of deflated data
+            throw new ZipException("Only deflated entries can be streamed: " + name);
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes("UTF-8");
+        entry.flags = FLAG_UTF8 | FLAG_DESCRIPTOR;
+        entry.method = method;
+        entry.offset = written;
+
+        writeInt(LOCAL_HEADER_SIG);
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(method);
+        writeInt(dosTime);
+        writeInt(0);
+        writeInt(0);
+        writeInt(0);
+        writeShort(entry.name.length);
+        writeShort(0);
+        writeBytes(entry.name);
+        current = entry;
+        currentWritten = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current == null) {
+            throw new ZipException("No current entry");
+        }
+        out.write(b);
+        currentWritten++;
+        written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (current == null) {
+            throw new ZipException("No current entry");
+        }
+        out.write(b, off, len);
+        currentWritten += len;
+        written += len;
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (current != null) {
+            if ((current.flags & FLAG_DESCRIPTOR) != 0) {
+                throw new ZipException("Missing CRC and size for " + new String(current.name, "UTF-8"));
+            }
+            if (currentWritten != current.compressedSize) {
+                throw new ZipException("Invalid entry size for " + new String(current.name, "UTF-8")
+                        + " (expected " + current.compressedSize + " but got " + currentWritten + " bytes)");
+            }
+            entries.add(current);
+            current = null;
+        }
+    }
+
+    @Override
+    public void closeEntry(long crc, long size) throws IOException {
+        if (current == null || (current.flags & FLAG_DESCRIPTOR) == 0) {
+            throw new ZipException("No streamed entry");
+        }
+        current.crc = crc;
+        current.size = size;
+        current.compressedSize = currentWritten;
+
+        //Sizes are 8 bytes long only when they don't fit in 4, as ZipOutputStream does
+        writeInt(DESCRIPTOR_SIG);
+        writeInt(crc);
+        if (size >= ZIP32_LIMIT || currentWritten >= ZIP32_LIMIT) {
+            writeLong(currentWritten);
+            writeLong(size);
+        } else {
+            writeInt(currentWritten);
+            writeInt(size);
+        }
+        entries.add(current);
+        current = null;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        long centralOffset = written;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = written - centralOffset;
+        if (entries.size() >= ZIP16_LIMIT || centralOffset >= ZIP32_LIMIT || centralSize >= ZIP32_LIMIT) {
+            long zip64EndOffset = written;
+            writeInt(ZIP64_END_SIG);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(centralSize);
+            writeLong(centralOffset);
+
+            writeInt(ZIP64_LOCATOR_SIG);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(END_SIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries.size(), ZIP16_LIMIT));
+        writeShort(Math.min(entries.size(), ZIP16_LIMIT));
+        writeInt(Math.min(centralSize, ZIP32_LIMIT));
+        writeInt(Math.min(centralOffset, ZIP32_LIMIT));
+        writeShort(0);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        //Only fields which don't fit go in the zip64 extra, in this order
+        boolean sizeOverflow = entry.size >= ZIP32_LIMIT;
+        boolean compressedSizeOverflow = entry.compressedSize >= ZIP32_LIMIT;
+        boolean offsetOverflow = entry.offset >= ZIP32_LIMIT;
+        int extraLength = (sizeOverflow ? 8 : 0) + (compressedSizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+
+        writeInt(CENTRAL_HEADER_SIG);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(dosTime);
+        writeInt(entry.crc);
+        writeInt(compressedSizeOverflow ? ZIP32_LIMIT : entry.compressedSize);
+        writeInt(sizeOverflow ? ZIP32_LIMIT : entry.size);
+        writeShort(entry.name.length);
+        writeShort(zip64 ? extraLength + 4 : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(offsetOverflow ? ZIP32_LIMIT : entry.offset);
+        writeBytes(entry.name);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(extraLength);
+            if (sizeOverflow) {
+                writeLong(entry.size);
+            }
+            if (compressedSizeOverflow) {
+                writeLong(entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                writeLong(entry.offset);
+            }
+        }
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        written += 2;
+    }
+
+    private void writeInt(long v) throws IOException {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >>> 8) & 0xff));
+        out.write((int) ((v >>> 16) & 0xff));
+        out.write((int) ((v >>> 24) & 0xff));
+        written += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt(v & 0xFFFFFFFFL);
+        writeInt(v >>> 32);
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        out.write(b, 0, b.length);
+        written += b.length;
+    }
+
+    private static long toDosTime(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25) | ((cal.get(Calendar.MONTH) + 1) << 21)
+                | (cal.get(Calendar.DAY_OF_MONTH) << 16) | (cal.get(Calendar.HOUR_OF_DAY) << 11)
+                | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+    }
+
+    private static class Entry {
+
+        private byte[] name;
+        private int flags;
+        private int method;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+    }
+}
@@ -47,15 +47,22 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamWriter;
 import org.gephi.project.api.Project;
 import org.gephi.project.api.Workspace;
 import org.gephi.project.impl.WorkspaceProviderImpl;
 import org.gephi.project.spi.WorkspaceBytesPersistenceProvider;
+import org.gephi.utils.TempDirUtils;
+import org.gephi.utils.TempDirUtils.TempDir;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
@@ -66,21 +73,59 @@ import org.openide.util.NbBundle;
 import org.openide.util.NbPreferences;
 
 /**
+ * Saves a project into a zip file, or an uncompressed mapped container. The
+ * entries (the project, each workspace and each bytes persistence provider
+ * payload) are serialized with one worker per workspace, the entries of a
+ * workspace one after the other. Each entry is compressed in blocks on a
+ * separate pool, so a single large payload still uses every thread (see
+ * <code>EntryPipe</code>).
+ * <p>
+ * Entries are written in order. The entry being written streams into the
+ * project file as it is compressed; entries finishing ahead of their turn are
+ * staged in a temporary directory until then.
  *
  * @author Mathieu Bastian
  */
 public class SaveTask implements LongTask, Runnable {
 
+    /**
+     * Compression level writing entries uncompressed.
+     */
+    public static final int STORED = 0;
+    /**
+     * Fastest compression level.
+     */
+    public static final int FAST = 1;
+    /**
+     * Best compression level, the default.
+     */
+    public static final int BEST = 9;
     private static final String ZIP_LEVEL_PREFERENCE = "ProjectIO_Save_ZipLevel_0_TO_9";
+    private static final String THREADS_PREFERENCE = "ProjectIO_Save_Threads";
+    private static final String MAPPED_CONTAINER_PREFERENCE = "ProjectIO_Save_MappedContainer";
+    private static final int BUFFER_SIZE = 64 * 1024;
     private File file;
     private Project project;
     private GephiWriter gephiWriter;
-    private boolean cancel = false;
+    private volatile boolean cancel = false;
     private ProgressTicket progressTicket;
+    private int compressionLevel;
+    private int threadCount;
+    private boolean mappedContainer;
+    //Entries, in the order they are written
+    private final List<EntryPipe> pipes = new ArrayList<EntryPipe>();
+    private ExecutorService compressor;
+    private TempDir tempDir;
+    //Progress
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private long startTime;
 
     public SaveTask(Project project, File file) {
         this.project = project;
         this.file = file;
+        this.compressionLevel = NbPreferences.forModule(SaveTask.class).getInt(ZIP_LEVEL_PREFERENCE, BEST);
+        this.threadCount = NbPreferences.forModule(SaveTask.class).getInt(THREADS_PREFERENCE, Runtime.getRuntime().availableProcessors());
+        this.mappedContainer = NbPreferences.forModule(SaveTask.class).getBoolean(MAPPED_CONTAINER_PREFERENCE, false);
     }
 
     @Override
@@ -89,55 +134,62 @@ public class SaveTask implements LongTask, Runnable {
         Progress.setDisplayName(progressTicket, NbBundle.getMessage(SaveTask.class, "SaveTask.name"));
 
         File writeFile = null;
+        ExecutorService pool = null;
         try {
             String tempFileName = file.getName() + "_temp" + System.currentTimeMillis();
             writeFile = new File(file.getParent(), tempFileName);
 
+            //Writer
+            gephiWriter = new GephiWriter();
+
+            //Compress blocks of entries in parallel
+            if (getEntryLevel() > STORED) {
+                compressor = Executors.newFixedThreadPool(threadCount);
+            }
+            tempDir = TempDirUtils.createTempDir();
+
+            //Serialize entries in parallel, one workspace per thread
+            List<EntryGroup> groups = createEntryGroups();
+            startTime = System.currentTimeMillis();
+            pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, groups.size())));
+            for (EntryGroup group : groups) {
+                pool.submit(group);
+            }
+
             FileOutputStream outputStream = null;
-            ZipOutputStream zipOut = null;
-            BufferedOutputStream bos = null;
-            DataOutputStream dos = null;
+            ProjectOutputStream projectOut = null;
             try {
                 //Stream
-                int zipLevel = NbPreferences.forModule(SaveTask.class).getInt(ZIP_LEVEL_PREFERENCE, 9);
                 outputStream = new FileOutputStream(writeFile);
-                zipOut = new ZipOutputStream(outputStream);
-                zipOut.setLevel(zipLevel);
-                bos = new BufferedOutputStream(zipOut);
-                dos = new DataOutputStream(bos);
-
-                //Writer
-                gephiWriter = new GephiWriter();
-
-                //Write Project
-                writeProject(gephiWriter, bos, zipOut);
-
-                //Write Workspace files
-                for (Workspace ws : project.getLookup().lookup(WorkspaceProviderImpl.class).getWorkspaces()) {
-                    writeWorkspace(ws, gephiWriter, dos, zipOut);
-                    writeWorkspaceBytes(ws, dos, zipOut);
-                    if (cancel) {
-                        break;
-                    }
+                BufferedOutputStream bos = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+                if (mappedContainer) {
+                    projectOut = new MappedContainerOutputStream(bos);
+                } else {
+                    projectOut = new RawZipOutputStream(bos);
                 }
 
-                zipOut.finish();
-            } finally {
-                if (dos != null) {
-                    try {
-                        dos.close();
-                    } catch (IOException ex1) {
+                //Write entries in order, stored zip entries need their sizes first
+                boolean streamable = mappedContainer || getEntryLevel() > STORED;
+                Runnable progress = new Runnable() {
+                    @Override
+                    public void run() {
+                        reportProgress();
                     }
-                }
-                if (bos != null) {
-                    try {
-                        bos.close();
-                    } catch (IOException ex1) {
+                };
+                for (EntryPipe pipe : pipes) {
+                    if (cancel || !pipe.writeTo(projectOut, streamable, progress)) {
+                        break;
                     }
+                    reportProgress();
+                }
+
+                if (!cancel) {
+                    projectOut.finish();
                 }
-                if (zipOut != null) {
+            } finally {
+                if (projectOut != null) {
                     try {
-                        zipOut.close();
+                        projectOut.close();
                     } catch (IOException ex1) {
                     }
                 }
@@ -155,8 +207,12 @@ public class SaveTask implements LongTask, Runnable {
                 String name = fileObject.getName();
                 String ext = fileObject.getExt();
 
-                //Delete original file
-                fileObject.delete();
+                //Delete original file, readers close their entry streams so it is no longer mapped
+                try {
+                    fileObject.delete();
+                } catch (IOException ex) {
+                    throw new IOException("Can't replace the project file " + file.getPath(), ex);
+                }
 
                 //Rename
                 FileObject tempFileObject = FileUtil.toFileObject(writeFile);
@@ -171,6 +227,21 @@ public class SaveTask implements LongTask, Runnable {
             }
             throw new GephiFormatException(SaveTask.class, ex);
         } finally {
+            //Releases serializing threads waiting for the writer
+            for (EntryPipe pipe : pipes) {
+                pipe.cancel();
+            }
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            if (compressor != null) {
+                compressor.shutdownNow();
+                compressor = null;
+            }
+            if (tempDir != null) {
+                tempDir.delete();
+                tempDir = null;
+            }
             if (writeFile != null && writeFile.exists()) {
                 FileObject tempFileObject = FileUtil.toFileObject(writeFile);
                 try {
@@ -183,68 +254,160 @@ public class SaveTask implements LongTask, Runnable {
         Progress.finish(progressTicket);
     }
 
-    private void writeProject(GephiWriter gephiWriter, OutputStream outputStream, ZipOutputStream zipOut) throws Exception {
-        XMLStreamWriter writer = null;
-        //Write Project file
-        zipOut.putNextEntry(new ZipEntry("Project_xml"));
-        try {
-            //Create Writer and write project
-            XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-            outputFactory.setProperty("javax.xml.stream.isRepairingNamespaces", Boolean.FALSE);
-            writer = outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
-            gephiWriter.writeProject(writer, project);
-        } finally {
-            if (writer != null) {
-                writer.close();
+    /**
+     * Creates the entry tasks, grouped by workspace. The persistence providers
+     * of a workspace are called one after the other on the same thread, while
+     * different workspaces are saved in parallel.
+     */
+    private List<EntryGroup> createEntryGroups() throws Exception {
+        List<EntryGroup> groups = new ArrayList<EntryGroup>();
+
+        //Project
+        EntryGroup projectGroup = new EntryGroup();
+        groups.add(projectGroup);
+        projectGroup.add(new EntryTask(createPipe("Project_xml")) {
+
+            @Override
+            protected void write(OutputStream outputStream) throws Exception {
+                XMLStreamWriter writer = null;
+                try {
+                    writer = createXMLWriter(outputStream);
+                    gephiWriter.writeProject(writer, project);
+                } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
             }
+        });
+
+        //Workspaces
+        for (final Workspace workspace : project.getLookup().lookup(WorkspaceProviderImpl.class).getWorkspaces()) {
+            //Lazily loaded data is read from the project file, before it's replaced
+            //The save fails if it can't be read, rather than write the workspace without it
+            WorkspaceBytesLoader.load(workspace);
+
+            EntryGroup group = new EntryGroup();
+            groups.add(group);
+            group.add(new EntryTask(createPipe("Workspace_" + workspace.getId() + "_xml")) {
+
+                @Override
+                protected void write(OutputStream outputStream) throws Exception {
+                    XMLStreamWriter writer = null;
+                    try {
+                        writer = createXMLWriter(outputStream);
+                        gephiWriter.writeWorkspace(writer, workspace);
+                    } finally {
+                        if (writer != null) {
+                            writer.close();
+                        }
+                    }
+                }
+            });
+            for (Map.Entry<String, WorkspaceBytesPersistenceProvider> entry : PersistenceProviderUtils.getBytesPersistenceProviders().entrySet()) {
+                final WorkspaceBytesPersistenceProvider provider = entry.getValue();
+                group.add(new EntryTask(createPipe("Workspace_" + workspace.getId() + "_" + entry.getKey() + "_bytes")) {
+
+                    @Override
+                    protected void write(OutputStream outputStream) throws Exception {
+                        DataOutputStream dos = new DataOutputStream(outputStream);
+                        provider.writeBytes(dos, workspace);
+                        dos.flush();
+                    }
+                });
+            }
+        }
+        return groups;
+    }
+
+    private EntryPipe createPipe(String name) {
+        EntryPipe pipe = new EntryPipe(name, getEntryLevel(), compressor, tempDir, 2 * threadCount, bytesWritten);
+        synchronized (pipes) {
+            pipes.add(pipe);
         }
+        return pipe;
+    }
 
-        //Close Project file
-        zipOut.closeEntry();
+    //The mapped container is never compressed
+    private int getEntryLevel() {
+        return mappedContainer ? STORED : compressionLevel;
     }
 
-    private void writeWorkspace(Workspace workspace, GephiWriter gephiWriter, OutputStream outputStream, ZipOutputStream zipOut) throws Exception {
-        //Write Project file
-        zipOut.putNextEntry(new ZipEntry("Workspace_" + workspace.getId() + "_xml"));
+    private static XMLStreamWriter createXMLWriter(OutputStream outputStream) throws Exception {
+        XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+        outputFactory.setProperty("javax.xml.stream.isRepairingNamespaces", Boolean.FALSE);
+        return outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+    }
 
-        XMLStreamWriter writer = null;
-        try {
-            //Create Writer and write project
-            XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-            outputFactory.setProperty("javax.xml.stream.isRepairingNamespaces", Boolean.FALSE);
-            writer = outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
-            gephiWriter.writeWorkspace(writer, workspace);
+    private void reportProgress() {
+        long bytes = bytesWritten.get();
+        double seconds = Math.max(1L, System.currentTimeMillis() - startTime) / 1000.0;
+        DecimalFormat format = new DecimalFormat("#0.0");
+        double megaBytes = bytes / (1024.0 * 1024.0);
+        Progress.progress(progressTicket, NbBundle.getMessage(SaveTask.class, "SaveTask.progress",
+                format.format(megaBytes), format.format(megaBytes / seconds)));
+    }
 
-        } finally {
-            if (writer != null) {
-                writer.close();
-            }
+    /**
+     * Sets the compression level, from <code>STORED</code> to
+     * <code>BEST</code>. Defaults to the module preference.
+     *
+     * @param compressionLevel the compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < STORED || compressionLevel > BEST) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
         }
+        this.compressionLevel = compressionLevel;
+    }
 
-        //Close Project file
-        zipOut.closeEntry();
+    public int getCompressionLevel() {
+        return compressionLevel;
     }
 
-    private void writeWorkspaceBytes(Workspace workspace, DataOutputStream outputStream, ZipOutputStream zipOut) throws Exception {
-        for (Map.Entry<String, WorkspaceBytesPersistenceProvider> entry : PersistenceProviderUtils.getBytesPersistenceProviders().entrySet()) {
-            String name = entry.getKey();
-            WorkspaceBytesPersistenceProvider provider = entry.getValue();
+    /**
+     * Sets the number of threads entries are serialized and compressed with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
 
-            //Write Project file
-            zipOut.putNextEntry(new ZipEntry("Workspace_" + workspace.getId() + "_" + name + "_bytes"));
+    public int getThreadCount() {
+        return threadCount;
+    }
 
-            provider.writeBytes(outputStream, workspace);
+    /**
+     * Sets whether the project is saved in the uncompressed memory-mapped
+     * container instead of a zip file. Loading such a project maps entries
+     * instead of inflating them, at the cost of a larger file. Defaults to
+     * the module preference.
+     *
+     * @param mappedContainer <code>true</code> to save a mapped container
+     */
+    public void setMappedContainer(boolean mappedContainer) {
+        this.mappedContainer = mappedContainer;
+    }
 
-            //Close Project file
-            zipOut.closeEntry();
-        }
+    public boolean isMappedContainer() {
+        return mappedContainer;
     }
 
     @Override
     public boolean cancel() {
+        cancel = true;
         if (gephiWriter != null) {
             gephiWriter.cancel();
         }
+        synchronized (pipes) {
+            for (EntryPipe pipe : pipes) {
+                pipe.cancel();
+            }
+        }
         return true;
     }
 
@@ -252,4 +415,56 @@ public class SaveTask implements LongTask, Runnable {
     public void setProgressTicket(ProgressTicket progressTicket) {
         this.progressTicket = progressTicket;
     }
+
+    /**
+     * Serializes one entry into its pipe.
+     */
+    private static abstract class EntryTask {
+
+        private final EntryPipe pipe;
+
+        public EntryTask(EntryPipe pipe) {
+            this.pipe = pipe;
+        }
+
+        protected abstract void write(OutputStream outputStream) throws Exception;
+
+        public void run() throws Exception {
+            OutputStream outputStream = pipe.openOutputStream();
+            write(outputStream);
+            outputStream.close();
+        }
+
+        public void fail(Exception ex) {
+            pipe.fail(ex);
+        }
+    }
+
+    /**
+     * Entry tasks run one after the other. If one fails, the following
+     * entries fail too.
+     */
+    private static class EntryGroup implements Callable<Void> {
+
+        private final List<EntryTask> tasks = new ArrayList<EntryTask>();
+
+        void add(EntryTask task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public Void call() throws Exception {
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).run();
+                } catch (Exception ex) {
+                    for (int j = i; j < tasks.size(); j++) {
+                        tasks.get(j).fail(ex);
+                    }
+                    throw ex;
+                }
+            }
+            return null;
+        }
+    }
 }
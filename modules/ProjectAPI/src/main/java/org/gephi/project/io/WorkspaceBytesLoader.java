@@ -0,0 +1,124 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.project.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import org.gephi.project.api.Workspace;
+
+/**
+ * Bytes persistence data of a workspace whose loading has been deferred, put
+ * in the workspace lookup by <code>LoadTask</code> in lazy mode. The data is
+ * read from the project file the first time <code>load()</code> is called,
+ * typically when the workspace is selected.
+ */
+public class WorkspaceBytesLoader {
+
+    private final File file;
+    private final Workspace workspace;
+    //Entry names to provider identifiers, in file order
+    private final Map<String, String> entries;
+    private boolean loaded;
+
+    WorkspaceBytesLoader(File file, Workspace workspace, Map<String, String> entries) {
+        this.file = file;
+        this.workspace = workspace;
+        this.entries = entries;
+    }
+
+    /**
+     * Loads the workspace deferred data if any. Does nothing if the workspace
+     * has been loaded already.
+     *
+     * @param workspace the workspace
+     * @throws Exception if the data can't be read from the project file, in
+     * which case the workspace stays unloaded
+     */
+    public static void load(Workspace workspace) throws Exception {
+        WorkspaceBytesLoader loader = workspace.getLookup().lookup(WorkspaceBytesLoader.class);
+        if (loader != null) {
+            loader.load();
+        }
+    }
+
+    /**
+     * Reads the workspace bytes entries from the project file. The workspace
+     * is only marked as loaded once all entries are read. If reading fails,
+     * entries read so far are not read again by the next call.
+     *
+     * @throws Exception if the project file can't be read, for instance if it
+     * was moved or rewritten since it was opened
+     */
+    public synchronized void load() throws Exception {
+        if (loaded) {
+            return;
+        }
+        ProjectArchive archive = ProjectArchive.open(file);
+        try {
+            for (Iterator<Map.Entry<String, String>> itr = entries.entrySet().iterator(); itr.hasNext();) {
+                Map.Entry<String, String> entry = itr.next();
+                InputStream is = archive.getInputStream(entry.getKey());
+                if (is != null) {
+                    try {
+                        LoadTask.readWorkspaceBytes(is, workspace, entry.getValue());
+                    } finally {
+                        is.close();
+                    }
+                }
+                itr.remove();
+            }
+        } finally {
+            try {
+                archive.close();
+            } catch (IOException ex) {
+            }
+        }
+        loaded = true;
+        workspace.remove(this);
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+}
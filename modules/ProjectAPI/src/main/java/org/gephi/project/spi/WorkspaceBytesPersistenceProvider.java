@@ -46,6 +46,14 @@ import java.io.DataOutputStream;
 import org.gephi.project.api.Workspace;
 
 /**
+ * Interface modules implement to read and write part of the .gephi project
+ * file as raw bytes, one entry per workspace.
+ * <p>
+ * Projects are saved and loaded with several threads: <code>writeBytes()</code>
+ * and <code>readBytes()</code> may be called for different workspaces at the
+ * same time. Calls for the same workspace are made one after the other from a
+ * single thread, so implementations only need to synchronize state shared
+ * between workspaces.
  *
  * @author mbastian
  */
@@ -69,6 +69,14 @@ import org.gephi.project.api.Workspace;
  * <p>
  * The <code>position</code> parameter is optional but often useful when when you need other <code>WorkspacePersistenceProvider</code> data deserialized before yours.
  * </p>
+ * <h3>Threading</h3>
+ * <p>
+ * Projects are saved with several threads: <code>writeXML()</code> may be called
+ * for different workspaces at the same time. Calls for the same workspace,
+ * including to the <code>WorkspaceBytesPersistenceProvider</code>s, are made one
+ * after the other from a single thread. <code>readXML()</code> is called for one
+ * workspace at a time.
+ * </p>
  * 
  * @author Mathieu Bastian
  * @see Workspace
@@ -0,0 +1,212 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.gephi.project.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.gephi.utils.TempDirUtils;
+import org.gephi.utils.TempDirUtils.TempDir;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class EntryPipeNGTest {
+
+    private static final Runnable NO_PROGRESS = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    private File file;
+    private TempDir tempDir;
+    private ExecutorService compressor;
+
+    @BeforeMethod
+    public void initialize() throws IOException {
+        file = File.createTempFile("gephi_pipe", ".gephi");
+        tempDir = TempDirUtils.createTempDir();
+        compressor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterMethod
+    public void clean() {
+        compressor.shutdownNow();
+        tempDir.delete();
+        file.delete();
+    }
+
+    @Test
+    public void testStreamedBlocks() throws Exception {
+        //Several blocks, the last one partial
+        byte[] data = randomText(EntryPipe.BLOCK_SIZE * 3 + 12345);
+        EntryPipe pipe = new EntryPipe("Workspace_1_xml", 6, compressor, tempDir, 2, new AtomicLong());
+        Thread producer = produce(pipe, data);
+
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            assertTrue(pipe.writeTo(out, true, NO_PROGRESS));
+            out.finish();
+        } finally {
+            out.close();
+        }
+        producer.join();
+
+        assertEntry("Workspace_1_xml", data, ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void testStagedEntries() throws Exception {
+        //The second entry is fully serialized while the first is written
+        byte[] first = randomText(EntryPipe.BLOCK_SIZE + 7);
+        byte[] second = randomText(EntryPipe.BLOCK_SIZE * 5);
+        AtomicLong bytesWritten = new AtomicLong();
+        EntryPipe firstPipe = new EntryPipe("Workspace_1_xml", 9, compressor, tempDir, 2, bytesWritten);
+        EntryPipe secondPipe = new EntryPipe("Workspace_2_xml", 1, compressor, tempDir, 2, bytesWritten);
+        produce(secondPipe, second).join();
+        Thread producer = produce(firstPipe, first);
+
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            assertTrue(firstPipe.writeTo(out, true, NO_PROGRESS));
+            assertTrue(secondPipe.writeTo(out, true, NO_PROGRESS));
+            out.finish();
+        } finally {
+            out.close();
+        }
+        producer.join();
+
+        assertEquals(bytesWritten.get(), first.length + second.length);
+        assertEntry("Workspace_1_xml", first, ZipEntry.DEFLATED);
+        assertEntry("Workspace_2_xml", second, ZipEntry.DEFLATED);
+        //The staging file is deleted once copied
+        assertFalse(tempDir.createFile("Workspace_2_xml").exists());
+    }
+
+    @Test
+    public void testStoredEntry() throws Exception {
+        byte[] data = randomBytes(EntryPipe.BLOCK_SIZE * 2 + 3);
+        EntryPipe pipe = new EntryPipe("Workspace_1_bytes", 0, null, tempDir, 2, new AtomicLong());
+        Thread producer = produce(pipe, data);
+
+        //Stored zip entries need their sizes up front
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            assertTrue(pipe.writeTo(out, false, NO_PROGRESS));
+            out.finish();
+        } finally {
+            out.close();
+        }
+        producer.join();
+
+        assertEntry("Workspace_1_bytes", data, ZipEntry.STORED);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final EntryPipe pipe = new EntryPipe("Workspace_1_xml", 6, compressor, tempDir, 2, new AtomicLong());
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream os = pipe.openOutputStream();
+                    os.write(randomText(EntryPipe.BLOCK_SIZE + 1));
+                    throw new IllegalStateException("Serialization failed");
+                } catch (Exception ex) {
+                    pipe.fail(ex);
+                }
+            }
+        };
+        producer.start();
+
+        //The project file is discarded, as SaveTask does
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            pipe.writeTo(new RawZipOutputStream(fos), true, NO_PROGRESS);
+            fail("The entry failure should be thrown");
+        } catch (IOException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        } finally {
+            fos.close();
+        }
+        producer.join();
+    }
+
+    private static Thread produce(final EntryPipe pipe, final byte[] data) {
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream os = pipe.openOutputStream();
+                    //Odd chunks, to cross block boundaries
+                    for (int off = 0; off < data.length; off += 70001) {
+                        os.write(data, off, Math.min(70001, data.length - off));
+                    }
+                    os.close();
+                } catch (Exception ex) {
+                    pipe.fail(ex);
+                }
+            }
+        };
+        producer.start();
+        return producer;
+    }
+
+    private void assertEntry(String name, byte[] data, int method) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry entry = zip.getEntry(name);
+            assertEquals(entry.getMethod(), method);
+            assertEquals(entry.getSize(), data.length);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            assertEquals(entry.getCrc(), crc.getValue());
+            assertEquals(readFully(zip.getInputStream(entry)), data);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(length);
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return b;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.gephi.project.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MappedContainerNGTest {
+
+    private File file;
+
+    @BeforeMethod
+    public void initialize() throws IOException {
+        file = File.createTempFile("gephi_container", ".gephi");
+    }
+
+    @AfterMethod
+    public void clean() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[][] data = {
+            "<project/>".getBytes("UTF-8"),
+            new byte[0],
+            randomBytes(100003),
+            randomBytes(7)
+        };
+        String[] names = {"Project_xml", "Workspace_1_xml", "Workspace_1_graph_bytes", "Workspace_\u00e9_bytes"};
+        write(names, data);
+
+        ProjectArchive archive = ProjectArchive.open(file);
+        try {
+            assertTrue(archive instanceof MappedContainer);
+            assertEquals(archive.getEntryNames(), Arrays.asList(names));
+            for (int i = 0; i < names.length; i++) {
+                assertEquals(readFully(archive.getInputStream(names[i])), data[i]);
+            }
+            assertNull(archive.getInputStream("Missing"));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testStreamedEntry() throws IOException {
+        byte[] data = randomBytes(10007);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        MappedContainerOutputStream out = new MappedContainerOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry("Workspace_1_graph_bytes", ZipEntry.STORED);
+            out.write(data, 0, data.length);
+            out.closeEntry(crc.getValue(), data.length);
+            out.finish();
+        } finally {
+            out.close();
+        }
+
+        ProjectArchive archive = ProjectArchive.open(file);
+        try {
+            assertEquals(readFully(archive.getInputStream("Workspace_1_graph_bytes")), data);
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testEntriesAreAligned() throws IOException {
+        write(new String[]{"a", "b"}, new byte[][]{randomBytes(3), randomBytes(5)});
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            //Second entry starts after the header and the 3 bytes of the first, padded
+            raf.seek(MappedContainerOutputStream.HEADER_SIZE + MappedContainerOutputStream.ALIGNMENT);
+            ProjectArchive archive = ProjectArchive.open(file);
+            try {
+                byte[] b = readFully(archive.getInputStream("b"));
+                byte[] onDisk = new byte[b.length];
+                raf.readFully(onDisk);
+                assertEquals(onDisk, b);
+            } finally {
+                archive.close();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptedEntry() throws IOException {
+        write(new String[]{"a"}, new byte[][]{randomBytes(1000)});
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = MappedContainerOutputStream.HEADER_SIZE + 500;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        ProjectArchive archive = ProjectArchive.open(file);
+        try {
+            readFully(archive.getInputStream("a"));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testTruncatedContainer() throws IOException {
+        write(new String[]{"a"}, new byte[][]{randomBytes(1000)});
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        ProjectArchive.open(file).close();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCompressedEntryRejected() throws IOException {
+        MappedContainerOutputStream out = new MappedContainerOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry("a", ZipEntry.DEFLATED, 0, 10, 5);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(String[] names, byte[][] data) throws IOException {
+        MappedContainerOutputStream out = new MappedContainerOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < names.length; i++) {
+                CRC32 crc = new CRC32();
+                crc.update(data[i]);
+                out.putNextEntry(names[i], ZipEntry.STORED, crc.getValue(), data[i].length, data[i].length);
+                out.write(data[i], 0, data[i].length);
+                out.closeEntry();
+            }
+            out.finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+}
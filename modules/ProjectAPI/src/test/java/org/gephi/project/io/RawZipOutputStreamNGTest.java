@@ -0,0 +1,301 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.gephi.project.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import static org.testng.Assert.*;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RawZipOutputStreamNGTest {
+
+    private File file;
+
+    @BeforeMethod
+    public void initialize() throws IOException {
+        file = File.createTempFile("gephi_zip", ".gephi");
+    }
+
+    @AfterMethod
+    public void clean() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String[] names = {"Project_xml", "Workspace_1_xml", "Workspace_1_\u00e9_bytes", "Empty"};
+        byte[][] data = {
+            "<project/>".getBytes("UTF-8"),
+            randomText(100000),
+            randomBytes(5000),
+            new byte[0]
+        };
+        boolean[] deflated = {true, true, false, true};
+
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (int i = 0; i < names.length; i++) {
+                putEntry(out, names[i], data[i], deflated[i]);
+            }
+            out.finish();
+        } finally {
+            out.close();
+        }
+
+        ZipFile zip = new ZipFile(file);
+        try {
+            List<String> zipNames = new ArrayList<String>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                zipNames.add(e.nextElement().getName());
+            }
+            assertEquals(zipNames.toArray(), names);
+            for (int i = 0; i < names.length; i++) {
+                ZipEntry entry = zip.getEntry(names[i]);
+                assertEquals(entry.getMethod(), deflated[i] ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                assertEquals(entry.getSize(), data[i].length);
+                assertEquals(entry.getCrc(), crc(data[i]));
+                assertEquals(readFully(zip.getInputStream(entry)), data[i]);
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testStreamedEntry() throws IOException {
+        byte[] head = "<project/>".getBytes("UTF-8");
+        byte[] streamed = randomText(200000);
+
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            putEntry(out, "Project_xml", head, true);
+            byte[] compressed = deflate(streamed);
+            out.putNextEntry("Workspace_1_xml", ZipEntry.DEFLATED);
+            out.write(compressed, 0, compressed.length);
+            out.closeEntry(crc(streamed), streamed.length);
+            putEntry(out, "Empty", new byte[0], false);
+            out.finish();
+        } finally {
+            out.close();
+        }
+
+        ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry entry = zip.getEntry("Workspace_1_xml");
+            assertEquals(entry.getSize(), streamed.length);
+            assertEquals(entry.getCrc(), crc(streamed));
+            assertEquals(readFully(zip.getInputStream(entry)), streamed);
+            assertEquals(readFully(zip.getInputStream(zip.getEntry("Empty"))), new byte[0]);
+        } finally {
+            zip.close();
+        }
+
+        //Sequential readers find the sizes in the data descriptor
+        ZipInputStream zis = new ZipInputStream(new FileInputStream(file));
+        try {
+            assertEquals(zis.getNextEntry().getName(), "Project_xml");
+            assertEquals(readEntry(zis), head);
+            assertEquals(zis.getNextEntry().getName(), "Workspace_1_xml");
+            assertEquals(readEntry(zis), streamed);
+            assertEquals(zis.getNextEntry().getName(), "Empty");
+            assertEquals(readEntry(zis), new byte[0]);
+            assertNull(zis.getNextEntry());
+        } finally {
+            zis.close();
+        }
+    }
+
+    @Test(expectedExceptions = ZipException.class)
+    public void testStreamedStoredEntry() throws IOException {
+        RawZipOutputStream out = new RawZipOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry("Workspace_1_bytes", ZipEntry.STORED);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testZip64EntryCount() throws IOException {
+        int count = 70000;
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            for (int i = 0; i < count; i++) {
+                putEntry(out, "e" + i, new byte[]{(byte) i}, false);
+            }
+            out.finish();
+        } finally {
+            out.close();
+        }
+
+        ZipFile zip = new ZipFile(file);
+        try {
+            assertEquals(zip.size(), count);
+            assertEquals(readFully(zip.getInputStream(zip.getEntry("e0"))), new byte[]{0});
+            assertEquals(readFully(zip.getInputStream(zip.getEntry("e" + (count - 1)))), new byte[]{(byte) (count - 1)});
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testZip64SizeAndOffset() throws IOException {
+        //The large entry is left as a hole in a sparse file
+        long size = 0xFFFFFFFFL + 1;
+        if (file.getParentFile().getUsableSpace() < 2 * size) {
+            throw new SkipException("Not enough temporary space");
+        }
+        byte[] zeros = new byte[1 << 20];
+        CRC32 crc = new CRC32();
+        for (long remaining = size; remaining > 0; remaining -= zeros.length) {
+            crc.update(zeros, 0, (int) Math.min(zeros.length, remaining));
+        }
+        byte[] small = randomText(1000);
+
+        SparseFileOutputStream sparse = new SparseFileOutputStream(file, zeros);
+        RawZipOutputStream out = new RawZipOutputStream(sparse);
+        try {
+            out.putNextEntry("Large", ZipEntry.STORED, crc.getValue(), size, size);
+            for (long remaining = size; remaining > 0; remaining -= zeros.length) {
+                out.write(zeros, 0, (int) Math.min(zeros.length, remaining));
+            }
+            out.closeEntry();
+            putEntry(out, "Small", small, true);
+            out.finish();
+        } finally {
+            out.close();
+        }
+
+        ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry large = zip.getEntry("Large");
+            assertEquals(large.getSize(), size);
+            assertEquals(large.getCompressedSize(), size);
+            assertEquals(large.getCrc(), crc.getValue());
+            //Starts after the large entry, so its offset needs zip64 too
+            assertEquals(readFully(zip.getInputStream(zip.getEntry("Small"))), small);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void putEntry(RawZipOutputStream out, String name, byte[] data, boolean deflated) throws IOException {
+        byte[] compressed = deflated ? deflate(data) : data;
+        out.putNextEntry(name, deflated ? ZipEntry.DEFLATED : ZipEntry.STORED, crc(data), data.length, compressed.length);
+        out.write(compressed, 0, compressed.length);
+        out.closeEntry();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            bos.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return bos.toByteArray();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(length);
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return b;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static byte[] readEntry(ZipInputStream zis) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = zis.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Skips over writes of the given zero buffer instead of writing them.
+     */
+    private static class SparseFileOutputStream extends OutputStream {
+
+        private final RandomAccessFile raf;
+        private final byte[] zeros;
+
+        public SparseFileOutputStream(File file, byte[] zeros) throws IOException {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.zeros = zeros;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            raf.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (b == zeros) {
+                raf.seek(raf.getFilePointer() + len);
+            } else {
+                raf.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+}
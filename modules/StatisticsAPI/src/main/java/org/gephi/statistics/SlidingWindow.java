@@ -0,0 +1,138 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.gephi.attribute.api.TimestampIndex;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.statistics.spi.WindowDelta;
+
+/**
+ * Single view following a window moving over the timestamp index of the
+ * visible graph. Each move only adds the elements which entered the window and
+ * removes those which left it, instead of filling a new view.
+ * <p>
+ * The view is created in the constructor and must be released with
+ * <code>destroy()</code>.
+ */
+class SlidingWindow {
+
+    private final GraphModel graphModel;
+    private final TimestampIndex<Node> nodeIndex;
+    private final TimestampIndex<Edge> edgeIndex;
+    private final GraphView view;
+    private final Graph graph;
+    //Current content
+    private Set<Node> nodes = new HashSet<Node>();
+    private Set<Edge> edges = new HashSet<Edge>();
+
+    public SlidingWindow(GraphModel graphModel) {
+        this.graphModel = graphModel;
+        GraphView visibleView = graphModel.getVisibleView();
+        this.nodeIndex = graphModel.getNodeTimestampIndex(visibleView);
+        this.edgeIndex = graphModel.getEdgeTimestampIndex(visibleView);
+        this.view = graphModel.createView();
+        this.graph = graphModel.getGraph(view);
+    }
+
+    /**
+     * Moves the window to <code>[low, high]</code> and returns the elements
+     * which entered and left it.
+     *
+     * @param low the lower bound
+     * @param high the upper bound
+     * @return the changes since the previous position
+     */
+    public WindowDelta moveTo(double low, double high) {
+        Set<Node> newNodes = new HashSet<Node>(nodes.size() * 4 / 3 + 16);
+        List<Node> addedNodes = new ArrayList<Node>();
+        for (Node node : nodeIndex.get(low, high)) {
+            if (newNodes.add(node) && !nodes.remove(node)) {
+                addedNodes.add(node);
+            }
+        }
+        Set<Edge> newEdges = new HashSet<Edge>(edges.size() * 4 / 3 + 16);
+        List<Edge> addedEdges = new ArrayList<Edge>();
+        for (Edge edge : edgeIndex.get(low, high)) {
+            if (newEdges.add(edge) && !edges.remove(edge)) {
+                addedEdges.add(edge);
+            }
+        }
+
+        //What is left in the previous sets is out of the window
+        List<Node> removedNodes = new ArrayList<Node>(nodes);
+        List<Edge> removedEdges = new ArrayList<Edge>(edges);
+        nodes = newNodes;
+        edges = newEdges;
+
+        //Edges first, so removing nodes doesn't touch edges behind our back
+        for (Edge edge : removedEdges) {
+            graph.removeEdge(edge);
+        }
+        for (Node node : removedNodes) {
+            graph.removeNode(node);
+        }
+        for (Node node : addedNodes) {
+            graph.addNode(node);
+        }
+        for (Edge edge : addedEdges) {
+            graph.addEdge(edge);
+        }
+        return new WindowDelta(addedNodes, removedNodes, addedEdges, removedEdges);
+    }
+
+    public GraphView getView() {
+        return view;
+    }
+
+    public void destroy() {
+        nodes.clear();
+        edges.clear();
+        graphModel.destroyView(view);
+    }
+}
@@ -42,18 +42,21 @@ Portions Copyrighted 2011 Gephi Consortium.
  */
 package org.gephi.statistics;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gephi.attribute.api.AttributeModel;
-import org.gephi.attribute.api.TimestampIndex;
 import org.gephi.attribute.time.Interval;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.Graph;
 import org.gephi.statistics.spi.StatisticsBuilder;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.statistics.api.*;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
-import org.gephi.graph.api.GraphView;
-import org.gephi.graph.api.Node;
 import org.gephi.project.api.ProjectController;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.longtask.api.LongTaskExecutor;
@@ -61,8 +64,12 @@ import org.gephi.utils.longtask.api.LongTaskListener;
 import org.gephi.project.api.Workspace;
 import org.gephi.project.api.WorkspaceListener;
 import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
+import org.gephi.statistics.spi.WindowDelta;
 import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.lookup.ServiceProvider;
 
@@ -74,6 +81,8 @@ import org.openide.util.lookup.ServiceProvider;
 @ServiceProvider(service = StatisticsController.class)
 public class StatisticsControllerImpl implements StatisticsController {
 
+    //Blocks of windows per worker thread, to balance unevenly sized windows
+    private static final int PARALLEL_BLOCKS_PER_THREAD = 4;
     private final StatisticsBuilder[] statisticsBuilders;
     private StatisticsModelImpl model;
 
@@ -185,40 +194,111 @@ public class StatisticsControllerImpl implements StatisticsController {
         //Init
         statistics.execute(graphModel, attributeModel);
 
-        //Loop
+        //Windows
+        List<Interval> windows = new ArrayList<Interval>();
         for (double low = bounds.getLow(); low <= bounds.getHigh() - window; low += tick) {
-            double high = low + window;
-
-//            Graph g = dynamicGraph.getSnapshotGraph(low, high);
-            
-            
-            GraphView currentView = graphModel.getVisibleView();
-            Graph graph = graphModel.getGraphVisible();
-            GraphView view = graphModel.createView();
-            Graph g = graphModel.getGraph(view);
-            
-            TimestampIndex<Node> nodeIndex = graphModel.getNodeTimestampIndex(currentView);
-            for(Node node : nodeIndex.get(low, high)) {
-                g.addNode(node);
-            }
-            
-            TimestampIndex<Edge> edgeIndex = graphModel.getEdgeTimestampIndex(currentView);
-            for(Edge edge : edgeIndex.get(low, high)) {
-                g.addEdge(edge);
+            windows.add(new Interval(low, low + window));
+        }
+
+        //Loop
+        boolean completed;
+        if (statistics instanceof ParallelDynamicStatistics
+                && ((ParallelDynamicStatistics) statistics).getThreadCount() > 1 && windows.size() > 1) {
+            completed = loopParallel((ParallelDynamicStatistics<?>) statistics, graphModel, windows, dynamicLongTask);
+        } else {
+            completed = loop(statistics, graphModel, windows, dynamicLongTask);
+        }
+        if (completed) {
+            statistics.end();
+            model.addReport(statistics);
+        }
+    }
+
+    private boolean loop(DynamicStatistics statistics, GraphModel graphModel, List<Interval> windows, DynamicLongTask dynamicLongTask) {
+        IncrementalDynamicStatistics incremental = statistics instanceof IncrementalDynamicStatistics ? (IncrementalDynamicStatistics) statistics : null;
+        SlidingWindow slidingWindow = new SlidingWindow(graphModel);
+        try {
+            for (Interval interval : windows) {
+                WindowDelta delta = slidingWindow.moveTo(interval.getLow(), interval.getHigh());
+                if (incremental != null) {
+                    incremental.loop(slidingWindow.getView(), interval, delta);
+                } else {
+                    statistics.loop(slidingWindow.getView(), interval);
+                }
+
+                //Cancelled?
+                if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                    return false;
+                } else if (dynamicLongTask != null) {
+                    dynamicLongTask.progress();
+                }
             }
-            
+        } finally {
+            slidingWindow.destroy();
+        }
+        return true;
+    }
 
-            statistics.loop(g.getView(), new Interval(low, high));
+    private <T> boolean loopParallel(final ParallelDynamicStatistics<T> statistics, final GraphModel graphModel, List<Interval> windows, final DynamicLongTask dynamicLongTask) {
+        int threadCount = statistics.getThreadCount();
+        //Consecutive windows are computed in blocks, so each worker view only slides
+        int blockSize = Math.max(1, windows.size() / (threadCount * PARALLEL_BLOCKS_PER_THREAD));
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            LinkedList<Future<List<T>>> pending = new LinkedList<Future<List<T>>>();
+            int submitted = 0;
+            int merged = 0;
+            while (merged < windows.size()) {
+                //Bounded number of blocks in flight, so results don't pile up
+                while (submitted < windows.size() && pending.size() < threadCount * 2) {
+                    final List<Interval> block = windows.subList(submitted, Math.min(submitted + blockSize, windows.size()));
+                    submitted += block.size();
+                    pending.add(pool.submit(new Callable<List<T>>() {
+
+                        @Override
+                        public List<T> call() throws Exception {
+                            List<T> results = new ArrayList<T>(block.size());
+                            SlidingWindow slidingWindow = new SlidingWindow(graphModel);
+                            try {
+                                for (Interval interval : block) {
+                                    if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                                        break;
+                                    }
+                                    slidingWindow.moveTo(interval.getLow(), interval.getHigh());
+                                    results.add(statistics.compute(slidingWindow.getView(), interval));
+                                }
+                            } finally {
+                                slidingWindow.destroy();
+                            }
+                            return results;
+                        }
+                    }));
+                }
+
+                //Merge in order
+                for (T result : pending.removeFirst().get()) {
+                    statistics.merge(result, windows.get(merged++));
 
-            //Cancelled?
-            if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
-                return;
-            } else if (dynamicLongTask != null) {
-                dynamicLongTask.progress();
+                    //Cancelled?
+                    if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                        return false;
+                    } else if (dynamicLongTask != null) {
+                        dynamicLongTask.progress();
+                    }
+                }
+                if (dynamicLongTask != null && dynamicLongTask.isCancelled()) {
+                    return false;
+                }
             }
+            return true;
+        } catch (InterruptedException ex) {
+            Exceptions.printStackTrace(ex);
+        } catch (ExecutionException ex) {
+            Exceptions.printStackTrace(ex);
+        } finally {
+            pool.shutdownNow();
         }
-        statistics.end();
-        model.addReport(statistics);
+        return false;
     }
 
     public StatisticsBuilder getBuilder(Class<? extends Statistics> statisticsClass) {
@@ -246,7 +326,7 @@ public class StatisticsControllerImpl implements StatisticsController {
     private static class DynamicLongTask implements LongTask {
 
         private ProgressTicket progressTicket;
-        private boolean cancel = false;
+        private volatile boolean cancel = false;
         private final LongTask longTask;
 
         public DynamicLongTask(DynamicStatistics statistics) {
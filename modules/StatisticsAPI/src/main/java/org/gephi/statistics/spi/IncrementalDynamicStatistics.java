@@ -0,0 +1,67 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import org.gephi.attribute.time.Interval;
+import org.gephi.graph.api.GraphView;
+
+/**
+ * Dynamic statistics which can update its results from the elements that
+ * entered and left the window since the previous iteration, instead of
+ * processing the whole window again.
+ * <p>
+ * When a statistics implements this interface, the
+ * <code>loop(GraphView, Interval, WindowDelta)</code> method is called instead
+ * of <code>loop(GraphView, Interval)</code>. The same view is updated and
+ * passed at every iteration, so it shouldn't be kept between calls.
+ *
+ * @see DynamicStatistics
+ */
+public interface IncrementalDynamicStatistics extends DynamicStatistics {
+
+    /**
+     * Iteration of the dynamic statistics algorithm on a new interval.
+     * @param window a snapshot of the graph at the current interval
+     * @param interval the interval of the current snapshot
+     * @param delta the elements added and removed since the previous interval
+     */
+    public void loop(GraphView window, Interval interval, WindowDelta delta);
+}
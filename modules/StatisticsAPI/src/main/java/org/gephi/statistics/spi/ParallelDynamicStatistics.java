@@ -0,0 +1,88 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import org.gephi.attribute.time.Interval;
+import org.gephi.graph.api.GraphView;
+
+/**
+ * Dynamic statistics whose windows are independent from each other, so they
+ * can be computed in parallel.
+ * <p>
+ * When a statistics implements this interface, windows are distributed over
+ * a pool of worker threads instead of calling <code>loop()</code>. For each
+ * window, <code>compute()</code> is called from a worker thread. It must only
+ * read the graph and must not change the statistics state. The results are
+ * then given to <code>merge()</code> on the calling thread, in the order of
+ * the windows. <code>merge()</code> is where the attributes and the time
+ * series are written.
+ * <p>
+ * If <code>getThreadCount()</code> returns <code>1</code>, the sequential
+ * <code>loop()</code> is used instead.
+ *
+ * @param <T> the type of the per-window result
+ * @see DynamicStatistics
+ */
+public interface ParallelDynamicStatistics<T> extends DynamicStatistics {
+
+    /**
+     * Computes the result of one window. Called concurrently from several
+     * threads, each with its own view.
+     * @param window a snapshot of the graph at the current interval
+     * @param interval the interval of the current snapshot
+     * @return the result for this window
+     */
+    public T compute(GraphView window, Interval interval);
+
+    /**
+     * Stores the result of one window. Called on the executing thread, in
+     * the order of the windows.
+     * @param result the result returned by <code>compute()</code>
+     * @param window the interval of the window
+     */
+    public void merge(T result, Interval window);
+
+    /**
+     * Returns the number of worker threads windows are computed with.
+     * @return the number of threads
+     */
+    public int getThreadCount();
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics.spi;
+
+import java.util.Collections;
+import java.util.List;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Node;
+
+/**
+ * Elements which entered and left the window between two consecutive loops
+ * of a dynamic statistics. The first delta of an execution contains all the
+ * elements of the first window as added.
+ *
+ * @see IncrementalDynamicStatistics
+ */
+public final class WindowDelta {
+
+    private final List<Node> addedNodes;
+    private final List<Node> removedNodes;
+    private final List<Edge> addedEdges;
+    private final List<Edge> removedEdges;
+
+    public WindowDelta(List<Node> addedNodes, List<Node> removedNodes, List<Edge> addedEdges, List<Edge> removedEdges) {
+        this.addedNodes = Collections.unmodifiableList(addedNodes);
+        this.removedNodes = Collections.unmodifiableList(removedNodes);
+        this.addedEdges = Collections.unmodifiableList(addedEdges);
+        this.removedEdges = Collections.unmodifiableList(removedEdges);
+    }
+
+    /**
+     * Returns the nodes which entered the window.
+     * @return the added nodes
+     */
+    public List<Node> getAddedNodes() {
+        return addedNodes;
+    }
+
+    /**
+     * Returns the nodes which left the window.
+     * @return the removed nodes
+     */
+    public List<Node> getRemovedNodes() {
+        return removedNodes;
+    }
+
+    /**
+     * Returns the edges which entered the window.
+     * @return the added edges
+     */
+    public List<Edge> getAddedEdges() {
+        return addedEdges;
+    }
+
+    /**
+     * Returns the edges which left the window.
+     * @return the removed edges
+     */
+    public List<Edge> getRemovedEdges() {
+        return removedEdges;
+    }
+
+    /**
+     * Returns <code>true</code> if the window didn't change.
+     * @return <code>true</code> if nothing was added nor removed
+     */
+    public boolean isEmpty() {
+        return addedNodes.isEmpty() && removedNodes.isEmpty() && addedEdges.isEmpty() && removedEdges.isEmpty();
+    }
+}
@@ -43,17 +43,19 @@ package org.gephi.statistics.plugin;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
 import org.gephi.statistics.spi.Statistics;
-import org.gephi.graph.api.Node;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
@@ -65,150 +67,41 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
-import org.gephi.graph.api.NodeIterable;
+import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 
 /**
+ * Counts triangles with the compact-forward algorithm: nodes are ranked by
+ * degree, each link is oriented towards the higher ranked node and triangles
+ * are found once, by merging sorted forward neighbor lists.
+ * <p>
+ * In directed mode triangles are those of the underlying undirected graph.
+ * The local coefficient of a node is the number of arcs between its neighbors
+ * divided by <code>d(d-1)</code>, <code>d</code> being its number of distinct
+ * neighbors.
+ * <p>
  * Ref: Matthieu Latapy, Main-memory Triangle Computations for Very Large
  * (Sparse (Power-Law)) Graphs, in Theoretical Computer Science (TCS) 407 (1-3),
  * pages 458-473, 2008
- *
- * @author pjmcswee
- */
-class Renumbering implements Comparator<EdgeWrapper> {
-
-    @Override
-    public int compare(EdgeWrapper o1, EdgeWrapper o2) {
-        if (o1.wrapper.getID() < o2.wrapper.getID()) {
-            return -1;
-        } else if (o1.wrapper.getID() > o2.wrapper.getID()) {
-            return 1;
-        } else {
-            return 0;
-        }
-    }
-}
-
-/**
- *
- * @author pjmcswee
- */
-class EdgeWrapper {
-
-    public int count;
-    public ArrayWrapper wrapper;
-
-    public EdgeWrapper(int count, ArrayWrapper wrapper) {
-        this.count = count;
-        this.wrapper = wrapper;
-    }
-}
-
-/**
- *
- * @author pjmcswee
- */
-class ArrayWrapper implements Comparable {
-
-    private EdgeWrapper[] array;
-    private int ID;
-    public Node node;
-
-    /**
-     * Empty Constructor/
-     */
-    ArrayWrapper() {
-    }
-
-    /**
-     *
-     * @return The ID of this array wrapper
-     */
-    public int getID() {
-        return ID;
-    }
-
-    /**
-     *
-     * @return The adjacency array
-     */
-    public EdgeWrapper[] getArray() {
-        return array;
-    }
-
-    public void setArray(EdgeWrapper[] array) {
-        this.array = array;
-    }
-
-    /**
-     *
-     * @param pArray
-     */
-    ArrayWrapper(int ID, EdgeWrapper[] array) {
-        this.array = array;
-        this.ID = ID;
-    }
-
-    public void setID(int ID) {
-        this.ID = ID;
-    }
-
-    /**
-     *
-     * @param pIndex
-     * @return
-     */
-    public int get(int index) {
-        if (index >= array.length) {
-            return -1;
-        }
-        return array[index].wrapper.ID;
-    }
-
-    public int getCount(int index) {
-        if (index >= array.length) {
-            return -1;
-        }
-        return array[index].count;
-    }
-
-    /**
-     *
-     * @return
-     */
-    public int length() {
-        return array.length;
-    }
-
-    /**
-     *
-     * @param o
-     * @return
-     */
-    @Override
-    public int compareTo(Object o) {
-        ArrayWrapper aw = (ArrayWrapper) o;
-        if (aw.length() < length()) {
-            return -1;
-        }
-        if (aw.length() > length()) {
-            return 1;
-        }
-        return 0;
-    }
-}
-
-/**
  *
  * @author Patrick J. McSweeney
  */
 public class ClusteringCoefficient implements Statistics, LongTask {
 
     public static final String CLUSTERING_COEFF = "clustering";
+    public static final String TRIANGLES = "Triangles";
+    /**
+     * Number of ranks a thread takes at once.
+     */
+    private static final int CHUNK_SIZE = 256;
     /**
      * The avergage Clustering Coefficient.
      */
     private double avgClusteringCoeff;
+    /**
+     * The global clustering coefficient, ratio of closed to connected triples.
+     */
+    private double transitivity;
     /**
      * Indicates should treat graph as undirected.
      */
@@ -216,17 +109,19 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     /**
      * Indicates statistics should stop processing/
      */
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     /**
      * Keeps track of Progress made.
      */
     private ProgressTicket progress;
+    private int progressCount;
     private int[] triangles;
-    private ArrayWrapper[] network;
-    private int K;
+    private int[] degrees;
+    private GraphSnapshot snapshot;
     private int N;
     private double[] nodeClustering;
-    private int totalTriangles;
+    private long totalTriangles;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     public ClusteringCoefficient() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -239,6 +134,14 @@ public class ClusteringCoefficient implements Statistics, LongTask {
         return avgClusteringCoeff;
     }
 
+    public double getTransitivity() {
+        return transitivity;
+    }
+
+    public long getTotalTriangles() {
+        return totalTriangles;
+    }
+
     @Override
     public void execute(GraphModel graphModel, AttributeModel attributeModel) {
         isDirected = graphModel.isDirected();
@@ -256,16 +159,10 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     public void execute(Graph hgraph, AttributeModel attributeModel) {
         isCanceled = false;
 
-        HashMap<String, Double> resultValues = new HashMap<String, Double>();
-
-        if (isDirected) {
-            avgClusteringCoeff = bruteForce(hgraph, attributeModel);
-        } else {
-            initStartValues(hgraph);
-            resultValues = computeTriangles(hgraph, network, triangles, nodeClustering, isDirected);
-            totalTriangles = resultValues.get("triangles").intValue();
-            avgClusteringCoeff = resultValues.get("clusteringCoefficient");
+        triangles(hgraph);
 
+        if (isCanceled) {
+            return;
         }
 
         //Set results in columns
@@ -275,410 +172,294 @@ public class ClusteringCoefficient implements Statistics, LongTask {
             clusteringCol = nodeTable.addColumn(CLUSTERING_COEFF, "Clustering Coefficient", Double.class, new Double(0));
         }
 
-        Column triCount = null;
-        if (!isDirected) {
-            triCount = nodeTable.getColumn("Triangles");
-            if (triCount == null) {
-                triCount = nodeTable.addColumn("Triangles", "Number of triangles", Integer.class, new Integer(0));
-            }
+        Column triCount = nodeTable.getColumn(TRIANGLES);
+        if (triCount == null) {
+            triCount = nodeTable.addColumn(TRIANGLES, "Number of triangles", Integer.class, new Integer(0));
         }
 
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
-                network[v].node.setAttribute(clusteringCol, nodeClustering[v]);
-                if (!isDirected) {
-                    network[v].node.setAttribute(triCount, triangles[v]);
-                }
+            if (degrees[v] > 1) {
+                snapshot.getNode(v).setAttribute(clusteringCol, nodeClustering[v]);
+                snapshot.getNode(v).setAttribute(triCount, triangles[v]);
             }
         }
     }
 
     public void triangles(Graph hgraph) {
         initStartValues(hgraph);
-        HashMap<String, Double> resultValues = computeTriangles(hgraph, network, triangles,
-                nodeClustering, isDirected);
-        totalTriangles = resultValues.get("triangles").intValue();
-        avgClusteringCoeff = resultValues.get("clusteringCoefficient");
-    }
-
-    public HashMap<String, Double> computeClusteringCoefficient(Graph hgraph, ArrayWrapper[] currentNetwork,
-            int[] currentTriangles, double[] currentNodeClustering, boolean directed) {
-        HashMap<String, Double> resultValues = new HashMap<String, Double>();
-
-        if (isDirected) {
-            double avClusteringCoefficient = bruteForce(hgraph, null);
-            resultValues.put("clusteringCoefficient", avClusteringCoefficient);
-            return resultValues;
-        } else {
-            initStartValues(hgraph);
-            resultValues = computeTriangles(hgraph, currentNetwork, currentTriangles, currentNodeClustering, directed);
-            return resultValues;
-
+        HashMap<String, Double> resultValues = computeClusteringCoefficient(hgraph, triangles, nodeClustering, isDirected);
+        if (isCanceled) {
+            return;
         }
+        totalTriangles = resultValues.get("triangles").longValue();
+        avgClusteringCoeff = resultValues.get("clusteringCoefficient");
+        transitivity = resultValues.get("transitivity");
     }
 
     public void initStartValues(Graph hgraph) {
         N = hgraph.getNodeCount();
-        K = (int) Math.sqrt(N);
         nodeClustering = new double[N];
-        network = new ArrayWrapper[N];
         triangles = new int[N];
     }
 
-    public int createIndiciesMapAndInitNetwork(Graph hgraph, HashMap<Node, Integer> indicies, ArrayWrapper[] networks, int currentProgress) {
-        int index = 0;
-        for (Node s : hgraph.getNodes()) {
-            indicies.put(s, index);
-            networks[index] = new ArrayWrapper();
-            index++;
-            Progress.progress(progress, ++currentProgress);
-        }
-        return currentProgress;
-    }
-
-    private int closest_in_array(ArrayWrapper[] currentNetwork, int v) {
-        int right = currentNetwork[v].length() - 1;
+    /**
+     * Counts triangles and computes clustering coefficients, indexed as the
+     * nodes of <code>hgraph</code> are iterated.
+     *
+     * @param hgraph the graph
+     * @param currentTriangles receives the number of triangles of each node
+     * @param currentNodeClustering receives the local coefficient of each node
+     * with more than one neighbor
+     * @param directed <code>true</code> to count arcs between neighbors
+     * @return the number of triangles (<code>triangles</code>), the average
+     * local coefficient (<code>clusteringCoefficient</code>) and the global one
+     * (<code>transitivity</code>)
+     */
+    public HashMap<String, Double> computeClusteringCoefficient(Graph hgraph, int[] currentTriangles,
+            double[] currentNodeClustering, boolean directed) {
+        HashMap<String, Double> resultValues = new HashMap<String, Double>();
 
-        /* optimization for extreme cases */
-        if (right < 0) {
-            return (-1);
-        }
-        if (currentNetwork[v].get(0) >= v) {
-            return (-1);
-        }
-        if (currentNetwork[v].get(right) < v) {
-            return (right);
-        }
-        if (currentNetwork[v].get(right) == v) {
-            return (right - 1);
-        }
+        hgraph.readLock();
 
-        int left = 0, mid;
-        while (right > left) {
-            mid = (left + right) / 2;
-            if (v < currentNetwork[v].get(mid)) {
-                right = mid - 1;
-            } else if (v > currentNetwork[v].get(mid)) {
-                left = mid + 1;
-            } else {
-                return (mid - 1);
+        snapshot = GraphSnapshot.get(hgraph, directed, false);
+        int n = snapshot.getNodeCount();
+        Progress.start(progress, n);
+        progressCount = 0;
+
+        //Distinct neighbors, flagged 1 when linked by an out-edge and 2 by an in-edge
+        int[] offsets = new int[n + 1];
+        int capacity = snapshot.getOutEntryCount() + (directed ? snapshot.getInNeighbors().length : 0);
+        int[] neighbors = new int[capacity];
+        byte[] flags = new byte[capacity];
+        int[] marks = new int[n];
+        int[] positions = new int[n];
+        Arrays.fill(marks, -1);
+        degrees = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            offsets[v] = count;
+            count = addNeighbors(v, snapshot.getOutOffsets(), snapshot.getOutNeighbors(), (byte) 1, neighbors, flags, marks, positions, count);
+            if (directed) {
+                count = addNeighbors(v, snapshot.getInOffsets(), snapshot.getInNeighbors(), (byte) 2, neighbors, flags, marks, positions, count);
             }
+            degrees[v] = count - offsets[v];
         }
+        offsets[n] = count;
 
-        if (v > currentNetwork[v].get(right)) {
-            return (right);
-        } else {
-
-            return right - 1;
+        //Ranks by increasing degree, then index
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, degrees[v]);
         }
-    }
-
-    /**
-     *
-     * @param v - The specific node to count the triangles on.
-     */
-    private void newVertex(ArrayWrapper[] currentNetwork, int[] currentTrianlgles, int v, int n) {
-        int[] A = new int[n];
-
-        for (int i = currentNetwork[v].length() - 1; (i >= 0) && (currentNetwork[v].get(i) > v); i--) {
-            int neighbor = currentNetwork[v].get(i);
-            A[neighbor] = currentNetwork[v].getCount(i);
+        int[] firstRanks = new int[maxDegree + 2];
+        for (int v = 0; v < n; v++) {
+            firstRanks[degrees[v] + 1]++;
         }
-        for (int i = currentNetwork[v].length() - 1; i >= 0; i--) {
-            int neighbor = currentNetwork[v].get(i);
-            for (int j = closest_in_array(currentNetwork, neighbor); j >= 0; j--) {
-                int next = currentNetwork[neighbor].get(j);
-                if (A[next] > 0) {
-                    currentTrianlgles[next] += currentNetwork[v].getCount(i);
-                    currentTrianlgles[v] += currentNetwork[v].getCount(i);
-                    currentTrianlgles[neighbor] += A[next];
-                }
-            }
+        for (int d = 0; d <= maxDegree; d++) {
+            firstRanks[d + 1] += firstRanks[d];
+        }
+        int[] ranks = new int[n];
+        for (int v = 0; v < n; v++) {
+            ranks[v] = firstRanks[degrees[v]]++;
         }
-    }
 
-    private void tr_link_nohigh(ArrayWrapper[] currentNetwork, int[] currentTriangles, int u, int v, int count, int k) {
-        int iu = 0, iv = 0, w;
-        while ((iu < currentNetwork[u].length()) && (iv < currentNetwork[v].length())) {
-            if (currentNetwork[u].get(iu) < currentNetwork[v].get(iv)) {
-                iu++;
-            } else if (currentNetwork[u].get(iu) > currentNetwork[v].get(iv)) {
-                iv++;
-            } else { /* neighbor in common */
-
-                w = currentNetwork[u].get(iu);
-                if (w >= k) {
-                    currentTriangles[w] += count;
+        //Forward neighbors of each rank, as rank << 2 | number of arcs, sorted
+        int[] forwardOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (ranks[neighbors[i]] > ranks[v]) {
+                    forwardOffsets[ranks[v] + 1]++;
                 }
-                iu++;
-                iv++;
             }
         }
-    }
-
-    private HashMap<Node, EdgeWrapper> createNeighbourTable(Graph hgraph, Node node, HashMap<Node, Integer> indicies,
-            ArrayWrapper[] networks, boolean directed) {
-
-        HashMap<Node, EdgeWrapper> neighborTable = new HashMap<Node, EdgeWrapper>();
-
-        if (!directed) {
-            for (Edge edge : hgraph.getEdges(node)) {
-                Node neighbor = hgraph.getOpposite(node, edge);
-                neighborTable.put(neighbor, new EdgeWrapper(1, networks[indicies.get(neighbor)]));
-            }
-        } else {
-            for (Node neighbor : ((DirectedGraph) hgraph).getPredecessors(node)) {
-                neighborTable.put(neighbor, new EdgeWrapper(1, networks[indicies.get(neighbor)]));
-            }
-
-            for (Edge out : ((DirectedGraph) hgraph).getOutEdges(node)) {
-                Node neighbor = out.getTarget();
-                EdgeWrapper ew = neighborTable.get(neighbor);
-                if (ew == null) {
-                    neighborTable.put(neighbor, new EdgeWrapper(1, network[indicies.get(neighbor)]));
-                } else {
-                    ew.count++;
+        for (int r = 0; r < n; r++) {
+            forwardOffsets[r + 1] += forwardOffsets[r];
+        }
+        int[] forward = new int[forwardOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            int position = forwardOffsets[ranks[v]];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int u = neighbors[i];
+                if (ranks[u] > ranks[v]) {
+                    forward[position++] = ranks[u] << 2 | ((flags[i] & 1) + (flags[i] >> 1));
                 }
             }
+            Arrays.sort(forward, forwardOffsets[ranks[v]], position);
         }
-        return neighborTable;
-    }
+        neighbors = null;
+        flags = null;
 
-    private EdgeWrapper[] getEdges(HashMap<Node, EdgeWrapper> neighborTable) {
-
-        int i = 0;
-        EdgeWrapper[] edges = new EdgeWrapper[neighborTable.size()];
-        for (EdgeWrapper e : neighborTable.values()) {
-            edges[i] = e;
-            i++;
-        }
-        return edges;
-    }
-
-    private int processNetwork(ArrayWrapper[] currentNetwork, int currentProgress) {
-        Arrays.sort(currentNetwork);
-        for (int j = 0; j < N; j++) {
-            currentNetwork[j].setID(j);
-            Progress.progress(progress, ++currentProgress);
+        if (isCanceled) {
+            hgraph.readUnlockAll();
+            return resultValues;
         }
 
-        for (int j = 0; j < N; j++) {
-            Arrays.sort(currentNetwork[j].getArray(), new Renumbering());
-            Progress.progress(progress, ++currentProgress);
+        //Count
+        int workerCount = Math.max(1, Math.min(threadCount, n / CHUNK_SIZE));
+        AtomicInteger nextRank = new AtomicInteger();
+        ForwardThread[] workers = new ForwardThread[workerCount];
+        for (int t = 0; t < workerCount; t++) {
+            workers[t] = new ForwardThread(forwardOffsets, forward, directed, nextRank);
         }
-        return currentProgress;
-    }
-
-    private int computeRemainingTrianles(Graph hgraph, ArrayWrapper[] currentNetwork, int[] currentTriangles, int currentProgress) {
-        int n = hgraph.getNodeCount();
-        int k = (int) Math.sqrt(n);
-        for (int v = n - 1; (v >= 0) && (v >= k); v--) {
-            for (int i = closest_in_array(currentNetwork, v); i >= 0; i--) {
-                int u = currentNetwork[v].get(i);
-                if (u >= k) {
-                    tr_link_nohigh(currentNetwork, currentTriangles, u, v, currentNetwork[v].getCount(i), k);
+        if (workerCount == 1) {
+            workers[0].run();
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workerCount);
+            try {
+                ArrayList<Future> threads = new ArrayList<Future>();
+                for (ForwardThread worker : workers) {
+                    threads.add(pool.submit(worker));
+                }
+                for (Future future : threads) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException ex) {
+                        Exceptions.printStackTrace(ex);
+                    } catch (ExecutionException ex) {
+                        Exceptions.printStackTrace(ex);
+                    }
                 }
+            } finally {
+                pool.shutdown();
             }
-            Progress.progress(progress, ++currentProgress);
+        }
 
-            if (isCanceled) {
-                hgraph.readUnlockAll();
-                return currentProgress;
-            }
+        if (isCanceled) {
+            hgraph.readUnlockAll();
+            return resultValues;
         }
-        return currentProgress;
-    }
 
-    private HashMap<String, Double> computeResultValues(Graph hgraph, ArrayWrapper[] currentNetwork,
-            int[] currentTriangles, double[] currentNodeClusterig, boolean directed, int currentProgress) {
-        int n = hgraph.getNodeCount();
-        HashMap<String, Double> totalValues = new HashMap<String, Double>();
+        //Sum up, by node index
+        long trianglesSum = 0;
+        double closedSum = 0;
+        double connectedSum = 0;
+        double clusteringSum = 0;
         int numNodesDegreeGreaterThanOne = 0;
-        int trianglesNumber = 0;
-        double currentClusteringCoefficient = 0;
         for (int v = 0; v < n; v++) {
-            if (currentNetwork[v].length() > 1) {
-                numNodesDegreeGreaterThanOne++;
-                double cc = currentTriangles[v];
-                trianglesNumber += currentTriangles[v];
-                cc /= (currentNetwork[v].length() * (currentNetwork[v].length() - 1));
-                if (!directed) {
-                    cc *= 2.0f;
-                }
-                currentNodeClusterig[v] = cc;
-                currentClusteringCoefficient += cc;
+            int r = ranks[v];
+            int nodeTriangles = 0;
+            int closed = 0;
+            for (ForwardThread worker : workers) {
+                nodeTriangles += worker.triangles[r];
+                closed += directed ? worker.arcs[r] : 2 * worker.triangles[r];
             }
-            Progress.progress(progress, ++currentProgress);
-
-            if (isCanceled) {
-                hgraph.readUnlockAll();
-                return totalValues;
-            }
-        }
-        trianglesNumber /= 3;
-        currentClusteringCoefficient /= numNodesDegreeGreaterThanOne;
-
-        totalValues.put("triangles", (double) trianglesNumber);
-        totalValues.put("clusteringCoefficient", currentClusteringCoefficient);
-        return totalValues;
-    }
-
-    private HashMap<String, Double> computeTriangles(Graph hgraph, ArrayWrapper[] currentNetwork, int[] currentTriangles,
-            double[] nodeClustering, boolean directed) {
-
-        HashMap<String, Double> resultValues = new HashMap<String, Double>();
-        int ProgressCount = 0;
-        Progress.start(progress, 7 * hgraph.getNodeCount());
-
-        hgraph.readLock();
-
-        int n = hgraph.getNodeCount();
+            currentTriangles[v] = nodeTriangles;
+            trianglesSum += nodeTriangles;
 
-        /**
-         * Create network for processing
-         */
-        /**
-         *         */
-        HashMap<Node, Integer> indicies = new HashMap<Node, Integer>();
-
-        ProgressCount = createIndiciesMapAndInitNetwork(hgraph, indicies, currentNetwork, ProgressCount);
-
-        int index = 0;
-        for (Node node : hgraph.getNodes()) {
-            HashMap<Node, EdgeWrapper> neighborTable = createNeighbourTable(hgraph, node, indicies, currentNetwork, directed);
-
-            EdgeWrapper[] edges = getEdges(neighborTable);
-            currentNetwork[index].node = node;
-            currentNetwork[index].setArray(edges);
-            index++;
-            Progress.progress(progress, ++ProgressCount);
-
-            if (isCanceled) {
-                hgraph.readUnlockAll();
-                return resultValues;
+            double d = degrees[v];
+            if (d > 1) {
+                numNodesDegreeGreaterThanOne++;
+                double cc = closed / (d * (d - 1));
+                currentNodeClustering[v] = cc;
+                clusteringSum += cc;
+                closedSum += closed;
+                connectedSum += d * (d - 1);
             }
         }
 
-        ProgressCount = processNetwork(currentNetwork, ProgressCount);
-
-        int k = (int) Math.sqrt(n);
-
-        for (int v = 0; v < k && v < n; v++) {
-            newVertex(currentNetwork, currentTriangles, v, n);
-            Progress.progress(progress, ++ProgressCount);
-        }
-
-        /* remaining links */
-        ProgressCount = computeRemainingTrianles(hgraph, currentNetwork, currentTriangles, ProgressCount);
+        //Directed graphs have always been averaged over all nodes
+        double average = clusteringSum / (directed ? n : numNodesDegreeGreaterThanOne);
 
-        resultValues = computeResultValues(hgraph, currentNetwork, currentTriangles, nodeClustering, directed, ProgressCount);
+        resultValues.put("triangles", (double) (trianglesSum / 3));
+        resultValues.put("clusteringCoefficient", average);
+        resultValues.put("transitivity", closedSum / connectedSum);
 
         hgraph.readUnlock();
         return resultValues;
     }
 
-    private double bruteForce(Graph hgraph, AttributeModel attributeModel) {
-        //The atrributes computed by the statistics
-        Column clusteringColumn = initializeAttributeColunms(attributeModel);
-
-        float totalCC = 0;
-
-        hgraph.readLock();
-
-        Progress.start(progress, hgraph.getNodeCount());
-        int node_count = 0;
-        for (Node node : hgraph.getNodes()) {
-            float nodeClusteringCoefficient = computeNodeClusteringCoefficient(hgraph, node, isDirected);
-
-            if (nodeClusteringCoefficient > -1) {
-
-                saveCalculatedValue(node, clusteringColumn, nodeClusteringCoefficient);
-
-                totalCC += nodeClusteringCoefficient;
+    private int addNeighbors(int v, int[] rowOffsets, int[] rowNeighbors, byte flag,
+            int[] neighbors, byte[] flags, int[] marks, int[] positions, int count) {
+        for (int i = rowOffsets[v]; i < rowOffsets[v + 1]; i++) {
+            int u = rowNeighbors[i];
+            if (u == v) {
+                continue;
             }
-
-            if (isCanceled) {
-                break;
+            if (marks[u] != v) {
+                marks[u] = v;
+                positions[u] = count;
+                neighbors[count] = u;
+                flags[count++] = flag;
+            } else {
+                flags[positions[u]] |= flag;
             }
-
-            node_count++;
-            Progress.progress(progress, node_count);
-
         }
-        double clusteringCoeff = totalCC / hgraph.getNodeCount();
-
-        hgraph.readUnlockAll();
-
-        return clusteringCoeff;
+        return count;
     }
 
-    private float increaseCCifNesessary(Graph hgraph, Node neighbor1, Node neighbor2, boolean directed, float nodeCC) {
-        if (neighbor1 == neighbor2) {
-            return nodeCC;
+    private void incrementProgress(int ranks) {
+        synchronized (this) {
+            progressCount += ranks;
+            Progress.progress(progress, progressCount);
         }
-        if (directed) {
-            if (hgraph.isAdjacent(neighbor1, neighbor2)) {
-                nodeCC++;
-            }
-            if (hgraph.isAdjacent(neighbor2, neighbor1)) {
-                nodeCC++;
-            }
-        } else {
-            if (hgraph.isAdjacent(neighbor1, neighbor2)) {
-                nodeCC++;
-            }
-        }
-        return nodeCC;
     }
 
-    private float computeNodeClusteringCoefficient(Graph hgraph, Node node, boolean directed) {
-        float nodeCC = 0;
-        int neighborhood = 0;
-        NodeIterable neighbors1 = hgraph.getNeighbors(node);
-        for (Node neighbor1 : neighbors1) {
-            neighborhood++;
-            NodeIterable neighbors2 = hgraph.getNeighbors(node);
-
-            for (Node neighbor2 : neighbors2) {
-                nodeCC = increaseCCifNesessary(hgraph, neighbor1, neighbor2, directed, nodeCC);
+    /**
+     * Lists the triangles of chunks of ranks and counts them, in arrays
+     * indexed by rank owned by the instance. Also counts, for each node of a
+     * triangle, the arcs between the two others.
+     */
+    private class ForwardThread implements Runnable {
+
+        private final int[] forwardOffsets;
+        private final int[] forward;
+        private final boolean directed;
+        private final AtomicInteger nextRank;
+        private final int[] triangles;
+        private final int[] arcs;
+
+        public ForwardThread(int[] forwardOffsets, int[] forward, boolean directed, AtomicInteger nextRank) {
+            this.forwardOffsets = forwardOffsets;
+            this.forward = forward;
+            this.directed = directed;
+            this.nextRank = nextRank;
+            int n = forwardOffsets.length - 1;
+            this.triangles = new int[n];
+            this.arcs = directed ? new int[n] : null;
+        }
+
+        @Override
+        public void run() {
+            int n = forwardOffsets.length - 1;
+            int from;
+            while ((from = nextRank.getAndAdd(CHUNK_SIZE)) < n) {
+                int to = Math.min(n, from + CHUNK_SIZE);
+                for (int r = from; r < to; r++) {
+                    for (int i = forwardOffsets[r]; i < forwardOffsets[r + 1]; i++) {
+                        int u = forward[i] >>> 2;
+                        //Common forward neighbors are above u in both lists
+                        int a = i + 1;
+                        int aEnd = forwardOffsets[r + 1];
+                        int b = forwardOffsets[u];
+                        int bEnd = forwardOffsets[u + 1];
+                        while (a < aEnd && b < bEnd) {
+                            int w = forward[a] >>> 2;
+                            int wb = forward[b] >>> 2;
+                            if (w < wb) {
+                                a++;
+                            } else if (w > wb) {
+                                b++;
+                            } else {
+                                triangles[r]++;
+                                triangles[u]++;
+                                triangles[w]++;
+                                if (directed) {
+                                    arcs[r] += forward[b] & 3;
+                                    arcs[u] += forward[a] & 3;
+                                    arcs[w] += forward[i] & 3;
+                                }
+                                a++;
+                                b++;
+                            }
+                        }
+                    }
+                }
+                if (isCanceled) {
+                    return;
+                }
+                incrementProgress(to - from);
             }
         }
-        nodeCC /= 2.0;
-
-        if (neighborhood > 1) {
-            float cc = nodeCC / (.5f * neighborhood * (neighborhood - 1));
-            if (directed) {
-                cc = nodeCC / (neighborhood * (neighborhood - 1));
-            }
-
-            return cc;
-        } else {
-            return -1.f;
-        }
-    }
-
-    private Column initializeAttributeColunms(AttributeModel attributeModel) {
-
-        if (attributeModel == null) {
-            return null;
-        }
-        Table nodeTable = attributeModel.getNodeTable();
-        Column clusteringCol = nodeTable.getColumn("clustering");
-
-        if (clusteringCol == null) {
-            clusteringCol = nodeTable.addColumn("clustering", "Clustering Coefficient", Double.class, new Double(0));
-        }
-
-        return clusteringCol;
-    }
-
-    private void saveCalculatedValue(Node node, Column clusteringColumn,
-            float nodeClusteringCoefficient) {
-
-        if (clusteringColumn == null) {
-            return;
-        }
-        node.setAttribute(clusteringColumn, nodeClusteringCoefficient);
     }
 
     @Override
@@ -716,33 +497,20 @@ public class ClusteringCoefficient implements Statistics, LongTask {
 
         NumberFormat f = new DecimalFormat("#0.000");
 
-        if (isDirected) {
-            return "<HTML> <BODY> <h1> Clustering Coefficient Metric Report </h1> "
-                    + "<hr>"
-                    + "<br />" + "<h2> Parameters: </h2>"
-                    + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
-                    + "<br>" + "<h2> Results: </h2>"
-                    + "Average Clustering Coefficient: " + f.format(avgClusteringCoeff) + "<br />"
-                    + "The Average Clustering Coefficient is the mean value of individual coefficients.<br /><br />"
-                    + imageFile
-                    + "<br /><br />" + "<h2> Algorithm: </h2>"
-                    + "Simple and slow brute force.<br />"
-                    + "</BODY> </HTML>";
-        } else {
-
-            return "<HTML> <BODY> <h1> Clustering Coefficient Metric Report </h1> "
-                    + "<hr>"
-                    + "<br />" + "<h2> Parameters: </h2>"
-                    + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
-                    + "<br>" + "<h2> Results: </h2>"
-                    + "Average Clustering Coefficient: " + f.format(avgClusteringCoeff) + "<br />"
-                    + "Total triangles: " + totalTriangles + "<br />"
-                    + "The Average Clustering Coefficient is the mean value of individual coefficients.<br /><br />"
-                    + imageFile
-                    + "<br /><br />" + "<h2> Algorithm: </h2>"
-                    + "Matthieu Latapy, <i>Main-memory Triangle Computations for Very Large (Sparse (Power-Law)) Graphs</i>, in Theoretical Computer Science (TCS) 407 (1-3), pages 458-473, 2008<br />"
-                    + "</BODY> </HTML>";
-        }
+        return "<HTML> <BODY> <h1> Clustering Coefficient Metric Report </h1> "
+                + "<hr>"
+                + "<br />" + "<h2> Parameters: </h2>"
+                + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
+                + "<br>" + "<h2> Results: </h2>"
+                + "Average Clustering Coefficient: " + f.format(avgClusteringCoeff) + "<br />"
+                + "Transitivity: " + f.format(transitivity) + "<br />"
+                + "Total triangles: " + totalTriangles + "<br />"
+                + "The Average Clustering Coefficient is the mean value of individual coefficients. "
+                + "The Transitivity is the ratio of closed to connected triples in the whole network.<br /><br />"
+                + imageFile
+                + "<br /><br />" + "<h2> Algorithm: </h2>"
+                + "Matthieu Latapy, <i>Main-memory Triangle Computations for Very Large (Sparse (Power-Law)) Graphs</i>, in Theoretical Computer Science (TCS) 407 (1-3), pages 458-473, 2008<br />"
+                + "</BODY> </HTML>";
     }
 
     public void setDirected(boolean isDirected) {
@@ -753,6 +521,22 @@ public class ClusteringCoefficient implements Statistics, LongTask {
         return isDirected;
     }
 
+    /**
+     * Sets the number of threads triangles are listed with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         isCanceled = true;
@@ -767,7 +551,7 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     public double[] getCoefficientReuslts() {
         double[] res = new double[N];
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
+            if (degrees[v] > 1) {
                 res[v] = nodeClustering[v];
             }
         }
@@ -777,7 +561,7 @@ public class ClusteringCoefficient implements Statistics, LongTask {
     public double[] getTriangesReuslts() {
         double[] res = new double[N];
         for (int v = 0; v < N; v++) {
-            if (network[v].length() > 1) {
+            if (degrees[v] > 1) {
                 res[v] = triangles[v];
             }
         }
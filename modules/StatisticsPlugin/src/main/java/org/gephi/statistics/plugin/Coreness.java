@@ -0,0 +1,237 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.gephi.attribute.api.AttributeModel;
+import org.gephi.attribute.api.Table;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.statistics.spi.Statistics;
+import org.gephi.utils.longtask.spi.LongTask;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.openide.util.NbBundle;
+
+/**
+ * Computes the core number of every node, the largest <code>k</code> such that
+ * the node belongs to the <code>k</code>-core of the graph, the maximal
+ * subgraph in which all nodes have a degree of at least <code>k</code>.
+ * <p>
+ * Edges are read as undirected, parallel edges each count in the degree and
+ * self-loops are ignored.
+ * <p>
+ * Ref: Vladimir Batagelj and Matjaz Zaversnik, An O(m) Algorithm for Cores
+ * Decomposition of Networks, 2003
+ */
+public class Coreness implements Statistics, LongTask {
+
+    public static final String CORENESS = "coreness";
+    private ProgressTicket progress;
+    private volatile boolean isCanceled;
+    private int maxCoreness;
+    private Map<Integer, Integer> corenessDist;
+
+    @Override
+    public void execute(GraphModel graphModel, AttributeModel attributeModel) {
+        Graph graph = graphModel.getGraphVisible();
+        execute(graph, attributeModel);
+    }
+
+    public void execute(Graph graph, AttributeModel attributeModel) {
+        isCanceled = false;
+        initializeAttributeColunms(attributeModel);
+
+        graph.readLock();
+        try {
+            Progress.start(progress);
+            GraphSnapshot snapshot = GraphSnapshot.get(graph, false, false);
+            int[] coreness = computeCoreness(snapshot);
+
+            Progress.switchToDeterminate(progress, snapshot.getNodeCount());
+            maxCoreness = 0;
+            corenessDist = new HashMap<Integer, Integer>();
+            for (int i = 0; i < coreness.length && !isCanceled; i++) {
+                snapshot.getNode(i).setAttribute(CORENESS, coreness[i]);
+                maxCoreness = Math.max(maxCoreness, coreness[i]);
+                Integer count = corenessDist.get(coreness[i]);
+                corenessDist.put(coreness[i], count == null ? 1 : count + 1);
+                Progress.progress(progress);
+            }
+        } finally {
+            graph.readUnlockAll();
+        }
+    }
+
+    /**
+     * Computes the core number of every node of <code>snapshot</code> in
+     * <code>O(n + m)</code>, by peeling nodes in order of their current degree
+     * kept in bucket lists.
+     *
+     * @param snapshot an undirected snapshot of the graph
+     * @return the core number of each node, indexed as in the snapshot
+     */
+    public static int[] computeCoreness(GraphSnapshot snapshot) {
+        int n = snapshot.getNodeCount();
+        int[] offsets = snapshot.getOutOffsets();
+        int[] neighbors = snapshot.getOutNeighbors();
+
+        int[] degree = new int[n];
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+                if (neighbors[j] != v) {
+                    degree[v]++;
+                }
+            }
+            maxDegree = Math.max(maxDegree, degree[v]);
+        }
+
+        //Sort nodes by degree, bin[d] is where nodes of degree d start
+        int[] bin = new int[maxDegree + 1];
+        for (int v = 0; v < n; v++) {
+            bin[degree[v]]++;
+        }
+        int start = 0;
+        for (int d = 0; d <= maxDegree; d++) {
+            int count = bin[d];
+            bin[d] = start;
+            start += count;
+        }
+        int[] vert = new int[n];
+        int[] pos = new int[n];
+        for (int v = 0; v < n; v++) {
+            pos[v] = bin[degree[v]]++;
+            vert[pos[v]] = v;
+        }
+        for (int d = maxDegree; d > 0; d--) {
+            bin[d] = bin[d - 1];
+        }
+        bin[0] = 0;
+
+        //Peel nodes in increasing degree, a neighbor with a higher degree
+        //moves to the front of its bin and down to the lower one
+        for (int i = 0; i < n; i++) {
+            int v = vert[i];
+            for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+                int u = neighbors[j];
+                if (u != v && degree[u] > degree[v]) {
+                    int du = degree[u];
+                    int pu = pos[u];
+                    int pw = bin[du];
+                    int w = vert[pw];
+                    if (u != w) {
+                        pos[u] = pw;
+                        vert[pu] = w;
+                        pos[w] = pu;
+                        vert[pw] = u;
+                    }
+                    bin[du]++;
+                    degree[u]--;
+                }
+            }
+        }
+        return degree;
+    }
+
+    private void initializeAttributeColunms(AttributeModel attributeModel) {
+        Table nodeTable = attributeModel.getNodeTable();
+        if (!nodeTable.hasColumn(CORENESS)) {
+            nodeTable.addColumn(CORENESS, NbBundle.getMessage(Coreness.class, "Coreness.nodecolumn.Coreness"), Integer.class, 0);
+        }
+    }
+
+    public int getMaxCoreness() {
+        return maxCoreness;
+    }
+
+    @Override
+    public String getReport() {
+        //Distribution series
+        XYSeries dSeries = ChartUtils.createXYSeries(corenessDist, "Coreness Distribution");
+
+        XYSeriesCollection dataset = new XYSeriesCollection();
+        dataset.addSeries(dSeries);
+
+        JFreeChart chart = ChartFactory.createXYLineChart(
+                "Coreness Distribution",
+                "Value",
+                "Count",
+                dataset,
+                PlotOrientation.VERTICAL,
+                true,
+                false,
+                false);
+        chart.removeLegend();
+        ChartUtils.decorateChart(chart);
+        ChartUtils.scaleChart(chart, dSeries, false);
+        String imageFile = ChartUtils.renderChart(chart, "coreness-distribution.png");
+
+        String report = "<HTML> <BODY> <h1>Coreness Report </h1> "
+                + "<hr>"
+                + "<br> <h2> Results: </h2>"
+                + "Max Coreness (Degeneracy): " + maxCoreness
+                + "<br /><br />" + imageFile
+                + "<br /><br />" + "<h2> Algorithm: </h2>"
+                + "Vladimir Batagelj and Matjaz Zaversnik, <i>An O(m) Algorithm for Cores Decomposition of Networks</i>, 2003<br />"
+                + "</BODY></HTML>";
+
+        return report;
+    }
+
+    @Override
+    public boolean cancel() {
+        isCanceled = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        this.progress = progressTicket;
+    }
+}
@@ -46,9 +46,6 @@ import java.util.Map;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
@@ -139,20 +136,22 @@ public class EigenvectorCentrality implements Statistics, LongTask {
 
         Column column = initializeAttributeColunms(attributeModel);
 
-        int N = hgraph.getNodeCount();
         hgraph.readLock();
 
+        GraphSnapshot snapshot = GraphSnapshot.get(hgraph, isDirected, false);
+        int N = snapshot.getNodeCount();
+
         centralities = new double[N];
 
         Progress.start(progress, numRuns);
 
-        HashMap<Integer, Node> indicies = new HashMap<Integer, Node>();
-        HashMap<Node, Integer> invIndicies = new HashMap<Node, Integer>();
-        fillIndiciesMaps(hgraph, centralities, indicies, invIndicies);
+        for (int i = 0; i < N; i++) {
+            centralities[i] = 1;
+        }
 
-        sumChange = calculateEigenvectorCentrality(hgraph, centralities, indicies, invIndicies, isDirected, numRuns);
+        sumChange = calculateEigenvectorCentrality(snapshot, centralities, numRuns);
 
-        saveCalculatedValues(hgraph, column, indicies, centralities);
+        saveCalculatedValues(snapshot, column, centralities);
 
         hgraph.readUnlock();
 
@@ -168,13 +167,12 @@ public class EigenvectorCentrality implements Statistics, LongTask {
         return eigenCol;
     }
 
-    private void saveCalculatedValues(Graph hgraph, Column attributeColumn, HashMap<Integer, Node> indicies,
-            double[] eigCenrtalities) {
+    private void saveCalculatedValues(GraphSnapshot snapshot, Column attributeColumn, double[] eigCenrtalities) {
 
-        int N = hgraph.getNodeCount();
+        int N = snapshot.getNodeCount();
 
         for (int i = 0; i < N; i++) {
-            Node s = indicies.get(i);
+            Node s = snapshot.getNode(i);
 
             s.setAttribute(attributeColumn, eigCenrtalities[i]);
         }
@@ -194,25 +192,16 @@ public class EigenvectorCentrality implements Statistics, LongTask {
         }
     }
 
-    private double computeMaxValueAndTempValues(Graph hgraph, HashMap<Integer, Node> indicies, HashMap<Node, Integer> invIndicies,
-            double[] tempValues, double[] centralityValues, boolean directed) {
+    private double computeMaxValueAndTempValues(GraphSnapshot snapshot, double[] tempValues, double[] centralityValues) {
 
         double max = 0.;
-        int N = hgraph.getNodeCount();
+        int N = snapshot.getNodeCount();
+        int[] offsets = snapshot.getInOffsets();
+        int[] neighbors = snapshot.getInNeighbors();
 
         for (int i = 0; i < N; i++) {
-            Node u = indicies.get(i);
-            EdgeIterable iter = null;
-            if (directed) {
-                iter = ((DirectedGraph) hgraph).getInEdges(u);
-            } else {
-                iter = hgraph.getEdges(u);
-            }
-
-            for (Edge e : iter) {
-                Node v = hgraph.getOpposite(u, e);
-                Integer id = invIndicies.get(v);
-                tempValues[i] += centralityValues[id];
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                tempValues[i] += centralityValues[neighbors[j]];
             }
             max = Math.max(max, tempValues[i]);
             if (isCanceled) {
@@ -223,9 +212,9 @@ public class EigenvectorCentrality implements Statistics, LongTask {
         return max;
     }
 
-    private double updateValues(Graph hgraph, double[] tempValues, double[] centralityValues, double max) {
+    private double updateValues(double[] tempValues, double[] centralityValues, double max) {
         double sumChanged = 0.;
-        int N = hgraph.getNodeCount();
+        int N = centralityValues.length;
 
         for (int k = 0; k < N; k++) {
             if (max != 0) {
@@ -243,14 +232,19 @@ public class EigenvectorCentrality implements Statistics, LongTask {
     public double calculateEigenvectorCentrality(Graph hgraph, double[] eigCentralities,
             HashMap<Integer, Node> indicies, HashMap<Node, Integer> invIndicies,
             boolean directed, int numIterations) {
+        GraphSnapshot snapshot = GraphSnapshot.create(hgraph, invIndicies, directed, false);
+        return calculateEigenvectorCentrality(snapshot, eigCentralities, numIterations);
+    }
+
+    public double calculateEigenvectorCentrality(GraphSnapshot snapshot, double[] eigCentralities, int numIterations) {
 
-        int N = hgraph.getNodeCount();
+        int N = snapshot.getNodeCount();
         double sumChanged = 0.;
         double[] tmp = new double[N];
 
         for (int s = 0; s < numIterations; s++) {
-            double max = computeMaxValueAndTempValues(hgraph, indicies, invIndicies, tmp, eigCentralities, directed);
-            sumChanged = updateValues(hgraph, tmp, eigCentralities, max);
+            double max = computeMaxValueAndTempValues(snapshot, tmp, eigCentralities);
+            sumChanged = updateValues(tmp, eigCentralities, max);
             if (isCanceled) {
                 return sumChanged;
             }
@@ -42,13 +42,17 @@
 package org.gephi.statistics.plugin;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.graph.api.*;
-import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
@@ -102,11 +106,17 @@ public class GraphDistance implements Statistics, LongTask {
     /**
      *      */
     private ProgressTicket progress;
+    private int progressCount;
     /**
      *      */
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     private int shortestPaths;
     private boolean isNormalized;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private boolean approximate;
+    private double errorBound = 0.1;
+    private long seed;
+    private int pivotCount;
 
     public double getPathLength() {
         return avgDist;
@@ -156,25 +166,30 @@ public class GraphDistance implements Statistics, LongTask {
 
         hgraph.readLock();
 
-        N = hgraph.getNodeCount();
+        GraphSnapshot snapshot = GraphSnapshot.get(hgraph, isDirected, false);
+
+        N = snapshot.getNodeCount();
         
         initializeStartValues();
-        
-        HashMap<Node, Integer> indicies = createIndiciesMap(hgraph);
 
-        Map<String, double[]> metrics = calculateDistanceMetrics(hgraph, indicies, isDirected, isNormalized);
+        Map<String, double[]> metrics = calculateDistanceMetrics(snapshot, isDirected, isNormalized);
         
         eccentricity = metrics.get(ECCENTRICITY);
         closeness = metrics.get(CLOSENESS);
         betweenness = metrics.get(BETWEENNESS);
         
-        saveCalculatedValues(hgraph, indicies, eccentricity, betweenness, closeness);
+        saveCalculatedValues(snapshot, eccentricity, betweenness, closeness);
                 
         hgraph.readUnlock();
     }
-    
+
     public Map<String, double[]> calculateDistanceMetrics(Graph hgraph, HashMap<Node, Integer> indicies, boolean directed, boolean normalized) {
-        int n = hgraph.getNodeCount();
+        GraphSnapshot snapshot = GraphSnapshot.create(hgraph, indicies, directed, false);
+        return calculateDistanceMetrics(snapshot, directed, normalized);
+    }
+    
+    public Map<String, double[]> calculateDistanceMetrics(GraphSnapshot snapshot, boolean directed, boolean normalized) {
+        int n = snapshot.getNodeCount();
         
         HashMap<String, double[]> metrics = new HashMap<String, double[]>();
         
@@ -185,111 +200,314 @@ public class GraphDistance implements Statistics, LongTask {
         metrics.put(ECCENTRICITY, nodeEccentricity);
         metrics.put(CLOSENESS, nodeCloseness);
         metrics.put(BETWEENNESS, nodeBetweenness);
+
+        int[] sources = approximate ? samplePivots(n) : null;
+        int sourceCount = approximate ? sources.length : n;
+        pivotCount = sourceCount;
         
-        Progress.start(progress, hgraph.getNodeCount());
-        int count = 0;
-        
+        Progress.start(progress, sourceCount);
+        progressCount = 0;
+
+        //Sources are split in contiguous ranges so the reduction order, and thus the result, doesn't depend on scheduling
+        int workerCount = Math.max(1, Math.min(threadCount, sourceCount));
+        BrandesThread[] workers = new BrandesThread[workerCount];
+        for (int t = 0; t < workerCount; t++) {
+            int from = (int) ((long) sourceCount * t / workerCount);
+            int to = (int) ((long) sourceCount * (t + 1) / workerCount);
+            if (approximate) {
+                //Every pivot touches all the nodes it reaches, so all buffers are per worker
+                double[] betweennessBuffer = t == 0 ? nodeBetweenness : new double[n];
+                double[] eccentricityBuffer = t == 0 ? nodeEccentricity : new double[n];
+                double[] closenessBuffer = t == 0 ? nodeCloseness : new double[n];
+                workers[t] = new BrandesThread(snapshot, sources, from, to, eccentricityBuffer, closenessBuffer, betweennessBuffer);
+            } else {
+                double[] betweennessBuffer = t == 0 ? nodeBetweenness : new double[n];
+                workers[t] = new BrandesThread(snapshot, null, from, to, nodeEccentricity, nodeCloseness, betweennessBuffer);
+            }
+        }
+
+        if (workerCount == 1) {
+            workers[0].run();
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(workerCount);
+            try {
+                ArrayList<Future> threads = new ArrayList<Future>();
+                for (BrandesThread worker : workers) {
+                    threads.add(pool.submit(worker));
+                }
+                for (Future future : threads) {
+                    try {
+                        future.get();
+                    } catch (InterruptedException ex) {
+                        Exceptions.printStackTrace(ex);
+                    } catch (ExecutionException ex) {
+                        Exceptions.printStackTrace(ex);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        for (int t = 0; t < workerCount; t++) {
+            BrandesThread worker = workers[t];
+            if (t > 0) {
+                for (int i = 0; i < n; i++) {
+                    nodeBetweenness[i] += worker.betweenness[i];
+                }
+                if (approximate) {
+                    for (int i = 0; i < n; i++) {
+                        nodeCloseness[i] += worker.closeness[i];
+                        nodeEccentricity[i] = Math.max(nodeEccentricity[i], worker.eccentricity[i]);
+                        workers[0].pivotsReached[i] += worker.pivotsReached[i];
+                    }
+                }
+            }
+            avgDist += worker.totalDistance;
+            diameter = Math.max(diameter, worker.diameter);
+            radius = Math.min(radius, worker.radius);
+            shortestPaths += worker.shortestPaths;
+        }
+
+        if (isCanceled) {
+            return metrics;
+        }
+
+        if (approximate) {
+            estimateFromPivots(n, sourceCount, nodeEccentricity, nodeBetweenness, nodeCloseness, workers[0].pivotsReached);
+        }
+
+        avgDist /= shortestPaths;//mN * (mN - 1.0f);
+
+        calculateCorrection(n, nodeBetweenness, nodeCloseness, directed, normalized);
         
-        for (Node s : hgraph.getNodes()) {
-            Stack<Node> S = new Stack<Node>();
+        return metrics;
+    }
+
+    /**
+     * Returns the number of pivots needed so that closeness estimates are
+     * within <code>errorBound</code> times the diameter of the exact values
+     * with high probability, that is <code>log(n) / errorBound^2</code>
+     * (Eppstein and Wang).
+     *
+     * @param n the number of nodes
+     * @return the number of pivots, never more than <code>n</code>
+     */
+    public int getPivotCount(int n) {
+        if (n <= 1) {
+            return n;
+        }
+        double k = Math.ceil(Math.log(n) / (errorBound * errorBound));
+        return (int) Math.max(1, Math.min(n, k));
+    }
+
+    private int[] samplePivots(int n) {
+        int k = getPivotCount(n);
+        int[] nodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = i;
+        }
+        //Partial Fisher-Yates shuffle, the first k nodes are the pivots
+        Random random = new Random(seed);
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = nodes[i];
+            nodes[i] = nodes[j];
+            nodes[j] = tmp;
+        }
+        return Arrays.copyOf(nodes, k);
+    }
 
-            LinkedList<Node>[] P = new LinkedList[n];
+    private void estimateFromPivots(int n, int k, double[] nodeEccentricity, double[] nodeBetweenness, double[] nodeCloseness, int[] pivotsReached) {
+        //Dependencies were accumulated for k sources out of n
+        double scale = (double) n / k;
+        diameter = 0;
+        radius = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            nodeBetweenness[i] *= scale;
+            if (pivotsReached[i] != 0) {
+                nodeCloseness[i] /= pivotsReached[i];
+            }
+            //Only distances to pivots are known, eccentricities are lower bounds
+            diameter = Math.max(diameter, (int) nodeEccentricity[i]);
+            radius = Math.min(radius, (int) nodeEccentricity[i]);
+        }
+    }
+
+    private void incrementProgress() {
+        synchronized (this) {
+            Progress.progress(progress, ++progressCount);
+        }
+    }
+
+    /**
+     * Runs Brandes' single-source shortest paths and dependency accumulation
+     * for a range of sources. Each instance owns its work arrays and
+     * accumulates betweenness in its own buffer. In exact mode eccentricity
+     * and closeness are written directly as each source only touches its own
+     * slot. With pivots, distances to the pivot are accumulated for every node
+     * it reaches instead, in buffers owned by the instance.
+     */
+    private class BrandesThread implements Runnable {
+
+        private final GraphSnapshot snapshot;
+        private final int[] sources;
+        private final int from;
+        private final int to;
+        private final double[] eccentricity;
+        private final double[] closeness;
+        private final double[] betweenness;
+        private final int[] pivotsReached;
+        //Results
+        private double totalDistance;
+        private int diameter;
+        private int radius = Integer.MAX_VALUE;
+        private int shortestPaths;
+
+        public BrandesThread(GraphSnapshot snapshot, int[] sources, int from, int to, double[] eccentricity, double[] closeness, double[] betweenness) {
+            this.snapshot = snapshot;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+            this.eccentricity = eccentricity;
+            this.closeness = closeness;
+            this.betweenness = betweenness;
+            this.pivotsReached = sources != null ? new int[snapshot.getNodeCount()] : null;
+        }
+
+        @Override
+        public void run() {
+            int n = snapshot.getNodeCount();
+            int[] offsets = snapshot.getOutOffsets();
+            int[] neighbors = snapshot.getOutNeighbors();
+            //Predecessors of w are stored in its in-edges slots, they can't outnumber them
+            int[] predecessorOffsets = snapshot.getInOffsets();
+            int[] predecessors = new int[snapshot.getInNeighbors().length];
+            int[] predecessorCount = new int[n];
+
+            int[] queue = new int[n];
             double[] theta = new double[n];
+            double[] delta = new double[n];
             int[] d = new int[n];
-            
-            int s_index = indicies.get(s);
-            
-            setInitParametetrsForNode(s, P, theta, d, s_index, n);
-
-            LinkedList<Node> Q = new LinkedList<Node>();
-            Q.addLast(s);
-            while (!Q.isEmpty()) {
-                Node v = Q.removeFirst();
-                S.push(v);
-                int v_index = indicies.get(v);
+            Arrays.fill(d, -1);
+
+            for (int i = from; i < to; i++) {
+                int s_index = sources != null ? sources[i] : i;
+                theta[s_index] = 1;
+                d[s_index] = 0;
+
+                //Breadth-first search, the queue is also the visit order
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = s_index;
+                while (head < tail) {
+                    int v_index = queue[head++];
+
+                    for (int j = offsets[v_index]; j < offsets[v_index + 1]; j++) {
+                        int r_index = neighbors[j];
+                        if (d[r_index] < 0) {
+                            queue[tail++] = r_index;
+                            d[r_index] = d[v_index] + 1;
+                        }
+                        if (d[r_index] == (d[v_index] + 1)) {
+                            theta[r_index] = theta[r_index] + theta[v_index];
+                            predecessors[predecessorOffsets[r_index] + predecessorCount[r_index]++] = v_index;
+                        }
+                    }
+                }
 
-                EdgeIterable edgeIter = getEdgeIter(hgraph, v, directed);
+                if (sources == null) {
+                    double reachable = 0;
+                    for (int q = 1; q < tail; q++) {
+                        int dist = d[queue[q]];
+                        totalDistance += dist;
+                        eccentricity[s_index] = (int) Math.max(eccentricity[s_index], dist);
+                        closeness[s_index] += dist;
+                        diameter = Math.max(diameter, dist);
+                        reachable++;
+                    }
 
-                for (Edge edge : edgeIter) {
-                    Node reachable = hgraph.getOpposite(v, edge);
+                    radius = (int) Math.min(eccentricity[s_index], radius);
 
-                    int r_index = indicies.get(reachable);
-                    if (d[r_index] < 0) {
-                        Q.addLast(reachable);
-                        d[r_index] = d[v_index] + 1;
+                    if (reachable != 0) {
+                        closeness[s_index] /= reachable;
                     }
-                    if (d[r_index] == (d[v_index] + 1)) {
-                        theta[r_index] = theta[r_index] + theta[v_index];
-                        P[r_index].addLast(v);
+
+                    shortestPaths += reachable;
+                } else {
+                    for (int q = 1; q < tail; q++) {
+                        totalDistance += d[queue[q]];
                     }
+                    shortestPaths += tail - 1;
                 }
-            }
-            double reachable = 0;
-            for (int i = 0; i < n; i++) {
-                if (d[i] > 0) {
-                    avgDist += d[i];
-                    nodeEccentricity[s_index] = (int) Math.max(nodeEccentricity[s_index], d[i]);
-                    nodeCloseness[s_index] += d[i];
-                    diameter = Math.max(diameter, d[i]);
-                    reachable++;
-                }
-            }
 
-            radius = (int) Math.min(nodeEccentricity[s_index], radius);
-
-            if (reachable != 0) {
-                nodeCloseness[s_index] /= reachable;
-            }
+                //Dependency accumulation, in reverse visit order
+                for (int q = tail - 1; q >= 0; q--) {
+                    int w_index = queue[q];
+                    int offset = predecessorOffsets[w_index];
+                    for (int j = 0; j < predecessorCount[w_index]; j++) {
+                        int u_index = predecessors[offset + j];
+                        delta[u_index] += (theta[u_index] / theta[w_index]) * (1 + delta[w_index]);
+                    }
+                    if (w_index != s_index) {
+                        betweenness[w_index] += delta[w_index];
+                    }
+                }
 
-            shortestPaths += reachable;
+                //Reset only what has been visited
+                for (int q = 0; q < tail; q++) {
+                    int v_index = queue[q];
+                    d[v_index] = -1;
+                    theta[v_index] = 0;
+                    delta[v_index] = 0;
+                    predecessorCount[v_index] = 0;
+                }
 
-            double[] delta = new double[n];
-            while (!S.empty()) {
-                Node w = S.pop();
-                int w_index = indicies.get(w);
-                ListIterator<Node> iter1 = P[w_index].listIterator();
-                while (iter1.hasNext()) {
-                    Node u = iter1.next();
-                    int u_index = indicies.get(u);
-                    delta[u_index] += (theta[u_index] / theta[w_index]) * (1 + delta[w_index]);
+                if (sources != null) {
+                    accumulateDistancesToPivot(s_index, queue, d);
                 }
-                if (w != s) {
-                    nodeBetweenness[w_index] += delta[w_index];
+
+                if (isCanceled) {
+                    return;
                 }
+                incrementProgress();
             }
-            count++;
-            if (isCanceled) {
-                hgraph.readUnlockAll();
-                return metrics;
-            }
-            Progress.progress(progress, count);
         }
 
-        avgDist /= shortestPaths;//mN * (mN - 1.0f);
+        /**
+         * Breadth-first search from the pivot over reversed edges, which gives
+         * the distance from every node to the pivot. Reversed and forward
+         * edges are the same in an undirected snapshot.
+         */
+        private void accumulateDistancesToPivot(int p_index, int[] queue, int[] d) {
+            int[] offsets = snapshot.getInOffsets();
+            int[] neighbors = snapshot.getInNeighbors();
+
+            d[p_index] = 0;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = p_index;
+            while (head < tail) {
+                int v_index = queue[head++];
+                for (int j = offsets[v_index]; j < offsets[v_index + 1]; j++) {
+                    int r_index = neighbors[j];
+                    if (d[r_index] < 0) {
+                        queue[tail++] = r_index;
+                        d[r_index] = d[v_index] + 1;
+                    }
+                }
+            }
 
-        calculateCorrection(hgraph, indicies, nodeBetweenness, nodeCloseness, directed, normalized);
-        
-        return metrics;
-    }
-    
-    private void setInitParametetrsForNode(Node s, LinkedList<Node>[] P, double[] theta, int[] d, int index, int n) {           
-            for (int j = 0; j < n; j++) {
-                P[j] = new LinkedList<Node>();
-                theta[j] = 0;
-                d[j] = -1;
+            for (int q = 1; q < tail; q++) {
+                int v_index = queue[q];
+                closeness[v_index] += d[v_index];
+                eccentricity[v_index] = Math.max(eccentricity[v_index], d[v_index]);
+                pivotsReached[v_index]++;
             }
-            theta[index] = 1;
-            d[index] = 0;
-    }
-    
-    private EdgeIterable getEdgeIter(Graph hgraph, Node v, boolean directed) {
-            EdgeIterable edgeIter = null;
-            if (directed) {
-                edgeIter = ((DirectedGraph) hgraph).getOutEdges(v);
-            } else {
-                edgeIter = hgraph.getEdges(v);
-             }
-            return edgeIter;
+            for (int q = 0; q < tail; q++) {
+                d[queue[q]] = -1;
+            }
+        }
     }
     
     private void initializeAttributeColunms(AttributeModel attributeModel) {
@@ -325,14 +543,9 @@ public class GraphDistance implements Statistics, LongTask {
         radius = Integer.MAX_VALUE;
      }
      
-     private void calculateCorrection(Graph hgraph, HashMap<Node, Integer> indicies,
-             double[] nodeBetweenness, double[] nodeCloseness, boolean directed, boolean normalized) {
-         
-         int n = hgraph.getNodeCount();
+     private void calculateCorrection(int n, double[] nodeBetweenness, double[] nodeCloseness, boolean directed, boolean normalized) {
          
-         for (Node s : hgraph.getNodes()) {
-            
-             int s_index = indicies.get(s);
+         for (int s_index = 0; s_index < n; s_index++) {
 
             if (!directed) {
                 nodeBetweenness[s_index] /= 2;
@@ -344,10 +557,10 @@ public class GraphDistance implements Statistics, LongTask {
          }
      }
      
-     private void saveCalculatedValues(Graph hgraph, HashMap<Node, Integer> indicies,
+     private void saveCalculatedValues(GraphSnapshot snapshot,
             double[] nodeEccentricity, double[] nodeBetweenness, double[] nodeCloseness) {
-        for (Node s : hgraph.getNodes()) {
-            int s_index = indicies.get(s);
+        for (int s_index = 0; s_index < snapshot.getNodeCount(); s_index++) {
+            Node s = snapshot.getNode(s_index);
 
             s.setAttribute(ECCENTRICITY, nodeEccentricity[s_index]);
             s.setAttribute(CLOSENESS, nodeCloseness[s_index]);
@@ -371,6 +584,73 @@ public class GraphDistance implements Statistics, LongTask {
         return isDirected;
     }
 
+    /**
+     * Sets the number of threads shortest paths are computed with. Sources
+     * are split evenly between threads, with <code>1</code> everything runs
+     * on the calling thread.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets whether metrics are estimated from a sample of pivot sources
+     * instead of every node. Betweenness is extrapolated from the pivots'
+     * dependencies (Brandes and Pich), closeness from the distances to the
+     * pivots (Eppstein and Wang) and eccentricity is the largest distance to a
+     * pivot, hence a lower bound.
+     *
+     * @param approximate <code>true</code> to sample pivots
+     * @see #setErrorBound(double)
+     */
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    /**
+     * Sets the error bound of the approximation, as a fraction of the diameter.
+     * The number of pivots grows as its inverse square.
+     *
+     * @param errorBound the error bound, in <code>]0, 1]</code>
+     */
+    public void setErrorBound(double errorBound) {
+        if (errorBound <= 0 || errorBound > 1) {
+            throw new IllegalArgumentException("Error bound must be in ]0, 1]");
+        }
+        this.errorBound = errorBound;
+    }
+
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Sets the seed pivots are sampled with, the same seed gives the same
+     * pivots on the same graph.
+     *
+     * @param seed the random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
     private String createImageFile(TempDir tempDir, double[] pVals, String pName, String pX, String pY) {
         //distribution of values
         Map<Double, Integer> dist = new HashMap<Double, Integer>();
@@ -428,6 +708,7 @@ public class GraphDistance implements Statistics, LongTask {
                 + "<br>"
                 + "<h2> Parameters: </h2>"
                 + "Network Interpretation:  " + (isDirected ? "directed" : "undirected") + "<br />"
+                + (approximate ? "Approximation: " + pivotCount + " pivots out of " + N + " nodes, error bound " + errorBound + ", seed " + seed + "<br />" : "")
                 + "<br /> <h2> Results: </h2>"
                 + "Diameter: " + diameter + "<br />"
                 + "Radius: " + radius + "<br />"
@@ -438,6 +719,8 @@ public class GraphDistance implements Statistics, LongTask {
                 + htmlIMG3
                 + "<br /><br />" + "<h2> Algorithm: </h2>"
                 + "Ulrik Brandes, <i>A Faster Algorithm for Betweenness Centrality</i>, in Journal of Mathematical Sociology 25(2):163-177, (2001)<br />"
+                + (approximate ? "Ulrik Brandes and Christian Pich, <i>Centrality Estimation in Large Networks</i>, in International Journal of Bifurcation and Chaos 17(7):2303-2318, (2007)<br />"
+                + "David Eppstein and Joseph Wang, <i>Fast Approximation of Centrality</i>, in Journal of Graph Algorithms and Applications 8(1):39-45, (2004)<br />" : "")
                 + "</BODY> </HTML>";
 
         return report;
@@ -0,0 +1,461 @@
+/*
+ Copyright 2008-2014 Gephi
+ Website : http://www.gephi.org
+
+ This file is part of Gephi.
+
+ DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+
+ Copyright 2014 Gephi Consortium. All rights reserved.
+
+ The contents of this file are subject to the terms of either the GNU
+ General Public License Version 3 only ("GPL") or the Common
+ Development and Distribution License("CDDL") (collectively, the
+ "License"). You may not use this file except in compliance with the
+ License. You can obtain a copy of the License at
+ http://gephi.org/about/legal/license-notice/
+ or /cddl-1.0.txt and /gpl-3.0.txt. See the License for the
+ specific language governing permissions and limitations under the
+ License.  When distributing the software, include this License Header
+ Notice in each file and include the License files at
+ /cddl-1.0.txt and /gpl-3.0.txt. If applicable, add the following below the
+ License Header, with the fields enclosed by brackets [] replaced by
+ your own identifying information:
+ "Portions Copyrighted [year] [name of copyright owner]"
+
+ If you wish your version of this file to be governed by only the CDDL
+ or only the GPL Version 3, indicate your decision by adding
+ "[Contributor] elects to include this software in this distribution
+ under the [CDDL or GPL Version 3] license." If you do not indicate a
+ single choice of license, a recipient has the option to distribute
+ your version of this file under either the CDDL, the GPL Version 3 or
+ to extend the choice of license to its licensees as provided above.
+ However, if you add GPL Version 3 code and therefore, elected the GPL
+ Version 3 license, then the option applies only if the new code is
+ made subject to such option by the copyright holder.
+
+ Contributor(s):
+
+ Portions Copyrighted 2014 Gephi Consortium.
+ */
+package org.gephi.statistics.plugin;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.EdgeIterable;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphObserver;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+
+/**
+ * Read-only compressed-sparse-row (CSR) copy of a graph's adjacency.
+ * <p>
+ * Nodes are numbered from <code>0</code> to <code>n - 1</code> in the iteration
+ * order of the graph they were read from, which is the order the
+ * <code>createIndiciesMap()</code> methods of the statistics use. The
+ * neighbors of the out-edges of node <code>i</code> are stored in
+ * <code>getOutNeighbors()</code> between <code>getOutOffsets()[i]</code>
+ * (inclusive) and <code>getOutOffsets()[i + 1]</code> (exclusive), and the
+ * same goes for in-edges. Undirected snapshots share the same arrays for both
+ * directions.
+ * <p>
+ * The snapshot is filled under a single read lock and never looks at the graph
+ * again, so algorithms can walk it with plain <code>int</code> indices instead
+ * of <code>HashMap&lt;Node, Integer&gt;</code> lookups and edge iterators. Use
+ * {@link #get(Graph, boolean, boolean)} to share one snapshot between all the
+ * statistics executed on the same, unchanged, graph view.
+ */
+public final class GraphSnapshot {
+
+    //Shared snapshots, least recently used first
+    private static final List<CacheEntry> CACHE = new ArrayList<CacheEntry>();
+    private static final int CACHE_SIZE = 4;
+    //Nodes
+    private final Node[] nodes;
+    private final int[] indexByStoreId;
+    //Adjacency
+    private final boolean directed;
+    private final int[] outOffsets;
+    private final int[] outNeighbors;
+    private final float[] outWeights;
+    private final int[] inOffsets;
+    private final int[] inNeighbors;
+    private final float[] inWeights;
+
+    private GraphSnapshot(Graph graph, Node[] nodes, boolean directed, boolean weighted) {
+        this.nodes = nodes;
+        this.directed = directed;
+
+        int maxStoreId = -1;
+        for (Node n : nodes) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
+        }
+        indexByStoreId = new int[maxStoreId + 1];
+        for (int i = 0; i < indexByStoreId.length; i++) {
+            indexByStoreId[i] = -1;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            indexByStoreId[nodes[i].getStoreId()] = i;
+        }
+
+        int capacity = directed ? graph.getEdgeCount() : 2 * graph.getEdgeCount();
+        Adjacency out = new Adjacency(nodes.length, capacity, weighted);
+        Adjacency in = directed ? new Adjacency(nodes.length, capacity, weighted) : out;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            if (directed) {
+                out.addRow(i, node, ((DirectedGraph) graph).getOutEdges(node));
+                in.addRow(i, node, ((DirectedGraph) graph).getInEdges(node));
+            } else {
+                out.addRow(i, node, graph.getEdges(node));
+            }
+        }
+
+        outOffsets = out.offsets;
+        outNeighbors = out.trimNeighbors();
+        outWeights = out.trimWeights();
+        if (directed) {
+            inOffsets = in.offsets;
+            inNeighbors = in.trimNeighbors();
+            inWeights = in.trimWeights();
+        } else {
+            inOffsets = outOffsets;
+            inNeighbors = outNeighbors;
+            inWeights = outWeights;
+        }
+    }
+
+    /**
+     * Builds a new snapshot of <code>graph</code>, numbering nodes in the
+     * graph's iteration order.
+     *
+     * @param graph the graph to read, must be a <code>DirectedGraph</code> if
+     * <code>directed</code> is true
+     * @param directed true to read out and in edges separately, false to read
+     * each node's incident edges as a single list
+     * @param weighted true to also copy edge weights
+     * @return a new snapshot
+     */
+    public static GraphSnapshot create(Graph graph, boolean directed, boolean weighted) {
+        graph.readLock();
+        try {
+            return new GraphSnapshot(graph, graph.getNodes().toArray(), directed, weighted);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Builds a new snapshot of <code>graph</code>, numbering nodes according to
+     * <code>indicies</code>. This is what the legacy
+     * <code>HashMap&lt;Node, Integer&gt;</code> entry points of the statistics
+     * use, so result arrays keep their meaning.
+     *
+     * @param graph the graph to read
+     * @param indicies the index of each node of the graph, from <code>0</code>
+     * to <code>n - 1</code>
+     * @param directed true to read out and in edges separately
+     * @param weighted true to also copy edge weights
+     * @return a new snapshot
+     */
+    public static GraphSnapshot create(Graph graph, Map<Node, Integer> indicies, boolean directed, boolean weighted) {
+        Node[] nodes = new Node[indicies.size()];
+        for (Map.Entry<Node, Integer> entry : indicies.entrySet()) {
+            nodes[entry.getValue()] = entry.getKey();
+        }
+        graph.readLock();
+        try {
+            return new GraphSnapshot(graph, nodes, directed, weighted);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of <code>graph</code> shared with other callers
+     * reading the same view through the same kind of graph (directed,
+     * undirected or mixed). The cached snapshot is reused as long as the
+     * view's nodes and edges haven't changed since it was built, and rebuilt
+     * otherwise.
+     * <p>
+     * Weighted snapshots are never shared, because edge weights can change
+     * without the view's topology changing. Only the last few snapshots are
+     * kept, and they are softly referenced, so they may be dropped under
+     * memory pressure and rebuilt on the next call.
+     *
+     * @param graph the graph to read
+     * @param directed true to read out and in edges separately
+     * @param weighted true if edge weights are needed
+     * @return a snapshot of the current state of <code>graph</code>
+     */
+    public static GraphSnapshot get(Graph graph, boolean directed, boolean weighted) {
+        if (weighted) {
+            return create(graph, directed, true);
+        }
+        GraphView view = graph.getView();
+        synchronized (CACHE) {
+            for (Iterator<CacheEntry> itr = CACHE.iterator(); itr.hasNext();) {
+                CacheEntry entry = itr.next();
+                if (entry.matches(view, graph.getClass(), directed)) {
+                    itr.remove();
+                    GraphSnapshot snapshot = entry.snapshot.get();
+                    if (snapshot != null && !entry.isStale() && !entry.observer.hasGraphChanged()) {
+                        CACHE.add(entry);
+                        return snapshot;
+                    }
+                    entry.destroy();
+                    break;
+                }
+            }
+        }
+
+        //Built without holding the cache, so other views aren't held up
+        GraphSnapshot snapshot;
+        CacheEntry entry;
+        graph.readLock();
+        try {
+            GraphObserver observer = graph.getModel().createGraphObserver(graph, false);
+            //First call only initializes the observer's version
+            observer.hasGraphChanged();
+            snapshot = new GraphSnapshot(graph, graph.getNodes().toArray(), directed, false);
+            entry = new CacheEntry(graph, directed, snapshot, observer);
+        } finally {
+            graph.readUnlock();
+        }
+
+        synchronized (CACHE) {
+            for (Iterator<CacheEntry> itr = CACHE.iterator(); itr.hasNext();) {
+                CacheEntry other = itr.next();
+                if (other.isStale() || other.matches(view, graph.getClass(), directed)) {
+                    other.destroy();
+                    itr.remove();
+                }
+            }
+            CACHE.add(entry);
+            if (CACHE.size() > CACHE_SIZE) {
+                CACHE.remove(0).destroy();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of nodes in this snapshot.
+     *
+     * @return the node count
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of out adjacency entries. For undirected snapshots,
+     * each edge is counted once per endpoint.
+     *
+     * @return the size of the out neighbors array
+     */
+    public int getOutEntryCount() {
+        return outOffsets[nodes.length];
+    }
+
+    /**
+     * Returns the node at <code>index</code>.
+     *
+     * @param index the node index
+     * @return the node
+     */
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the index of <code>node</code> in this snapshot, or
+     * <code>-1</code> if the node wasn't part of the graph when the snapshot
+     * was built.
+     *
+     * @param node the node
+     * @return the node index or <code>-1</code>
+     */
+    public int getIndex(Node node) {
+        int storeId = node.getStoreId();
+        if (storeId < 0 || storeId >= indexByStoreId.length) {
+            return -1;
+        }
+        return indexByStoreId[storeId];
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    public boolean isWeighted() {
+        return outWeights != null;
+    }
+
+    public int getOutDegree(int index) {
+        return outOffsets[index + 1] - outOffsets[index];
+    }
+
+    public int getInDegree(int index) {
+        return inOffsets[index + 1] - inOffsets[index];
+    }
+
+    /**
+     * Returns the sum of the weights of the out-edges of node
+     * <code>index</code>, or its out-degree if the snapshot isn't weighted.
+     *
+     * @param index the node index
+     * @return the weighted out-degree
+     */
+    public double getOutWeight(int index) {
+        if (outWeights == null) {
+            return getOutDegree(index);
+        }
+        double sum = 0;
+        for (int i = outOffsets[index]; i < outOffsets[index + 1]; i++) {
+            sum += outWeights[i];
+        }
+        return sum;
+    }
+
+    public int[] getOutOffsets() {
+        return outOffsets;
+    }
+
+    public int[] getOutNeighbors() {
+        return outNeighbors;
+    }
+
+    /**
+     * Returns the weights parallel to {@link #getOutNeighbors()}, or
+     * <code>null</code> if this snapshot was built without weights.
+     *
+     * @return the out weights or <code>null</code>
+     */
+    public float[] getOutWeights() {
+        return outWeights;
+    }
+
+    public int[] getInOffsets() {
+        return inOffsets;
+    }
+
+    public int[] getInNeighbors() {
+        return inNeighbors;
+    }
+
+    /**
+     * Returns the weights parallel to {@link #getInNeighbors()}, or
+     * <code>null</code> if this snapshot was built without weights.
+     *
+     * @return the in weights or <code>null</code>
+     */
+    public float[] getInWeights() {
+        return inWeights;
+    }
+
+    private final class Adjacency {
+
+        private final int[] offsets;
+        private int[] neighbors;
+        private float[] weights;
+        private int size;
+
+        Adjacency(int nodeCount, int capacity, boolean weighted) {
+            offsets = new int[nodeCount + 1];
+            neighbors = new int[Math.max(capacity, 16)];
+            weights = weighted ? new float[neighbors.length] : null;
+        }
+
+        void addRow(int index, Node node, EdgeIterable edges) {
+            for (Edge edge : edges) {
+                Node source = edge.getSource();
+                Node opposite = source == node ? edge.getTarget() : source;
+                int neighbor = getIndex(opposite);
+                if (neighbor == -1) {
+                    continue;
+                }
+                if (size == neighbors.length) {
+                    grow();
+                }
+                neighbors[size] = neighbor;
+                if (weights != null) {
+                    weights[size] = (float) edge.getWeight();
+                }
+                size++;
+            }
+            offsets[index + 1] = size;
+        }
+
+        private void grow() {
+            int newLength = neighbors.length + (neighbors.length >> 1) + 1;
+            int[] newNeighbors = new int[newLength];
+            System.arraycopy(neighbors, 0, newNeighbors, 0, size);
+            neighbors = newNeighbors;
+            if (weights != null) {
+                float[] newWeights = new float[newLength];
+                System.arraycopy(weights, 0, newWeights, 0, size);
+                weights = newWeights;
+            }
+        }
+
+        int[] trimNeighbors() {
+            if (size == neighbors.length) {
+                return neighbors;
+            }
+            int[] res = new int[size];
+            System.arraycopy(neighbors, 0, res, 0, size);
+            return res;
+        }
+
+        float[] trimWeights() {
+            if (weights == null || size == weights.length) {
+                return weights;
+            }
+            float[] res = new float[size];
+            System.arraycopy(weights, 0, res, 0, size);
+            return res;
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final GraphView view;
+        private final Class<?> graphClass;
+        private final boolean directed;
+        private final SoftReference<GraphSnapshot> snapshot;
+        private final GraphObserver observer;
+
+        CacheEntry(Graph graph, boolean directed, GraphSnapshot snapshot, GraphObserver observer) {
+            this.view = graph.getView();
+            this.graphClass = graph.getClass();
+            this.directed = directed;
+            this.snapshot = new SoftReference<GraphSnapshot>(snapshot);
+            this.observer = observer;
+        }
+
+        boolean matches(GraphView view, Class<?> graphClass, boolean directed) {
+            return this.view == view && this.graphClass == graphClass && this.directed == directed;
+        }
+
+        /**
+         * Returns <code>true</code> if the entry can't be used anymore and
+         * only holds its observer and view.
+         */
+        boolean isStale() {
+            return snapshot.get() == null || observer.isDestroyed() || view.isDestroyed();
+        }
+
+        void destroy() {
+            if (!observer.isDestroyed()) {
+                observer.destroy();
+            }
+        }
+    }
+}
@@ -42,19 +42,14 @@
 package org.gephi.statistics.plugin;
 
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.graph.api.NodeIterable;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
@@ -119,22 +114,27 @@ public class Hits implements Statistics, LongTask {
 
         hgraph.readLock();
 
-        int N = hgraph.getNodeCount();
+        GraphSnapshot snapshot = GraphSnapshot.get(hgraph, !useUndirected, false);
+
+        int N = snapshot.getNodeCount();
         authority = new double[N];
         hubs = new double[N];
 
-        Map<Node, Integer> indicies = createIndiciesMap(hgraph);
-
-        calculateHits(hgraph, hubs, authority, indicies, !useUndirected, epsilon);
+        calculateHits(snapshot, hubs, authority, epsilon);
 
-        saveCalculatedValues(hgraph, authority, hubs);
+        saveCalculatedValues(snapshot, authority, hubs);
 
         hgraph.readUnlockAll();
     }
 
     public void calculateHits(Graph hgraph, double[] hubValues, double[] authorityValues, Map<Node, Integer> indicies, boolean isDirected, double eps) {
+        GraphSnapshot snapshot = GraphSnapshot.create(hgraph, indicies, isDirected, false);
+        calculateHits(snapshot, hubValues, authorityValues, eps);
+    }
 
-        int N = hgraph.getNodeCount();
+    public void calculateHits(GraphSnapshot snapshot, double[] hubValues, double[] authorityValues, double eps) {
+
+        int N = snapshot.getNodeCount();
 
         double[] temp_authority = new double[N];
         double[] temp_hubs = new double[N];
@@ -147,8 +147,8 @@ public class Hits implements Statistics, LongTask {
 
             boolean done = true;
 
-            updateAutorithy(hgraph, temp_authority, hubValues, isDirected, indicies);
-            updateHub(hgraph, temp_hubs, temp_authority, isDirected, indicies);
+            updateAutorithy(snapshot, temp_authority, hubValues);
+            updateHub(snapshot, temp_hubs, temp_authority);
 
             done = checkDiff(authorityValues, temp_authority, eps) && checkDiff(hubValues, temp_hubs, eps);
 
@@ -182,25 +182,19 @@ public class Hits implements Statistics, LongTask {
         }
     }
 
-    void updateAutorithy(Graph hgraph, double[] newValues, double[] hubValues, boolean isDirected, Map<Node, Integer> indicies) {
+    void updateAutorithy(GraphSnapshot snapshot, double[] newValues, double[] hubValues) {
         double norm = 0;
-        int j = 0;
-        for (Node node : hgraph.getNodes()) {
+        int[] offsets = snapshot.getInOffsets();
+        int[] neighbors = snapshot.getInNeighbors();
+        for (int j = 0; j < newValues.length; j++) {
             double auth = 0;
-            EdgeIterable edge_iter;
-            if (isDirected) {
-                edge_iter = ((DirectedGraph) hgraph).getInEdges(node);
-            } else {
-                edge_iter = hgraph.getEdges(node);
-            }
-            for (Edge edge : edge_iter) {
-                Node target = hgraph.getOpposite(node, edge);
-                auth += hubValues[indicies.get(target)];
+            for (int i = offsets[j]; i < offsets[j + 1]; i++) {
+                auth += hubValues[neighbors[i]];
             }
             if (auth > 0) {
                 newValues[j] = auth;
             }
-            norm += newValues[j++];
+            norm += newValues[j];
             if (isCanceled) {
                 return;
             }
@@ -213,25 +207,19 @@ public class Hits implements Statistics, LongTask {
         }
     }
 
-    void updateHub(Graph hgraph, double[] newValues, double[] authValues, boolean isDirected, Map<Node, Integer> indicies) {
+    void updateHub(GraphSnapshot snapshot, double[] newValues, double[] authValues) {
         double norm = 0;
-        int j = 0;
-        for (Node node : hgraph.getNodes()) {
+        int[] offsets = snapshot.getOutOffsets();
+        int[] neighbors = snapshot.getOutNeighbors();
+        for (int j = 0; j < newValues.length; j++) {
             double hub = 0;
-            EdgeIterable edge_iter;
-            if (isDirected) {
-                edge_iter = ((DirectedGraph) hgraph).getOutEdges(node);
-            } else {
-                edge_iter = hgraph.getEdges(node);
-            }
-            for (Edge edge : edge_iter) {
-                Node target = hgraph.getOpposite(node, edge);
-                hub += authValues[indicies.get(target)];
+            for (int i = offsets[j]; i < offsets[j + 1]; i++) {
+                hub += authValues[neighbors[i]];
             }
             if(hub > 0) {
                 newValues[j] = hub;
             }
-            norm += newValues[j++];
+            norm += newValues[j];
             if (isCanceled) {
                 return;
             }
@@ -253,13 +241,12 @@ public class Hits implements Statistics, LongTask {
         return true;
     }
 
-    private void saveCalculatedValues(Graph hgraph, double[] nodeAuthority, double[] nodeHubs) {
-        int i = 0;
-        for (Node s : hgraph.getNodes()) {
-            int s_index = i++;
+    private void saveCalculatedValues(GraphSnapshot snapshot, double[] nodeAuthority, double[] nodeHubs) {
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            Node s = snapshot.getNode(i);
 
-            s.setAttribute(AUTHORITY, (float) nodeAuthority[s_index]);
-            s.setAttribute(HUB, (float) nodeHubs[s_index]);
+            s.setAttribute(AUTHORITY, (float) nodeAuthority[i]);
+            s.setAttribute(HUB, (float) nodeHubs[i]);
         }
     }
 
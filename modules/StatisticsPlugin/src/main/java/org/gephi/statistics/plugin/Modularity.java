@@ -44,6 +44,10 @@ package org.gephi.statistics.plugin;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
@@ -59,6 +63,7 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.openide.util.Exceptions;
 
 /**
  *
@@ -67,14 +72,19 @@ import org.jfree.data.xy.XYSeriesCollection;
 public class Modularity implements Statistics, LongTask {
 
     public static final String MODULARITY_CLASS = "modularity_class";
+    /**
+     * Levels with fewer nodes per thread are processed sequentially.
+     */
+    private static final int MIN_NODES_PER_THREAD = 10000;
     private ProgressTicket progress;
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     private CommunityStructure structure;
     private double modularity;
     private double modularityResolution;
     private boolean isRandomized = false;
     private boolean useWeight = true;
     private double resolution = 1.;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     public void setRandom(boolean isRandomized) {
         this.isRandomized = isRandomized;
@@ -100,6 +110,26 @@ public class Modularity implements Statistics, LongTask {
         return resolution;
     }
 
+    /**
+     * Sets the number of threads nodes of large levels are moved with. Nodes
+     * are first moved all at once against the previous partition, then one
+     * after the other as in the sequential method, so results can differ
+     * from it.
+     *
+     * @param threadCount the number of threads, <code>1</code> to always move
+     * nodes sequentially
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         this.isCanceled = true;
@@ -111,88 +141,61 @@ public class Modularity implements Statistics, LongTask {
         this.progress = progressTicket;
     }
 
-    class ModEdge {
-
-        int source;
-        int target;
-        float weight;
-
-        public ModEdge(int s, int t, float w) {
-            source = s;
-            target = t;
-            weight = w;
-        }
-    }
-
+    /**
+     * Louvain state for the current level. The level graph is stored in
+     * compressed rows, its nodes being the communities of the previous level,
+     * and community tables are primitive arrays indexed by community.
+     */
     class CommunityStructure {
 
-        HashMap<Modularity.Community, Float>[] nodeConnectionsWeight;
-        HashMap<Modularity.Community, Integer>[] nodeConnectionsCount;
-        HashMap<Node, Integer> map;
-        Community[] nodeCommunities;
+        GraphSnapshot snapshot;
         Graph graph;
+        int N;
+        int[] offsets;
+        int[] neighbors;
+        float[] edgeWeights;
+        float[] selfLoops;
         double[] weights;
         double graphWeightSum;
-        LinkedList<ModEdge>[] topology;
-        LinkedList<Community> communities;
-        int N;
-        HashMap<Integer, Community> invMap;
+        int[] nodeCommunities;
+        double[] communityWeights;
+        int[] communitySizes;
+        int communityCount;
+        //Level node each node of the snapshot belongs to
+        int[] originalNodes;
 
         CommunityStructure(Graph hgraph) {
             this.graph = hgraph;
-            N = hgraph.getNodeCount();
-            invMap = new HashMap<Integer, Community>();
-            nodeConnectionsWeight = new HashMap[N];
-            nodeConnectionsCount = new HashMap[N];
-            nodeCommunities = new Community[N];
-            map = new HashMap<Node, Integer>();
-            topology = new LinkedList[N];
-            communities = new LinkedList<Community>();
-            int index = 0;
+            snapshot = GraphSnapshot.get(hgraph, false, true);
+            N = snapshot.getNodeCount();
+            int[] snapshotOffsets = snapshot.getOutOffsets();
+            int[] snapshotNeighbors = snapshot.getOutNeighbors();
+            float[] snapshotWeights = snapshot.getOutWeights();
+
+            offsets = new int[N + 1];
+            neighbors = new int[snapshotNeighbors.length];
+            edgeWeights = new float[snapshotNeighbors.length];
+            selfLoops = new float[N];
             weights = new double[N];
-            for (Node node : hgraph.getNodes()) {
-                map.put(node, index);
-                nodeCommunities[index] = new Community(this);
-                nodeConnectionsWeight[index] = new HashMap<Community, Float>();
-                nodeConnectionsCount[index] = new HashMap<Community, Integer>();
-                weights[index] = 0;
-                nodeCommunities[index].seed(index);
-                Community hidden = new Community(structure);
-                hidden.nodes.add(index);
-                invMap.put(index, hidden);
-                communities.add(nodeCommunities[index]);
-                index++;
-                if (isCanceled) {
-                    return;
-                }
-            }
-
-            for (Node node : hgraph.getNodes()) {
-                int node_index = map.get(node);
-                topology[node_index] = new LinkedList<ModEdge>();
-
-                for (Node neighbor : hgraph.getNeighbors(node)) {
-                    if (node == neighbor) {
+            originalNodes = new int[N];
+            int count = 0;
+            for (int node_index = 0; node_index < N; node_index++) {
+                offsets[node_index] = count;
+                originalNodes[node_index] = node_index;
+
+                for (int i = snapshotOffsets[node_index]; i < snapshotOffsets[node_index + 1]; i++) {
+                    int neighbor_index = snapshotNeighbors[i];
+                    if (node_index == neighbor_index) {
                         continue;
                     }
-                    int neighbor_index = map.get(neighbor);
                     float weight = 1;
                     if (useWeight) {
-                        weight = (float) hgraph.getEdge(node, neighbor).getWeight();
+                        weight = snapshotWeights[i];
                     }
 
+                    neighbors[count] = neighbor_index;
+                    edgeWeights[count++] = weight;
                     weights[node_index] += weight;
-                    Modularity.ModEdge me = new ModEdge(node_index, neighbor_index, weight);
-                    topology[node_index].add(me);
-                    Community adjCom = nodeCommunities[neighbor_index];
-                    nodeConnectionsWeight[node_index].put(adjCom, weight);
-                    nodeConnectionsCount[node_index].put(adjCom, 1);
-                    nodeCommunities[node_index].connectionsWeight.put(adjCom, weight);
-                    nodeCommunities[node_index].connectionsCount.put(adjCom, 1);
-                    nodeConnectionsWeight[neighbor_index].put(nodeCommunities[node_index], weight);
-                    nodeConnectionsCount[neighbor_index].put(nodeCommunities[node_index], 1);
-                    nodeCommunities[neighbor_index].connectionsWeight.put(nodeCommunities[node_index], weight);
-                    nodeCommunities[neighbor_index].connectionsCount.put(nodeCommunities[node_index], 1);
                     graphWeightSum += weight;
                 }
 
@@ -200,252 +203,301 @@ public class Modularity implements Statistics, LongTask {
                     return;
                 }
             }
+            offsets[N] = count;
             graphWeightSum /= 2.0;
-        }
 
-        private void addNodeTo(int node, Community to) {
-            to.add(new Integer(node));
-            nodeCommunities[node] = to;
-
-            for (ModEdge e : topology[node]) {
-                int neighbor = e.target;
-
-                ////////
-                //Remove Node Connection to this community
-                Float neighEdgesTo = nodeConnectionsWeight[neighbor].get(to);
-                if (neighEdgesTo == null) {
-                    nodeConnectionsWeight[neighbor].put(to, e.weight);
-                } else {
-                    nodeConnectionsWeight[neighbor].put(to, neighEdgesTo + e.weight);
-                }
-                Integer neighCountEdgesTo = nodeConnectionsCount[neighbor].get(to);
-                if (neighCountEdgesTo == null) {
-                    nodeConnectionsCount[neighbor].put(to, 1);
-                } else {
-                    nodeConnectionsCount[neighbor].put(to, neighCountEdgesTo + 1);
-                }
-
-                ///////////////////
-                Modularity.Community adjCom = nodeCommunities[neighbor];
-                Float wEdgesto = adjCom.connectionsWeight.get(to);
-                if (wEdgesto == null) {
-                    adjCom.connectionsWeight.put(to, e.weight);
-                } else {
-                    adjCom.connectionsWeight.put(to, wEdgesto + e.weight);
-                }
+            nodeCommunities = new int[N];
+            for (int node_index = 0; node_index < N; node_index++) {
+                nodeCommunities[node_index] = node_index;
+            }
+            refreshCommunities();
+        }
 
-                Integer cEdgesto = adjCom.connectionsCount.get(to);
-                if (cEdgesto == null) {
-                    adjCom.connectionsCount.put(to, 1);
-                } else {
-                    adjCom.connectionsCount.put(to, cEdgesto + 1);
+        private void refreshCommunities() {
+            communityWeights = new double[N];
+            communitySizes = new int[N];
+            communityCount = 0;
+            for (int node = 0; node < N; node++) {
+                int community = nodeCommunities[node];
+                if (communitySizes[community]++ == 0) {
+                    communityCount++;
                 }
+                communityWeights[community] += weights[node];
+            }
+        }
 
-                Float nodeEdgesTo = nodeConnectionsWeight[node].get(adjCom);
-                if (nodeEdgesTo == null) {
-                    nodeConnectionsWeight[node].put(adjCom, e.weight);
-                } else {
-                    nodeConnectionsWeight[node].put(adjCom, nodeEdgesTo + e.weight);
-                }
+        /**
+         * Returns the neighbor community with the highest modularity gain for
+         * <code>node</code>, or its own community if no gain is positive.
+         */
+        int findBestCommunity(int node, CommunityWeights scratch, double currentResolution) {
+            int own = nodeCommunities[node];
+            scratch.clear();
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                scratch.add(nodeCommunities[neighbors[i]], edgeWeights[i]);
+            }
 
-                Integer nodeCountEdgesTo = nodeConnectionsCount[node].get(adjCom);
-                if (nodeCountEdgesTo == null) {
-                    nodeConnectionsCount[node].put(adjCom, 1);
-                } else {
-                    nodeConnectionsCount[node].put(adjCom, nodeCountEdgesTo + 1);
+            double nodeWeight = weights[node];
+            double best = 0.;
+            int bestCommunity = own;
+            for (int j = 0; j < scratch.size; j++) {
+                int community = scratch.communities[j];
+                double weightSum = communityWeights[community];
+                if (community == own) {
+                    weightSum -= nodeWeight;
                 }
-
-                if (to != adjCom) {
-                    Float comEdgesto = to.connectionsWeight.get(adjCom);
-                    if (comEdgesto == null) {
-                        to.connectionsWeight.put(adjCom, e.weight);
-                    } else {
-                        to.connectionsWeight.put(adjCom, comEdgesto + e.weight);
-                    }
-
-                    Integer comCountEdgesto = to.connectionsCount.get(adjCom);
-                    if (comCountEdgesto == null) {
-                        to.connectionsCount.put(adjCom, 1);
-                    } else {
-                        to.connectionsCount.put(adjCom, comCountEdgesto + 1);
-                    }
-
+                double qValue = currentResolution * scratch.weights[community] - (nodeWeight * weightSum) / (2.0 * graphWeightSum);
+                if (qValue > best) {
+                    best = qValue;
+                    bestCommunity = community;
                 }
             }
+            return bestCommunity;
         }
 
-        private void removeNodeFrom(int node, Community from) {
-
-            Community community = nodeCommunities[node];
-            for (ModEdge e : topology[node]) {
-                int neighbor = e.target;
-
-                ////////
-                //Remove Node Connection to this community
-                Float edgesTo = nodeConnectionsWeight[neighbor].get(community);
-                Integer countEdgesTo = nodeConnectionsCount[neighbor].get(community);
-                if (countEdgesTo - 1 == 0) {
-                    nodeConnectionsWeight[neighbor].remove(community);
-                    nodeConnectionsCount[neighbor].remove(community);
-                } else {
-                    nodeConnectionsWeight[neighbor].put(community, edgesTo - e.weight);
-                    nodeConnectionsCount[neighbor].put(community, countEdgesTo - 1);
-                }
-
-                ///////////////////
-                //Remove Adjacency Community's connection to this community
-                Modularity.Community adjCom = nodeCommunities[neighbor];
-                Float oEdgesto = adjCom.connectionsWeight.get(community);
-                Integer oCountEdgesto = adjCom.connectionsCount.get(community);
-                if (oCountEdgesto - 1 == 0) {
-                    adjCom.connectionsWeight.remove(community);
-                    adjCom.connectionsCount.remove(community);
-                } else {
-                    adjCom.connectionsWeight.put(community, oEdgesto - e.weight);
-                    adjCom.connectionsCount.put(community, oCountEdgesto - 1);
-                }
-
-                if (node == neighbor) {
-                    continue;
-                }
+        void moveNodeTo(int node, int to) {
+            int from = nodeCommunities[node];
+            communityWeights[from] -= weights[node];
+            if (--communitySizes[from] == 0) {
+                communityCount--;
+            }
+            communityWeights[to] += weights[node];
+            if (communitySizes[to]++ == 0) {
+                communityCount++;
+            }
+            nodeCommunities[node] = to;
+        }
 
-                if (adjCom != community) {
-                    Float comEdgesto = community.connectionsWeight.get(adjCom);
-                    Integer comCountEdgesto = community.connectionsCount.get(adjCom);
-                    if (comCountEdgesto - 1 == 0) {
-                        community.connectionsWeight.remove(adjCom);
-                        community.connectionsCount.remove(adjCom);
-                    } else {
-                        community.connectionsWeight.put(adjCom, comEdgesto - e.weight);
-                        community.connectionsCount.put(adjCom, comCountEdgesto - 1);
+        /**
+         * Modularity of the current partition of the level graph.
+         */
+        double levelModularity(double currentResolution) {
+            double[] internal = new double[N];
+            for (int node = 0; node < N; node++) {
+                int community = nodeCommunities[node];
+                internal[community] += selfLoops[node];
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    if (nodeCommunities[neighbors[i]] == community) {
+                        internal[community] += edgeWeights[i] / 2.0;
                     }
                 }
-
-                Float nodeEgesTo = nodeConnectionsWeight[node].get(adjCom);
-                Integer nodeCountEgesTo = nodeConnectionsCount[node].get(adjCom);
-                if (nodeCountEgesTo - 1 == 0) {
-                    nodeConnectionsWeight[node].remove(adjCom);
-                    nodeConnectionsCount[node].remove(adjCom);
-                } else {
-                    nodeConnectionsWeight[node].put(adjCom, nodeEgesTo - e.weight);
-                    nodeConnectionsCount[node].put(adjCom, nodeCountEgesTo - 1);
+            }
+            double res = 0;
+            for (int community = 0; community < N; community++) {
+                if (communitySizes[community] > 0) {
+                    res += currentResolution * (internal[community] / graphWeightSum) - Math.pow(communityWeights[community] / (2 * graphWeightSum), 2);
                 }
-
             }
-            from.remove(new Integer(node));
+            return res;
         }
 
-        private void moveNodeTo(int node, Community to) {
-            Community from = nodeCommunities[node];
-            removeNodeFrom(node, from);
-            addNodeTo(node, to);
-        }
+        /**
+         * Builds the next level, where each community becomes a node. Edges
+         * inside a community become a self-loop.
+         */
+        void zoomOut() {
+            int[] newIndex = new int[N];
+            int M = 0;
+            for (int community = 0; community < N; community++) {
+                newIndex[community] = communitySizes[community] > 0 ? M++ : -1;
+            }
 
-        private void zoomOut() {
-            int M = communities.size();
-            LinkedList<ModEdge>[] newTopology = new LinkedList[M];
-            int index = 0;
-            nodeCommunities = new Community[M];
-            nodeConnectionsWeight = new HashMap[M];
-            nodeConnectionsCount = new HashMap[M];
-            HashMap<Integer, Community> newInvMap = new HashMap<Integer, Community>();
-            for (int i = 0; i < communities.size(); i++) {//Community com : mCommunities) {
-                Community com = communities.get(i);
-                nodeConnectionsWeight[index] = new HashMap<Community, Float>();
-                nodeConnectionsCount[index] = new HashMap<Community, Integer>();
-                newTopology[index] = new LinkedList<ModEdge>();
-                nodeCommunities[index] = new Community(com);
-                Set<Community> iter = com.connectionsWeight.keySet();
-                double weightSum = 0;
-
-                Community hidden = new Community(structure);
-                for (Integer nodeInt : com.nodes) {
-                    Community oldHidden = invMap.get(nodeInt);
-                    hidden.nodes.addAll(oldHidden.nodes);
-                }
-                newInvMap.put(index, hidden);
-                for (Modularity.Community adjCom : iter) {
-                    int target = communities.indexOf(adjCom);
-                    float weight = com.connectionsWeight.get(adjCom);
-                    if (target == index) {
-                        weightSum += 2. * weight;
-                    } else {
-                        weightSum += weight;
+            //Group nodes by community
+            int[] memberOffsets = new int[M + 1];
+            for (int node = 0; node < N; node++) {
+                memberOffsets[newIndex[nodeCommunities[node]] + 1]++;
+            }
+            for (int community = 0; community < M; community++) {
+                memberOffsets[community + 1] += memberOffsets[community];
+            }
+            int[] members = new int[N];
+            int[] positions = Arrays.copyOf(memberOffsets, M);
+            for (int node = 0; node < N; node++) {
+                members[positions[newIndex[nodeCommunities[node]]]++] = node;
+            }
+
+            int[] newOffsets = new int[M + 1];
+            int[] newNeighbors = new int[offsets[N]];
+            float[] newEdgeWeights = new float[offsets[N]];
+            float[] newSelfLoops = new float[M];
+            double[] newWeights = new double[M];
+            CommunityWeights scratch = new CommunityWeights(M);
+            int count = 0;
+            for (int community = 0; community < M; community++) {
+                newOffsets[community] = count;
+                scratch.clear();
+                double internal = 0;
+                for (int m = memberOffsets[community]; m < memberOffsets[community + 1]; m++) {
+                    int node = members[m];
+                    internal += selfLoops[node];
+                    newWeights[community] += weights[node];
+                    for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                        int target = newIndex[nodeCommunities[neighbors[i]]];
+                        if (target == community) {
+                            //Seen from both ends
+                            internal += edgeWeights[i] / 2.0;
+                        } else {
+                            scratch.add(target, edgeWeights[i]);
+                        }
                     }
-                    ModEdge e = new ModEdge(index, target, weight);
-                    newTopology[index].add(e);
                 }
-                weights[index] = weightSum;
-                nodeCommunities[index].seed(index);
-
-                index++;
-            }
-            communities.clear();
-
-            for (int i = 0; i < M; i++) {
-                Community com = nodeCommunities[i];
-                communities.add(com);
-                for (ModEdge e : newTopology[i]) {
-                    nodeConnectionsWeight[i].put(nodeCommunities[e.target], e.weight);
-                    nodeConnectionsCount[i].put(nodeCommunities[e.target], 1);
-                    com.connectionsWeight.put(nodeCommunities[e.target], e.weight);
-                    com.connectionsCount.put(nodeCommunities[e.target], 1);
+                for (int j = 0; j < scratch.size; j++) {
+                    int target = scratch.communities[j];
+                    newNeighbors[count] = target;
+                    newEdgeWeights[count++] = (float) scratch.weights[target];
                 }
+                newSelfLoops[community] = (float) internal;
+            }
+            newOffsets[M] = count;
 
+            for (int i = 0; i < originalNodes.length; i++) {
+                originalNodes[i] = newIndex[nodeCommunities[originalNodes[i]]];
             }
 
             N = M;
-            topology = newTopology;
-            invMap = newInvMap;
+            offsets = newOffsets;
+            neighbors = newNeighbors;
+            edgeWeights = newEdgeWeights;
+            selfLoops = newSelfLoops;
+            weights = newWeights;
+            nodeCommunities = new int[N];
+            for (int node = 0; node < N; node++) {
+                nodeCommunities[node] = node;
+            }
+            refreshCommunities();
         }
     }
 
-    class Community {
-
-        double weightSum;
-        CommunityStructure structure;
-        LinkedList<Integer> nodes;
-        HashMap<Modularity.Community, Float> connectionsWeight;
-        HashMap<Modularity.Community, Integer> connectionsCount;
-
-        public int size() {
-            return nodes.size();
+    /**
+     * Sparse accumulator of edge weights per community, reset in time
+     * proportional to the number of communities touched.
+     */
+    static class CommunityWeights {
+
+        final double[] weights;
+        final boolean[] touched;
+        final int[] communities;
+        int size;
+
+        CommunityWeights(int n) {
+            weights = new double[n];
+            touched = new boolean[n];
+            communities = new int[n];
         }
 
-        public Community(Modularity.Community com) {
-            structure = com.structure;
-            connectionsWeight = new HashMap<Modularity.Community, Float>();
-            connectionsCount = new HashMap<Modularity.Community, Integer>();
-            nodes = new LinkedList<Integer>();
-            //mHidden = pCom.mHidden;
+        void add(int community, float weight) {
+            if (!touched[community]) {
+                touched[community] = true;
+                communities[size++] = community;
+            }
+            weights[community] += weight;
         }
 
-        public Community(CommunityStructure structure) {
-            this.structure = structure;
-            connectionsWeight = new HashMap<Modularity.Community, Float>();
-            connectionsCount = new HashMap<Modularity.Community, Integer>();
-            nodes = new LinkedList<Integer>();
+        void clear() {
+            for (int j = 0; j < size; j++) {
+                int community = communities[j];
+                touched[community] = false;
+                weights[community] = 0;
+            }
+            size = 0;
         }
+    }
 
-        public void seed(int node) {
-            nodes.add(node);
-            weightSum += structure.weights[node];
+    /**
+     * Finds the best community of a range of nodes against the partition of
+     * the previous round, which is only read.
+     */
+    private class MoveThread implements Runnable {
+
+        private final CommunityStructure theStructure;
+        private final int[] targets;
+        private final double currentResolution;
+        private final int from;
+        private final int to;
+
+        public MoveThread(CommunityStructure theStructure, int[] targets, double currentResolution, int from, int to) {
+            this.theStructure = theStructure;
+            this.targets = targets;
+            this.currentResolution = currentResolution;
+            this.from = from;
+            this.to = to;
         }
 
-        public boolean add(int node) {
-            nodes.addLast(new Integer(node));
-            weightSum += structure.weights[node];
-            return true;
+        @Override
+        public void run() {
+            CommunityWeights scratch = new CommunityWeights(theStructure.N);
+            int[] nodeCommunities = theStructure.nodeCommunities;
+            int[] communitySizes = theStructure.communitySizes;
+            for (int node = from; node < to; node++) {
+                int own = nodeCommunities[node];
+                int best = theStructure.findBestCommunity(node, scratch, currentResolution);
+                //Two isolated nodes would swap forever, only the move to the lowest label is kept
+                if (best != own && communitySizes[own] == 1 && communitySizes[best] == 1 && best > own) {
+                    best = own;
+                }
+                targets[node] = best;
+                if (isCanceled) {
+                    return;
+                }
+            }
         }
+    }
 
-        public boolean remove(int node) {
-            boolean result = nodes.remove(new Integer(node));
-            weightSum -= structure.weights[node];
-            if (nodes.size() == 0) {
-                structure.communities.remove(this);
+    /**
+     * Moves all nodes of the level at once, each to the best community found
+     * in parallel against the previous partition, until modularity stops
+     * increasing. A round that decreases it is rolled back.
+     *
+     * @return <code>true</code> if some node changed community
+     */
+    private boolean moveNodesInParallel(CommunityStructure theStructure, double currentResolution, ExecutorService pool) {
+        int n = theStructure.N;
+        int workerCount = Math.max(1, Math.min(threadCount, n / MIN_NODES_PER_THREAD));
+        int[] targets = new int[n];
+        boolean someChange = false;
+        double quality = theStructure.levelModularity(currentResolution);
+        while (!isCanceled) {
+            ArrayList<Future> threads = new ArrayList<Future>();
+            for (int t = 0; t < workerCount; t++) {
+                int from = (int) ((long) n * t / workerCount);
+                int to = (int) ((long) n * (t + 1) / workerCount);
+                threads.add(pool.submit(new MoveThread(theStructure, targets, currentResolution, from, to)));
             }
-            return result;
+            for (Future future : threads) {
+                try {
+                    future.get();
+                } catch (InterruptedException ex) {
+                    Exceptions.printStackTrace(ex);
+                } catch (ExecutionException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+            if (isCanceled) {
+                break;
+            }
+
+            int[] previous = theStructure.nodeCommunities.clone();
+            int moved = 0;
+            for (int node = 0; node < n; node++) {
+                if (targets[node] != theStructure.nodeCommunities[node]) {
+                    theStructure.moveNodeTo(node, targets[node]);
+                    moved++;
+                }
+            }
+            if (moved == 0) {
+                break;
+            }
+
+            double newQuality = theStructure.levelModularity(currentResolution);
+            if (newQuality <= quality) {
+                System.arraycopy(previous, 0, theStructure.nodeCommunities, 0, n);
+                theStructure.refreshCommunities();
+                break;
+            }
+            quality = newQuality;
+            someChange = true;
         }
+        return someChange;
     }
 
     @Override
@@ -487,38 +539,53 @@ public class Modularity implements Statistics, LongTask {
             hgraph.readUnlockAll();
             return results;
         }
-        boolean someChange = true;
-        while (someChange) {
-            someChange = false;
-            boolean localChange = true;
-            while (localChange) {
-                localChange = false;
-                int start = 0;
-                if (randomized) {
-                    start = Math.abs(rand.nextInt()) % theStructure.N;
+        ExecutorService pool = null;
+        try {
+            boolean someChange = true;
+            while (someChange) {
+                someChange = false;
+                if (threadCount > 1 && theStructure.N >= 2 * MIN_NODES_PER_THREAD) {
+                    if (pool == null) {
+                        pool = Executors.newFixedThreadPool(threadCount);
+                    }
+                    //Bulk of the moves in parallel, refined one node at a time below
+                    someChange = moveNodesInParallel(theStructure, currentResolution, pool);
                 }
-                int step = 0;
-                for (int i = start; step < theStructure.N; i = (i + 1) % theStructure.N) {
-                    step++;
-                    Community bestCommunity = updateBestCommunity(theStructure, i, currentResolution);
-                    if ((theStructure.nodeCommunities[i] != bestCommunity) && (bestCommunity != null)) {
-                        theStructure.moveNodeTo(i, bestCommunity);
-                        localChange = true;
+                CommunityWeights scratch = new CommunityWeights(theStructure.N);
+                boolean localChange = true;
+                while (localChange) {
+                    localChange = false;
+                    int start = 0;
+                    if (randomized) {
+                        start = Math.abs(rand.nextInt()) % theStructure.N;
                     }
-                    if (isCanceled) {
-                        hgraph.readUnlockAll();
-                        return results;
+                    int step = 0;
+                    for (int i = start; step < theStructure.N; i = (i + 1) % theStructure.N) {
+                        step++;
+                        int bestCommunity = theStructure.findBestCommunity(i, scratch, currentResolution);
+                        if (theStructure.nodeCommunities[i] != bestCommunity) {
+                            theStructure.moveNodeTo(i, bestCommunity);
+                            localChange = true;
+                        }
+                        if (isCanceled) {
+                            hgraph.readUnlockAll();
+                            return results;
+                        }
                     }
+                    someChange = localChange || someChange;
                 }
-                someChange = localChange || someChange;
                 if (isCanceled) {
                     hgraph.readUnlockAll();
                     return results;
                 }
-            }
 
-            if (someChange) {
-                theStructure.zoomOut();
+                if (someChange) {
+                    theStructure.zoomOut();
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
 
@@ -534,45 +601,30 @@ public class Modularity implements Statistics, LongTask {
         return results;
     }
 
-    Community updateBestCommunity(CommunityStructure theStructure, int i, double currentResolution) {
-        double best = 0.;
-        Community bestCommunity = null;
-        Set<Community> iter = theStructure.nodeConnectionsWeight[i].keySet();
-        for (Community com : iter) {
-            double qValue = q(i, com, theStructure, currentResolution);
-            if (qValue > best) {
-                best = qValue;
-                bestCommunity = com;
-            }
-        }
-        return bestCommunity;
-    }
-
     int[] fillComStructure(Graph hgraph, CommunityStructure theStructure, int[] comStructure) {
-//        int[] comStructure = new int[hgraph.getNodeCount()];
+        //Number communities in order, skipping empty ones
+        int[] communityIndex = new int[theStructure.N];
         int count = 0;
-
-        for (Community com : theStructure.communities) {
-            for (Integer node : com.nodes) {
-                Community hidden = theStructure.invMap.get(node);
-                for (Integer nodeInt : hidden.nodes) {
-                    comStructure[nodeInt] = count;
-                }
+        for (int community = 0; community < theStructure.N; community++) {
+            if (theStructure.communitySizes[community] > 0) {
+                communityIndex[community] = count++;
             }
-            count++;
+        }
+
+        for (int index = 0; index < theStructure.originalNodes.length; index++) {
+            comStructure[index] = communityIndex[theStructure.nodeCommunities[theStructure.originalNodes[index]]];
         }
         return comStructure;
     }
 
     double[] fillDegreeCount(Graph hgraph, CommunityStructure theStructure, int[] comStructure, double[] nodeDegrees, boolean weighted) {
-        double[] degreeCount = new double[theStructure.communities.size()];
+        double[] degreeCount = new double[theStructure.communityCount];
 
-        for (Node node : hgraph.getNodes()) {
-            int index = theStructure.map.get(node);
+        for (int index = 0; index < theStructure.snapshot.getNodeCount(); index++) {
             if (weighted) {
                 degreeCount[comStructure[index]] += nodeDegrees[index];
             } else {
-                degreeCount[comStructure[index]] += hgraph.getDegree(node);
+                degreeCount[comStructure[index]] += hgraph.getDegree(theStructure.snapshot.getNode(index));
             }
 
         }
@@ -584,16 +636,19 @@ public class Modularity implements Statistics, LongTask {
 
         double res = 0;
         double[] internal = new double[degrees.length];
-        for (Node n : hgraph.getNodes()) {
-            int n_index = theStructure.map.get(n);
-            for (Node neighbor : hgraph.getNeighbors(n)) {
-                if (n == neighbor) {
+        GraphSnapshot snapshot = theStructure.snapshot;
+        int[] offsets = snapshot.getOutOffsets();
+        int[] neighbors = snapshot.getOutNeighbors();
+        float[] edgeWeights = snapshot.getOutWeights();
+        for (int n_index = 0; n_index < snapshot.getNodeCount(); n_index++) {
+            for (int i = offsets[n_index]; i < offsets[n_index + 1]; i++) {
+                int neigh_index = neighbors[i];
+                if (n_index == neigh_index) {
                     continue;
                 }
-                int neigh_index = theStructure.map.get(neighbor);
                 if (struct[neigh_index] == struct[n_index]) {
                     if (weighted) {
-                        internal[struct[neigh_index]] += hgraph.getEdge(n, neighbor).getWeight();
+                        internal[struct[neigh_index]] += edgeWeights[i];
                     } else {
                         internal[struct[neigh_index]]++;
                     }
@@ -613,9 +668,8 @@ public class Modularity implements Statistics, LongTask {
         if (modCol == null) {
             modCol = nodeTable.addColumn(MODULARITY_CLASS, "Modularity Class", Integer.class, new Integer(0));
         }
-        for (Node n : hgraph.getNodes()) {
-            int n_index = theStructure.map.get(n);;
-            n.setAttribute(modCol, struct[n_index]);
+        for (int n_index = 0; n_index < theStructure.snapshot.getNodeCount(); n_index++) {
+            theStructure.snapshot.getNode(n_index).setAttribute(modCol, struct[n_index]);
         }
     }
 
@@ -665,7 +719,7 @@ public class Modularity implements Statistics, LongTask {
                 + "<br> <h2> Results: </h2>"
                 + "Modularity: " + f.format(modularity) + "<br>"
                 + "Modularity with resolution: " + f.format(modularityResolution) + "<br>"
-                + "Number of Communities: " + structure.communities.size()
+                + "Number of Communities: " + structure.communityCount
                 + "<br /><br />" + imageFile
                 + "<br /><br />" + "<h2> Algorithm: </h2>"
                 + "Vincent D Blondel, Jean-Loup Guillaume, Renaud Lambiotte, Etienne Lefebvre, <i>Fast unfolding of communities in large networks</i>, in Journal of Statistical Mechanics: Theory and Experiment 2008 (10), P1000<br />"
@@ -675,22 +729,4 @@ public class Modularity implements Statistics, LongTask {
 
         return report;
     }
-
-    private double q(int node, Community community, CommunityStructure theStructure, double currentResolution) {
-        Float edgesToFloat = theStructure.nodeConnectionsWeight[node].get(community);
-        double edgesTo = 0;
-        if (edgesToFloat != null) {
-            edgesTo = edgesToFloat.doubleValue();
-        }
-        double weightSum = community.weightSum;
-        double nodeWeight = theStructure.weights[node];
-        double qValue = currentResolution * edgesTo - (nodeWeight * weightSum) / (2.0 * theStructure.graphWeightSum);
-        if ((theStructure.nodeCommunities[node] == community) && (theStructure.nodeCommunities[node].size() > 1)) {
-            qValue = currentResolution * edgesTo - (nodeWeight * (weightSum - nodeWeight)) / (2.0 * theStructure.graphWeightSum);
-        }
-        if ((theStructure.nodeCommunities[node] == community) && (theStructure.nodeCommunities[node].size() == 1)) {
-            qValue = 0.;
-        }
-        return qValue;
-    }
 }
@@ -41,19 +41,20 @@
  */
 package org.gephi.statistics.plugin;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
-import org.gephi.graph.api.DirectedGraph;
-import org.gephi.graph.api.Edge;
-import org.gephi.graph.api.EdgeIterable;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.Node;
-import org.gephi.graph.api.UndirectedGraph;
 import org.gephi.statistics.spi.Statistics;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.Progress;
@@ -63,6 +64,7 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 
 /**
@@ -75,6 +77,11 @@ import org.openide.util.Lookup;
 public class PageRank implements Statistics, LongTask {
 
     public static final String PAGERANK = "pageranks";
+    /**
+     * Below this many nodes per thread, synchronizing at each iteration costs
+     * more than it saves.
+     */
+    private static final int MIN_NODES_PER_THREAD = 10000;
     /**
      *
      */
@@ -82,7 +89,7 @@ public class PageRank implements Statistics, LongTask {
     /**
      *
      */
-    private boolean isCanceled;
+    private volatile boolean isCanceled;
     /**
      *
      */
@@ -100,6 +107,7 @@ public class PageRank implements Statistics, LongTask {
      *
      */
     private boolean isDirected;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     public PageRank() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -138,11 +146,11 @@ public class PageRank implements Statistics, LongTask {
 
         hgraph.readLock();
 
-        HashMap<Node, Integer> indicies = createIndiciesMap(hgraph);
+        GraphSnapshot snapshot = GraphSnapshot.get(hgraph, isDirected, useEdgeWeight);
 
-        pageranks = calculatePagerank(hgraph, indicies, isDirected, useEdgeWeight, epsilon, probability);
+        pageranks = calculatePagerank(snapshot, useEdgeWeight, epsilon, probability);
 
-        saveCalculatedValues(hgraph, column, indicies, pageranks);
+        saveCalculatedValues(snapshot, column, pageranks);
 
         hgraph.readUnlockAll();
     }
@@ -158,130 +166,191 @@ public class PageRank implements Statistics, LongTask {
         return pagerankCol;
     }
 
-    private void saveCalculatedValues(Graph hgraph, Column attributeColumn, HashMap<Node, Integer> indicies,
-            double[] nodePagrank) {
-        for (Node s : hgraph.getNodes()) {
-            int s_index = indicies.get(s);
-
-            s.setAttribute(attributeColumn, nodePagrank[s_index]);
+    private void saveCalculatedValues(GraphSnapshot snapshot, Column attributeColumn, double[] nodePagrank) {
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            snapshot.getNode(i).setAttribute(attributeColumn, nodePagrank[i]);
         }
     }
 
-    private void setInitialValues(Graph hgraph, double[] pagerankValues, double[] weights, boolean directed, boolean useWeights) {
-        int N = hgraph.getNodeCount();
-        int index = 0;
-        for (Node s : hgraph.getNodes()) {
-            pagerankValues[index] = 1.0f / N;
+    /**
+     * Builds the transition probabilities once, aligned with the snapshot's
+     * in-edges: the share of its rank each in-neighbor sends through the edge.
+     */
+    private double[] createTransitions(GraphSnapshot snapshot, boolean useWeights) {
+        int[] neighbors = snapshot.getInNeighbors();
+        float[] edgeWeights = snapshot.getInWeights();
+        double[] transitions = new double[neighbors.length];
+        for (int i = 0; i < neighbors.length; i++) {
+            int neigh_index = neighbors[i];
             if (useWeights) {
-                double sum = 0;
-                EdgeIterable eIter;
-                if (directed) {
-                    eIter = ((DirectedGraph) hgraph).getOutEdges(s);
-                } else {
-                    eIter = ((UndirectedGraph) hgraph).getEdges(s);
-                }
-                for (Edge edge : eIter) {
-                    sum += edge.getWeight();
-                }
-                weights[index] = sum;
-            }
-            index++;
-        }
-    }
-
-    private double calculateR(Graph hgraph, double[] pagerankValues, HashMap<Node, Integer> indicies, boolean directed, double prob) {
-        int N = hgraph.getNodeCount();
-        double r = 0;
-        for (Node s : hgraph.getNodes()) {
-            int s_index = indicies.get(s);
-            boolean out;
-            if (directed) {
-                out = ((DirectedGraph) hgraph).getOutDegree(s) > 0;
-            } else {
-                out = hgraph.getDegree(s) > 0;
-            }
-
-            if (out) {
-                r += (1.0 - prob) * (pagerankValues[s_index] / N);
+                double totalWeight = snapshot.getOutWeight(neigh_index);
+                transitions[i] = totalWeight != 0 ? edgeWeights[i] / totalWeight : 0;
             } else {
-                r += (pagerankValues[s_index] / N);
-            }
-            if (isCanceled) {
-                hgraph.readUnlockAll();
-                return r;
+                transitions[i] = 1.0 / snapshot.getOutDegree(neigh_index);
             }
         }
-        return r;
+        return transitions;
     }
 
-    private double updateValueForNode(Graph hgraph, Node s, double[] pagerankValues, double[] weights,
-            HashMap<Node, Integer> indicies, boolean directed, boolean useWeights, double r, double prob) {
-        double res = r;
-        EdgeIterable eIter;
-        if (directed) {
-            eIter = ((DirectedGraph) hgraph).getInEdges(s);
-        } else {
-            eIter = hgraph.getEdges(s);
-        }
-
-        for (Edge edge : eIter) {
-            Node neighbor = hgraph.getOpposite(s, edge);
-            int neigh_index = indicies.get(neighbor);
-            int normalize;
-            if (directed) {
-                normalize = ((DirectedGraph) hgraph).getOutDegree(neighbor);
-            } else {
-                normalize = hgraph.getDegree(neighbor);
-            }
-            if (useWeights) {
-                double weight = edge.getWeight() / weights[neigh_index];
-                res += prob * pagerankValues[neigh_index] * weight;
+    /**
+     * Share of its rank each node spreads uniformly over all nodes: everything
+     * for dangling nodes, the teleportation part for the others.
+     */
+    private double[] createTeleports(GraphSnapshot snapshot, double prob) {
+        int N = snapshot.getNodeCount();
+        double[] teleports = new double[N];
+        for (int s = 0; s < N; s++) {
+            if (snapshot.getOutDegree(s) > 0) {
+                teleports[s] = (1.0 - prob) / N;
             } else {
-                res += prob * (pagerankValues[neigh_index] / normalize);
+                teleports[s] = 1.0 / N;
             }
         }
-        return res;
+        return teleports;
     }
 
     double[] calculatePagerank(Graph hgraph, HashMap<Node, Integer> indicies,
             boolean directed, boolean useWeights, double eps, double prob) {
-        int N = hgraph.getNodeCount();
+        GraphSnapshot snapshot = GraphSnapshot.create(hgraph, indicies, directed, useWeights);
+        return calculatePagerank(snapshot, useWeights, eps, prob);
+    }
+
+    /**
+     * Power iteration until the L1 distance between two successive rank
+     * vectors is below <code>eps</code>. Nodes are split in ranges updated in
+     * parallel, the two rank vectors are swapped at each iteration.
+     */
+    double[] calculatePagerank(GraphSnapshot snapshot, boolean useWeights, double eps, double prob) {
+        int N = snapshot.getNodeCount();
         double[] pagerankValues = new double[N];
         double[] temp = new double[N];
 
         Progress.start(progress);
-        double[] weights = new double[N];
 
-        setInitialValues(hgraph, pagerankValues, weights, directed, useWeights);
+        double[] transitions = createTransitions(snapshot, useWeights);
+        double[] teleports = createTeleports(snapshot, prob);
 
-        while (true) {
-            double r = calculateR(hgraph, pagerankValues, indicies, directed, prob);
+        double r = 0;
+        for (int s = 0; s < N; s++) {
+            pagerankValues[s] = 1.0 / N;
+            r += teleports[s] * pagerankValues[s];
+        }
 
-            boolean done = true;
-            for (Node s : hgraph.getNodes()) {
-                int s_index = indicies.get(s);
-                temp[s_index] = updateValueForNode(hgraph, s, pagerankValues, weights, indicies, directed, useWeights, r, prob);
+        int workerCount = Math.max(1, Math.min(threadCount, N / MIN_NODES_PER_THREAD));
+        PowerIterationThread[] workers = new PowerIterationThread[workerCount];
+        for (int t = 0; t < workerCount; t++) {
+            int from = (int) ((long) N * t / workerCount);
+            int to = (int) ((long) N * (t + 1) / workerCount);
+            workers[t] = new PowerIterationThread(snapshot, transitions, teleports, prob, from, to);
+        }
 
-                if ((temp[s_index] - pagerankValues[s_index]) / pagerankValues[s_index] >= eps) {
-                    done = false;
+        ExecutorService pool = workerCount > 1 ? Executors.newFixedThreadPool(workerCount) : null;
+        try {
+            while (!isCanceled) {
+                for (PowerIterationThread worker : workers) {
+                    worker.setIteration(pagerankValues, temp, r);
+                }
+                if (pool == null) {
+                    workers[0].run();
+                } else {
+                    ArrayList<Future> threads = new ArrayList<Future>();
+                    for (PowerIterationThread worker : workers) {
+                        threads.add(pool.submit(worker));
+                    }
+                    for (Future future : threads) {
+                        try {
+                            future.get();
+                        } catch (InterruptedException ex) {
+                            Exceptions.printStackTrace(ex);
+                        } catch (ExecutionException ex) {
+                            Exceptions.printStackTrace(ex);
+                        }
+                    }
                 }
-
                 if (isCanceled) {
-                    hgraph.readUnlockAll();
-                    return pagerankValues;
+                    break;
+                }
+
+                double distance = 0;
+                r = 0;
+                for (PowerIterationThread worker : workers) {
+                    distance += worker.distance;
+                    r += worker.nextR;
                 }
 
+                double[] swap = pagerankValues;
+                pagerankValues = temp;
+                temp = swap;
+
+                if (distance < eps) {
+                    break;
+                }
             }
-            pagerankValues = temp;
-            temp = new double[N];
-            if ((done) || (isCanceled)) {
-                break;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
-
         }
         return pagerankValues;
     }
 
+    /**
+     * Computes one power iteration for a range of nodes, pulling ranks from
+     * in-neighbors. Also sums the range's contribution to the L1 distance and
+     * to the teleportation term of the next iteration.
+     */
+    private class PowerIterationThread implements Runnable {
+
+        private final GraphSnapshot snapshot;
+        private final double[] transitions;
+        private final double[] teleports;
+        private final double prob;
+        private final int from;
+        private final int to;
+        private double[] current;
+        private double[] next;
+        private double r;
+        //Results
+        private double distance;
+        private double nextR;
+
+        public PowerIterationThread(GraphSnapshot snapshot, double[] transitions, double[] teleports, double prob, int from, int to) {
+            this.snapshot = snapshot;
+            this.transitions = transitions;
+            this.teleports = teleports;
+            this.prob = prob;
+            this.from = from;
+            this.to = to;
+        }
+
+        public void setIteration(double[] current, double[] next, double r) {
+            this.current = current;
+            this.next = next;
+            this.r = r;
+        }
+
+        @Override
+        public void run() {
+            int[] offsets = snapshot.getInOffsets();
+            int[] neighbors = snapshot.getInNeighbors();
+            distance = 0;
+            nextR = 0;
+            for (int s = from; s < to; s++) {
+                double sum = 0;
+                for (int i = offsets[s]; i < offsets[s + 1]; i++) {
+                    sum += current[neighbors[i]] * transitions[i];
+                }
+                double value = r + prob * sum;
+                next[s] = value;
+                distance += Math.abs(value - current[s]);
+                nextR += teleports[s] * value;
+                if (isCanceled) {
+                    return;
+                }
+            }
+        }
+    }
+
     public HashMap<Node, Integer> createIndiciesMap(Graph hgraph) {
         HashMap<Node, Integer> newIndicies = new HashMap<Node, Integer>();
         int index = 0;
@@ -403,4 +472,21 @@ public class PageRank implements Statistics, LongTask {
     public void setUseEdgeWeight(boolean useEdgeWeight) {
         this.useEdgeWeight = useEdgeWeight;
     }
+
+    /**
+     * Sets the maximum number of threads iterations are computed with, small
+     * graphs use fewer.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
 }
@@ -57,7 +57,9 @@ import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Node;
 import org.gephi.statistics.plugin.ChartUtils;
 import org.gephi.statistics.plugin.ClusteringCoefficient;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
+import org.gephi.statistics.spi.WindowDelta;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.ProgressTicket;
 import org.jfree.chart.ChartFactory;
@@ -72,7 +74,7 @@ import org.openide.util.NbBundle;
  *
  * @author Mathieu Bastian
  */
-public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask {
+public class DynamicClusteringCoefficient implements IncrementalDynamicStatistics, ParallelDynamicStatistics<DynamicClusteringCoefficient.Coefficients>, LongTask {
 
     public static final String DYNAMIC_AVG_CLUSTERING_COEFFICIENT = "dynamic_avg_clustering";
     public static final String DYNAMIC_CLUSTERING_COEFFICIENT = "dynamic_clustering";
@@ -83,13 +85,15 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
     private Interval bounds;
     private boolean isDirected;
     private boolean averageOnly;
-    private boolean cancel = false;
-    private ClusteringCoefficient clusteringCoefficientStat;
+    private volatile boolean cancel = false;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
     //Cols
     private Column dynamicCoefficientColumn;
     //Average
     private Column dynamicAverageCoefficientColumn;
     private Map<Double, Double> averages;
+    //Results of the last computed window, reused while the window doesn't change
+    private Coefficients lastResult;
 
     public DynamicClusteringCoefficient() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -103,6 +107,7 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
         this.graphModel = graphModel;
         this.isDirected = graphModel.isDirected();
         this.averages = new HashMap<Double, Double>();
+        this.lastResult = null;
 
         //Attributes cols
         if (!averageOnly) {
@@ -156,6 +161,26 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
 
     @Override
     public void loop(GraphView window, Interval interval) {
+        lastResult = computeCoefficients(window, threadCount);
+        merge(lastResult, interval);
+    }
+
+    @Override
+    public void loop(GraphView window, Interval interval, WindowDelta delta) {
+        if (lastResult == null || !delta.isEmpty()) {
+            loop(window, interval);
+        } else {
+            merge(lastResult, interval);
+        }
+    }
+
+    @Override
+    public Coefficients compute(GraphView window, Interval interval) {
+        //Windows are already spread over the threads
+        return computeCoefficients(window, 1);
+    }
+
+    private Coefficients computeCoefficients(GraphView window, int triangleThreadCount) {
         Graph graph = null;
         if (isDirected) {
             graph = graphModel.getDirectedGraph(window);
@@ -165,30 +190,39 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
 
         graph.readLock();
 
-        clusteringCoefficientStat = new ClusteringCoefficient();
+        ClusteringCoefficient clusteringCoefficientStat = new ClusteringCoefficient();
         clusteringCoefficientStat.setDirected(isDirected);
+        clusteringCoefficientStat.setThreadCount(triangleThreadCount);
         clusteringCoefficientStat.triangles(graph);
 
+        Coefficients result = new Coefficients();
+        result.nodes = graph.getNodes().toArray();
+        result.coefficients = clusteringCoefficientStat.getCoefficientReuslts();
+        result.average = clusteringCoefficientStat.getAverageClusteringCoefficient();
+
+        graph.readUnlockAll();
+        return result;
+    }
+
+    @Override
+    public void merge(Coefficients result, Interval interval) {
         //Columns
         if (!averageOnly) {
-            double[] coefficients = clusteringCoefficientStat.getCoefficientReuslts();
-            int i = 0;
-            for (Node n : graph.getNodes()) {
-                double coef = coefficients[i++];
-                
-                n.setAttribute(dynamicCoefficientColumn, coef, interval.getLow());
-                n.setAttribute(dynamicCoefficientColumn, coef, interval.getHigh());
-                
+            for (int i = 0; i < result.nodes.length; i++) {
+                double coef = result.coefficients[i];
+
+                result.nodes[i].setAttribute(dynamicCoefficientColumn, coef, interval.getLow());
+                result.nodes[i].setAttribute(dynamicCoefficientColumn, coef, interval.getHigh());
+
                 if (cancel) {
                     break;
                 }
             }
         }
 
-        graph.readUnlockAll();
-
         //Average
-        double avg = clusteringCoefficientStat.getAverageClusteringCoefficient();
+        double avg = result.average;
+        Graph graph = graphModel.getGraphVisible();
         graph.setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getLow());
         graph.setAttribute(DYNAMIC_AVG_CLUSTERING_COEFFICIENT, avg, interval.getHigh());
 
@@ -198,7 +232,7 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
 
     @Override
     public void end() {
-        clusteringCoefficientStat = null;
+        lastResult = null;
     }
 
     @Override
@@ -247,6 +281,23 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
         return averageOnly;
     }
 
+    /**
+     * Sets the number of threads windows are computed with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         cancel = true;
@@ -256,4 +307,14 @@ public class DynamicClusteringCoefficient implements DynamicStatistics, LongTask
     @Override
     public void setProgressTicket(ProgressTicket progressTicket) {
     }
+
+    /**
+     * Clustering coefficients of one window.
+     */
+    public static class Coefficients {
+
+        private Node[] nodes;
+        private double[] coefficients;
+        private double average;
+    }
 }
@@ -44,7 +44,9 @@ package org.gephi.statistics.plugin.dynamic;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.gephi.attribute.api.AttributeModel;
 import org.gephi.attribute.api.Column;
 import org.gephi.attribute.api.Table;
@@ -52,13 +54,16 @@ import org.gephi.attribute.time.Interval;
 import org.gephi.attribute.time.TimestampDoubleSet;
 import org.gephi.attribute.time.TimestampIntegerSet;
 import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.GraphView;
 import org.gephi.graph.api.Node;
 import org.gephi.statistics.plugin.ChartUtils;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.IncrementalDynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
+import org.gephi.statistics.spi.WindowDelta;
 import org.gephi.utils.longtask.spi.LongTask;
 import org.gephi.utils.progress.ProgressTicket;
 import org.jfree.chart.ChartFactory;
@@ -73,7 +78,7 @@ import org.openide.util.NbBundle;
  *
  * @author Mathieu Bastian
  */
-public class DynamicDegree implements DynamicStatistics, LongTask {
+public class DynamicDegree implements IncrementalDynamicStatistics, ParallelDynamicStatistics<DynamicDegree.Degrees>, LongTask {
 
     public static final String DYNAMIC_AVGDEGREE = "dynamic_avgdegree";
     public static final String DYNAMIC_INDEGREE = "dynamic_indegree";
@@ -86,13 +91,17 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
     private Interval bounds;
     private boolean isDirected;
     private boolean averageOnly;
-    private boolean cancel = false;
+    private volatile boolean cancel = false;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
     //Cols
     private Column dynamicInDegreeColumn;
     private Column dynamicOutDegreeColumn;
     private Column dynamicDegreeColumn;
     //Average
     private Map<Double, Double> averages;
+    //Degrees of the current window, maintained from deltas
+    private Map<Node, Integer> degrees;
+    private long degreeSum;
 
     public DynamicDegree() {
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
@@ -106,6 +115,8 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
         this.graphModel = graphModel;
         this.isDirected = graphModel.isDirected();
         this.averages = new HashMap<Double, Double>();
+        this.degrees = new HashMap<Node, Integer>();
+        this.degreeSum = 0;
 
         //Attributes cols
         if (!averageOnly) {
@@ -169,43 +180,110 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
 
     @Override
     public void loop(GraphView window, Interval interval) {
+        merge(compute(window, interval), interval);
+    }
+
+    @Override
+    public Degrees compute(GraphView window, Interval interval) {
         Graph graph = graphModel.getGraph(window);
         DirectedGraph directedGraph = null;
         if (isDirected) {
             directedGraph = graphModel.getDirectedGraph(window);
         }
 
-        long sum = 0;
-        for (Node n : graph.getNodes().toArray()) {
+        Degrees result = new Degrees();
+        Node[] nodes = graph.getNodes().toArray();
+        result.nodeCount = nodes.length;
+        if (!averageOnly) {
+            result.nodes = nodes;
+            result.degrees = new int[nodes.length];
+            if (isDirected) {
+                result.inDegrees = new int[nodes.length];
+                result.outDegrees = new int[nodes.length];
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            Node n = nodes[i];
             int degree = graph.getDegree(n);
-
             if (!averageOnly) {
-                n.setAttribute(dynamicDegreeColumn, degree, interval.getLow());
-
+                result.degrees[i] = degree;
                 if (isDirected) {
-                    int indegree = directedGraph.getInDegree(n);
-                    n.setAttribute(dynamicInDegreeColumn, indegree, interval.getLow());
-
-                    int outdegree = directedGraph.getOutDegree(n);
-                    n.setAttribute(dynamicOutDegreeColumn, outdegree, interval.getLow());
+                    result.inDegrees[i] = directedGraph.getInDegree(n);
+                    result.outDegrees[i] = directedGraph.getOutDegree(n);
                 }
             }
-            sum += degree;
+            result.sum += degree;
             if (cancel) {
                 break;
             }
         }
+        return result;
+    }
+
+    @Override
+    public void merge(Degrees result, Interval interval) {
+        if (!averageOnly) {
+            for (int i = 0; i < result.nodes.length; i++) {
+                Node n = result.nodes[i];
+                n.setAttribute(dynamicDegreeColumn, result.degrees[i], interval.getLow());
+                if (isDirected) {
+                    n.setAttribute(dynamicInDegreeColumn, result.inDegrees[i], interval.getLow());
+                    n.setAttribute(dynamicOutDegreeColumn, result.outDegrees[i], interval.getLow());
+                }
+            }
+        }
+        setAverage(interval, result.sum, result.nodeCount);
+    }
+
+    @Override
+    public void loop(GraphView window, Interval interval, WindowDelta delta) {
+        if (!averageOnly) {
+            //Every node gets a value anyway
+            merge(compute(window, interval), interval);
+            return;
+        }
+        Graph graph = graphModel.getGraph(window);
+
+        //Only the degrees of nodes touched by the delta can change
+        for (Node n : delta.getRemovedNodes()) {
+            Integer degree = degrees.remove(n);
+            if (degree != null) {
+                degreeSum -= degree;
+            }
+        }
+        Set<Node> touched = new HashSet<Node>(delta.getAddedNodes());
+        for (Edge e : delta.getAddedEdges()) {
+            touched.add(e.getSource());
+            touched.add(e.getTarget());
+        }
+        for (Edge e : delta.getRemovedEdges()) {
+            touched.add(e.getSource());
+            touched.add(e.getTarget());
+        }
+        for (Node n : touched) {
+            if (graph.contains(n)) {
+                int degree = graph.getDegree(n);
+                Integer previous = degrees.put(n, degree);
+                degreeSum += previous != null ? degree - previous : degree;
+            }
+        }
 
-        double avg = sum / (double) graph.getNodeCount();
+        setAverage(interval, degreeSum, graph.getNodeCount());
+    }
+
+    private void setAverage(Interval interval, long sum, int nodeCount) {
+        double avg = sum / (double) nodeCount;
         averages.put(interval.getLow(), avg);
         averages.put(interval.getHigh(), avg);
-        
+
+        Graph graph = graphModel.getGraphVisible();
         graph.setAttribute(DYNAMIC_AVGDEGREE, avg, interval.getLow());
         graph.setAttribute(DYNAMIC_AVGDEGREE, avg, interval.getHigh());
     }
 
     @Override
     public void end() {
+        degrees = null;
     }
 
     @Override
@@ -254,6 +332,23 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
         return averageOnly;
     }
 
+    /**
+     * Sets the number of threads windows are computed with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     @Override
     public boolean cancel() {
         cancel = true;
@@ -263,4 +358,17 @@ public class DynamicDegree implements DynamicStatistics, LongTask {
     @Override
     public void setProgressTicket(ProgressTicket progressTicket) {
     }
+
+    /**
+     * Degrees of one window.
+     */
+    public static class Degrees {
+
+        private Node[] nodes;
+        private int[] degrees;
+        private int[] inDegrees;
+        private int[] outDegrees;
+        private long sum;
+        private int nodeCount;
+    }
 }
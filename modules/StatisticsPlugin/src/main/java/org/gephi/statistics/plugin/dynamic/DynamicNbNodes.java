@@ -51,7 +51,7 @@ import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.graph.api.GraphView;
 import org.gephi.statistics.plugin.ChartUtils;
-import org.gephi.statistics.spi.DynamicStatistics;
+import org.gephi.statistics.spi.ParallelDynamicStatistics;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
@@ -62,7 +62,7 @@ import org.jfree.data.xy.XYSeriesCollection;
  *
  * @author Sébastien Heymann
  */
-public class DynamicNbNodes implements DynamicStatistics {
+public class DynamicNbNodes implements ParallelDynamicStatistics<Integer> {
 
     public static final String NB_NODES = "dynamic nodecount";
     //Data
@@ -70,6 +70,7 @@ public class DynamicNbNodes implements DynamicStatistics {
     private double window;
     private double tick;
     private Interval bounds;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
     //Average
     private Map<Double, Integer> counts;
 
@@ -121,10 +122,17 @@ public class DynamicNbNodes implements DynamicStatistics {
 
     @Override
     public void loop(GraphView window, Interval interval) {
-        Graph graph = graphModel.getGraph(window);
+        merge(compute(window, interval), interval);
+    }
 
-        int count = graph.getNodeCount();
+    @Override
+    public Integer compute(GraphView window, Interval interval) {
+        return graphModel.getGraph(window).getNodeCount();
+    }
 
+    @Override
+    public void merge(Integer count, Interval interval) {
+        Graph graph = graphModel.getGraphVisible();
         graph.setAttribute(NB_NODES, count, interval.getLow());
         graph.setAttribute(NB_NODES, count, interval.getHigh());
 
@@ -165,4 +173,21 @@ public class DynamicNbNodes implements DynamicStatistics {
     public Interval getBounds() {
         return bounds;
     }
+
+    /**
+     * Sets the number of threads windows are computed with.
+     *
+     * @param threadCount the number of threads, at least <code>1</code>
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
 }
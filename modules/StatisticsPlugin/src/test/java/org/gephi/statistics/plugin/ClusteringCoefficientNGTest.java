@@ -51,11 +51,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[1];
         int[] triangles = new int[1];
         double[] nodeClustering = new double[1];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         
@@ -68,11 +67,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[2];
         int[] triangles = new int[2];
         double[] nodeClustering = new double[2];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         
@@ -85,11 +83,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[5];
         int[] triangles = new int[5];
         double[] nodeClustering = new double[5];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         
@@ -102,11 +99,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[5];
         int[] triangles = new int[5];
         double[] nodeClustering = new double[5];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         assertEquals(avClusteringCoefficient, 1.0);
@@ -118,11 +114,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[6];
         int[] triangles = new int[6];
         double[] nodeClustering = new double[6];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
 
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
@@ -176,11 +171,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
         ClusteringCoefficient cc = new ClusteringCoefficient();
 
-        ArrayWrapper[] network = new ArrayWrapper[7];
         int[] triangles = new int[7];
         double[] nodeClustering = new double[7];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         
         double cl1 = nodeClustering[0];
         double cl3 = nodeClustering[2];
@@ -233,11 +227,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
         ClusteringCoefficient cc = new ClusteringCoefficient();
 
-        ArrayWrapper[] network = new ArrayWrapper[7];
         int[] triangles = new int[7];
         double[] nodeClustering = new double[7];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         
         double cl2 = nodeClustering[1];
         double avClusteringCoefficient = results.get("clusteringCoefficient");
@@ -282,11 +275,10 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
         ClusteringCoefficient cc = new ClusteringCoefficient();
 
-        ArrayWrapper[] network = new ArrayWrapper[6];
         int[] triangles = new int[6];
         double[] nodeClustering = new double[6];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         
         double cl1 = nodeClustering[0];
         
@@ -303,12 +295,11 @@ public class ClusteringCoefficientNGTest {
         Graph hgraph = graphModel.getGraph();
 
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[3];
 
         int[] triangles = new int[3];
         double[] nodeClustering = new double[3];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, false);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
         
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
@@ -350,11 +341,10 @@ public class ClusteringCoefficientNGTest {
         DirectedGraph hgraph = graphModel.getDirectedGraph();
         
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[4];
         int[] triangles = new int[4];
         double[] nodeClustering = new double[4];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, true);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, true);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         
@@ -393,11 +383,10 @@ public class ClusteringCoefficientNGTest {
         DirectedGraph hgraph = graphModel.getDirectedGraph();
         
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[3];
         int[] triangles = new int[3];
         double[] nodeClustering = new double[3];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, true);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, true);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         
         
@@ -436,11 +425,10 @@ public class ClusteringCoefficientNGTest {
         DirectedGraph hgraph = graphModel.getDirectedGraph();
         
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[4];
         int[] triangles = new int[4];
         double[] nodeClustering = new double[4];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, true);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, true);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         double res = 0.4167;
         double diff = 0.01;
@@ -478,15 +466,38 @@ public class ClusteringCoefficientNGTest {
         DirectedGraph hgraph = graphModel.getDirectedGraph();
         
         ClusteringCoefficient cc = new ClusteringCoefficient();
-        ArrayWrapper[] network = new ArrayWrapper[3];
         int[] triangles = new int[3];
         double[] nodeClustering = new double[3];
 
-        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, network, triangles, nodeClustering, true);
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, true);
         double avClusteringCoefficient = results.get("clusteringCoefficient");
         double res = 0.833;
         double diff = 0.01;
         
         assertTrue(Math.abs(avClusteringCoefficient-res)<diff);
     }
+
+    @Test
+    public void testMultiThreadedCompleteGraphTransitivity() {
+        GraphModel graphModel=GraphGenerator.generateCompleteUndirectedGraph(600);
+        Graph hgraph = graphModel.getGraph();
+
+        ClusteringCoefficient cc = new ClusteringCoefficient();
+        cc.setThreadCount(3);
+        int[] triangles = new int[600];
+        double[] nodeClustering = new double[600];
+
+        HashMap<String, Double> results = cc.computeClusteringCoefficient(hgraph, triangles, nodeClustering, false);
+
+        double transitivity = results.get("transitivity");
+        double avClusteringCoefficient = results.get("clusteringCoefficient");
+        double totalTriangles = results.get("triangles");
+
+        assertEquals(transitivity, 1.0);
+        assertEquals(avClusteringCoefficient, 1.0);
+        assertEquals(totalTriangles, 600.0 * 599 * 598 / 6);
+        for (int i = 0; i < 600; i++) {
+            assertEquals(triangles[i], 599 * 598 / 2);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.gephi.statistics.plugin;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.impl.ProjectControllerImpl;
+import org.openide.util.Lookup;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CorenessNGTest {
+
+    private ProjectController pc;
+
+    @BeforeClass
+    public void setUp() {
+        pc = Lookup.getDefault().lookup(ProjectControllerImpl.class);
+    }
+
+    @BeforeMethod
+    public void initialize() {
+        pc.newProject();
+    }
+
+    @AfterMethod
+    public void clean() {
+        pc.closeCurrentProject();
+    }
+
+    @Test
+    public void testNullGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateNullUndirectedGraph(5);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        int[] coreness = Coreness.computeCoreness(GraphSnapshot.create(graph, false, false));
+
+        assertEquals(coreness, new int[5]);
+    }
+
+    @Test
+    public void testCompleteGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(6);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        int[] coreness = Coreness.computeCoreness(GraphSnapshot.create(graph, false, false));
+
+        for (int c : coreness) {
+            assertEquals(c, 5);
+        }
+    }
+
+    @Test
+    public void testStarGraphCoreness() {
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(5);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        int[] coreness = Coreness.computeCoreness(GraphSnapshot.create(graph, false, false));
+
+        for (int c : coreness) {
+            assertEquals(c, 1);
+        }
+    }
+
+    @Test
+    public void testCliqueWithTailCoreness() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Node previous = graph.getNode("0");
+        for (int i = 4; i < 7; i++) {
+            Node n = graphModel.factory().newNode(((Integer) i).toString());
+            graph.addNode(n);
+            Edge e = graphModel.factory().newEdge(previous, n, false);
+            graph.addEdge(e);
+            previous = n;
+        }
+        //Self-loops don't count
+        graph.addEdge(graphModel.factory().newEdge(previous, previous, false));
+
+        GraphSnapshot snapshot = GraphSnapshot.create(graph, false, false);
+        int[] coreness = Coreness.computeCoreness(snapshot);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(coreness[snapshot.getIndex(graph.getNode("" + i))], 3);
+        }
+        for (int i = 4; i < 7; i++) {
+            assertEquals(coreness[snapshot.getIndex(graph.getNode("" + i))], 1);
+        }
+    }
+}
@@ -5,6 +5,7 @@
 package org.gephi.statistics.plugin;
 
 import java.util.HashMap;
+import java.util.Map;
 import org.gephi.graph.api.DirectedGraph;
 import org.gephi.graph.api.UndirectedGraph;
 import org.gephi.graph.api.Edge;
@@ -1613,4 +1614,85 @@ public class GraphDistanceNGTest {
         assertEquals(closeness[index1], 1.5);
         assertEquals(closeness[index4], 1.);
     }
+
+    @Test
+    public void testMultiThreadedCyclicDirectedGraph() {
+        GraphModel graphModel = GraphGenerator.generateCyclicDirectedGraph(7);
+        DirectedGraph directedGraph = graphModel.getDirectedGraph();
+
+        GraphDistance sequential = new GraphDistance();
+        sequential.initializeStartValues();
+        sequential.setThreadCount(1);
+        HashMap<Node, Integer> indicies = sequential.createIndiciesMap(directedGraph);
+        Map<String, double[]> expected = sequential.calculateDistanceMetrics(directedGraph, indicies, true, false);
+
+        GraphDistance parallel = new GraphDistance();
+        parallel.initializeStartValues();
+        parallel.setThreadCount(3);
+        Map<String, double[]> actual = parallel.calculateDistanceMetrics(directedGraph, indicies, true, false);
+
+        assertEquals(actual.get(GraphDistance.BETWEENNESS), expected.get(GraphDistance.BETWEENNESS));
+        assertEquals(actual.get(GraphDistance.CLOSENESS), expected.get(GraphDistance.CLOSENESS));
+        assertEquals(actual.get(GraphDistance.ECCENTRICITY), expected.get(GraphDistance.ECCENTRICITY));
+        assertEquals(parallel.getDiameter(), sequential.getDiameter());
+        assertEquals(parallel.getRadius(), sequential.getRadius());
+        assertEquals(parallel.getPathLength(), sequential.getPathLength());
+    }
+
+    @Test
+    public void testApproximateWithAllPivotsPathGraph() {
+        GraphModel graphModel = GraphGenerator.generatePathUndirectedGraph(6);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        GraphDistance exact = new GraphDistance();
+        exact.initializeStartValues();
+        HashMap<Node, Integer> indicies = exact.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> expected = exact.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        //Small error bound, every node is a pivot
+        GraphDistance approximate = new GraphDistance();
+        approximate.initializeStartValues();
+        approximate.setApproximate(true);
+        approximate.setErrorBound(0.01);
+        assertEquals(approximate.getPivotCount(6), 6);
+        Map<String, double[]> actual = approximate.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        double[] expectedBetweenness = expected.get(GraphDistance.BETWEENNESS);
+        double[] actualBetweenness = actual.get(GraphDistance.BETWEENNESS);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(actualBetweenness[i], expectedBetweenness[i], 1e-9);
+        }
+        assertEquals(actual.get(GraphDistance.CLOSENESS), expected.get(GraphDistance.CLOSENESS));
+        assertEquals(actual.get(GraphDistance.ECCENTRICITY), expected.get(GraphDistance.ECCENTRICITY));
+        assertEquals(approximate.getDiameter(), exact.getDiameter());
+    }
+
+    @Test
+    public void testApproximateSeed() {
+        GraphModel graphModel = GraphGenerator.generateCyclicUndirectedGraph(50);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+
+        GraphDistance first = new GraphDistance();
+        first.initializeStartValues();
+        first.setApproximate(true);
+        first.setErrorBound(0.5);
+        first.setSeed(42);
+        HashMap<Node, Integer> indicies = first.createIndiciesMap(undirectedGraph);
+        Map<String, double[]> firstMetrics = first.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        GraphDistance second = new GraphDistance();
+        second.initializeStartValues();
+        second.setApproximate(true);
+        second.setErrorBound(0.5);
+        second.setSeed(42);
+        Map<String, double[]> secondMetrics = second.calculateDistanceMetrics(undirectedGraph, indicies, false, false);
+
+        assertTrue(first.getPivotCount(50) < 50);
+        assertEquals(secondMetrics.get(GraphDistance.BETWEENNESS), firstMetrics.get(GraphDistance.BETWEENNESS));
+        assertEquals(secondMetrics.get(GraphDistance.CLOSENESS), firstMetrics.get(GraphDistance.CLOSENESS));
+        //Averages of distances to pivots, which are at most 25 away on the cycle
+        for (double closeness : firstMetrics.get(GraphDistance.CLOSENESS)) {
+            assertTrue(closeness >= 1 && closeness <= 25);
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.gephi.statistics.plugin;
+
+import org.gephi.graph.api.DirectedGraph;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.project.api.ProjectController;
+import org.gephi.project.impl.ProjectControllerImpl;
+import org.openide.util.Lookup;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GraphSnapshotNGTest {
+
+    private ProjectController pc;
+
+    @BeforeClass
+    public void setUp() {
+        pc = Lookup.getDefault().lookup(ProjectControllerImpl.class);
+    }
+
+    @BeforeMethod
+    public void initialize() {
+        pc.newProject();
+    }
+
+    @AfterMethod
+    public void clean() {
+        pc.closeCurrentProject();
+    }
+
+    @Test
+    public void testUndirectedStarSnapshot() {
+        GraphModel graphModel = GraphGenerator.generateStarUndirectedGraph(5);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        GraphSnapshot snapshot = GraphSnapshot.create(graph, false, false);
+
+        assertEquals(snapshot.getNodeCount(), 6);
+        assertEquals(snapshot.getOutEntryCount(), 10);
+        assertSame(snapshot.getInNeighbors(), snapshot.getOutNeighbors());
+        assertNull(snapshot.getOutWeights());
+
+        int center = snapshot.getIndex(graph.getNode("0"));
+        assertEquals(snapshot.getOutDegree(center), 5);
+        for (int i = 0; i < snapshot.getNodeCount(); i++) {
+            assertEquals(snapshot.getIndex(snapshot.getNode(i)), i);
+            if (i != center) {
+                assertEquals(snapshot.getOutDegree(i), 1);
+                assertEquals(snapshot.getOutNeighbors()[snapshot.getOutOffsets()[i]], center);
+            }
+        }
+    }
+
+    @Test
+    public void testDirectedPathSnapshot() {
+        GraphModel graphModel = GraphGenerator.generatePathDirectedGraph(4);
+        DirectedGraph graph = graphModel.getDirectedGraph();
+
+        GraphSnapshot snapshot = GraphSnapshot.create(graph, true, false);
+
+        int first = snapshot.getIndex(graph.getNode("0"));
+        int second = snapshot.getIndex(graph.getNode("1"));
+        int last = snapshot.getIndex(graph.getNode("3"));
+
+        assertEquals(snapshot.getOutDegree(first), 1);
+        assertEquals(snapshot.getInDegree(first), 0);
+        assertEquals(snapshot.getOutDegree(last), 0);
+        assertEquals(snapshot.getInDegree(last), 1);
+        assertEquals(snapshot.getOutNeighbors()[snapshot.getOutOffsets()[first]], second);
+        assertEquals(snapshot.getInNeighbors()[snapshot.getInOffsets()[second]], first);
+    }
+
+    @Test
+    public void testWeightedSnapshot() {
+        GraphModel graphModel = GraphGenerator.generateNullUndirectedGraph(2);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Node node0 = graph.getNode("0");
+        Node node1 = graph.getNode("1");
+        Edge edge = graphModel.factory().newEdge(node0, node1, 0, 3.5f, false);
+        graph.addEdge(edge);
+
+        GraphSnapshot snapshot = GraphSnapshot.create(graph, false, true);
+
+        int index0 = snapshot.getIndex(node0);
+        assertEquals(snapshot.getOutWeights()[snapshot.getOutOffsets()[index0]], 3.5f);
+        assertEquals(snapshot.getOutWeight(index0), 3.5);
+    }
+
+    @Test
+    public void testSharedSnapshot() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+
+        GraphSnapshot snapshot = GraphSnapshot.get(graph, false, false);
+        assertSame(GraphSnapshot.get(graph, false, false), snapshot);
+
+        Node node = graphModel.factory().newNode("4");
+        graph.addNode(node);
+
+        GraphSnapshot newSnapshot = GraphSnapshot.get(graph, false, false);
+        assertNotSame(newSnapshot, snapshot);
+        assertEquals(newSnapshot.getNodeCount(), 5);
+    }
+
+    @Test
+    public void testWeightedSnapshotAfterWeightChange() {
+        GraphModel graphModel = GraphGenerator.generateNullUndirectedGraph(2);
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Node node0 = graph.getNode("0");
+        Node node1 = graph.getNode("1");
+        Edge edge = graphModel.factory().newEdge(node0, node1, 0, 3.5f, false);
+        graph.addEdge(edge);
+
+        GraphSnapshot snapshot = GraphSnapshot.get(graph, false, true);
+        int index0 = snapshot.getIndex(node0);
+        assertEquals(snapshot.getOutWeight(index0), 3.5);
+
+        edge.setWeight(2.0);
+
+        GraphSnapshot newSnapshot = GraphSnapshot.get(graph, false, true);
+        assertEquals(newSnapshot.getOutWeight(newSnapshot.getIndex(node0)), 2.0);
+    }
+}
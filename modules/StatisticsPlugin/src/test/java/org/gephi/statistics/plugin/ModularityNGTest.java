@@ -251,4 +251,38 @@ public class ModularityNGTest {
         assertEquals(class7, class8);
         assertNotEquals(class4, class5);
     }
+
+    @Test
+    public void testTwoDisconnectedCliquesModularity() {
+        GraphModel graphModel = GraphGenerator.generateCompleteUndirectedGraph(4);
+        UndirectedGraph undirectedGraph = graphModel.getUndirectedGraph();
+        Node[] nodes = new Node[4];
+        for (int i = 0; i < 4; i++) {
+            Node currentNode = graphModel.factory().newNode(((Integer) (i + 4)).toString());
+            nodes[i] = currentNode;
+            undirectedGraph.addNode(currentNode);
+        }
+        for (int i = 0; i < 3; i++) {
+            for (int j = i + 1; j < 4; j++) {
+                Edge currentEdge = graphModel.factory().newEdge(nodes[i], nodes[j], false);
+                undirectedGraph.addEdge(currentEdge);
+            }
+        }
+        UndirectedGraph graph = graphModel.getUndirectedGraph();
+        Modularity mod = new Modularity();
+
+        Modularity.CommunityStructure theStructure = mod.new CommunityStructure(graph);
+        int[] comStructure = new int[graph.getNodeCount()];
+        HashMap<String, Double> modularityValues = mod.computeModularity(graph, theStructure, comStructure,
+                1., false, false);
+
+        double modValue = modularityValues.get("modularity");
+        assertEquals(modValue, 0.5, 1e-9);
+        assertEquals(theStructure.communityCount, 2);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(comStructure[i], comStructure[0]);
+            assertEquals(comStructure[i + 4], comStructure[4]);
+        }
+        assertNotEquals(comStructure[0], comStructure[4]);
+    }
 }
@@ -268,6 +268,27 @@ public class PageRankNGTest {
         assertTrue(diff3 < 0.01);
     }
 
+    @Test
+    public void testMultiThreadedCyclicDirectedGraphPageRank() {
+        pc.newProject();
+        GraphModel graphModel = GraphGenerator.generateCyclicDirectedGraph(30000);
+        DirectedGraph hgraph = graphModel.getDirectedGraph();
+
+        PageRank pr = new PageRank();
+        pr.setThreadCount(3);
+
+        HashMap<Node, Integer> indicies = pr.createIndiciesMap(hgraph);
+
+        double[] pageRank = pr.calculatePagerank(hgraph, indicies, true, false, 0.001, 0.85);
+
+        double sum = 0;
+        for (double value : pageRank) {
+            assertEquals(value, 1.0 / 30000, 1e-12);
+            sum += value;
+        }
+        assertEquals(sum, 1.0, 1e-9);
+    }
+
     @Test
     public void testDirectedSpecial1GraphPageRank() {
         pc.newProject();
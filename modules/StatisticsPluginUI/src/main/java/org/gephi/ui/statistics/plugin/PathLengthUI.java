@@ -65,6 +65,9 @@ public class PathLengthUI implements StatisticsUI {
         if (panel != null) {
             panel.setDirected(graphDistance.isDirected());
             panel.doNormalize(graphDistance.isNormalized());
+            panel.setApproximate(graphDistance.isApproximate());
+            panel.setErrorBound(graphDistance.getErrorBound());
+            panel.setSeed(graphDistance.getSeed());
         }
     }
 
@@ -72,6 +75,9 @@ public class PathLengthUI implements StatisticsUI {
         if (panel != null) {
             graphDistance.setDirected(panel.isDirected());
             graphDistance.setNormalized(panel.normalize());
+            graphDistance.setApproximate(panel.isApproximate());
+            graphDistance.setErrorBound(panel.errorBound());
+            graphDistance.setSeed(panel.seed());
         }
         graphDistance = null;
         panel = null;
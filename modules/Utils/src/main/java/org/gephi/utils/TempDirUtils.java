@@ -85,6 +85,20 @@ public class TempDirUtils {
             file.deleteOnExit();
             return file;
         }
+
+        /**
+         * Deletes the files of this directory and the directory itself,
+         * without waiting for the exit.
+         */
+        public void delete() {
+            File[] files = tempDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            tempDir.delete();
+        }
     }
 }
 